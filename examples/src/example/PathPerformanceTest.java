@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package example;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.SimplePaths;
+
+/**
+ * This small program compares the performance of <code>SimplePath</code> and
+ * <code>InternedPath</code> (as returned by {@link Context#createPath(String)}) on the
+ * operations which dominate the processing of sensor updates: parsing a path from a
+ * string, deriving attribute paths from a resource path and using paths as keys in a
+ * hash map. As <code>SimplePath</code> is not public, it is instantiated through
+ * {@link SimplePaths}.
+ * <p>
+ * The number of distinct paths and of iterations can be supplied as parameters, e.g.
+ * <code>java example.PathPerformanceTest 1000 200</code>. Each measurement is run
+ * twice and only the second run is reported, to let the JIT warm up.
+ *
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class PathPerformanceTest {
+    private static int paths = 1000;
+
+    private static int iterations = 200;
+
+    /**
+     * Creates paths for one implementation.
+     */
+    private interface PathFactory {
+        Path create(String path);
+    }
+
+    private static final PathFactory SIMPLE = new PathFactory() {
+        public Path create(String path) {
+            return SimplePaths.create(path);
+        }
+    };
+
+    private static final PathFactory INTERNED = new PathFactory() {
+        public Path create(String path) {
+            return Context.createPath(path);
+        }
+    };
+
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0) {
+                paths = Integer.parseInt(args[0]);
+            }
+            if (args.length > 1) {
+                iterations = Integer.parseInt(args[1]);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: java " + PathPerformanceTest.class.getName()
+                    + " [<paths> [<iterations>]]");
+            System.exit(1);
+        }
+        String[] strings = new String[paths];
+        for (int i = 0; i < paths; i++) {
+            strings[i] = "/hosts/host" + (i % 50) + "/cpus/cpu" + (i / 50) + "#load";
+        }
+        System.out.println("Paths: " + paths + "; iterations: " + iterations + ".");
+        for (int run = 0; run < 2; run++) {
+            boolean report = (run == 1);
+            compare("parse", strings, report);
+            compare("appendAttribute", strings, report);
+            compare("hash lookup", strings, report);
+        }
+    }
+
+    private static void compare(String operation, String[] strings, boolean report) {
+        long simple = measure(operation, SIMPLE, strings);
+        long interned = measure(operation, INTERNED, strings);
+        if (report) {
+            System.out.println(operation + ": SimplePath " + simple / 1000000
+                    + "ms, InternedPath " + interned / 1000000 + "ms ("
+                    + Math.round(10.0 * simple / Math.max(interned, 1)) / 10.0 + "x).");
+        }
+    }
+
+    private static long measure(String operation, PathFactory factory, String[] strings) {
+        Path[] resources = new Path[strings.length];
+        Map<Path, Integer> map = new HashMap<Path, Integer>();
+        for (int i = 0; i < strings.length; i++) {
+            Path attr = factory.create(strings[i]);
+            resources[i] = attr.getParent();
+            map.put(attr, i);
+        }
+        int checksum = 0;
+        long start = System.nanoTime();
+        for (int n = 0; n < iterations; n++) {
+            for (int i = 0; i < strings.length; i++) {
+                if (operation.equals("parse")) {
+                    checksum += factory.create(strings[i]).size();
+                } else if (operation.equals("appendAttribute")) {
+                    checksum += resources[i].appendAttribute("load").size();
+                } else {
+                    checksum += map.get(resources[i].appendAttribute("load"));
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (checksum == 42) {
+            // Prevents the loop from being optimized away.
+            System.out.print("");
+        }
+        return elapsed;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package example.dependencies;
+
+import static org.objectweb.wildcat.Context.createPath;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.ContextListenerAdapter;
+import org.objectweb.wildcat.EventKind;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.providers.DynamicContextProvider;
+
+/**
+ * This small example program measures how fast changes are propagated through synthetic
+ * attributes. It builds two dependency graphs on top of a source attribute:
+ * <ul>
+ * <li>a <em>deep</em> one: a chain of <code>size</code> attributes, each defined as
+ * the previous one plus one;</li>
+ * <li>a <em>wide</em> one: <code>size</code> attributes defined directly in terms of
+ * the source, and a final attribute defined as their sum.</li>
+ * </ul>
+ * For each graph, it changes the value of the source repeatedly, waits until the change
+ * has reached the last attribute, and reports the average propagation time and the
+ * average number of synthetic attribute changes per propagation (ideally, the number of
+ * synthetic attributes in the graph). Usage:
+ * <code>java example.dependencies.PropagationPerformanceTest [size] [iterations]</code>.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class PropagationPerformanceTest {
+    public static void main(String[] args) throws Exception {
+        int size = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+        run("deep", size, iterations);
+        run("wide", size, iterations);
+        System.exit(0);
+    }
+
+    private static void run(String shape, int size, int iterations) throws Exception {
+        Context ctx = new Context();
+        // The definitions are created faster than they are evaluated: make sure the
+        // producers never wait for the consumers.
+        ctx.getSubscriptionsBuffer().setCapacity(100000);
+        ctx.getDependenciesBuffer().setCapacity(100000);
+        DynamicContextProvider dcp = ctx.createDynamicContextProvider();
+        ctx.mount("/bench", dcp);
+        dcp.createAttribute("#src", 0);
+        final String sink;
+        if (shape.equals("deep")) {
+            String previous = "/bench#src";
+            for (int i = 0; i < size; i++) {
+                dcp.createAttribute("#n" + i, null);
+                dcp.setDefinition("#n" + i, previous + " + 1");
+                previous = "/bench#n" + i;
+            }
+            sink = previous;
+        } else {
+            StringBuilder sum = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                dcp.createAttribute("#n" + i, null);
+                dcp.setDefinition("#n" + i, "/bench#src + " + i);
+                sum.append((i == 0) ? "" : " + ").append("/bench#n" + i);
+            }
+            dcp.createAttribute("#sink", null);
+            dcp.setDefinition("#sink", sum.toString());
+            sink = "/bench#sink";
+        }
+        // Let the initial evaluations complete.
+        Thread.sleep(500);
+
+        final AtomicLong changes = new AtomicLong();
+        final Semaphore reached = new Semaphore(0);
+        final Path sinkPath = createPath(sink);
+        ctx.register(EventKind.ATTRIBUTE_CHANGED, createPath("/bench#*"),
+                new ContextListenerAdapter() {
+                    @Override
+                    public void attributeChanged(Path attr, Object oldValue,
+                            Object newValue, long timeStamp) {
+                        changes.incrementAndGet();
+                        if (attr.equals(sinkPath)) {
+                            reached.release();
+                        }
+                    }
+                });
+        Path src = createPath("#src");
+        long start = System.nanoTime();
+        for (int i = 1; i <= iterations; i++) {
+            dcp.setValue(src, i);
+            if (!reached.tryAcquire(10, TimeUnit.SECONDS)) {
+                System.out.println(shape + ": propagation did not complete.");
+                return;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        // Each iteration also changes the source itself.
+        double perPropagation = (changes.get() - iterations) / (double) iterations;
+        System.out.println(shape + " (" + size + " attributes): "
+                + (elapsed / iterations / 1000) + "us per propagation, " + perPropagation
+                + " synthetic attribute changes per propagation.");
+    }
+}
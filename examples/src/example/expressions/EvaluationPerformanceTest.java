@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package example.expressions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.expressions.BasicInterpreter;
+import org.objectweb.wildcat.expressions.CompilingInterpreter;
+import org.objectweb.wildcat.expressions.EvaluationException;
+import org.objectweb.wildcat.expressions.Expression;
+import org.objectweb.wildcat.expressions.IncrementalExpression;
+import org.objectweb.wildcat.expressions.Interpreter;
+import org.objectweb.wildcat.providers.BasicContextProvider;
+import org.objectweb.wildcat.providers.DynamicContextProvider;
+
+/**
+ * This small example program compares the evaluation speed of the
+ * {@link BasicInterpreter} and of the {@link CompilingInterpreter}. Each expression is
+ * parsed once and evaluated repeatedly, first on variables, then on attributes of a
+ * context using the interpreter. Finally, it compares the evaluation of a compiled
+ * comparison as an object and as a primitive <code>boolean</code>, which does not
+ * allocate anything, and the interpretation of an expression before and after its
+ * optimization. It also times the re-evaluation of a large definition after one of its
+ * attributes has changed, with and without an {@link IncrementalExpression}, and the
+ * re-evaluation of aggregates over a pattern after one of the attributes matching it
+ * has changed, looked up by the basic interpreter and maintained by the context. Usage:
+ * <code>java example.expressions.EvaluationPerformanceTest [iterations]</code>.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class EvaluationPerformanceTest {
+    private static final String[] EXPRESSIONS = { "$a * 2 + $b div 3 - 1",
+            "($a + $b) * ($a - $b) div ($a * $a + 1)",
+            "$a < $b and $b < 100 or not($a == $b)",
+            "$a + $b + $a * $b + $a div $b - $b + 1 + 2 + 3 + 4 + 5" };
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        for (String expression : EXPRESSIONS) {
+            long basic = time(new BasicInterpreter(), expression, iterations);
+            long compiled = time(new CompilingInterpreter(), expression, iterations);
+            report(expression, iterations, basic, compiled);
+        }
+        String attributes = "/bench#a * 2 + /bench#b div 3 - 1";
+        long basic = time(new Context(null, new BasicInterpreter()), attributes,
+                iterations / 10);
+        long compiled = time(new Context(null, new CompilingInterpreter()), attributes,
+                iterations / 10);
+        report(attributes, iterations / 10, basic, compiled);
+        timeTyped("$a + $b > 2", iterations);
+        timeOptimized("$a * (1024 * 1024) + 2 * 3 > $b", iterations);
+        for (int terms : new int[] { 1, 10, 100 }) {
+            timeIncremental(new BasicInterpreter(), terms, iterations / (10 * terms));
+            timeIncremental(new CompilingInterpreter(), terms, iterations / (10 * terms));
+        }
+        for (int resources : new int[] { 10, 100, 1000, 10000 }) {
+            timeAggregates(resources, Math.max(100, iterations / (10 * resources)));
+        }
+        System.exit(0);
+    }
+
+    private static long time(Interpreter inter, String expression, int iterations)
+            throws EvaluationException {
+        inter.getEnvironment().defineVariable("a", 42);
+        inter.getEnvironment().defineVariable("b", 3.5);
+        return time(inter, inter.parse(expression), iterations);
+    }
+
+    private static long time(Context ctx, String expression, int iterations)
+            throws Exception {
+        DynamicContextProvider dcp = ctx.createDynamicContextProvider();
+        ctx.mount("/bench", dcp);
+        dcp.createAttribute("#a", 42);
+        dcp.createAttribute("#b", 3.5);
+        // The interpreter of the context is only reachable through the synthetic
+        // attributes: time the re-evaluation of a definition (whose value does not
+        // change, so no event is generated).
+        dcp.createAttribute("#result", null);
+        dcp.setDefinition("#result", expression);
+        Path result = Context.createPath("#result");
+        for (int i = 0; i < iterations / 10; i++) {
+            dcp.update(result, null);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            dcp.update(result, null);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long time(Interpreter inter, Expression expr, int iterations)
+            throws EvaluationException {
+        // Warm up, then measure.
+        for (int i = 0; i < iterations / 10; i++) {
+            inter.evaluate(expr);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            inter.evaluate(expr);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void timeTyped(String expression, int iterations)
+            throws EvaluationException {
+        CompilingInterpreter inter = new CompilingInterpreter();
+        inter.getEnvironment().defineVariable("a", 42);
+        inter.getEnvironment().defineVariable("b", 3.5);
+        Expression expr = inter.parse(expression);
+        long boxed = time(inter, expr, iterations);
+        for (int i = 0; i < iterations / 10; i++) {
+            inter.evaluateBoolean(expr);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            inter.evaluateBoolean(expr);
+        }
+        long typed = System.nanoTime() - start;
+        System.out.println(expression + ": " + (boxed / iterations) + "ns compiled, "
+                + (typed / iterations) + "ns as a primitive boolean");
+    }
+
+    private static void timeOptimized(String expression, int iterations)
+            throws EvaluationException {
+        BasicInterpreter inter = new BasicInterpreter();
+        inter.getEnvironment().defineVariable("a", 42);
+        inter.getEnvironment().defineVariable("b", 3.5);
+        Expression expr = inter.parse(expression);
+        long raw = time(inter, expr, iterations);
+        long optimized = time(inter, inter.optimize(expr), iterations);
+        System.out.println(expression + ": " + (raw / iterations) + "ns interpreted, "
+                + (optimized / iterations) + "ns optimized");
+    }
+
+    /**
+     * Times the evaluation of <code>(/bench#x0 + 1) * 2 + ... > /bench#limit</code>
+     * after a change of one of the <code>x</code> attributes.
+     */
+    private static void timeIncremental(Interpreter inter, int terms, int iterations)
+            throws Exception {
+        Context ctx = new Context(null, inter);
+        DynamicContextProvider dcp = ctx.createDynamicContextProvider();
+        ctx.mount("/bench", dcp);
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < terms; i++) {
+            dcp.createAttribute("#x" + i, i);
+            expression.append((i > 0) ? " + " : "").append("(/bench#x" + i + " + 1) * 2");
+        }
+        dcp.createAttribute("#limit", 1000);
+        expression.append(" > /bench#limit");
+        Expression optimized = inter.optimize(inter.parse(expression.toString()));
+        Expression incremental = new IncrementalExpression(optimized);
+        long full = timeChanges(inter, optimized, dcp, terms, iterations);
+        long partial = timeChanges(inter, incremental, dcp, terms, iterations);
+        System.out.println(terms + " terms (" + inter.getClass().getSimpleName() + "): "
+                + (full / iterations) + "ns evaluated, " + (partial / iterations)
+                + "ns incrementally");
+    }
+
+    private static long timeChanges(Interpreter inter, Expression expr,
+            DynamicContextProvider dcp, int terms, int iterations) throws Exception {
+        Path[] inputs = new Path[terms];
+        List<Collection<Path>> changes = new ArrayList<Collection<Path>>();
+        for (int i = 0; i < terms; i++) {
+            inputs[i] = Context.createPath("#x" + i);
+            changes.add(Collections.singleton(dcp.getPath().append(inputs[i])));
+        }
+        long total = 0;
+        for (int i = -iterations / 10; i < iterations; i++) {
+            int changed = (i + iterations) % terms;
+            dcp.setValue(inputs[changed], i);
+            long start = System.nanoTime();
+            if (expr instanceof IncrementalExpression) {
+                // As the dependency manager does, tell which attribute has changed.
+                ((IncrementalExpression) expr).evaluate(inter.getEnvironment(), changes
+                        .get(changed));
+            } else {
+                expr.evaluate(inter.getEnvironment());
+            }
+            if (i >= 0) {
+                total += System.nanoTime() - start;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Times the evaluation of aggregates over <code>/cluster/*&#47;cpu#load</code> after
+     * a change of one of the <code>load</code> attributes, including the change itself.
+     */
+    private static void timeAggregates(int resources, int iterations) throws Exception {
+        String expression = "avg(/cluster/*/cpu#load) > 0.5 "
+                + "and max(/cluster/*/cpu#load) < 2";
+        long lookedUp = timeAggregates(new BasicInterpreter(), expression, resources,
+                iterations);
+        long maintained = timeAggregates(new CompilingInterpreter(), expression,
+                resources, iterations);
+        System.out.println(resources + " resources: " + (lookedUp / iterations)
+                + "ns looked up, " + (maintained / iterations) + "ns maintained");
+    }
+
+    private static long timeAggregates(Interpreter inter, String expression,
+            int resources, int iterations) throws Exception {
+        Context ctx = new Context(null, inter);
+        BasicContextProvider cluster = new BasicContextProvider();
+        ctx.mount("/cluster", cluster);
+        Path[] loads = new Path[resources];
+        for (int i = 0; i < resources; i++) {
+            cluster.createResource(Context.createPath("n" + i + "/cpu"));
+            loads[i] = Context.createPath("n" + i + "/cpu#load");
+            cluster.createAttribute(loads[i], 0.0);
+        }
+        Expression expr = inter.parse(expression);
+        long start = 0;
+        for (int i = -iterations / 10; i < iterations; i++) {
+            if (i == 0) {
+                start = System.nanoTime();
+            }
+            cluster.setValue(loads[(i + iterations) % resources], (i % 7) / 3.0);
+            expr.evaluate(inter.getEnvironment());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String expression, int iterations, long basic,
+            long compiled) {
+        System.out.println(expression + ": " + (basic / iterations) + "ns interpreted, "
+                + (compiled / iterations) + "ns compiled (x"
+                + Math.round(10.0 * basic / compiled) / 10.0 + ")");
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package example.expressions;
+
+import java.io.StringReader;
+
+import org.objectweb.wildcat.expressions.BasicInterpreter;
+import org.objectweb.wildcat.expressions.ExpressionsLexer;
+import org.objectweb.wildcat.expressions.ExpressionsParser;
+import org.objectweb.wildcat.expressions.RecursiveDescentParser;
+
+/**
+ * This small example program compares the parsing throughput of the parser generated by
+ * ANTLR from <code>expressions.g</code>, of the hand-written
+ * {@link RecursiveDescentParser}, and of {@link BasicInterpreter#parse(String)}, which
+ * only parses each text once as long as it stays in its cache. Usage:
+ * <code>java example.expressions.ParsePerformanceTest [iterations]</code>.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class ParsePerformanceTest {
+    private static final String[] EXPRESSIONS = { "$a * 2 + $b div 3 - 1",
+            "/hosts/*/cpu#load > 0.8 and /hosts/h1#memory < 1024",
+            "not(equals(3*5+1, 3*(5+1))) or $x == 'some string'",
+            "/**#load >= avg(/hosts/*#load) + 2 * stddev(/hosts/*#load)" };
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        for (String expression : EXPRESSIONS) {
+            long antlr = timeAntlr(expression, iterations);
+            long handWritten = timeHandWritten(expression, iterations);
+            long cached = timeCached(expression, iterations);
+            System.out.println(expression + ": " + (antlr / iterations) + "ns ANTLR, "
+                    + (handWritten / iterations) + "ns hand-written (x"
+                    + Math.round(10.0 * antlr / handWritten) / 10.0 + "), "
+                    + (cached / iterations) + "ns cached");
+        }
+    }
+
+    private static long timeAntlr(String expression, int iterations) throws Exception {
+        // Warm up, then measure.
+        for (int i = 0; i < iterations / 10; i++) {
+            new ExpressionsParser(new ExpressionsLexer(new StringReader(expression)))
+                    .expression();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            new ExpressionsParser(new ExpressionsLexer(new StringReader(expression)))
+                    .expression();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long timeHandWritten(String expression, int iterations) {
+        for (int i = 0; i < iterations / 10; i++) {
+            RecursiveDescentParser.parse(expression);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            RecursiveDescentParser.parse(expression);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long timeCached(String expression, int iterations) {
+        BasicInterpreter inter = new BasicInterpreter();
+        for (int i = 0; i < iterations / 10; i++) {
+            inter.parse(expression);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            inter.parse(expression);
+        }
+        return System.nanoTime() - start;
+    }
+}
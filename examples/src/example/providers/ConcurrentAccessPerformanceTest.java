@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package example.providers;
+
+import static org.objectweb.wildcat.Context.createPath;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.events.EventListener;
+import org.objectweb.wildcat.events.PathEvent;
+import org.objectweb.wildcat.providers.BasicContextProvider;
+
+/**
+ * This small example program measures how well reads of the default
+ * {@link BasicContextProvider} scale with the number of threads while its attributes are
+ * continuously updated, as they are by sensors. It creates a tree of resources with
+ * numeric attributes, then for each number of reader threads from 1 to the number given
+ * as parameter, runs the readers concurrently with a single writer for a few seconds, and
+ * reports the number of reads and writes per second. Readers look up single attributes,
+ * and from time to time all the attributes matching a pattern. For example
+ * <code>java example.providers.ConcurrentAccessPerformanceTest 8</code>.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class ConcurrentAccessPerformanceTest {
+    private static final int RESOURCES = 100;
+
+    private static final int ATTRIBUTES = 8;
+
+    private static final long DURATION = 3000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxReaders = 0;
+        try {
+            maxReaders = Integer.parseInt(args[0]);
+        } catch (Exception e) {
+            System.out.println("Usage: java " + ConcurrentAccessPerformanceTest.class.getName()
+                    + " <max-readers>");
+            System.exit(1);
+        }
+        BasicContextProvider provider = new BasicContextProvider();
+        provider.setEventListener(new EventListener() {
+            public void eventOccured(PathEvent evt) {
+            }
+
+            public void eventOccured(List<PathEvent> evts) {
+            }
+        });
+        provider.mounted(Context.getRootPath());
+        Path[] attributes = new Path[RESOURCES * ATTRIBUTES];
+        for (int i = 0; i < RESOURCES; i++) {
+            Path resource = createPath("host" + i);
+            provider.createResource(resource);
+            for (int j = 0; j < ATTRIBUTES; j++) {
+                Path attr = resource.appendAttribute("value" + j);
+                provider.createAttribute(attr, 0L);
+                attributes[i * ATTRIBUTES + j] = attr;
+            }
+        }
+        // Warm up, then measure.
+        run(provider, attributes, 1);
+        System.out.println("readers\treads/s\twrites/s");
+        for (int readers = 1; readers <= maxReaders; readers *= 2) {
+            long[] counts = run(provider, attributes, readers);
+            System.out.println(readers + "\t" + (counts[0] * 1000 / DURATION) + "\t"
+                    + (counts[1] * 1000 / DURATION));
+        }
+    }
+
+    /**
+     * Runs the given number of readers and a writer for {@link #DURATION} milliseconds.
+     * 
+     * @return the total number of reads and of writes.
+     */
+    private static long[] run(final BasicContextProvider provider, final Path[] attributes,
+            int readers) throws InterruptedException {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(readers + 1);
+        final long[] reads = new long[readers];
+        final long[] writes = new long[1];
+        final Path pattern = createPath("*#value0");
+        for (int r = 0; r < readers; r++) {
+            final int index = r;
+            new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(index);
+                    long count = 0;
+                    while (!stop.get()) {
+                        if (count % 1000 == 0) {
+                            provider.lookup(pattern);
+                        } else {
+                            provider.lookupAttribute(attributes[random
+                                    .nextInt(attributes.length)]);
+                        }
+                        count++;
+                    }
+                    reads[index] = count;
+                    done.countDown();
+                }
+            }.start();
+        }
+        new Thread() {
+            @Override
+            public void run() {
+                Random random = new Random();
+                long count = 0;
+                while (!stop.get()) {
+                    provider.setLongValue(attributes[random.nextInt(attributes.length)],
+                            count);
+                    count++;
+                }
+                writes[0] = count;
+                done.countDown();
+            }
+        }.start();
+        Thread.sleep(DURATION);
+        stop.set(true);
+        done.await();
+        long total = 0;
+        for (long count : reads) {
+            total += count;
+        }
+        return new long[] { total, writes[0] };
+    }
+}
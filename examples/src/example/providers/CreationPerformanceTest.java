@@ -38,7 +38,7 @@ import org.objectweb.wildcat.providers.BasicContextProvider;
  * This small example program tests the performance of resource and attributes creation
  * using the default {@link BasicContextProvider}. It creates a complete tree of
  * resources with attributes and reports: the number of resources and attributes created,
- * and the total time taken. The depth, width and number of attributes per resource to
+ * the total time taken, and the heap space they use, per resource. The depth, width and number of attributes per resource to
  * create are supplied as numeric parameters to the program, e.g.
  * <code>java example.providers.CreationPerformanceTest 5 6 7</code> to create a full
  * tree of depth 5, where each resource has 6 sub-resources and 7 attributes.
@@ -117,6 +117,7 @@ public class CreationPerformanceTest {
         System.out.print(" (depth = " + depth + "; width = " + width + "; attrs = "
                 + attrs + ").");
         inputReader.readLine();
+        long before = usedMemory();
         System.out.print("Populating context...");
         long start = System.currentTimeMillis();
         populate(provider, null, depth);
@@ -125,6 +126,9 @@ public class CreationPerformanceTest {
         System.out.println("Created " + counter.getResourcesCount() + " resources and "
                 + counter.getAttributesCount() + " attributes in " + (elapsed / 1000.0)
                 + "s.");
+        long used = usedMemory() - before;
+        System.out.println("Heap used: " + (used / 1024) + " KB, i.e. "
+                + (used / Math.max(1, counter.getResourcesCount())) + " bytes per resource.");
         System.out.print("Press enter to exit.");
         inputReader.readLine();
     }
@@ -143,6 +147,19 @@ public class CreationPerformanceTest {
         }
     }
 
+    /**
+     * Returns the heap space used by reachable objects, as well as it can be estimated.
+     */
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
     private static void printUsageAndExit() {
         System.out.println("Usage: java " + CreationPerformanceTest.class.getName()
                 + " <depth> <width> <attrs>");
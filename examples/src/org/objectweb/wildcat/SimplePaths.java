@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+/**
+ * Gives the examples direct access to {@link SimplePath}, which is not public, so that
+ * benchmarks can compare it with the paths returned by {@link Context#createPath(String)}
+ * without any reflective call.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class SimplePaths {
+    private SimplePaths() {
+    }
+
+    /**
+     * Parses a path using the default, non-interned implementation.
+     * 
+     * @param path
+     *            the string representation of the path.
+     * @return a new <code>SimplePath</code> for <code>path</code>.
+     * @throws MalformedPathException
+     *             if <code>path</code> is not a valid path.
+     */
+    public static Path create(String path) throws MalformedPathException {
+        return new SimplePath(path);
+    }
+}
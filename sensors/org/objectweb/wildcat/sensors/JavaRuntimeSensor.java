@@ -22,7 +22,7 @@ package org.objectweb.wildcat.sensors;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.objectweb.wildcat.providers.Sampler;
+import org.objectweb.wildcat.providers.PrimitiveSampler;
 
 /**
  * Samples informations available through the JVM {@link java.lang.Runtime}:
@@ -58,7 +58,7 @@ import org.objectweb.wildcat.providers.Sampler;
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
-public class JavaRuntimeSensor implements Sampler {
+public class JavaRuntimeSensor implements PrimitiveSampler {
     public Map<String, Object> sample() {
         Map<String, Object> samples = new HashMap<String, Object>();
         Runtime rt = Runtime.getRuntime();
@@ -68,6 +68,15 @@ public class JavaRuntimeSensor implements Sampler {
         samples.put("total-memory", rt.totalMemory());
         return samples;
     }
+
+    public void sample(Samples samples) {
+        Runtime rt = Runtime.getRuntime();
+        samples.put("processors-count", Integer.valueOf(rt.availableProcessors()));
+        samples.put("free-memory", rt.freeMemory());
+        samples.put("maximum-memory", rt.maxMemory());
+        samples.put("total-memory", rt.totalMemory());
+    }
+
     public static void main(String[] args) {
         System.out.println(new JavaRuntimeSensor().sample());
     }
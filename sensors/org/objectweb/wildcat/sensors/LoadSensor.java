@@ -23,10 +23,12 @@ import java.text.MessageFormat;
 import java.text.ParsePosition;
 import java.util.Map;
 
+import org.objectweb.wildcat.providers.PrimitiveSampler;
+
 /**
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
-public class LoadSensor extends TextFileSensor {
+public class LoadSensor extends TextFileSensor implements PrimitiveSampler {
     public LoadSensor() {
         super("/proc/loadavg");
     }
@@ -38,6 +40,14 @@ public class LoadSensor extends TextFileSensor {
         samples.put("avg15", new Double((String) loads[2]));
     }
 
+    public void sample(Samples samples) {
+        String[] lines = getLines();
+        Object[] loads = FORMAT.parse(lines[0], new ParsePosition(0));
+        samples.put("avg1", Double.parseDouble((String) loads[0]));
+        samples.put("avg5", Double.parseDouble((String) loads[1]));
+        samples.put("avg15", Double.parseDouble((String) loads[2]));
+    }
+
     private static MessageFormat FORMAT = new MessageFormat("{0} {1} {2} {3}");
     
     public static void main(String[] args) {
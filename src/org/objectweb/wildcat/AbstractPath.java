@@ -153,6 +153,15 @@ public abstract class AbstractPath implements Path {
         return endsWith(newFromString(suffix));
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.Path#matches(org.objectweb.wildcat.Path)
+     */
+    public boolean matches(Path pattern) {
+        return PathPattern.compile(pattern).matches(this);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.util.Collection;
+
+/**
+ * A summary of a multiset of values: their number, their sum, and their smallest and
+ * largest values. It implements the aggregate functions of the expressions
+ * (<code>sum</code>, <code>avg</code>, <code>min</code>, <code>max</code> and
+ * <code>count</code>), either over a list of values (see
+ * {@link Context#createAggregate(Collection)}) or over the attributes matching a
+ * pattern, which a {@link Context} keeps up to date (see {@link Context#aggregate(Path)}).
+ * <p>
+ * The sum is computed exactly, and only rounded when it is read: it does not depend on
+ * the order in which the values were added, and does not drift when they are replaced
+ * over and over. The values which are not numbers are only counted. The implementations
+ * are thread-safe.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public interface Aggregate {
+    /**
+     * Returns the number of values.
+     */
+    int getCount();
+
+    /**
+     * Tests whether all the values are numbers.
+     */
+    boolean containsOnlyNumbers();
+
+    /**
+     * Returns the sum of the numbers, rounded to the nearest <code>double</code>: 0 if
+     * there are none, and NaN if one of them is NaN or if they include both infinities.
+     */
+    double getSum();
+
+    /**
+     * Returns the average of the numbers, or <code>null</code> if there are none.
+     */
+    Double getAverage();
+
+    /**
+     * Returns the smallest number, or <code>null</code> if there are none. It is NaN if
+     * one of the numbers is.
+     */
+    Double getMinimum();
+
+    /**
+     * Returns the largest number, or <code>null</code> if there are none. It is NaN if
+     * one of the numbers is.
+     */
+    Double getMaximum();
+}
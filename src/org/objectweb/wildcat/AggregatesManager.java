@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.objectweb.wildcat.events.EventListener;
+import org.objectweb.wildcat.events.PathAddedEvent;
+import org.objectweb.wildcat.events.PathChangedEvent;
+import org.objectweb.wildcat.events.PathEvent;
+import org.objectweb.wildcat.events.PathRemovedEvent;
+
+/**
+ * Keeps the aggregates of the attributes matching some patterns up to date (see
+ * {@link Context#aggregate(Path)}). It receives the events of the context before they
+ * are dispatched to the dependency manager and to the subscriptions, so that the
+ * synthetic attributes and the listeners notified of a change already find it in the
+ * aggregates, and forwards them afterwards.
+ * <p>
+ * Each event is applied to the aggregates whose pattern matches its path, found through
+ * a {@link PathPatternIndex}: the change or removal of an attribute costs <i>O(log
+ * n)</i>, and the removal of a resource (or the unmounting of a provider) <i>O(log n)</i>
+ * per matching attribute below it. The aggregates are only referenced weakly: once
+ * their users have forgotten them, they are collected and not maintained anymore.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+final class AggregatesManager implements EventListener {
+    private final Context context;
+
+    /**
+     * The listener to which the events are forwarded.
+     */
+    private final EventListener target;
+
+    /**
+     * The maintained aggregates, by pattern, once initialized.
+     */
+    private final ConcurrentMap<Path, Entry> entries = new ConcurrentHashMap<Path, Entry>();
+
+    /**
+     * The maintained aggregates, including those being initialized.
+     */
+    private final PathPatternIndex<Entry> index = new PathPatternIndex<Entry>();
+
+    private final AtomicInteger indexed = new AtomicInteger();
+
+    private final ReferenceQueue<PatternAggregate> collected = new ReferenceQueue<PatternAggregate>();
+
+    AggregatesManager(Context context, EventListener target) {
+        this.context = context;
+        this.target = target;
+    }
+
+    /**
+     * Returns the aggregate of the attributes matching a pattern, creating it unless it
+     * is already maintained.
+     */
+    Aggregate aggregate(Path pattern) {
+        purge();
+        Entry entry = entries.get(pattern);
+        Aggregate result = (entry != null) ? entry.get() : null;
+        if (result != null) {
+            return result;
+        }
+        synchronized (entries) {
+            entry = entries.get(pattern);
+            result = (entry != null) ? entry.get() : null;
+            if (result != null) {
+                return result;
+            }
+            PatternAggregate aggregate = new PatternAggregate(pattern);
+            entry = new Entry(aggregate, collected);
+            // Registered first, so that the events occurring during the initial lookup
+            // are not missed.
+            indexed.incrementAndGet();
+            index.add(pattern, entry);
+            try {
+                aggregate.initialize(context);
+            } catch (RuntimeException e) {
+                unregister(entry);
+                throw e;
+            }
+            entries.put(pattern, entry);
+            return aggregate;
+        }
+    }
+
+    /**
+     * Stops maintaining the aggregates which have been collected. Does not take any lock,
+     * as it is called while the resources notifying the events are locked.
+     */
+    private void purge() {
+        Entry entry;
+        while ((entry = (Entry) collected.poll()) != null) {
+            unregister(entry);
+        }
+    }
+
+    private void unregister(Entry entry) {
+        if (index.remove(entry.pattern, entry)) {
+            indexed.decrementAndGet();
+        }
+        entries.remove(entry.pattern, entry);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.events.EventListener#eventOccured(org.objectweb.wildcat.events.PathEvent)
+     */
+    public void eventOccured(PathEvent evt) {
+        if (indexed.get() > 0) {
+            purge();
+            apply(evt);
+        }
+        target.eventOccured(evt);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.events.EventListener#eventOccured(java.util.List)
+     */
+    public void eventOccured(List<PathEvent> evts) {
+        if (indexed.get() > 0) {
+            purge();
+            for (PathEvent evt : evts) {
+                apply(evt);
+            }
+        }
+        target.eventOccured(evts);
+    }
+
+    private void apply(PathEvent evt) {
+        Path path = evt.getPath();
+        List<Entry> matches = new ArrayList<Entry>();
+        if (path.isAttribute()) {
+            index.collectMatches(path, matches);
+        } else if (evt instanceof PathRemovedEvent) {
+            index.collectMatchesBelow(path, matches);
+        } else {
+            // New resources are empty: their attributes will have their own events.
+            return;
+        }
+        for (Entry entry : matches) {
+            PatternAggregate aggregate = entry.get();
+            if (aggregate != null) {
+                aggregate.apply(evt);
+            }
+        }
+    }
+
+    private static final class Entry extends WeakReference<PatternAggregate> {
+        final Path pattern;
+
+        Entry(PatternAggregate aggregate, ReferenceQueue<PatternAggregate> queue) {
+            super(aggregate, queue);
+            this.pattern = aggregate.pattern;
+        }
+    }
+
+    /**
+     * The aggregate of the attributes matching a pattern, which only the events can
+     * modify.
+     */
+    private static final class PatternAggregate extends MutableAggregate {
+        final Path pattern;
+
+        /**
+         * The values of the matching attributes, by path. Sorted, so that the
+         * attributes below a removed resource are found without scanning the others.
+         */
+        private final TreeMap<String, Object> values = new TreeMap<String, Object>();
+
+        /**
+         * The events received during the initialization, applied once it is over; or
+         * <code>null</code> once it is.
+         */
+        private List<PathEvent> pending = new ArrayList<PathEvent>();
+
+        PatternAggregate(Path pattern) {
+            this.pattern = pattern;
+        }
+
+        /**
+         * Reads the current values of the matching attributes. No lock is held while
+         * they are read: the events received meanwhile are applied afterwards, in
+         * order, as they are more recent than or as recent as the values read.
+         */
+        void initialize(Context context) {
+            List<Path> paths = new ArrayList<Path>(context.lookup(pattern));
+            List<Object> found = new ArrayList<Object>(paths.size());
+            for (Path path : paths) {
+                found.add(context.lookupAttribute(path));
+            }
+            synchronized (this) {
+                for (int i = 0; i < paths.size(); i++) {
+                    set(paths.get(i).toString(), found.get(i));
+                }
+                for (PathEvent evt : pending) {
+                    process(evt);
+                }
+                pending = null;
+            }
+        }
+
+        synchronized void apply(PathEvent evt) {
+            if (pending != null) {
+                pending.add(evt);
+            } else {
+                process(evt);
+            }
+        }
+
+        private void process(PathEvent evt) {
+            Path path = evt.getPath();
+            if (path.isResource()) {
+                removeBelow(path);
+            } else if (evt instanceof PathChangedEvent) {
+                set(path.toString(), ((PathChangedEvent) evt).getNewValue());
+            } else if (evt instanceof PathRemovedEvent) {
+                set(path.toString(), null);
+            } else {
+                // A new attribute has no value until its PathChangedEvent.
+                assert evt instanceof PathAddedEvent;
+            }
+        }
+
+        private void set(String key, Object value) {
+            Object old = (value != null) ? values.put(key, value) : values.remove(key);
+            if (old != null) {
+                remove(old);
+            }
+            if (value != null) {
+                add(value);
+            }
+        }
+
+        private void removeBelow(Path resource) {
+            String prefix = resource.toString();
+            if (prefix.endsWith("/")) {
+                removeAll(prefix);
+            } else {
+                removeAll(prefix + "/");
+                removeAll(prefix + "#");
+            }
+        }
+
+        private void removeAll(String prefix) {
+            SortedMap<String, Object> below = values.subMap(prefix, prefix
+                    + Character.MAX_VALUE);
+            for (Object value : below.values()) {
+                remove(value);
+            }
+            below.clear();
+        }
+    }
+}
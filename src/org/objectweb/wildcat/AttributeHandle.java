@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+/**
+ * A direct reference to the storage of an attribute, obtained by resolving its path once
+ * with {@link Context#bindAttribute(Path)}. Reading the value through the handle does
+ * not walk the context again.
+ * <p>
+ * A handle stays valid as long as the resources along the path of its attribute are not
+ * removed (which includes the unmounting of their provider). Once it is invalid, it
+ * must not be used anymore, and the path must be bound again: the attribute may now be
+ * stored elsewhere.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public interface AttributeHandle {
+    /**
+     * Returns the current value of the attribute.
+     * 
+     * @return the value of the attribute, or <code>null</code> if it does not exist
+     *         (anymore, or yet) on its resource.
+     */
+    Object getValue();
+
+    /**
+     * Tests whether this handle still designates the storage of its attribute. An
+     * invalid handle never becomes valid again.
+     */
+    boolean isValid();
+}
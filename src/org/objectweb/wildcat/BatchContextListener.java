@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.util.List;
+
+import org.objectweb.wildcat.events.PathEvent;
+
+/**
+ * A {@link ContextListener} which can be notified of several events in a single call.
+ * When the context has several events to deliver to such a listener at once (for example
+ * when a sensor updates many attributes of a resource together), it calls
+ * {@link #eventsOccured(Object, List)} instead of the individual callbacks of
+ * {@link ContextListener}.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public interface BatchContextListener extends ContextListener {
+    /**
+     * Indicates that a series of events matching a registration have occured.
+     * Successive changes of the same attribute are merged into a single
+     * {@link org.objectweb.wildcat.events.PathChangedEvent PathChangedEvent}, except
+     * for {@link EventKind#CONDITION_OCCURED} registrations.
+     * 
+     * @param cookie
+     *            the identifier of the registration the events match.
+     * @param events
+     *            the events which occured, in order. Only contains events of the kinds
+     *            the registration is interested in.
+     */
+    void eventsOccured(Object cookie, List<PathEvent> events);
+}
@@ -21,9 +21,15 @@ package org.objectweb.wildcat;
 
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import org.objectweb.wildcat.dependencies.DependencyManager;
+import org.objectweb.wildcat.dependencies.IncrementalDependencyGraph;
+import org.objectweb.wildcat.events.EventBuffer;
 import org.objectweb.wildcat.events.EventMultiplexer;
+import org.objectweb.wildcat.events.OverflowPolicy;
 import org.objectweb.wildcat.expressions.BasicInterpreter;
 import org.objectweb.wildcat.expressions.Interpreter;
 import org.objectweb.wildcat.providers.DynamicContextProvider;
@@ -40,19 +46,35 @@ import org.objectweb.wildcat.providers.OverlayContextProvider;
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
-public class Context {
+public class Context implements ContextView {
     /**
      * Utility method to obtain the root {@link Path}.
      */
     public static Path getRootPath() {
-        return SimplePath.getRoot();
+        return InternedPath.getRoot();
     }
 
     /**
-     * Utility method to construct a {@link Path} from a string.
+     * Utility method to construct a {@link Path} from a string. The paths returned are
+     * canonical: creating the same path twice returns the same object.
      */
     public static Path createPath(String path) {
-        return new SimplePath(path);
+        return InternedPath.parse(path);
+    }
+
+    /**
+     * Utility method to summarize a collection of values, as the aggregate functions of
+     * the expressions do. The <code>null</code> values are ignored. The aggregate
+     * returned does not follow the later changes of the collection.
+     */
+    public static Aggregate createAggregate(Collection<?> values) {
+        MutableAggregate result = new MutableAggregate();
+        for (Object value : values) {
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
     }
 
     /**
@@ -80,6 +102,12 @@ public class Context {
      */
     private EventMultiplexer eventMuxer;
 
+    /**
+     * Maintains the aggregates returned by {@link #aggregate(Path)}. It receives the
+     * events before {@link #eventMuxer}, and forwards them to it.
+     */
+    private AggregatesManager aggregates;
+
     /**
      * Global dependency tracker: propagates the appropriate update requests for paths
      * which depend on other paths.
@@ -94,20 +122,69 @@ public class Context {
     private SubscriptionManager subscriptionsManager;
 
     /**
-     * Creates a new WildCAT context, initialy empty.
+     * The handles on the attributes looked up so far, so that their paths are only
+     * resolved once (see {@link #bindAttribute(Path)}). The invalid handles are removed
+     * when their attribute is looked up again, or when the cache grows beyond
+     * {@link #handlesSweepSize}.
+     */
+    private final ConcurrentHashMap<Path, AttributeHandle> handles = new ConcurrentHashMap<Path, AttributeHandle>();
+
+    /**
+     * The size of {@link #handles} above which its invalid handles are removed.
+     */
+    private volatile int handlesSweepSize = 1024;
+
+    /**
+     * Creates a new WildCAT context, initialy empty. The registered listeners are notified
+     * sequentially, by a single thread.
      */
     public Context() {
-        interpreter = new BasicInterpreter();
+        this(null);
+    }
+
+    /**
+     * Creates a new WildCAT context, initialy empty, which notifies the registered
+     * listeners using the given executor, typically a thread pool (for example
+     * <code>Executors.newFixedThreadPool(4)</code>). Each listener is notified of its
+     * events one at a time and in the order they occurred, but different listeners can be
+     * notified concurrently, so that a slow listener does not delay the others. The
+     * executor is not shut down by the context.
+     * 
+     * @param listenersExecutor
+     *            the executor used to notify the listeners, or <code>null</code> to
+     *            notify them sequentially.
+     */
+    public Context(Executor listenersExecutor) {
+        this(listenersExecutor, new BasicInterpreter());
+    }
+
+    /**
+     * Creates a new WildCAT context, initialy empty, which uses the given interpreter to
+     * evaluate the synthetic attributes and the watched expressions, for example a
+     * {@link org.objectweb.wildcat.expressions.CompilingInterpreter}. The interpreter
+     * should not be shared with another context.
+     * 
+     * @param listenersExecutor
+     *            the executor used to notify the listeners, or <code>null</code> to
+     *            notify them sequentially.
+     * @param interpreter
+     *            the interpreter to use.
+     * @see #Context(Executor)
+     */
+    public Context(Executor listenersExecutor, Interpreter interpreter) {
+        this.interpreter = interpreter;
         interpreter.getEnvironment().defineVariable("_context", this);
         eventMuxer = new EventMultiplexer();
 
-        subscriptionsManager = new SubscriptionManager();
+        subscriptionsManager = new SubscriptionManager(listenersExecutor);
         startDaemon("Subscriptions Manager", subscriptionsManager);
         eventMuxer.addListener(subscriptionsManager);
 
         root = new OverlayContextProvider(new EmptyContextProvider());
-        root.setEventListener(eventMuxer);
-        dependencyManager = new DependencyManager(root);
+        aggregates = new AggregatesManager(this, eventMuxer);
+        root.setEventListener(aggregates);
+        dependencyManager = new DependencyManager(root, eventMuxer,
+                new IncrementalDependencyGraph<Path>());
         startDaemon("Dependency Manager", dependencyManager);
         eventMuxer.addListener(dependencyManager);
         root.setDependencyGraph(dependencyManager);
@@ -130,6 +207,30 @@ public class Context {
         th.start();
     }
 
+    /**
+     * Returns the buffer in which the context events wait to be dispatched to the
+     * registered listeners. Its capacity and {@link OverflowPolicy} can be changed, for
+     * example so that a burst of events does not block the sensors producing them, and
+     * it counts the events it has dropped or coalesced. The buffer must not be used to
+     * consume events.
+     */
+    public EventBuffer getSubscriptionsBuffer() {
+        return subscriptionsManager.getBuffer();
+    }
+
+    /**
+     * Returns the buffer in which the context events wait to trigger the update of the
+     * synthetic attributes depending on them. Its capacity and {@link OverflowPolicy} can
+     * be changed like those of {@link #getSubscriptionsBuffer()}. Note that with a
+     * dropping policy, a synthetic attribute may miss the change of one of its
+     * dependencies and keep a stale value until the next one;
+     * {@link OverflowPolicy#COALESCE} does not have this problem. The buffer must not be
+     * used to consume events.
+     */
+    public EventBuffer getDependenciesBuffer() {
+        return dependencyManager.getBuffer();
+    }
+
     /**
      * Creates a new {@link DynamicContextProvider} configured to use the default
      * interpreter to evaluate its synthetic attributes.
@@ -169,7 +270,7 @@ public class Context {
      *             if the query supplied as a string is not a valid {@link Path}.
      */
     public Collection<Path> lookup(String query) {
-        return lookup(new SimplePath(query));
+        return lookup(createPath(query));
     }
 
     /**
@@ -184,11 +285,108 @@ public class Context {
     public Object lookupAttribute(Path attribute) {
         if (attribute.isRelative()) {
             throw new IllegalArgumentException("Context expects absolute queries.");
-        } else if (attribute.size() > 1) {
+        } else if (attribute.size() <= 1) {
+            return null;
+        } else if (attribute.isPattern() || attribute.isResource()) {
             return root.lookupAttribute(attribute.subPath(1));
+        }
+        AttributeHandle handle = bindAttribute(attribute);
+        if (handle != null) {
+            return handle.getValue();
         } else {
+            return root.lookupAttribute(attribute.subPath(1));
+        }
+    }
+
+    /**
+     * Resolves the location of an attribute, to read its value directly. The handles are
+     * cached, so binding the same path again returns the same handle as long as it is
+     * valid: it is only resolved again when a resource along the path is removed or its
+     * provider unmounted.
+     * 
+     * @param attribute
+     *            the definite, absolute path of the attribute.
+     * @return a handle on the attribute, or <code>null</code> if its resource does not
+     *         exist or its provider does not support handles; the attribute must then be
+     *         read with {@link #lookupAttribute(Path)}.
+     * @throws IllegalArgumentException
+     *             if the path is not the definite and absolute path of an attribute.
+     */
+    public AttributeHandle bindAttribute(Path attribute) {
+        if (attribute.isRelative() || attribute.isPattern() || attribute.isResource()) {
+            throw new IllegalArgumentException(
+                    "Definite and absolute attribute path expected.");
+        } else if (attribute.size() <= 1) {
             return null;
         }
+        AttributeHandle handle = handles.get(attribute);
+        if (handle != null && handle.isValid()) {
+            return handle;
+        }
+        handle = root.bindAttribute(attribute.subPath(1));
+        if (handle == null) {
+            handles.remove(attribute);
+        } else {
+            handles.put(attribute, handle);
+            if (handles.size() > handlesSweepSize) {
+                sweepHandles();
+            }
+        }
+        return handle;
+    }
+
+    /**
+     * Removes the invalid handles from the cache, for example those of resources which
+     * have been removed without being looked up since.
+     */
+    private void sweepHandles() {
+        for (Iterator<AttributeHandle> iter = handles.values().iterator(); iter.hasNext();) {
+            if (!iter.next().isValid()) {
+                iter.remove();
+            }
+        }
+        handlesSweepSize = Math.max(1024, 2 * handles.size());
+    }
+
+    /**
+     * Returns the aggregate of the values of the attributes matching a pattern (for
+     * example <code>/cluster/*&#47;cpu#load</code>), which is kept up to date as the
+     * attributes are created, changed and removed: each event costs <i>O(log n)</i>, and
+     * reading the sum, count, average, minimum or maximum does not look up the attributes
+     * again. As for the synthetic attributes, only the changes notified by the providers
+     * are taken into account.
+     * <p>
+     * An aggregate is maintained as long as it is referenced: asking again for the same
+     * pattern returns the same object until then. It can not be modified directly.
+     * 
+     * @param pattern
+     *            the absolute path of the attributes to aggregate, usually a pattern.
+     * @return the aggregate of the current values of the matching attributes.
+     * @throws IllegalArgumentException
+     *             if the path is relative or designates resources.
+     */
+    public Aggregate aggregate(Path pattern) {
+        if (pattern.isRelative() || pattern.isResource()) {
+            throw new IllegalArgumentException("Absolute attribute path expected.");
+        }
+        return aggregates.aggregate(pattern);
+    }
+
+    /**
+     * Takes a snapshot of the context: a read-only view of its current state, which the
+     * modifications made afterwards do not affect, so that several lookups or an
+     * expression reading several attributes see a consistent state. Taking a snapshot is
+     * cheap, as it does not copy anything, but it waits for the modifications in
+     * progress to complete; it must thus not be done by a listener notified
+     * synchronously of a modification. The snapshot should be closed once it is not
+     * needed anymore.
+     * 
+     * @return a snapshot of the current state of the context.
+     * @throws IllegalStateException
+     *             if the current thread is modifying the context.
+     */
+    public ContextSnapshot snapshot() {
+        return new ContextSnapshot(root, interpreter);
     }
 
     /**
@@ -198,7 +396,7 @@ public class Context {
      *             if the query supplied as a string is not a valid {@link Path}.
      */
     public Object lookupAttribute(String attribute) throws MalformedPathException {
-        return lookupAttribute(new SimplePath(attribute));
+        return lookupAttribute(createPath(attribute));
     }
 
     /**
@@ -318,6 +516,19 @@ public class Context {
                 .createExpressionAttribute(expression), listener);
     }
 
+    /**
+     * Returns the current event delivery metrics of a registration: number of events
+     * waiting to be delivered to the listener, and delay between the occurrence of the
+     * events and their delivery.
+     * 
+     * @param cookie
+     *            the opaque identifier returned when the registration was made.
+     * @return a snapshot of the delivery metrics of the registration.
+     */
+    public DeliveryStatistics getDeliveryStatistics(Object cookie) {
+        return subscriptionsManager.getStatistics(cookie);
+    }
+
     /**
      * Cancels a registration.
      * 
@@ -23,7 +23,6 @@ import java.util.Collection;
 
 import org.objectweb.wildcat.dependencies.DependencyGraph;
 import org.objectweb.wildcat.events.EventListener;
-import org.objectweb.wildcat.events.PathEvent;
 
 /**
  * A context provider is responsible for the management (lookup and event generation) of
@@ -77,6 +76,18 @@ public interface ContextProvider {
      */
     Object lookupAttribute(Path attribute);
 
+    /**
+     * Resolves the location of an attribute once, to read its value repeatedly without
+     * looking it up again.
+     * 
+     * @param attribute
+     *            the definite location of the attribute, relative to this provider.
+     * @return a handle on the storage of the attribute, or <code>null</code> if the
+     *         resource of the attribute does not exist, or if this provider does not
+     *         support handles; {@link #lookupAttribute(Path)} must then be used.
+     */
+    AttributeHandle bindAttribute(Path attribute);
+
     /**
      * Sets the event listener to which this provider will report all the events occuring
      * inside it.
@@ -99,10 +110,13 @@ public interface ContextProvider {
     
     /**
      * Update the element located at <code>path</code> (typically an attribute) in
-     * response to <code>cause</code>.
+     * response to changes of the elements it depends on.
      * 
      * @param path
-     * @param cause
+     * @param changes
+     *            the absolute paths of the elements added, removed or changed since the
+     *            previous update which may have caused this one, or <code>null</code> if
+     *            they are not known. Only valid during the call.
      */
-    void update(Path path, PathEvent cause);
+    void update(Path path, Collection<Path> changes);
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.util.Collection;
+
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+import org.objectweb.wildcat.expressions.Expression;
+import org.objectweb.wildcat.expressions.Interpreter;
+import org.objectweb.wildcat.providers.Versions;
+
+/**
+ * A read-only view of a {@link Context} as it was when the snapshot was taken (see
+ * {@link Context#snapshot()}): all the lookups and the expressions evaluated see the
+ * same, consistent state, whatever the modifications made since, including the updates
+ * of several attributes at once which were in progress.
+ * <p>
+ * Taking a snapshot does not copy anything: the resources only keep their previous state
+ * when they are modified while a snapshot may need it, and share everything else. A
+ * snapshot should be {@linkplain #close() closed} as soon as it is not needed anymore,
+ * so that these states can be reclaimed; this is also done, later, when it is
+ * garbage-collected. The parts of the context served by providers which do not
+ * implement {@link VersionedContextProvider}, and the mount points, are read in their
+ * current state.
+ * <p>
+ * This class is thread-safe.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class ContextSnapshot implements ContextView {
+    /**
+     * Container for the whole context.
+     */
+    private final VersionedContextProvider root;
+
+    /**
+     * The interpreter used to parse and evaluate the expressions.
+     */
+    private final Interpreter interpreter;
+
+    /**
+     * The reader which keeps the version read by this snapshot.
+     */
+    private final Versions.Reader reader;
+
+    /**
+     * Takes a snapshot of the current version of a context. Waits for the modifications
+     * in progress to complete.
+     * 
+     * @param root
+     *            the container of the whole context.
+     * @param interpreter
+     *            the interpreter of the context.
+     */
+    ContextSnapshot(VersionedContextProvider root, Interpreter interpreter) {
+        this.root = root;
+        this.interpreter = interpreter;
+        this.reader = root.getVersions().open(this);
+    }
+
+    /**
+     * Returns the version of the context seen by this snapshot. A snapshot taken later
+     * has a greater version.
+     */
+    public long getVersion() {
+        return reader.getVersion();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.ContextView#lookup(org.objectweb.wildcat.Path)
+     */
+    public Collection<Path> lookup(Path query) {
+        if (query.isRelative()) {
+            throw new IllegalArgumentException("Context expects absolute queries.");
+        }
+        Collection<Path> result = root.lookup(query.subPath(1), reader.getVersion());
+        checkOpen();
+        return result;
+    }
+
+    /**
+     * Convenience shortcut for <code>lookup(Context.createPath(query))</code>.
+     * 
+     * @throws MalformedPathException
+     *             if the query supplied as a string is not a valid {@link Path}.
+     */
+    public Collection<Path> lookup(String query) {
+        return lookup(Context.createPath(query));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.ContextView#lookupAttribute(org.objectweb.wildcat.Path)
+     */
+    public Object lookupAttribute(Path attribute) {
+        if (attribute.isRelative()) {
+            throw new IllegalArgumentException("Context expects absolute queries.");
+        } else if (attribute.size() <= 1) {
+            return null;
+        }
+        Object value = root.lookupAttribute(attribute.subPath(1), reader.getVersion());
+        checkOpen();
+        return value;
+    }
+
+    /**
+     * Convenience shortcut for <code>lookupAttribute(Context.createPath(query))</code>.
+     * 
+     * @throws MalformedPathException
+     *             if the query supplied as a string is not a valid {@link Path}.
+     */
+    public Object lookupAttribute(String attribute) throws MalformedPathException {
+        return lookupAttribute(Context.createPath(attribute));
+    }
+
+    /**
+     * Evaluates an expression against this snapshot: the attributes it reads through the
+     * <code>_context</code> variable are read in this snapshot.
+     * 
+     * @param expression
+     *            the expression to evaluate.
+     * @return the value of the expression.
+     * @throws EvaluationException
+     *             if an error occurred during the evaluation of the expression.
+     * @throws IllegalArgumentException
+     *             if the string is not a valid expression.
+     */
+    public Object evaluate(String expression) throws EvaluationException {
+        return evaluate(interpreter.parse(expression));
+    }
+
+    /**
+     * Evaluates a preparsed expression against this snapshot.
+     * 
+     * @see #evaluate(String)
+     */
+    public Object evaluate(Expression expression) throws EvaluationException {
+        Environment env = new Environment(interpreter.getEnvironment());
+        env.defineVariable("_context", this);
+        Object value = expression.evaluate(env);
+        checkOpen();
+        return value;
+    }
+
+    /**
+     * Closes this snapshot, which can not be used anymore. Closing a snapshot several
+     * times has no effect.
+     */
+    public void close() {
+        reader.close();
+    }
+
+    /**
+     * Checks that this snapshot has not been closed during a read. Also keeps it
+     * reachable, hence its version open, until the end of the read.
+     */
+    private void checkOpen() {
+        if (reader.isClosed()) {
+            throw new IllegalStateException("Snapshot closed.");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.util.Collection;
+
+/**
+ * The queries common to a {@link Context} and to its {@linkplain ContextSnapshot
+ * snapshots}, which expressions can be evaluated against (as the <code>_context</code>
+ * variable).
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public interface ContextView {
+    /**
+     * Looks up the locations matching a query.
+     * 
+     * @param query
+     *            an absolute path, possibly a pattern.
+     * @return a collection of all the absolute locations which match the query.
+     * @throws IllegalArgumentException
+     *             if the query is not absolute.
+     */
+    Collection<Path> lookup(Path query);
+
+    /**
+     * Looks up the <em>value</em> of an attribute.
+     * 
+     * @param attribute
+     *            the absolute location of the attribute to look for.
+     * @return the value of the attribute, it it exists, or <code>null</code> otherwise.
+     * @throws IllegalArgumentException
+     *             if the query is not absolute.
+     */
+    Object lookupAttribute(Path attribute);
+}
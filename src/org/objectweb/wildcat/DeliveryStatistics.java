@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+/**
+ * A snapshot of the event delivery metrics of a subscription, as returned by
+ * {@link Context#getDeliveryStatistics(Object)}. The <em>lag</em> of an event is the
+ * time elapsed between its occurrence and the moment it was handed to the listener.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class DeliveryStatistics {
+    private final int queueDepth;
+
+    private final long deliveredCount;
+
+    private final long lastLag;
+
+    private final long maxLag;
+
+    /**
+     * Creates a new snapshot.
+     */
+    DeliveryStatistics(int queueDepth, long deliveredCount, long lastLag, long maxLag) {
+        this.queueDepth = queueDepth;
+        this.deliveredCount = deliveredCount;
+        this.lastLag = lastLag;
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * Returns the number of events waiting to be delivered to the listener. Always zero
+     * when the context delivers the events sequentially.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the number of events delivered to the listener so far.
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * Returns the lag, in milliseconds, of the last event delivered to the listener.
+     */
+    public long getLastLag() {
+        return lastLag;
+    }
+
+    /**
+     * Returns the maximum lag, in milliseconds, observed since the subscription was made.
+     */
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "[depth=" + queueDepth + ", delivered=" + deliveredCount + ", lag="
+                + lastLag + "ms, maxLag=" + maxLag + "ms]";
+    }
+}
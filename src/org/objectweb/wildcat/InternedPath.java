@@ -0,0 +1,681 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical implementation of {@link Path}. All the instances live in a trie where each
+ * path is a node which references its parent, so that paths sharing a common prefix share
+ * the same objects for that prefix. The factory methods ({@link #parse(String)} and the
+ * <code>append*()</code> methods) always return the unique node corresponding to the
+ * requested path, so two <code>InternedPath</code>s are equal iff they are the same
+ * object.
+ * <p>
+ * Parsing is done in a single pass without regular expressions, and the syntax of a step
+ * is only checked the first time the corresponding node is created. Hash codes are
+ * computed once, incrementally from the parent's, and are compatible with the ones of
+ * {@link AbstractPath} so that interned paths can be mixed with other implementations in
+ * hash-based collections.
+ * <p>
+ * The trie only keeps weak references to the nodes it contains, so that paths which are
+ * not used anymore can be garbage collected.
+ *
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+final class InternedPath extends AbstractPath {
+    /**
+     * The root path <code>/</code>.
+     */
+    private static final InternedPath ROOT = new InternedPath(true);
+
+    /**
+     * The (invalid) empty relative path, used as the common ancestor of all the relative
+     * paths. It is never returned to clients.
+     */
+    private static final InternedPath EMPTY = new InternedPath(false);
+
+    /**
+     * Receives the references to the nodes which have been garbage collected, so that
+     * their entries can be removed from their parent.
+     */
+    private static final ReferenceQueue<InternedPath> collected = new ReferenceQueue<InternedPath>();
+
+    public static Path getRoot() {
+        return ROOT;
+    }
+
+    /**
+     * Returns the canonical path corresponding to a string, which must follow the same
+     * syntax as the one accepted by {@link SimplePath}.
+     *
+     * @param path
+     *            the textual representation of the path
+     * @return the unique path corresponding to <code>path</code>
+     * @throws MalformedPathException
+     *             if <code>path</code> is not a syntaxically correct path.
+     */
+    public static InternedPath parse(String path) throws MalformedPathException {
+        int length = path.length();
+        if (length == 0) {
+            syntaxError("empty path not allowed");
+        }
+        InternedPath current;
+        int start;
+        if (path.charAt(0) == '/') {
+            current = ROOT;
+            start = 1;
+        } else {
+            current = EMPTY;
+            start = 0;
+        }
+        while (start < length) {
+            int end = start;
+            int sharp = -1;
+            char previous = 0;
+            while (end < length) {
+                char c = path.charAt(end);
+                if (c == '/') {
+                    break;
+                } else if (c == '#') {
+                    if (previous == '#') {
+                        syntaxError("multiple consecutive separators not allowed");
+                    } else if (sharp == -1) {
+                        sharp = end;
+                    }
+                }
+                previous = c;
+                end++;
+            }
+            if (end == start) {
+                syntaxError("multiple consecutive separators not allowed");
+            }
+            if (end < length || sharp == -1) {
+                // Intermediate step, or last step without an attribute part.
+                current = current.resourceStep(path.substring(start, end));
+            } else {
+                if (sharp > start) {
+                    current = current.resourceStep(path.substring(start, sharp));
+                } else if (current != ROOT && current != EMPTY) {
+                    // Corresponds to "/foo/#bar"
+                    syntaxError("missing resource name or pattern before attribute.");
+                }
+                current = current.attributeStep(path.substring(sharp + 1, end));
+            }
+            // Skips the separator. A trailing separator is ignored.
+            start = end + 1;
+        }
+        return current;
+    }
+
+    private static void syntaxError(String message) throws MalformedPathException {
+        throw new MalformedPathException("Syntax error: " + message + ".");
+    }
+
+    /**
+     * Tests whether a string is a valid resource name or pattern (<code>*</code> or
+     * <code>**</code>).
+     */
+    private static boolean isValidResource(String name) {
+        return isIdentifier(name) || name.equals("*") || name.equals("**");
+    }
+
+    /**
+     * Tests whether a string is a valid attribute name or pattern (<code>*</code>).
+     */
+    private static boolean isValidAttribute(String name) {
+        return isIdentifier(name) || name.equals("*");
+    }
+
+    /**
+     * Tests whether a string is a valid (non-pattern) identifier.
+     */
+    private static boolean isIdentifier(String name) {
+        return name.length() > 0 && name.indexOf('*') == -1 && name.indexOf('/') == -1;
+    }
+
+    /**
+     * Removes from the trie the entries whose node has been garbage collected.
+     */
+    private static void expungeCollected() {
+        Entry entry;
+        while ((entry = (Entry) collected.poll()) != null) {
+            entry.owner.children(entry.attribute).remove(entry.key, entry);
+        }
+    }
+
+    /**
+     * The parent of this node: the path to the resource holding the attribute for an
+     * attribute path, the path to the parent resource for a resource path.
+     * <code>null</code> for {@link #ROOT} and {@link #EMPTY}.
+     */
+    private final InternedPath parent;
+
+    /**
+     * The (interned) name or pattern of the last step of this path.
+     */
+    private final String step;
+
+    private final boolean absolute;
+
+    private final boolean definite;
+
+    private final boolean attribute;
+
+    private final int size;
+
+    private final int hash;
+
+    /**
+     * Children nodes representing resource steps, indexed by step name. Created lazily.
+     */
+    private volatile ConcurrentHashMap<String, Entry> resources;
+
+    /**
+     * Children nodes representing attribute steps, indexed by attribute name. Created
+     * lazily.
+     */
+    private volatile ConcurrentHashMap<String, Entry> attributes;
+
+    /**
+     * Cached value of {@link #getResourcesPart()}.
+     */
+    private volatile List<String> resourcesPart;
+
+    /**
+     * Cached value of {@link #toString()}.
+     */
+    private volatile String string;
+
+    /**
+     * Cached compiled form of this path, used by {@link PathPattern#compile(Path)}.
+     */
+    private volatile PathPattern pattern;
+
+    /**
+     * Creates one of the two roots of the trie.
+     */
+    private InternedPath(boolean absolute) {
+        this.parent = null;
+        this.step = null;
+        this.absolute = absolute;
+        this.definite = true;
+        this.attribute = false;
+        this.size = 0;
+        this.hash = absolute ? 5 : 7;
+    }
+
+    /**
+     * Creates a new child node. Must only be called with a valid step name.
+     */
+    private InternedPath(InternedPath parent, String step, boolean attribute) {
+        this.parent = parent;
+        this.step = step;
+        this.absolute = parent.absolute;
+        this.definite = parent.definite && isIdentifier(step);
+        this.attribute = attribute;
+        this.size = parent.size + 1;
+        if (attribute) {
+            this.hash = parent.hash * step.hashCode();
+        } else {
+            this.hash = parent.hash * 13 + step.hashCode();
+        }
+    }
+
+    private ConcurrentHashMap<String, Entry> children(boolean attr) {
+        return attr ? attributes : resources;
+    }
+
+    /**
+     * Returns the existing child of this node for the given step, or <code>null</code>
+     * if it does not exist (yet).
+     */
+    private InternedPath existingChild(String name, boolean attr) {
+        ConcurrentHashMap<String, Entry> kids = children(attr);
+        if (kids != null) {
+            Entry entry = kids.get(name);
+            if (entry != null) {
+                return entry.get();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the child of this node for the given step, creating it if needed. The
+     * validity of the step name must have been checked by the caller.
+     */
+    private synchronized InternedPath createChild(String name, boolean attr) {
+        expungeCollected();
+        ConcurrentHashMap<String, Entry> kids = children(attr);
+        if (kids == null) {
+            kids = new ConcurrentHashMap<String, Entry>();
+            if (attr) {
+                attributes = kids;
+            } else {
+                resources = kids;
+            }
+        } else {
+            Entry entry = kids.get(name);
+            InternedPath existing = (entry != null) ? entry.get() : null;
+            if (existing != null) {
+                return existing;
+            }
+        }
+        InternedPath child = new InternedPath(this, name.intern(), attr);
+        kids.put(child.step, new Entry(child, this, attr));
+        return child;
+    }
+
+    /**
+     * Returns the path obtained by appending a resource step to this one, which must be a
+     * resource path.
+     */
+    private InternedPath resourceStep(String name) throws MalformedPathException {
+        InternedPath child = existingChild(name, false);
+        if (child != null) {
+            return child;
+        } else if (!isValidResource(name)) {
+            syntaxError("invalid resource identifier (" + name + ")");
+        }
+        return createChild(name, false);
+    }
+
+    /**
+     * Returns the path obtained by appending an attribute step to this one, which must be
+     * a resource path.
+     */
+    private InternedPath attributeStep(String name) throws MalformedPathException {
+        if (this == ROOT) {
+            throw new MalformedPathException("Root path can not have attributes.");
+        }
+        InternedPath child = existingChild(name, true);
+        if (child != null) {
+            return child;
+        } else if (!isValidAttribute(name)) {
+            syntaxError("invalid attribute (" + name + ")");
+        }
+        return createChild(name, true);
+    }
+
+    /**
+     * Returns the node denoting the resource(s) part of this path: this node itself for a
+     * resource path, its parent for an attribute path.
+     */
+    private InternedPath resourceNode() {
+        return attribute ? parent : this;
+    }
+
+    /**
+     * Returns the ancestor of this (resource) node which has the given size.
+     */
+    private InternedPath ancestor(int depth) {
+        InternedPath node = this;
+        while (node.size > depth) {
+            node = node.parent;
+        }
+        return node;
+    }
+
+    /**
+     * Returns the compiled form of this path, compiling it on first use.
+     */
+    PathPattern getPattern() throws MalformedPathException {
+        PathPattern result = pattern;
+        if (result == null) {
+            result = new PathPattern(this);
+            pattern = result;
+        }
+        return result;
+    }
+
+    @Override
+    protected Path newFromString(String path) throws MalformedPathException {
+        return parse(path);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#isAbsolute()
+     */
+    public boolean isAbsolute() {
+        return absolute;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#isDefinite()
+     */
+    public boolean isDefinite() {
+        return definite;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#isAttribute()
+     */
+    public boolean isAttribute() {
+        return attribute;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#getAttributePart()
+     */
+    public String getAttributePart() {
+        return attribute ? step : null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#getResourcesPart()
+     */
+    public List<String> getResourcesPart() {
+        List<String> result = resourcesPart;
+        if (result == null) {
+            InternedPath node = resourceNode();
+            if (node != this) {
+                result = node.getResourcesPart();
+            } else {
+                String[] steps = new String[size];
+                for (int i = size - 1; i >= 0; i--) {
+                    steps[i] = node.step;
+                    node = node.parent;
+                }
+                result = new Steps(steps);
+            }
+            resourcesPart = result;
+        }
+        return result;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#size()
+     */
+    public int size() {
+        return size;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#append(org.objectweb.wildcat.Path)
+     */
+    public Path append(Path suffix) throws MalformedPathException {
+        if (suffix.isAbsolute()) {
+            throw new MalformedPathException("Suffix path must be relative.");
+        } else if (this.isAttribute()) {
+            throw new MalformedPathException("Attribute paths can not be appended to.");
+        }
+        InternedPath current = this;
+        for (String name : suffix.getResourcesPart()) {
+            current = current.resourceStep(name);
+        }
+        String attr = suffix.getAttributePart();
+        if (attr != null) {
+            current = current.attributeStep(attr);
+        }
+        return current;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#appendResource(java.lang.String)
+     */
+    public Path appendResource(String name) throws MalformedPathException {
+        if (this.isAttribute()) {
+            throw new MalformedPathException(
+                    "Can't append a resource to an attribute path.");
+        }
+        InternedPath child = existingChild(name, false);
+        if (child != null) {
+            return child;
+        } else if (!isValidResource(name)) {
+            throw new MalformedPathException("Invalid resource name: " + name + ".");
+        } else {
+            return createChild(name, false);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#appendAttribute(java.lang.String)
+     */
+    public Path appendAttribute(String name) throws MalformedPathException {
+        if (this.isAttribute()) {
+            throw new MalformedPathException(
+                    "Can't append an attribute to an attribute path.");
+        } else if (this == ROOT) {
+            throw new MalformedPathException("Root path can not have attributes.");
+        }
+        InternedPath child = existingChild(name, true);
+        if (child != null) {
+            return child;
+        } else if (!isValidAttribute(name)) {
+            throw new MalformedPathException("Invalid attribute name: " + name + ".");
+        } else {
+            return createChild(name, true);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#getParent()
+     */
+    public Path getParent() throws MalformedPathException {
+        if (attribute || size > 1 || (absolute && size == 1)) {
+            return parent;
+        } else {
+            throw new MalformedPathException("");
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#subPath(int, int)
+     */
+    public Path subPath(int start, int finish) throws MalformedPathException {
+        int maxAllowedIndex = size + 1;
+        if (start < 0 || start >= finish || finish > maxAllowedIndex) {
+            throw new MalformedPathException("Invalid range for sub-path.");
+        }
+        boolean itsAbsolute = this.absolute && start == 0;
+        int listStart = Math.max(start - 1, 0);
+        if (finish - 1 == listStart && !itsAbsolute) {
+            // Empty relative paths don't make sense.
+            return null;
+        }
+        InternedPath res = resourceNode();
+        int listFinish = Math.min(finish - 1, res.size);
+        if (listStart == 0 && itsAbsolute == this.absolute) {
+            // Prefix of this path: no need to create anything.
+            return (finish == maxAllowedIndex) ? this : res.ancestor(listFinish);
+        }
+        InternedPath current = itsAbsolute ? ROOT : EMPTY;
+        List<String> steps = res.getResourcesPart();
+        for (int i = listStart; i < listFinish; i++) {
+            current = current.resourceStep(steps.get(i));
+        }
+        if (finish == maxAllowedIndex && attribute) {
+            current = current.attributeStep(step);
+        }
+        return current;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#startsWith(org.objectweb.wildcat.Path)
+     */
+    public boolean startsWith(Path prefix) {
+        if (prefix instanceof InternedPath) {
+            InternedPath that = (InternedPath) prefix;
+            if (that.attribute) {
+                return this == that;
+            }
+            InternedPath res = resourceNode();
+            return res.size >= that.size && res.ancestor(that.size) == that;
+        }
+        if (this.isAbsolute() != prefix.isAbsolute()) {
+            return false;
+        }
+        List<String> mySteps = this.getResourcesPart();
+        List<String> hisSteps = prefix.getResourcesPart();
+        if (hisSteps.size() > mySteps.size()) {
+            return false;
+        }
+        int i;
+        for (i = 0; i < hisSteps.size(); i++) {
+            if (!mySteps.get(i).equals(hisSteps.get(i))) {
+                return false;
+            }
+        }
+        if (prefix.isAttribute()) {
+            return i == mySteps.size()
+                    && prefix.getAttributePart().equals(this.getAttributePart());
+        } else {
+            return true;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.Path#endsWith(org.objectweb.wildcat.Path)
+     */
+    public boolean endsWith(Path suffix) {
+        if (suffix.isAbsolute() && this.isRelative()) {
+            return false;
+        } else if (this.isAttribute() != suffix.isAttribute()) {
+            return false;
+        } else if (suffix.isAttribute()
+                && !this.getAttributePart().equals(suffix.getAttributePart())) {
+            return false;
+        }
+        List<String> mySteps = this.getResourcesPart();
+        List<String> hisSteps = suffix.getResourcesPart();
+        int offset = mySteps.size() - hisSteps.size();
+        if (offset < 0 || (suffix.isAbsolute() && offset != 0)) {
+            return false;
+        }
+        for (int i = hisSteps.size() - 1; i >= 0; i--) {
+            if (!mySteps.get(offset + i).equals(hisSteps.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.AbstractPath#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (obj instanceof InternedPath) {
+            // Canonical instances: different nodes denote different paths.
+            return false;
+        } else {
+            return super.equals(obj);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.AbstractPath#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.objectweb.wildcat.AbstractPath#toString()
+     */
+    @Override
+    public String toString() {
+        String result = string;
+        if (result == null) {
+            result = super.toString();
+            string = result;
+        }
+        return result;
+    }
+
+    /**
+     * Weak reference from a node to one of its children.
+     */
+    private static final class Entry extends WeakReference<InternedPath> {
+        private final InternedPath owner;
+
+        private final String key;
+
+        private final boolean attribute;
+
+        Entry(InternedPath child, InternedPath owner, boolean attribute) {
+            super(child, collected);
+            this.owner = owner;
+            this.key = child.step;
+            this.attribute = attribute;
+        }
+    }
+
+    /**
+     * Immutable list of the resource steps of a path.
+     */
+    private static final class Steps extends AbstractList<String> {
+        private final String[] steps;
+
+        Steps(String[] steps) {
+            this.steps = steps;
+        }
+
+        @Override
+        public String get(int index) {
+            return steps[index];
+        }
+
+        @Override
+        public int size() {
+            return steps.length;
+        }
+    }
+}
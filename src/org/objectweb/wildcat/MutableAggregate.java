@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.math.BigInteger;
+import java.util.TreeMap;
+
+/**
+ * The implementation of {@link Aggregate}: a multiset of values whose summary is updated
+ * in <i>O(log n)</i> time when a value is added or removed.
+ * <p>
+ * The numbers are kept in a sorted multiset, so that the minimum and the maximum stay
+ * cheap to find after the removal of the current one. Their sum is computed exactly,
+ * and only rounded when it is read: it does not depend on the order in which the values
+ * were added, and does not drift when they are replaced over and over. The values which
+ * are not numbers are only counted. This class is thread-safe.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+class MutableAggregate implements Aggregate {
+    /**
+     * The number of trailing zero bits of {@link #sum} above which they are shifted out.
+     */
+    private static final int RENORMALIZATION_BITS = 64;
+
+    /**
+     * The number of values, and the number of those which are not numbers.
+     */
+    private int count;
+
+    private int others;
+
+    /**
+     * The exact sum of the finite numbers, in units of <code>2^scale</code>. The scale
+     * is lowered when a number with less significant bits is added, and raised again
+     * when the least significant bits of the sum become zeros, e.g. once that number has
+     * been removed, so that the sum does not keep growing.
+     */
+    private BigInteger sum = BigInteger.ZERO;
+
+    private int scale;
+
+    /**
+     * The number of NaNs, and of infinite numbers of each sign, which can not be
+     * represented in {@link #sum}.
+     */
+    private int nans;
+
+    private int positiveInfinities;
+
+    private int negativeInfinities;
+
+    /**
+     * The numbers other than NaN, with the number of times each one occurs.
+     */
+    private final TreeMap<Double, Integer> numbers = new TreeMap<Double, Integer>();
+
+    /**
+     * Adds a value to the multiset.
+     * 
+     * @param value
+     *            the value to add, which must not be <code>null</code>.
+     */
+    synchronized void add(Object value) {
+        update(value, 1);
+    }
+
+    /**
+     * Removes one occurrence of a value from the multiset.
+     * 
+     * @param value
+     *            a value which has been added and not removed since.
+     */
+    synchronized void remove(Object value) {
+        update(value, -1);
+    }
+
+    private void update(Object value, int delta) {
+        assert value != null;
+        count += delta;
+        if (!(value instanceof Number)) {
+            others += delta;
+            return;
+        }
+        double number = ((Number) value).doubleValue();
+        if (Double.isNaN(number)) {
+            nans += delta;
+            return;
+        } else if (number == Double.POSITIVE_INFINITY) {
+            positiveInfinities += delta;
+        } else if (number == Double.NEGATIVE_INFINITY) {
+            negativeInfinities += delta;
+        } else {
+            addToSum(number, delta);
+        }
+        Double key = Double.valueOf(number);
+        Integer occurrences = numbers.get(key);
+        int remaining = ((occurrences != null) ? occurrences.intValue() : 0) + delta;
+        assert remaining >= 0;
+        if (remaining == 0) {
+            numbers.remove(key);
+        } else {
+            numbers.put(key, Integer.valueOf(remaining));
+        }
+    }
+
+    /**
+     * Adds or substracts a finite number from {@link #sum}, as its mantissa shifted by
+     * its exponent.
+     */
+    private void addToSum(double number, int delta) {
+        long bits = Double.doubleToRawLongBits(number);
+        int exponent = (int) ((bits >> 52) & 0x7ff);
+        long mantissa = bits & 0xfffffffffffffL;
+        if (exponent == 0) {
+            exponent = 1; // Subnormal.
+        } else {
+            mantissa |= 0x10000000000000L;
+        }
+        if (mantissa == 0) {
+            return;
+        }
+        int zeros = Long.numberOfTrailingZeros(mantissa);
+        mantissa >>= zeros;
+        exponent += zeros - 1075;
+        if ((bits < 0) != (delta < 0)) {
+            mantissa = -mantissa;
+        }
+        if (exponent < scale) {
+            sum = sum.shiftLeft(scale - exponent);
+            scale = exponent;
+        }
+        sum = sum.add(BigInteger.valueOf(mantissa).shiftLeft(exponent - scale));
+        if (sum.signum() == 0) {
+            scale = 0;
+        } else {
+            int low = sum.getLowestSetBit();
+            if (low >= RENORMALIZATION_BITS) {
+                sum = sum.shiftRight(low);
+                scale += low;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bits used to represent the exact sum.
+     */
+    synchronized int getPrecision() {
+        return sum.bitLength();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.Aggregate#getCount()
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.Aggregate#containsOnlyNumbers()
+     */
+    public synchronized boolean containsOnlyNumbers() {
+        return others == 0;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.Aggregate#getSum()
+     */
+    public synchronized double getSum() {
+        if (nans > 0 || (positiveInfinities > 0 && negativeInfinities > 0)) {
+            return Double.NaN;
+        } else if (positiveInfinities > 0) {
+            return Double.POSITIVE_INFINITY;
+        } else if (negativeInfinities > 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        // Only the most significant bits are converted, with a sticky bit standing for
+        // the others so that the rounding is still correct.
+        BigInteger magnitude = sum.abs();
+        int shift = Math.max(0, magnitude.bitLength() - 960);
+        BigInteger high = magnitude.shiftRight(shift);
+        if (shift > 0 && magnitude.getLowestSetBit() < shift) {
+            high = high.setBit(0);
+        }
+        double result = Math.scalb(high.doubleValue(), scale + shift);
+        return (sum.signum() < 0) ? -result : result;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.Aggregate#getAverage()
+     */
+    public synchronized Double getAverage() {
+        int n = count - others;
+        return (n > 0) ? Double.valueOf(getSum() / n) : null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.Aggregate#getMinimum()
+     */
+    public synchronized Double getMinimum() {
+        if (nans > 0) {
+            return Double.valueOf(Double.NaN);
+        }
+        return numbers.isEmpty() ? null : numbers.firstKey();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.Aggregate#getMaximum()
+     */
+    public synchronized Double getMaximum() {
+        if (nans > 0) {
+            return Double.valueOf(Double.NaN);
+        }
+        return numbers.isEmpty() ? null : numbers.lastKey();
+    }
+}
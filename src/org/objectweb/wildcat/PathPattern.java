@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compiled representation of a (possibly pattern) {@link Path}, used to efficiently
+ * test whether definite paths match it. A pattern is compiled once, and then matched step
+ * by step against the resources part of the candidate paths, without creating any
+ * intermediate object.
+ * <p>
+ * The following patterns are supported in resource steps:
+ * <ul>
+ * <li><code>*</code> matches exactly one resource step;</li>
+ * <li><code>**</code> matches any number (including zero) of resource steps;</li>
+ * <li><code>..</code> denotes the parent of the previous step, and is resolved when
+ * the pattern is compiled (<code>/a/b/..</code> is equivalent to <code>/a</code>). A
+ * <code>..</code> following a <code>**</code> step is absorbed by it.</li>
+ * </ul>
+ * In the attribute part, <code>*</code> matches any attribute name. Resource patterns
+ * only match resource paths, and attribute patterns only match attribute paths.
+ *
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class PathPattern {
+    /**
+     * Kind of a step which matches only the resource of the same name.
+     */
+    static final byte NAME = 0;
+
+    /**
+     * Kind of a step which matches any single resource (<code>*</code>).
+     */
+    static final byte ANY = 1;
+
+    /**
+     * Kind of a step which matches any number of resources (<code>**</code>).
+     */
+    static final byte ANY_DEPTH = 2;
+
+    /**
+     * Compiles a path into a pattern. Compiled patterns are immutable and can be shared.
+     * The compiled form of paths created using {@link Context#createPath(String)} is
+     * cached, so compiling them more than once is cheap.
+     *
+     * @param path
+     *            the path to compile, which may or may not be a pattern.
+     * @return the compiled pattern.
+     * @throws MalformedPathException
+     *             if the path contains <code>..</code> steps going above its first
+     *             step.
+     */
+    public static PathPattern compile(Path path) throws MalformedPathException {
+        if (path instanceof InternedPath) {
+            return ((InternedPath) path).getPattern();
+        } else {
+            return new PathPattern(path);
+        }
+    }
+
+    /**
+     * Convenience shortcut for <code>compile(Context.createPath(pattern))</code>.
+     */
+    public static PathPattern compile(String pattern) throws MalformedPathException {
+        return compile(Context.createPath(pattern));
+    }
+
+    /**
+     * The path this pattern was compiled from.
+     */
+    private final Path path;
+
+    private final boolean absolute;
+
+    /**
+     * The resource steps of the pattern, after resolution of the <code>..</code>
+     * steps.
+     */
+    private final String[] steps;
+
+    /**
+     * The kind ({@link #NAME}, {@link #ANY} or {@link #ANY_DEPTH}) of each element of
+     * {@link #steps}.
+     */
+    private final byte[] kinds;
+
+    /**
+     * The attribute part of the pattern, or <code>null</code> for a resource pattern.
+     */
+    private final String attribute;
+
+    /**
+     * Compiles a new pattern. Use {@link #compile(Path)}.
+     */
+    PathPattern(Path path) throws MalformedPathException {
+        this.path = path;
+        this.absolute = path.isAbsolute();
+        List<String> resolved = new ArrayList<String>();
+        for (String step : path.getResourcesPart()) {
+            if (!step.equals("..")) {
+                resolved.add(step);
+            } else if (resolved.isEmpty()) {
+                throw new MalformedPathException("Pattern " + path
+                        + " goes above its first step.");
+            } else if (!resolved.get(resolved.size() - 1).equals("**")) {
+                resolved.remove(resolved.size() - 1);
+            }
+        }
+        this.steps = new String[resolved.size()];
+        this.kinds = new byte[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = resolved.get(i);
+            if (steps[i].equals("*")) {
+                kinds[i] = ANY;
+            } else if (steps[i].equals("**")) {
+                kinds[i] = ANY_DEPTH;
+            } else {
+                kinds[i] = NAME;
+            }
+        }
+        this.attribute = path.getAttributePart();
+    }
+
+    /**
+     * Returns the path this pattern was compiled from.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Tests whether a definite path matches this pattern.
+     *
+     * @param candidate
+     *            a definite path, of the same kind (absolute or relative) as this pattern.
+     * @return <code>true</code> iff <code>candidate</code> matches this pattern.
+     */
+    public boolean matches(Path candidate) {
+        if (candidate.isAbsolute() != absolute) {
+            return false;
+        }
+        String attr = candidate.getAttributePart();
+        if (attribute == null) {
+            if (attr != null) {
+                return false;
+            }
+        } else if (attr == null || !(attribute.equals("*") || attribute.equals(attr))) {
+            return false;
+        }
+        List<String> names = candidate.getResourcesPart();
+        int count = names.size();
+        // Greedy matching, backtracking to the last "**" on failure.
+        int pi = 0;
+        int ni = 0;
+        int lastAnyDepth = -1;
+        int resumeAt = 0;
+        while (ni < count) {
+            if (pi < steps.length && kinds[pi] == ANY_DEPTH) {
+                lastAnyDepth = pi;
+                resumeAt = ni;
+                pi++;
+            } else if (pi < steps.length && stepMatches(pi, names.get(ni))) {
+                pi++;
+                ni++;
+            } else if (lastAnyDepth != -1) {
+                pi = lastAnyDepth + 1;
+                ni = ++resumeAt;
+            } else {
+                return false;
+            }
+        }
+        while (pi < steps.length && kinds[pi] == ANY_DEPTH) {
+            pi++;
+        }
+        return pi == steps.length;
+    }
+
+    /**
+     * Tests whether some path strictly below the given resource could match this
+     * pattern, i.e. whether a lookup of this pattern needs to look inside
+     * <code>prefix</code>.
+     *
+     * @param prefix
+     *            a definite resource path, of the same kind (absolute or relative) as this
+     *            pattern.
+     * @return <code>true</code> iff some descendant of <code>prefix</code> (resource or
+     *         attribute) may match this pattern.
+     */
+    public boolean matchesBelow(Path prefix) {
+        if (prefix.isAbsolute() != absolute || prefix.isAttribute()) {
+            return false;
+        } else {
+            return matchesBelow(prefix.getResourcesPart(), 0, 0);
+        }
+    }
+
+    private boolean matchesBelow(List<String> names, int pi, int ni) {
+        if (ni == names.size()) {
+            // Something must remain to match below the prefix.
+            return pi < steps.length || attribute != null;
+        } else if (pi == steps.length) {
+            return false;
+        } else if (kinds[pi] == ANY_DEPTH) {
+            return matchesBelow(names, pi + 1, ni) || matchesBelow(names, pi, ni + 1);
+        } else if (stepMatches(pi, names.get(ni))) {
+            return matchesBelow(names, pi + 1, ni + 1);
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the relative patterns which match the descendants of the given resource
+     * matching this pattern, relatively to it. A path strictly below <code>prefix</code>
+     * matches this pattern iff its part below <code>prefix</code> matches one of these
+     * patterns. There can be several of them when a <code>**</code> step can end either
+     * above or below <code>prefix</code>; for example, the remainders of
+     * <code>/**&#47;bar#*</code> below <code>/foo/bar</code> are
+     * <code>**&#47;bar#*</code> and <code>#*</code>.
+     *
+     * @param prefix
+     *            a definite resource path, of the same kind (absolute or relative) as
+     *            this pattern.
+     * @return the relative patterns to look up below <code>prefix</code>, without
+     *         duplicates. Empty iff {@link #matchesBelow(Path)} is <code>false</code>.
+     */
+    public List<Path> getRemaindersBelow(Path prefix) {
+        List<Path> result = new ArrayList<Path>();
+        if (prefix.isAbsolute() == absolute && !prefix.isAttribute()) {
+            collectRemainders(prefix.getResourcesPart(), 0, 0, result);
+        }
+        return result;
+    }
+
+    private void collectRemainders(List<String> names, int pi, int ni,
+            List<Path> result) {
+        if (ni == names.size()) {
+            if (pi < steps.length || attribute != null) {
+                Path remainder = remainder(pi);
+                if (!result.contains(remainder)) {
+                    result.add(remainder);
+                }
+            }
+        } else if (pi == steps.length) {
+            return;
+        } else if (kinds[pi] == ANY_DEPTH) {
+            collectRemainders(names, pi + 1, ni, result);
+            collectRemainders(names, pi, ni + 1, result);
+        } else if (stepMatches(pi, names.get(ni))) {
+            collectRemainders(names, pi + 1, ni + 1, result);
+        }
+    }
+
+    /**
+     * Returns the relative path made of the steps of this pattern from
+     * <code>index</code> on, and of its attribute part.
+     */
+    private Path remainder(int index) {
+        StringBuilder buf = new StringBuilder();
+        for (int i = index; i < steps.length; i++) {
+            if (i > index) {
+                buf.append('/');
+            }
+            buf.append(steps[i]);
+        }
+        if (attribute != null) {
+            buf.append('#').append(attribute);
+        }
+        return Context.createPath(buf.toString());
+    }
+
+    private boolean stepMatches(int index, String name) {
+        return kinds[index] == ANY || steps[index].equals(name);
+    }
+
+    /**
+     * Returns the number of resource steps in this pattern (after resolution of the
+     * <code>..</code> steps).
+     */
+    int getStepsCount() {
+        return steps.length;
+    }
+
+    /**
+     * Returns the name of a resource step, only meaningful for {@link #NAME} steps.
+     */
+    String getStep(int index) {
+        return steps[index];
+    }
+
+    /**
+     * Returns the kind of a resource step: {@link #NAME}, {@link #ANY} or
+     * {@link #ANY_DEPTH}.
+     */
+    byte getStepKind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * Returns the attribute part of this pattern, <code>null</code> for a resource
+     * pattern.
+     */
+    String getAttribute() {
+        return attribute;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return (obj instanceof PathPattern) && path.equals(((PathPattern) obj).path);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
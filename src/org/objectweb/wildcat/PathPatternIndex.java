@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Associates values to path patterns, and efficiently finds all the values whose pattern
+ * matches a given definite path. The patterns are stored in a trie keyed by their
+ * resource steps, with separate branches for the <code>*</code> and <code>**</code>
+ * steps, so that finding the matches of a path only visits the patterns which can
+ * actually match it, instead of testing every pattern in turn.
+ * <p>
+ * This class is thread-safe. Lookups do not take any lock; modifications only lock the
+ * trie nodes they create, and update the sets of values attached to a node atomically.
+ *
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ * @param <T>
+ *            the type of the values associated to the patterns.
+ */
+public class PathPatternIndex<T> {
+    private final Node absoluteRoot = new Node();
+
+    private final Node relativeRoot = new Node();
+
+    /**
+     * Associates a value to a pattern. The same value can be associated to several
+     * patterns, and several times to the same pattern.
+     *
+     * @param pattern
+     *            a path, which may or may not be a pattern.
+     * @param value
+     *            the value to associate to <code>pattern</code>.
+     */
+    public void add(Path pattern, T value) {
+        assert value != null;
+        PathPattern compiled = PathPattern.compile(pattern);
+        Node node = rootFor(pattern);
+        for (int i = 0; i < compiled.getStepsCount(); i++) {
+            node = node.child(compiled.getStepKind(i), compiled.getStep(i));
+        }
+        String attr = compiled.getAttribute();
+        if (attr == null) {
+            add(node.resourceValues, value);
+        } else if (attr.equals("*")) {
+            add(node.anyAttributeValues, value);
+        } else {
+            ConcurrentHashMap<String, Object[]> values = node.attributeValues();
+            while (true) {
+                Object[] old = values.get(attr);
+                if (old == null) {
+                    if (values.putIfAbsent(attr, new Object[] { value }) == null) {
+                        return;
+                    }
+                } else if (values.replace(attr, old, added(old, value))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes one association between a pattern and a value.
+     *
+     * @param pattern
+     *            the pattern, as given to {@link #add(Path, Object)}.
+     * @param value
+     *            the value to remove.
+     * @return <code>true</code> if the association existed and has been removed.
+     */
+    public boolean remove(Path pattern, T value) {
+        PathPattern compiled = PathPattern.compile(pattern);
+        Node node = rootFor(pattern);
+        for (int i = 0; node != null && i < compiled.getStepsCount(); i++) {
+            node = node.existingChild(compiled.getStepKind(i), compiled.getStep(i));
+        }
+        if (node == null) {
+            return false;
+        }
+        String attr = compiled.getAttribute();
+        if (attr == null) {
+            return remove(node.resourceValues, value);
+        } else if (attr.equals("*")) {
+            return remove(node.anyAttributeValues, value);
+        }
+        ConcurrentHashMap<String, Object[]> values = node.attributeValues;
+        if (values == null) {
+            return false;
+        }
+        while (true) {
+            Object[] old = values.get(attr);
+            int index = (old != null) ? indexOf(old, value) : -1;
+            if (index == -1) {
+                return false;
+            } else if (old.length == 1) {
+                if (values.remove(attr, old)) {
+                    return true;
+                }
+            } else if (values.replace(attr, old, removed(old, index))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finds all the values associated to a pattern matching the given path, and adds them
+     * to <code>result</code>. A value is only added once per pattern it is associated
+     * to, even if the pattern can match the path in several ways.
+     *
+     * @param path
+     *            a definite path.
+     * @param result
+     *            the collection to which the values found are added.
+     */
+    public void collectMatches(Path path, Collection<? super T> result) {
+        Node root = rootFor(path);
+        collect(root, path.getResourcesPart(), 0, path.getAttributePart(), result, null);
+    }
+
+    /**
+     * Convenience method which returns the values found by
+     * {@link #collectMatches(Path, Collection)} in a new list.
+     */
+    public List<T> getMatches(Path path) {
+        List<T> result = new ArrayList<T>();
+        collectMatches(path, result);
+        return result;
+    }
+
+    /**
+     * Finds all the values associated to a pattern matching either the given resource or
+     * some path below it, and adds them to <code>result</code>. This is used to find the
+     * patterns concerned by the addition or removal of a whole sub-tree of resources.
+     * Each value is only added once per pattern it is associated to.
+     *
+     * @param resource
+     *            a definite resource path.
+     * @param result
+     *            the collection to which the values found are added.
+     */
+    public void collectMatchesBelow(Path resource, Collection<? super T> result) {
+        assert resource.isResource();
+        collectBelow(rootFor(resource), resource.getResourcesPart(), 0, result,
+                new HashSet<Node>());
+    }
+
+    /**
+     * Convenience method which returns the values found by
+     * {@link #collectMatchesBelow(Path, Collection)} in a new list.
+     */
+    public List<T> getMatchesBelow(Path resource) {
+        List<T> result = new ArrayList<T>();
+        collectMatchesBelow(resource, result);
+        return result;
+    }
+
+    private Node rootFor(Path path) {
+        return path.isAbsolute() ? absoluteRoot : relativeRoot;
+    }
+
+    /**
+     * Visits the nodes of the trie which match the steps of the path starting at
+     * <code>index</code>.
+     *
+     * @param visited
+     *            the terminal nodes already collected, to avoid collecting the same
+     *            pattern twice. Only needed (and created) once a <code>**</code> branch
+     *            has been entered.
+     */
+    private void collect(Node node, List<String> names, int index, String attr,
+            Collection<? super T> result, List<Node> visited) {
+        Node anyDepth = node.anyDepth;
+        if (anyDepth != null) {
+            if (visited == null) {
+                visited = new ArrayList<Node>();
+            }
+            for (int i = index; i <= names.size(); i++) {
+                collect(anyDepth, names, i, attr, result, visited);
+            }
+        }
+        if (index == names.size()) {
+            if (visited != null) {
+                for (Node n : visited) {
+                    if (n == node) {
+                        return;
+                    }
+                }
+                visited.add(node);
+            }
+            if (attr == null) {
+                addAll(node.resourceValues.get(), result);
+            } else {
+                ConcurrentHashMap<String, Object[]> values = node.attributeValues;
+                if (values != null) {
+                    addAll(values.get(attr), result);
+                }
+                addAll(node.anyAttributeValues.get(), result);
+            }
+        } else {
+            Node child = node.existingChild(PathPattern.NAME, names.get(index));
+            if (child != null) {
+                collect(child, names, index + 1, attr, result, visited);
+            }
+            Node any = node.any;
+            if (any != null) {
+                collect(any, names, index + 1, attr, result, visited);
+            }
+        }
+    }
+
+    /**
+     * Visits the nodes of the trie which match the steps of the resource path starting
+     * at <code>index</code>, and collects everything below the nodes reached at its end.
+     */
+    private void collectBelow(Node node, List<String> names, int index,
+            Collection<? super T> result, Set<Node> visited) {
+        if (index == names.size()) {
+            collectAll(node, result, visited);
+            return;
+        }
+        Node anyDepth = node.anyDepth;
+        if (anyDepth != null) {
+            for (int i = index; i <= names.size(); i++) {
+                collectBelow(anyDepth, names, i, result, visited);
+            }
+        }
+        Node child = node.existingChild(PathPattern.NAME, names.get(index));
+        if (child != null) {
+            collectBelow(child, names, index + 1, result, visited);
+        }
+        Node any = node.any;
+        if (any != null) {
+            collectBelow(any, names, index + 1, result, visited);
+        }
+    }
+
+    /**
+     * Collects the values of all the patterns ending at or below <code>node</code>.
+     */
+    private void collectAll(Node node, Collection<? super T> result, Set<Node> visited) {
+        if (!visited.add(node)) {
+            return;
+        }
+        addAll(node.resourceValues.get(), result);
+        addAll(node.anyAttributeValues.get(), result);
+        ConcurrentHashMap<String, Object[]> values = node.attributeValues;
+        if (values != null) {
+            for (Object[] attrValues : values.values()) {
+                addAll(attrValues, result);
+            }
+        }
+        for (Node child : node.children.values()) {
+            collectAll(child, result, visited);
+        }
+        if (node.any != null) {
+            collectAll(node.any, result, visited);
+        }
+        if (node.anyDepth != null) {
+            collectAll(node.anyDepth, result, visited);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addAll(Object[] values, Collection<? super T> result) {
+        if (values != null) {
+            for (Object value : values) {
+                result.add((T) value);
+            }
+        }
+    }
+
+    private static void add(AtomicReference<Object[]> ref, Object value) {
+        while (true) {
+            Object[] old = ref.get();
+            if (ref.compareAndSet(old, added(old, value))) {
+                return;
+            }
+        }
+    }
+
+    private static boolean remove(AtomicReference<Object[]> ref, Object value) {
+        while (true) {
+            Object[] old = ref.get();
+            int index = (old != null) ? indexOf(old, value) : -1;
+            if (index == -1) {
+                return false;
+            } else if (ref.compareAndSet(old, (old.length == 1) ? null : removed(old,
+                    index))) {
+                return true;
+            }
+        }
+    }
+
+    private static Object[] added(Object[] values, Object value) {
+        if (values == null) {
+            return new Object[] { value };
+        }
+        Object[] result = new Object[values.length + 1];
+        System.arraycopy(values, 0, result, 0, values.length);
+        result[values.length] = value;
+        return result;
+    }
+
+    private static Object[] removed(Object[] values, int index) {
+        Object[] result = new Object[values.length - 1];
+        System.arraycopy(values, 0, result, 0, index);
+        System.arraycopy(values, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static int indexOf(Object[] values, Object value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A node in the trie, corresponding to a sequence of resource steps. The arrays of
+     * values are never modified once published: they are replaced atomically by updated
+     * copies.
+     */
+    private static final class Node {
+        private final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+
+        private volatile Node any;
+
+        private volatile Node anyDepth;
+
+        /**
+         * Values of the resource patterns ending at this node.
+         */
+        private final AtomicReference<Object[]> resourceValues = new AtomicReference<Object[]>();
+
+        /**
+         * Values of the attribute patterns ending at this node with an explicit
+         * attribute name, indexed by name. Created lazily.
+         */
+        private volatile ConcurrentHashMap<String, Object[]> attributeValues;
+
+        /**
+         * Values of the attribute patterns ending at this node with <code>#*</code>.
+         */
+        private final AtomicReference<Object[]> anyAttributeValues = new AtomicReference<Object[]>();
+
+        Node existingChild(byte kind, String name) {
+            switch (kind) {
+            case PathPattern.ANY:
+                return any;
+            case PathPattern.ANY_DEPTH:
+                return anyDepth;
+            default:
+                return children.get(name);
+            }
+        }
+
+        Node child(byte kind, String name) {
+            Node node = existingChild(kind, name);
+            if (node != null) {
+                return node;
+            }
+            synchronized (this) {
+                node = existingChild(kind, name);
+                if (node == null) {
+                    node = new Node();
+                    switch (kind) {
+                    case PathPattern.ANY:
+                        any = node;
+                        break;
+                    case PathPattern.ANY_DEPTH:
+                        anyDepth = node;
+                        break;
+                    default:
+                        children.put(name, node);
+                    }
+                }
+                return node;
+            }
+        }
+
+        synchronized ConcurrentHashMap<String, Object[]> attributeValues() {
+            if (attributeValues == null) {
+                attributeValues = new ConcurrentHashMap<String, Object[]>();
+            }
+            return attributeValues;
+        }
+    }
+}
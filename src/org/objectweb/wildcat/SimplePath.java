@@ -301,24 +301,6 @@ class SimplePath extends AbstractPath {
         }
     }
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see org.objectweb.wildcat.Path#matches(org.objectweb.wildcat.Path)
-     */
-    public boolean matches(Path pattern) {
-        return this.toString().matches(patternRegexp(pattern));
-    }
-
-    /**
-     * Converts a pattern path into a regexp which can be used to match against a string
-     * representation of definite paths.
-     */
-    private String patternRegexp(Path pattern) {
-        String str = pattern.toString();
-        return str.replaceAll("\\*", IDENTIFIER_REGEX.replace("\\", "\\\\"));
-    }
-
     /*
      * (non-Javadoc)
      * 
@@ -1,11 +1,18 @@
 package org.objectweb.wildcat;
 
 import static org.objectweb.wildcat.EventKind.*;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.objectweb.wildcat.events.EventBuffer;
 import org.objectweb.wildcat.events.EventListener;
@@ -18,20 +25,58 @@ import org.objectweb.wildcat.events.PathRemovedEvent;
  * This class manages user-level subscriptions: it keeps track of these subscriptions and
  * asynchronously notifies the appropriate {@link ContextListener}s when it receives
  * watched events.
+ * <p>
+ * By default, the listeners are notified sequentially by the thread running this manager.
+ * When an {@link Executor} is supplied, each subscription gets its own mailbox instead:
+ * the manager only posts the matching events into the mailboxes, and the executor's
+ * threads deliver them. A listener still receives its events one at a time and in order,
+ * but a slow listener no longer delays the others.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
 class SubscriptionManager implements EventListener, Runnable {
     private EventBuffer buffer;
-    private Map<Object, Subscription> subscriptions;
+    /**
+     * All the active subscriptions, indexed by cookie.
+     */
+    private ConcurrentHashMap<Object, Subscription> subscriptions;
+    /**
+     * The active subscriptions, indexed by the path they watch.
+     */
+    private PathPatternIndex<Subscription> index;
+    /**
+     * The subscriptions matching the event being dispatched. Only used by the
+     * dispatching thread.
+     */
+    private List<Subscription> matching;
+    /**
+     * The executor used to deliver the events, or <code>null</code> to deliver them in
+     * the dispatching thread.
+     */
+    private Executor executor;
 
     /**
-     * Creates a new <code>SubscriptionManager</code>.
+     * Creates a new <code>SubscriptionManager</code> which notifies the listeners
+     * sequentially.
      */
     public SubscriptionManager() {
+        this(null);
+    }
+
+    /**
+     * Creates a new <code>SubscriptionManager</code> which notifies the listeners using
+     * the given executor.
+     * 
+     * @param executor
+     *            the executor in which to run the listeners, or <code>null</code> to
+     *            notify them sequentially.
+     */
+    public SubscriptionManager(Executor executor) {
+        this.executor = executor;
         this.buffer = new EventBuffer();
-        this.subscriptions = Collections
-                .synchronizedMap(new HashMap<Object, Subscription>());
+        this.subscriptions = new ConcurrentHashMap<Object, Subscription>();
+        this.index = new PathPatternIndex<Subscription>();
+        this.matching = new ArrayList<Subscription>();
     }
 
     /**
@@ -52,8 +97,9 @@ class SubscriptionManager implements EventListener, Runnable {
         assert location != null && location.isAbsolute();
         assert listener != null;
         Object cookie = new Object();
-        Subscription sub = new Subscription(evtKinds, location, listener);
+        Subscription sub = new Subscription(cookie, evtKinds, location, listener);
         subscriptions.put(cookie, sub);
+        index.add(location, sub);
         return cookie;
     }
 
@@ -68,9 +114,10 @@ class SubscriptionManager implements EventListener, Runnable {
      *         subscription did not use a synthetic attribute.
      */
     public Path unregister(Object cookie) {
-        Subscription sub = subscriptions.get(cookie);
+        Subscription sub = subscriptions.remove(cookie);
         if (sub != null) {
-            subscriptions.remove(cookie);
+            index.remove(sub.path, sub);
+            sub.cancelled = true;
             if (sub.matches(CONDITION_OCCURED) || sub.matches(EXPRESSION_CHANGED)) {
                 return sub.path;
             } else {
@@ -81,6 +128,31 @@ class SubscriptionManager implements EventListener, Runnable {
         }
     }
 
+    /**
+     * Returns the delivery metrics of a subscription.
+     * 
+     * @param cookie
+     *            the subscription identifier, as returned from
+     *            {@link #register(EnumSet, Path, ContextListener)}.
+     * @return the current delivery metrics of the subscription.
+     */
+    public DeliveryStatistics getStatistics(Object cookie) {
+        Subscription sub = subscriptions.get(cookie);
+        if (sub != null) {
+            return sub.getStatistics();
+        } else {
+            throw new IllegalArgumentException("Invalid subscription identifier.");
+        }
+    }
+
+    /**
+     * Returns the buffer in which the received events wait to be dispatched, to
+     * configure it or consult its metrics.
+     */
+    public EventBuffer getBuffer() {
+        return buffer;
+    }
+
     /**
      * Buffers the event for asynchronous processing.
      */
@@ -96,25 +168,47 @@ class SubscriptionManager implements EventListener, Runnable {
     }
 
     /**
-     * Takes events from the buffer in turn, and notifies all the registered
-     * {@link ContextListener} whose subscription matches the event.
+     * Takes events from the buffer by batches, and notifies all the registered
+     * {@link ContextListener} whose subscription matches some events of the batch.
      */
     public void run() {
         while (true) {
             try {
-                notifyClientListeners(buffer.take());
+                notifyClientListeners(buffer.takeBatch());
             } catch (InterruptedException e) {
                 break;
             }
         }
     }
 
-    private void notifyClientListeners(PathEvent evt) {
-        assert evt != null;
-        for (Object cookie : subscriptions.keySet()) {
-            Subscription sub = subscriptions.get(cookie);
-            if (evt.getPath().matches(sub.path)) {
-                sub.notify(evt, cookie);
+    /**
+     * Groups the events of a batch by subscription, and notifies each subscription of all
+     * its events at once.
+     */
+    private void notifyClientListeners(List<PathEvent> batch) {
+        assert batch != null;
+        Map<Subscription, List<PathEvent>> notifications = new LinkedHashMap<Subscription, List<PathEvent>>();
+        for (PathEvent evt : batch) {
+            matching.clear();
+            index.collectMatches(evt.getPath(), matching);
+            for (Subscription sub : matching) {
+                List<PathEvent> events = notifications.get(sub);
+                if (events == null) {
+                    events = new ArrayList<PathEvent>();
+                    notifications.put(sub, events);
+                }
+                events.add(evt);
+            }
+        }
+        for (Map.Entry<Subscription, List<PathEvent>> entry : notifications.entrySet()) {
+            Subscription sub = entry.getKey();
+            List<PathEvent> events = sub.relevantEvents(sub.coalesce(entry.getValue()));
+            if (events.isEmpty()) {
+                continue;
+            } else if (executor == null) {
+                sub.deliver(events, false);
+            } else {
+                sub.post(events);
             }
         }
     }
@@ -124,7 +218,16 @@ class SubscriptionManager implements EventListener, Runnable {
      * 
      * @author Pierre-Charles David <pcdavid@gmail.com>
      */
-    private class Subscription {
+    private class Subscription implements Runnable {
+        /**
+         * Maximum number of batches of events delivered in a row by a single task, to let
+         * the other mailboxes use the executor's threads.
+         */
+        private static final int MAX_DELIVERIES_PER_RUN = 64;
+        /**
+         * The identifier of this subscription.
+         */
+        private Object cookie;
         /**
          * The absolute path of the events of interest. May be a pattern.
          */
@@ -137,14 +240,44 @@ class SubscriptionManager implements EventListener, Runnable {
          * The listener to notify when a matching event occurs.
          */
         private ContextListener listener;
+        /**
+         * The batches of events posted to this subscription and not yet delivered. Only
+         * used when delivering through an executor.
+         */
+        private final ConcurrentLinkedQueue<List<PathEvent>> mailbox = new ConcurrentLinkedQueue<List<PathEvent>>();
+        /**
+         * The number of events posted to this subscription and not yet handed to the
+         * listener.
+         */
+        private final AtomicInteger depth = new AtomicInteger();
+        /**
+         * Whether a task delivering the content of the mailbox is scheduled or running.
+         * Ensures the events are delivered by at most one thread at a time.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        /**
+         * Set when the subscription is cancelled; the events still in the mailbox are
+         * then discarded.
+         */
+        private volatile boolean cancelled;
+        /*
+         * Delivery metrics. Only written by the thread currently delivering the events.
+         */
+        private volatile long delivered;
+
+        private volatile long lastLag;
+
+        private volatile long maxLag;
 
         /**
          * Creates a new subscription.
          */
-        public Subscription(EnumSet<EventKind> kinds, Path path, ContextListener listener) {
+        public Subscription(Object cookie, EnumSet<EventKind> kinds, Path path,
+                ContextListener listener) {
             assert kinds != null && !kinds.isEmpty() : "no event kinds to notify";
             assert path != null && path.isAbsolute();
             assert listener != null : "no listener to notify";
+            this.cookie = cookie;
             this.kinds = kinds;
             this.path = path;
             this.listener = listener;
@@ -157,22 +290,186 @@ class SubscriptionManager implements EventListener, Runnable {
             return kinds.contains(kind);
         }
 
+        /**
+         * Tests whether an event at a location matching this subscription must be
+         * notified to the listener, according to the kinds of events of interest.
+         */
+        public boolean isRelevant(PathEvent evt) {
+            boolean resource = evt.getPath().isResource();
+            if (evt instanceof PathAddedEvent) {
+                return matches(resource ? RESOURCE_ADDED : ATTRIBUTE_ADDED);
+            } else if (evt instanceof PathRemovedEvent) {
+                return matches(resource ? RESOURCE_REMOVED : ATTRIBUTE_REMOVED);
+            } else if (evt instanceof PathChangedEvent) {
+                return matches(ATTRIBUTE_CHANGED) || matches(EXPRESSION_CHANGED)
+                        || (matches(CONDITION_OCCURED) && changedToTrue((PathChangedEvent) evt));
+            } else {
+                return false;
+            }
+        }
+
+        /**
+         * Filters a list of events, keeping only the ones which must be notified to the
+         * listener.
+         */
+        public List<PathEvent> relevantEvents(List<PathEvent> events) {
+            List<PathEvent> result = new ArrayList<PathEvent>(events.size());
+            for (PathEvent evt : events) {
+                if (isRelevant(evt)) {
+                    result.add(evt);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Merges the successive changes of the same attribute in a list of events. Only
+         * {@link BatchContextListener}s, which receive a batch as a whole, get merged
+         * changes; other listeners, and listeners watching condition occurrences (which
+         * would be lost), are notified of every change.
+         * 
+         * @return a list of events equivalent to <code>events</code>, possibly the same.
+         */
+        public List<PathEvent> coalesce(List<PathEvent> events) {
+            if (events.size() < 2 || !(listener instanceof BatchContextListener)
+                    || matches(CONDITION_OCCURED)) {
+                return events;
+            }
+            List<PathEvent> result = new ArrayList<PathEvent>(events.size());
+            // Index in result of the last event of each path, if it is a change.
+            Map<Path, Integer> lastChanges = new HashMap<Path, Integer>();
+            for (PathEvent evt : events) {
+                Integer last = lastChanges.get(evt.getPath());
+                if (evt instanceof PathChangedEvent && last != null) {
+                    PathChangedEvent previous = (PathChangedEvent) result.get(last);
+                    PathChangedEvent change = (PathChangedEvent) evt;
+                    result.set(last, new PathChangedEvent(change.getPath(), previous
+                            .getOldValue(), change.getNewValue(), change.getTimeStamp()));
+                } else {
+                    result.add(evt);
+                    if (evt instanceof PathChangedEvent) {
+                        lastChanges.put(evt.getPath(), result.size() - 1);
+                    } else {
+                        lastChanges.remove(evt.getPath());
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Posts a batch of events in the mailbox of this subscription, and schedules its
+         * delivery if no delivery is already pending.
+         */
+        public void post(List<PathEvent> events) {
+            mailbox.offer(events);
+            depth.addAndGet(events.size());
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        /**
+         * Delivers the events waiting in the mailbox, in order.
+         */
+        public void run() {
+            try {
+                for (int i = 0; i < MAX_DELIVERIES_PER_RUN; i++) {
+                    List<PathEvent> events = mailbox.poll();
+                    if (events == null) {
+                        break;
+                    }
+                    if (!cancelled) {
+                        deliver(events, true);
+                    } else {
+                        depth.addAndGet(-events.size());
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // Events may have been posted after the last poll(), or the loop may have
+                // stopped early.
+                if (!mailbox.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Notifies the listener of a batch of events and updates the delivery metrics.
+         * {@link BatchContextListener}s receive the whole batch in a single call; other
+         * listeners are notified of each event in turn. A failure of the listener is
+         * reported to the current thread's uncaught exceptions handler, and does not
+         * prevent the delivery of the next events.
+         * 
+         * @param queued
+         *            whether the events come from the mailbox, in which case they are
+         *            removed from the queue depth as they are handed to the listener.
+         */
+        public void deliver(List<PathEvent> events, boolean queued) {
+            long now = System.currentTimeMillis();
+            for (PathEvent evt : events) {
+                long lag = Math.max(0, now - evt.getTimeStamp());
+                lastLag = lag;
+                if (lag > maxLag) {
+                    maxLag = lag;
+                }
+            }
+            delivered += events.size();
+            if (listener instanceof BatchContextListener) {
+                if (queued) {
+                    depth.addAndGet(-events.size());
+                }
+                try {
+                    ((BatchContextListener) listener).eventsOccured(cookie, Collections
+                            .unmodifiableList(events));
+                } catch (RuntimeException e) {
+                    reportFailure(e);
+                }
+            } else {
+                for (PathEvent evt : events) {
+                    if (queued) {
+                        depth.decrementAndGet();
+                    }
+                    try {
+                        notify(evt);
+                    } catch (RuntimeException e) {
+                        reportFailure(e);
+                    }
+                }
+            }
+        }
+
+        private void reportFailure(RuntimeException e) {
+            Thread th = Thread.currentThread();
+            th.getUncaughtExceptionHandler().uncaughtException(th, e);
+        }
+
+        /**
+         * Returns a snapshot of the delivery metrics of this subscription.
+         */
+        public DeliveryStatistics getStatistics() {
+            return new DeliveryStatistics(depth.get(), delivered, lastLag, maxLag);
+        }
+
         /**
          * Calls the appropriate method on the listener depending on the actual type of
          * the event and the kinds of events the subscriber is interested in.
          * 
          * @param evt
          *            the internal event
-         * @param cookie
-         *            the optional identifier of the watched expression
          */
-        public void notify(PathEvent evt, Object cookie) {
+        public void notify(PathEvent evt) {
             if (evt instanceof PathAddedEvent) {
                 notifyAddition((PathAddedEvent) evt);
             } else if (evt instanceof PathRemovedEvent) {
                 notifyRemoval((PathRemovedEvent) evt);
             } else if (evt instanceof PathChangedEvent) {
-                notifyChange((PathChangedEvent) evt, cookie);
+                notifyChange((PathChangedEvent) evt);
             }
         }
 
@@ -192,7 +489,7 @@ class SubscriptionManager implements EventListener, Runnable {
             }
         }
 
-        private void notifyChange(PathChangedEvent change, Object cookie) {
+        private void notifyChange(PathChangedEvent change) {
             if (matches(ATTRIBUTE_CHANGED)) {
                 listener.attributeChanged(change.getPath(), change.getOldValue(), change
                         .getNewValue(), change.getTimeStamp());
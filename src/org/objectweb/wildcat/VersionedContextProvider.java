@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import java.util.Collection;
+
+import org.objectweb.wildcat.providers.Versions;
+
+/**
+ * A <code>VersionedContextProvider</code> extends a plain {@link ContextProvider} with
+ * the ability to answer queries as of a past version of the context, as given by
+ * {@link Versions}. This is what allows the
+ * {@linkplain ContextSnapshot snapshots} of the context to see a consistent state,
+ * whatever the modifications made while they are used.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public interface VersionedContextProvider extends ContextProvider {
+    /**
+     * Looks up the locations which existed at a version of the context.
+     * 
+     * @param query
+     *            a relative path denoting the set of locations to look for.
+     * @param version
+     *            the version of the context read, which must still be open.
+     * @return a collection of all the absolute locations which existed at that version
+     *         inside this provider and matched the query.
+     * @see ContextProvider#lookup(Path)
+     */
+    Collection<Path> lookup(Path query, long version);
+
+    /**
+     * Looks up the value an attribute had at a version of the context.
+     * 
+     * @param attribute
+     *            the location of the attribute to look for, relative to this provider.
+     * @param version
+     *            the version of the context read, which must still be open.
+     * @return the value of the attribute at that version, it it existed, or
+     *         <code>null</code> otherwise.
+     * @see ContextProvider#lookupAttribute(Path)
+     */
+    Object lookupAttribute(Path attribute, long version);
+
+    /**
+     * Returns the clock which gives the versions of the modifications made in this
+     * provider.
+     */
+    Versions getVersions();
+
+    /**
+     * Sets the clock which gives the versions of the modifications made in this provider.
+     * All the providers of a context must share the clock of their container, so that a
+     * version is consistent across them.
+     * 
+     * @param versions
+     *            the clock of the context.
+     * @throws IllegalStateException
+     *             if this provider is mounted.
+     */
+    void setVersions(Versions versions);
+}
@@ -38,6 +38,18 @@ public interface DependencyGraph<T> {
 	void addDependency(T dependant, T dependency)
 			throws IllegalArgumentException;
 
+	/**
+	 * Registers dependencies from <code>dependant</code> to each of the
+	 * <code>dependencies</code>. Either all the dependencies are added, or
+	 * none of them.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if one of these dependencies would create a cycle in the
+	 *             graph.
+	 */
+	void addDependencies(T dependant, Collection<T> dependencies)
+			throws IllegalArgumentException;
+
 	/**
 	 * Registers that <code>dependant</code> does not depend on
 	 * <code>dependency</code> anymore.
@@ -47,7 +59,8 @@ public interface DependencyGraph<T> {
 	/**
 	 * Returns all the elements which depend directly on <code>dependency</code>,
 	 * i.e. all the elements which must be updated whenever
-	 * <code>dependency</code> changes.
+	 * <code>dependency</code> changes. The result is an unmodifiable snapshot,
+	 * which is not affected by later modifications of the graph.
 	 */
 	Collection<T> getAllDependingOn(T dependency);
 }
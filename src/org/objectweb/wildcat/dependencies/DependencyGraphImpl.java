@@ -19,18 +19,21 @@
  */
 package org.objectweb.wildcat.dependencies;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Default implementation of a generic dependency graph data structure.
+ * <p>
+ * Modifications are synchronized, but {@link #getAllDependingOn(Object)} does not take
+ * any lock nor allocate anything: the sets of dependants are immutable, and replaced by
+ * updated copies when the graph is modified.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
@@ -38,15 +41,15 @@ public class DependencyGraphImpl<T> implements DependencyGraph<T> {
     /**
      * Direct dependency links: from a element (the dependency) to the list of its
      * dependants, i.e. the elements which depend on it. More precisely, "X depends on Y"
-     * iff <code>dependantsOn.get(Y).contains(X)</code>.
+     * iff <code>dependantsOn.get(Y).contains(X)</code>. The sets are unmodifiable.
      */
-    private Map<T, Set<T>> dependantsOn;
+    private final Map<T, Set<T>> dependantsOn;
 
     /**
      * Creates a new, empty, dependency graph.
      */
     public DependencyGraphImpl() {
-        dependantsOn = new HashMap<T, Set<T>>();
+        dependantsOn = new ConcurrentHashMap<T, Set<T>>();
     }
 
     /*
@@ -63,11 +66,33 @@ public class DependencyGraphImpl<T> implements DependencyGraph<T> {
                                 + " already depends on " + dependant + ".");
             }
             Set<T> deps = dependantsOn.get(dependency);
-            if (deps == null) {
-                deps = new HashSet<T>();
-                dependantsOn.put(dependency, deps);
+            if (deps == null || !deps.contains(dependant)) {
+                deps = (deps == null) ? new HashSet<T>() : new HashSet<T>(deps);
+                deps.add(dependant);
+                dependantsOn.put(dependency, Collections.unmodifiableSet(deps));
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.DependencyGraph#addDependencies(java.lang.Object,
+     *      java.util.Collection)
+     */
+    public void addDependencies(T dependant, Collection<T> dependencies)
+            throws IllegalArgumentException {
+        synchronized (this) {
+            for (T dependency : dependencies) {
+                if (reachableFrom(dependant, dependency, dependantsOn)) {
+                    throw new IllegalArgumentException(
+                            "Invalid dependency would create a cycle: " + dependency
+                                    + " already depends on " + dependant + ".");
+                }
+            }
+            for (T dependency : dependencies) {
+                addDependency(dependant, dependency);
             }
-            deps.add(dependant);
         }
     }
 
@@ -79,11 +104,14 @@ public class DependencyGraphImpl<T> implements DependencyGraph<T> {
      */
     public void removeDependency(T dependant, T dependency) {
         synchronized (this) {
-            Collection<T> deps = dependantsOn.get(dependency);
-            if (deps != null) {
-                deps.remove(dependant);
-                if (deps.isEmpty()) {
+            Set<T> deps = dependantsOn.get(dependency);
+            if (deps != null && deps.contains(dependant)) {
+                if (deps.size() == 1) {
                     dependantsOn.remove(dependency);
+                } else {
+                    deps = new HashSet<T>(deps);
+                    deps.remove(dependant);
+                    dependantsOn.put(dependency, Collections.unmodifiableSet(deps));
                 }
             }
         }
@@ -95,15 +123,11 @@ public class DependencyGraphImpl<T> implements DependencyGraph<T> {
      * @see org.objectweb.wildcat.DependencyGraph#getAllDependingOn(java.lang.Object)
      */
     public Collection<T> getAllDependingOn(T dependency) {
-        synchronized (this) {
-            Collection<T> deps = dependantsOn.get(dependency);
-            if (deps == null) {
-                return Collections.emptySet();
-            } else {
-                Collection<T> result = new ArrayList<T>();
-                result.addAll(deps);
-                return Collections.unmodifiableCollection(result);
-            }
+        Collection<T> deps = dependantsOn.get(dependency);
+        if (deps == null) {
+            return Collections.emptySet();
+        } else {
+            return deps;
         }
     }
 
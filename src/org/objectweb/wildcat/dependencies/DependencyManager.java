@@ -19,24 +19,65 @@
  */
 package org.objectweb.wildcat.dependencies;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.objectweb.wildcat.ContextProvider;
 import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.PathPatternIndex;
 import org.objectweb.wildcat.events.EventBuffer;
 import org.objectweb.wildcat.events.EventListener;
+import org.objectweb.wildcat.events.EventMultiplexer;
 import org.objectweb.wildcat.events.PathEvent;
 
 /**
  * This class keeps track of dependencies between paths (e.g. synthetic paths defined in
  * terms of others), and asynchronously requests the appropriate updates when it receives
  * events.
+ * <p>
+ * The events are processed by batches. For each batch, the manager computes the set of
+ * all the paths which depend, directly or transitively, on the paths of the events, and
+ * updates each of them exactly once, in topological order: a path is only updated once
+ * all the paths it depends on have been updated. If the manager has been given an
+ * {@link EventMultiplexer} to publish the resulting events, all the changes caused by the
+ * batch are published together, as a single batch, once all the updates are done, so
+ * that listeners never observe a mix of old and new values. The events caused by the
+ * updates themselves are ignored by the manager, as their consequences have already been
+ * taken into account.
+ * <p>
+ * A dependency can be a {@linkplain Path#isPattern() pattern}, for definitions which
+ * depend on a dynamic set of attributes (e.g. <code>/hosts/*#load</code>). The patterns
+ * are indexed in a {@link PathPatternIndex}, so that the patterns concerned by an event
+ * are found without testing each of them. A path depending on a pattern is updated
+ * whenever an attribute matching the pattern is added, removed or changed, and whenever a
+ * resource containing such attributes is added or removed. A path can not depend on a
+ * pattern it matches itself, but longer cycles going through patterns are not detected.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
-public class DependencyManager extends DependencyGraphImpl<Path> implements
-        EventListener, Runnable {
+public class DependencyManager implements DependencyGraph<Path>, EventListener, Runnable {
+    /**
+     * The graph in which the dependencies are stored.
+     */
+    private DependencyGraph<Path> graph;
+
+    /**
+     * The patterns among the dependencies in the graph. Modifications are synchronized on
+     * the index.
+     */
+    private final PathPatternIndex<Path> patterns = new PathPatternIndex<Path>();
+
+    /**
+     * Whether {@link #patterns} may be non-empty, to avoid looking it up in the common
+     * case where no pattern is used.
+     */
+    private volatile boolean hasPatterns;
+
     /**
      * The buffer when received events are stored for further (asynchronous) processing.
      */
@@ -49,45 +90,298 @@ public class DependencyManager extends DependencyGraphImpl<Path> implements
     private ContextProvider target;
 
     /**
-     * Creates a new <code>DependencyManager</code>.
+     * The multiplexer through which the events caused by the updates are published, or
+     * <code>null</code>.
+     */
+    private EventMultiplexer publisher;
+
+    /**
+     * The thread currently propagating a batch, whose events must be ignored.
+     */
+    private volatile Thread propagating;
+
+    /**
+     * Creates a new <code>DependencyManager</code> which does not group the events caused
+     * by the updates.
      * 
      * @param target
      */
     public DependencyManager(ContextProvider target) {
-        assert target != null;
+        this(target, null);
+    }
+
+    /**
+     * Creates a new <code>DependencyManager</code>.
+     * 
+     * @param target
+     *            the provider to which the update requests are sent.
+     * @param publisher
+     *            the multiplexer through which the events caused by the updates are
+     *            published, and in which they are grouped in a single batch per batch of
+     *            events processed. May be <code>null</code>.
+     */
+    public DependencyManager(ContextProvider target, EventMultiplexer publisher) {
+        this(target, publisher, new DependencyGraphImpl<Path>());
+    }
+
+    /**
+     * Creates a new <code>DependencyManager</code> storing the dependencies in the given
+     * graph.
+     * 
+     * @param target
+     *            the provider to which the update requests are sent.
+     * @param publisher
+     *            the multiplexer through which the events caused by the updates are
+     *            published, and in which they are grouped in a single batch per batch of
+     *            events processed. May be <code>null</code>.
+     * @param graph
+     *            the graph in which to store the dependencies, initially empty.
+     */
+    public DependencyManager(ContextProvider target, EventMultiplexer publisher,
+            DependencyGraph<Path> graph) {
+        assert target != null && graph != null;
+        this.graph = graph;
         this.buffer = new EventBuffer();
         this.target = target;
+        this.publisher = publisher;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.dependencies.DependencyGraph#addDependency(java.lang.Object,
+     *      java.lang.Object)
+     */
+    public void addDependency(Path dependant, Path dependency)
+            throws IllegalArgumentException {
+        if (dependency.isDefinite()) {
+            graph.addDependency(dependant, dependency);
+        } else {
+            checkPattern(dependant, dependency);
+            synchronized (patterns) {
+                boolean known = !graph.getAllDependingOn(dependency).isEmpty();
+                graph.addDependency(dependant, dependency);
+                if (!known) {
+                    patterns.add(dependency, dependency);
+                    hasPatterns = true;
+                }
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.dependencies.DependencyGraph#addDependencies(java.lang.Object,
+     *      java.util.Collection)
+     */
+    public void addDependencies(Path dependant, Collection<Path> dependencies)
+            throws IllegalArgumentException {
+        List<Path> newPatterns = new ArrayList<Path>();
+        for (Path dependency : dependencies) {
+            if (dependency.isPattern()) {
+                checkPattern(dependant, dependency);
+                newPatterns.add(dependency);
+            }
+        }
+        if (newPatterns.isEmpty()) {
+            graph.addDependencies(dependant, dependencies);
+            return;
+        }
+        synchronized (patterns) {
+            for (Iterator<Path> iter = newPatterns.iterator(); iter.hasNext();) {
+                if (!graph.getAllDependingOn(iter.next()).isEmpty()) {
+                    iter.remove();
+                }
+            }
+            graph.addDependencies(dependant, dependencies);
+            for (Path pattern : newPatterns) {
+                patterns.add(pattern, pattern);
+            }
+            hasPatterns = true;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.dependencies.DependencyGraph#removeDependency(java.lang.Object,
+     *      java.lang.Object)
+     */
+    public void removeDependency(Path dependant, Path dependency) {
+        if (dependency.isDefinite()) {
+            graph.removeDependency(dependant, dependency);
+        } else {
+            synchronized (patterns) {
+                graph.removeDependency(dependant, dependency);
+                if (graph.getAllDependingOn(dependency).isEmpty()) {
+                    patterns.remove(dependency, dependency);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns all the paths which depend directly on <code>dependency</code>, either
+     * explicitly or through a pattern matching it. If <code>dependency</code> is a
+     * resource, the paths depending on a pattern which matches it or some path below it
+     * are included, as the addition or removal of the resource concerns them.
+     * 
+     * @see org.objectweb.wildcat.dependencies.DependencyGraph#getAllDependingOn(java.lang.Object)
+     */
+    public Collection<Path> getAllDependingOn(Path dependency) {
+        Collection<Path> dependants = graph.getAllDependingOn(dependency);
+        if (!hasPatterns || dependency.isPattern()) {
+            return dependants;
+        }
+        List<Path> matches = new ArrayList<Path>();
+        if (dependency.isResource()) {
+            patterns.collectMatchesBelow(dependency, matches);
+        } else {
+            patterns.collectMatches(dependency, matches);
+        }
+        if (matches.isEmpty()) {
+            return dependants;
+        }
+        Set<Path> result = new HashSet<Path>(dependants);
+        for (Path pattern : matches) {
+            result.addAll(graph.getAllDependingOn(pattern));
+        }
+        return result;
+    }
+
+    /**
+     * Rejects a dependency of a path on a pattern which matches it.
+     */
+    private void checkPattern(Path dependant, Path pattern) throws IllegalArgumentException {
+        if (dependant.matches(pattern)) {
+            throw new IllegalArgumentException("Invalid dependency would create a cycle: "
+                    + dependant + " matches " + pattern + ".");
+        }
+    }
+
+    /**
+     * Returns the buffer in which the received events wait to be processed, to configure
+     * it or consult its metrics.
+     */
+    public EventBuffer getBuffer() {
+        return buffer;
     }
 
     /**
      * Buffers the event for further processing.
      */
     public void eventOccured(PathEvent evt) {
-        buffer.eventOccured(evt);
+        if (Thread.currentThread() != propagating) {
+            buffer.eventOccured(evt);
+        }
     }
 
     /**
      * Buffers the event for further processing.
      */
     public void eventOccured(List<PathEvent> evts) {
-        buffer.eventOccured(evts);
+        if (Thread.currentThread() != propagating) {
+            buffer.eventOccured(evts);
+        }
     }
 
     /**
-     * Takes each buffered event in turn, and requests an update for all the paths which
-     * have declared dependencies on it.
+     * Takes the buffered events by batches, and {@linkplain #propagate(List) propagates}
+     * each batch.
      */
     public void run() {
         while (true) {
             try {
-                PathEvent evt = buffer.take();
-                Collection<Path> deps = getAllDependingOn(evt.getPath());
-                for (Path path : deps) {
-                    target.update(path, evt);
-                }
+                propagate(buffer.takeBatch());
             } catch (InterruptedException e) {
                 break;
             }
         }
     }
+
+    /**
+     * Updates all the paths which depend, directly or transitively, on the paths of a
+     * batch of events, each exactly once and in topological order. Each update is given
+     * the paths of the events and the paths already updated for the batch, as the
+     * changes which caused it.
+     * 
+     * @param events
+     *            the events to propagate.
+     */
+    public void propagate(List<PathEvent> events) {
+        List<Path> order = sortAffected(events);
+        if (order.isEmpty()) {
+            return;
+        }
+        Set<Path> changed = new HashSet<Path>();
+        for (PathEvent evt : events) {
+            changed.add(evt.getPath());
+        }
+        Collection<Path> changes = Collections.unmodifiableSet(changed);
+        propagating = Thread.currentThread();
+        if (publisher != null) {
+            publisher.beginBatch();
+        }
+        try {
+            for (Path path : order) {
+                target.update(path, changes);
+                changed.add(path);
+            }
+        } finally {
+            try {
+                if (publisher != null) {
+                    publisher.endBatch();
+                }
+            } finally {
+                propagating = null;
+            }
+        }
+    }
+
+    /**
+     * Computes the paths which depend, directly or transitively, on the paths of the
+     * events, in topological order (the reverse of the post-order of a depth-first
+     * traversal). Only the paths reached through a dependency are returned: the paths of
+     * the events themselves are not, unless they depend on another one.
+     */
+    private List<Path> sortAffected(List<PathEvent> events) {
+        Set<Path> visited = new HashSet<Path>();
+        Set<Path> reached = new HashSet<Path>();
+        List<Path> postOrder = new ArrayList<Path>();
+        // Explicit stack of the paths being visited and of their remaining dependants.
+        List<Path> paths = new ArrayList<Path>();
+        List<Iterator<Path>> dependants = new ArrayList<Iterator<Path>>();
+        for (PathEvent evt : events) {
+            Path seed = evt.getPath();
+            if (!visited.add(seed)) {
+                continue;
+            }
+            paths.add(seed);
+            dependants.add(getAllDependingOn(seed).iterator());
+            while (!paths.isEmpty()) {
+                int top = paths.size() - 1;
+                Iterator<Path> iter = dependants.get(top);
+                if (iter.hasNext()) {
+                    Path next = iter.next();
+                    reached.add(next);
+                    if (visited.add(next)) {
+                        paths.add(next);
+                        dependants.add(getAllDependingOn(next).iterator());
+                    }
+                } else {
+                    postOrder.add(paths.remove(top));
+                    dependants.remove(top);
+                }
+            }
+        }
+        List<Path> result = new ArrayList<Path>(reached.size());
+        for (int i = postOrder.size() - 1; i >= 0; i--) {
+            Path path = postOrder.get(i);
+            if (reached.contains(path)) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
 }
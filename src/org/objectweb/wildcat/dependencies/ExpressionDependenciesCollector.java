@@ -9,7 +9,9 @@ import org.objectweb.wildcat.expressions.ExpressionVisitorAdapter;
 
 /**
  * An expression visitor which collects all the literal paths constants it finds in the
- * expression, effectively computing the dependencies of the expression.
+ * expression, effectively computing the dependencies of the expression. The paths found
+ * can be patterns (e.g. <code>/hosts/*#load</code>), which the {@link DependencyManager}
+ * matches against the events it receives.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.dependencies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An implementation of {@link DependencyGraph} which maintains a topological order of
+ * its elements incrementally, using the algorithm of Pearce and Kelly (<em>A Dynamic
+ * Topological Sort Algorithm for Directed Acyclic Graphs</em>, 2006), to detect cycles
+ * cheaply.
+ * <p>
+ * Each element has a rank, such that an element always ranks before the elements which
+ * depend on it. A new dependency which is consistent with the current ranks (the usual
+ * case when definitions are loaded in order) is added in constant time. Otherwise, only
+ * the elements whose rank lies between the ranks of the two ends of the new dependency
+ * are visited, to check for a cycle and to reorder them. New elements are ranked so
+ * that a dependency involving at least one new element never requires any reordering. In comparison,
+ * {@link DependencyGraphImpl} searches the whole graph reachable from the dependant on
+ * every insertion.
+ * <p>
+ * Modifications are synchronized, but {@link #getAllDependingOn(Object)} does not take
+ * any lock nor allocate anything: the dependants of each element are published as an
+ * immutable snapshot, which modifications replace by an updated copy.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ * @param <T>
+ *            the type of the elements of the graph.
+ */
+public class IncrementalDependencyGraph<T> implements DependencyGraph<T> {
+    /**
+     * Orders nodes by increasing rank.
+     */
+    private static final Comparator<Node<?>> BY_RANK = new Comparator<Node<?>>() {
+        public int compare(Node<?> n1, Node<?> n2) {
+            return (n1.rank < n2.rank) ? -1 : ((n1.rank == n2.rank) ? 0 : 1);
+        }
+    };
+
+    /**
+     * The nodes of the graph, indexed by element. A node is removed when it has no more
+     * dependencies nor dependants.
+     */
+    private final Map<T, Node<T>> nodes = new HashMap<T, Node<T>>();
+
+    /**
+     * Immutable snapshots of the dependants of each element which has some, for the
+     * lock-free lookups.
+     */
+    private final ConcurrentHashMap<T, Collection<T>> dependantsOn = new ConcurrentHashMap<T, Collection<T>>();
+
+    /**
+     * The rank to give to the next new node created as a dependant, after all the
+     * existing ones.
+     */
+    private int nextRank;
+
+    /**
+     * The rank of the last node created as a dependency, before all the existing ones.
+     */
+    private int firstRank;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.dependencies.DependencyGraph#addDependency(java.lang.Object,
+     *      java.lang.Object)
+     */
+    public synchronized void addDependency(T dependant, T dependency)
+            throws IllegalArgumentException {
+        addEdge(dependant, dependency);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.dependencies.DependencyGraph#addDependencies(java.lang.Object,
+     *      java.util.Collection)
+     */
+    public synchronized void addDependencies(T dependant, Collection<T> dependencies)
+            throws IllegalArgumentException {
+        List<T> added = new ArrayList<T>(dependencies.size());
+        try {
+            for (T dependency : dependencies) {
+                if (addEdge(dependant, dependency)) {
+                    added.add(dependency);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Removing edges never invalidates the ranks.
+            for (T dependency : added) {
+                removeDependency(dependant, dependency);
+            }
+            throw e;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.dependencies.DependencyGraph#removeDependency(java.lang.Object,
+     *      java.lang.Object)
+     */
+    public synchronized void removeDependency(T dependant, T dependency) {
+        Node<T> from = nodes.get(dependency);
+        Node<T> to = nodes.get(dependant);
+        if (from != null && to != null && from.dependants.remove(to)) {
+            to.dependencies.remove(from);
+            publish(from);
+            discardIfIsolated(from);
+            discardIfIsolated(to);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.dependencies.DependencyGraph#getAllDependingOn(java.lang.Object)
+     */
+    public Collection<T> getAllDependingOn(T dependency) {
+        Collection<T> dependants = dependantsOn.get(dependency);
+        if (dependants == null) {
+            return Collections.emptySet();
+        } else {
+            return dependants;
+        }
+    }
+
+    /**
+     * Adds an edge from <code>dependency</code> to <code>dependant</code>, restoring the
+     * ranks invariant if necessary.
+     * 
+     * @return <code>true</code> if the edge is new, <code>false</code> if it already
+     *         existed.
+     * @throws IllegalArgumentException
+     *             if the edge would create a cycle. The graph is not modified.
+     */
+    private boolean addEdge(T dependant, T dependency) throws IllegalArgumentException {
+        if (dependant.equals(dependency)) {
+            throw cycle(dependant, dependency);
+        }
+        // A new node has no edges yet, so it can be ranked anywhere: rank new
+        // dependencies first and new dependants last, so that the edge is consistent with
+        // the order when at least one of its ends is new, whatever the loading order.
+        Node<T> from = nodes.get(dependency);
+        if (from == null) {
+            from = new Node<T>(dependency, --firstRank);
+            nodes.put(dependency, from);
+        }
+        Node<T> to = nodes.get(dependant);
+        if (to == null) {
+            to = new Node<T>(dependant, nextRank++);
+            nodes.put(dependant, to);
+        }
+        if (from.dependants.contains(to)) {
+            return false;
+        }
+        if (to.rank < from.rank) {
+            reorder(from, to);
+        }
+        from.dependants.add(to);
+        to.dependencies.add(from);
+        publish(from);
+        return true;
+    }
+
+    /**
+     * Replaces the published snapshot of the dependants of <code>node</code>.
+     */
+    private void publish(Node<T> node) {
+        if (node.dependants.isEmpty()) {
+            dependantsOn.remove(node.value);
+        } else {
+            List<T> snapshot = new ArrayList<T>(node.dependants.size());
+            for (Node<T> dependant : node.dependants) {
+                snapshot.add(dependant.value);
+            }
+            dependantsOn.put(node.value, Collections.unmodifiableList(snapshot));
+        }
+    }
+
+    /**
+     * Reorders the nodes affected by a new edge from <code>from</code> to
+     * <code>to</code>, where <code>to</code> currently ranks before <code>from</code>.
+     */
+    private void reorder(Node<T> from, Node<T> to) {
+        int upperBound = from.rank;
+        int lowerBound = to.rank;
+        // Nodes reachable from "to" which rank before "from". If "from" is one of them,
+        // the new edge closes a cycle.
+        List<Node<T>> forward = new ArrayList<Node<T>>();
+        if (!visitDependants(to, upperBound, forward, from)) {
+            for (Node<T> n : forward) {
+                n.visited = false;
+            }
+            discardIfIsolated(from);
+            discardIfIsolated(to);
+            throw cycle(to.value, from.value);
+        }
+        // Nodes from which "from" is reachable, which rank after "to".
+        List<Node<T>> backward = new ArrayList<Node<T>>();
+        visitDependencies(from, lowerBound, backward);
+        Collections.sort(forward, BY_RANK);
+        Collections.sort(backward, BY_RANK);
+        // Reuse the ranks of the affected nodes: "from" and its ancestors first, then
+        // "to" and its descendants, each group keeping its relative order.
+        int[] ranks = new int[forward.size() + backward.size()];
+        int i = 0;
+        for (Node<T> n : backward) {
+            ranks[i++] = n.rank;
+            n.visited = false;
+        }
+        for (Node<T> n : forward) {
+            ranks[i++] = n.rank;
+            n.visited = false;
+        }
+        Arrays.sort(ranks);
+        i = 0;
+        for (Node<T> n : backward) {
+            n.rank = ranks[i++];
+        }
+        for (Node<T> n : forward) {
+            n.rank = ranks[i++];
+        }
+    }
+
+    /**
+     * Depth-first traversal of the dependants of <code>start</code> ranking before
+     * <code>upperBound</code>.
+     * 
+     * @return <code>false</code> if <code>target</code> was reached.
+     */
+    private boolean visitDependants(Node<T> start, int upperBound, List<Node<T>> visited,
+            Node<T> target) {
+        List<Node<T>> stack = new ArrayList<Node<T>>();
+        start.visited = true;
+        visited.add(start);
+        stack.add(start);
+        while (!stack.isEmpty()) {
+            Node<T> n = stack.remove(stack.size() - 1);
+            for (Node<T> next : n.dependants) {
+                if (next == target) {
+                    return false;
+                } else if (!next.visited && next.rank < upperBound) {
+                    next.visited = true;
+                    visited.add(next);
+                    stack.add(next);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Depth-first traversal of the dependencies of <code>start</code> ranking after
+     * <code>lowerBound</code>.
+     */
+    private void visitDependencies(Node<T> start, int lowerBound, List<Node<T>> visited) {
+        List<Node<T>> stack = new ArrayList<Node<T>>();
+        start.visited = true;
+        visited.add(start);
+        stack.add(start);
+        while (!stack.isEmpty()) {
+            Node<T> n = stack.remove(stack.size() - 1);
+            for (Node<T> previous : n.dependencies) {
+                if (!previous.visited && previous.rank > lowerBound) {
+                    previous.visited = true;
+                    visited.add(previous);
+                    stack.add(previous);
+                }
+            }
+        }
+    }
+
+    private void discardIfIsolated(Node<T> node) {
+        if (node.dependants.isEmpty() && node.dependencies.isEmpty()) {
+            nodes.remove(node.value);
+        }
+    }
+
+    private IllegalArgumentException cycle(T dependant, T dependency) {
+        return new IllegalArgumentException("Invalid dependency would create a cycle: "
+                + dependency + " already depends on " + dependant + ".");
+    }
+
+    /**
+     * A node of the graph.
+     */
+    private static final class Node<T> {
+        private final T value;
+
+        /**
+         * The position of this node in the topological order.
+         */
+        private int rank;
+
+        private final Set<Node<T>> dependants = new HashSet<Node<T>>();
+
+        private final Set<Node<T>> dependencies = new HashSet<Node<T>>();
+
+        /**
+         * Marker used by the traversals, always <code>false</code> between two
+         * operations.
+         */
+        private boolean visited;
+
+        Node(T value, int rank) {
+            this.value = value;
+            this.rank = rank;
+        }
+    }
+}
@@ -19,39 +19,106 @@
  */
 package org.objectweb.wildcat.events;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.objectweb.wildcat.Path;
 
 /**
  * An <code>EventBuffer</code> buffers the path-related events it receives through its
  * {@link EventListener} interface in an internal queue/FIFO, and makes them avaiable
  * asynchronously using its {@link EventQueue} interface. In effect, it a a push-to-pull
  * converter.
+ * <p>
+ * Each notification received, whether a single event or a list of events, occupies one
+ * entry of the FIFO: a list is inserted as a whole, and is never split nor interleaved
+ * with the events of other producers. The consumer can take all the events available at
+ * once using {@link #takeBatch()}.
+ * <p>
+ * The FIFO has a bounded capacity, counted in notifications. What happens when a
+ * notification is received while it is full is determined by the buffer's
+ * {@link OverflowPolicy}. Both the capacity and the policy can be changed at any time.
+ * The buffer counts the events it has dropped or coalesced because of its policy.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
 public class EventBuffer implements EventListener, EventQueue {
+    /**
+     * The default capacity of the FIFO.
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
     /**
      * The internal FIFO.
      */
-    private BlockingQueue<PathEvent> queue;
+    private final LinkedList<Notification> queue = new LinkedList<Notification>();
+
+    /**
+     * The number of events in the notifications of the FIFO.
+     */
+    private int count;
+
+    /**
+     * With the {@link OverflowPolicy#COALESCE} policy, the last slot of the FIFO
+     * concerning each path.
+     */
+    private final Map<Path, Slot> lastByPath = new HashMap<Path, Slot>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private int capacity;
+
+    private OverflowPolicy policy;
+
+    private long droppedCount;
+
+    private long coalescedCount;
+
+    /**
+     * Creates a new <code>EventBuffer</code> with a specific FIFO size and overflow
+     * policy.
+     * 
+     * @param size
+     *            the size of the FIFO.
+     * @param policy
+     *            what to do when an event is received while the FIFO is full.
+     */
+    public EventBuffer(int size, OverflowPolicy policy) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + size);
+        }
+        assert policy != null;
+        this.capacity = size;
+        this.policy = policy;
+    }
 
     /**
-     * Creates a new <code>EventBuffer</code> with a specific FIFO size.
+     * Creates a new <code>EventBuffer</code> with a specific FIFO size, which blocks the
+     * producers when it is full.
      * 
      * @param size
      *            the size of the FIFO.
      */
     public EventBuffer(int size) {
-        this.queue = new ArrayBlockingQueue<PathEvent>(size);
+        this(size, OverflowPolicy.BLOCK);
     }
 
     /**
-     * Creates a new <code>EventBuffer</code> with a default FIFO size.
+     * Creates a new <code>EventBuffer</code> with a default FIFO size, which blocks the
+     * producers when it is full.
      */
     public EventBuffer() {
-        this(32);
+        this(DEFAULT_CAPACITY);
     }
 
     /*
@@ -60,19 +127,114 @@ public class EventBuffer implements EventListener, EventQueue {
      * @see org.objectweb.wildcat.events.PathEventListener#eventOccured(org.objectweb.wildcat.events.PathEvent)
      */
     public void eventOccured(PathEvent evt) {
-        try {
-            queue.put(evt);
-        } catch (InterruptedException e) {
-            // Accept interruption. Nothing special to do.
-        }
+        eventOccured(Collections.singletonList(evt));
     }
     
     /* (non-Javadoc)
      * @see org.objectweb.wildcat.events.EventListener#eventOccured(java.util.List)
      */
     public void eventOccured(List<PathEvent> evts) {
-        for (PathEvent event : evts) {
-            eventOccured(event);
+        if (evts.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            put(evts);
+        } catch (InterruptedException e) {
+            // Accept interruption. Nothing special to do.
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts a notification in the FIFO according to the overflow policy. Must be called
+     * with the lock held. The lock is only released while waiting for room, before
+     * anything is inserted, so the events are always inserted together.
+     */
+    private void put(List<PathEvent> evts) throws InterruptedException {
+        while (queue.size() >= capacity) {
+            if (policy == OverflowPolicy.COALESCE && canCoalesceAll(evts)) {
+                break;
+            } else if (policy == OverflowPolicy.DROP_OLDEST) {
+                Notification oldest = queue.removeFirst();
+                forget(oldest);
+                count -= oldest.remaining();
+                droppedCount += oldest.remaining();
+            } else if (policy == OverflowPolicy.DROP_NEWEST) {
+                droppedCount += evts.size();
+                return;
+            } else {
+                notFull.await();
+            }
+        }
+        Notification notification = new Notification(evts.size());
+        for (PathEvent evt : evts) {
+            if (policy == OverflowPolicy.COALESCE && coalesce(evt)) {
+                coalescedCount++;
+            } else {
+                Slot slot = new Slot(evt);
+                notification.slots.add(slot);
+                if (policy == OverflowPolicy.COALESCE) {
+                    lastByPath.put(evt.getPath(), slot);
+                }
+            }
+        }
+        if (notification.remaining() > 0) {
+            queue.addLast(notification);
+            count += notification.remaining();
+            notEmpty.signal();
+        }
+    }
+
+    /**
+     * Tests whether all the events of a list can be merged into events already in the
+     * FIFO, in which case the list needs no room.
+     */
+    private boolean canCoalesceAll(List<PathEvent> evts) {
+        for (PathEvent evt : evts) {
+            if (!(evt instanceof PathChangedEvent)) {
+                return false;
+            }
+            Slot last = lastByPath.get(evt.getPath());
+            if (last == null || !(last.event instanceof PathChangedEvent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tries to merge an attribute change with the last event queued for the same
+     * attribute, if it is also a change.
+     * 
+     * @return <code>true</code> iff the event has been merged.
+     */
+    private boolean coalesce(PathEvent evt) {
+        if (!(evt instanceof PathChangedEvent)) {
+            return false;
+        }
+        Slot last = lastByPath.get(evt.getPath());
+        if (last == null || !(last.event instanceof PathChangedEvent)) {
+            return false;
+        }
+        PathChangedEvent previous = (PathChangedEvent) last.event;
+        PathChangedEvent change = (PathChangedEvent) evt;
+        last.event = new PathChangedEvent(change.getPath(), previous.getOldValue(), change
+                .getNewValue(), change.getTimeStamp());
+        return true;
+    }
+
+    private void forget(Slot slot) {
+        Path path = slot.event.getPath();
+        if (lastByPath.get(path) == slot) {
+            lastByPath.remove(path);
+        }
+    }
+
+    private void forget(Notification notification) {
+        for (int i = notification.next; i < notification.slots.size(); i++) {
+            forget(notification.slots.get(i));
         }
     }
 
@@ -82,6 +244,191 @@ public class EventBuffer implements EventListener, EventQueue {
      * @see org.objectweb.wildcat.events.EventQueue#take()
      */
     public PathEvent take() throws InterruptedException {
-        return queue.take();
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                notEmpty.await();
+            }
+            Notification first = queue.getFirst();
+            Slot slot = first.slots.get(first.next++);
+            forget(slot);
+            count--;
+            if (first.remaining() == 0) {
+                queue.removeFirst();
+                notFull.signal();
+            }
+            return slot.event;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns all the events currently in the buffer, in order, blocking until at least
+     * one is available.
+     * 
+     * @return the next events from this source, in a new list which is never empty.
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for an event to be
+     *             available.
+     */
+    public List<PathEvent> takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                notEmpty.await();
+            }
+            List<PathEvent> batch = new ArrayList<PathEvent>(count);
+            for (Notification notification : queue) {
+                for (int i = notification.next; i < notification.slots.size(); i++) {
+                    batch.add(notification.slots.get(i).event);
+                }
+            }
+            queue.clear();
+            count = 0;
+            lastByPath.clear();
+            notFull.signalAll();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events currently in the buffer.
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the maximum number of notifications (single events or lists of events) the
+     * buffer can hold.
+     */
+    public int getCapacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the maximum number of notifications the buffer can hold. If the buffer
+     * currently contains more notifications than the new capacity, they are kept, but new
+     * ones are handled according to the overflow policy until enough of them have been
+     * consumed.
+     * 
+     * @param capacity
+     *            the new capacity, which must be positive.
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size: " + capacity);
+        }
+        lock.lock();
+        try {
+            this.capacity = capacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the current overflow policy of this buffer.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        lock.lock();
+        try {
+            return policy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the overflow policy of this buffer. Only the events received after the
+     * change are affected.
+     * 
+     * @param policy
+     *            the new policy.
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        assert policy != null;
+        lock.lock();
+        try {
+            this.policy = policy;
+            lastByPath.clear();
+            // Blocked producers may now be able to drop or coalesce their event.
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events discarded by the {@link OverflowPolicy#DROP_OLDEST}
+     * and {@link OverflowPolicy#DROP_NEWEST} policies since the creation of this buffer.
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events merged into an already buffered event by the
+     * {@link OverflowPolicy#COALESCE} policy since the creation of this buffer.
+     */
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalescedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * An event of a notification in the FIFO. With the {@link OverflowPolicy#COALESCE}
+     * policy, the event in a slot can be replaced by a merged one while it waits in the
+     * FIFO.
+     */
+    private static final class Slot {
+        private PathEvent event;
+
+        Slot(PathEvent event) {
+            this.event = event;
+        }
+    }
+
+    /**
+     * The events received in one notification, which occupy a single entry of the FIFO.
+     */
+    private static final class Notification {
+        private final List<Slot> slots;
+
+        /**
+         * The index of the next slot to be taken.
+         */
+        private int next;
+
+        Notification(int size) {
+            this.slots = new ArrayList<Slot>(size);
+        }
+
+        int remaining() {
+            return slots.size() - next;
+        }
     }
 }
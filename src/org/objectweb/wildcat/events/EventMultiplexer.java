@@ -1,5 +1,6 @@
 package org.objectweb.wildcat.events;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -8,12 +9,21 @@ import java.util.List;
 /**
  * This event listener forwards all the events it receives to a dynamically configurable
  * set of other listeners.
+ * <p>
+ * A thread can group all the events it causes into a single notification by enclosing
+ * its actions between {@link #beginBatch()} and {@link #endBatch()}. This does not affect
+ * the events received from other threads in the meantime.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
 public class EventMultiplexer implements EventListener {
     private Collection<EventListener> listeners;
 
+    /**
+     * The events collected by each thread which has opened a batch.
+     */
+    private final ThreadLocal<List<PathEvent>> batches = new ThreadLocal<List<PathEvent>>();
+
     /**
      * Creates a new event multiplexer.
      */
@@ -41,10 +51,47 @@ public class EventMultiplexer implements EventListener {
         listeners.remove(listener);
     }
 
+    /**
+     * Starts collecting the events received from the current thread, until the call to
+     * {@link #endBatch()}. Batches can not be nested.
+     * 
+     * @throws IllegalStateException
+     *             if the current thread already has an open batch.
+     */
+    public void beginBatch() {
+        if (batches.get() != null) {
+            throw new IllegalStateException("Batch already open.");
+        }
+        batches.set(new ArrayList<PathEvent>());
+    }
+
+    /**
+     * Ends the current thread's batch, and forwards all the events it has collected to
+     * all the target listeners in a single notification.
+     * 
+     * @throws IllegalStateException
+     *             if the current thread has no open batch.
+     */
+    public void endBatch() {
+        List<PathEvent> batch = batches.get();
+        if (batch == null) {
+            throw new IllegalStateException("No open batch.");
+        }
+        batches.remove();
+        if (!batch.isEmpty()) {
+            eventOccured(batch);
+        }
+    }
+
     /**
      * Forwards the events to all the target listeners in turn, in a unspecified order.
      */
     public void eventOccured(List<PathEvent> evts) {
+        List<PathEvent> batch = batches.get();
+        if (batch != null) {
+            batch.addAll(evts);
+            return;
+        }
         for (EventListener l : listeners) {
             l.eventOccured(evts);
         }
@@ -54,6 +101,11 @@ public class EventMultiplexer implements EventListener {
      * Forwards the event to all the target listeners in turn, in a unspecified order.
      */
     public void eventOccured(PathEvent evt) {
+        List<PathEvent> batch = batches.get();
+        if (batch != null) {
+            batch.add(evt);
+            return;
+        }
         for (EventListener l : listeners) {
             l.eventOccured(evt);
         }
@@ -19,6 +19,8 @@
  */
 package org.objectweb.wildcat.events;
 
+import java.util.List;
+
 /**
  * Interface to pull path-related events. This interface is the dual of
  * {@link EventListener}.
@@ -36,4 +38,15 @@ public interface EventQueue {
      *             available.
      */
     PathEvent take() throws InterruptedException;
+
+    /**
+     * Returns all the path-related events currently available from this source, in
+     * order, blocking if none is currently available.
+     * 
+     * @return the next events from this source, in a list which is never empty.
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for an event to be
+     *             available.
+     */
+    List<PathEvent> takeBatch() throws InterruptedException;
 }
@@ -14,6 +14,45 @@ public class EventSource {
      * The listener we notify.
      */
     protected EventListener listener;
+
+    /**
+     * The events notified since the outermost call to {@link #beginBatch()}, or
+     * <code>null</code> if no batch is open.
+     */
+    private List<PathEvent> batch;
+
+    /**
+     * The number of nested calls to {@link #beginBatch()} not yet matched by a call to
+     * {@link #endBatch()}.
+     */
+    private int batchDepth;
+
+    /**
+     * Starts collecting the events notified by this source instead of sending them, until
+     * the matching call to {@link #endBatch()}. Calls can be nested. Must be called by a
+     * thread which holds this object's monitor until the end of the batch, so that the
+     * batch only contains its own events.
+     */
+    protected synchronized void beginBatch() {
+        if (batchDepth++ == 0) {
+            batch = new ArrayList<PathEvent>();
+        }
+    }
+
+    /**
+     * Ends a batch started by {@link #beginBatch()}. When the outermost batch ends, all
+     * the events collected are sent to the listener in a single notification.
+     */
+    protected synchronized void endBatch() {
+        assert batchDepth > 0;
+        if (--batchDepth == 0) {
+            List<PathEvent> events = batch;
+            batch = null;
+            if (listener != null && !events.isEmpty()) {
+                listener.eventOccured(events);
+            }
+        }
+    }
     
     /**
      * Convenience method to notify the listener using the most appropriate method
@@ -23,6 +62,10 @@ public class EventSource {
     protected synchronized void notify(PathEvent... events) {
         if (listener == null || events.length == 0) {
             return;
+        } else if (batch != null) {
+            for (PathEvent evt : events) {
+                batch.add(evt);
+            }
         } else if (events.length == 1) {
             listener.eventOccured(events[0]);
         } else {
@@ -40,7 +83,9 @@ public class EventSource {
      * @param events the events to notify.
      */
     protected synchronized void notify(List<PathEvent> events) {
-        if (listener != null) {
+        if (batch != null) {
+            batch.addAll(events);
+        } else if (listener != null) {
             listener.eventOccured(events);
         }
     }
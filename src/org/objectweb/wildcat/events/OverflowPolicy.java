@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.events;
+
+/**
+ * The possible behaviours of an {@link EventBuffer} when it receives an event while it is
+ * full. A list of events received in one notification is handled as a single unit.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public enum OverflowPolicy {
+    /**
+     * The producer of the event is blocked until there is room for it in the buffer.
+     * No event is lost, but a slow consumer slows down the producers.
+     */
+    BLOCK,
+    /**
+     * The oldest event in the buffer is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The new event is discarded.
+     */
+    DROP_NEWEST,
+    /**
+     * An attribute change is merged with the change of the same attribute still waiting
+     * in the buffer, if any, into a single {@link PathChangedEvent} going from the
+     * oldest previous value to the newest value. The coalescing is done whether the
+     * buffer is full or not. If the event cannot be coalesced and the buffer is full, the
+     * producer is blocked as with {@link #BLOCK}.
+     */
+    COALESCE
+}
@@ -95,6 +95,6 @@ public class PathChangedEvent extends PathEvent {
      */
     @Override
     public String toString() {
-        return "~" + path + " : " + oldValue + " -> " + newValue;
+        return "~" + path + " : " + getOldValue() + " -> " + getNewValue();
     }
 }
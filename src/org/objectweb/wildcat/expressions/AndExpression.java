@@ -19,6 +19,7 @@
  */
 package org.objectweb.wildcat.expressions;
 
+import java.util.Arrays;
 
 /**
  * Represents a boolean conjunction of an arbitraty number of clauses. If there are no
@@ -33,6 +34,11 @@ public class AndExpression implements Expression {
      */
     private Expression[] clauses;
 
+    /**
+     * The hash code of this expression, computed on demand.
+     */
+    private int hash;
+
     /**
      * Creates a new <code>AndExpression</code>.
      * 
@@ -79,4 +85,33 @@ public class AndExpression implements Expression {
             clause.accept(visitor);
         }
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof AndExpression)) {
+            return false;
+        }
+        AndExpression other = (AndExpression) obj;
+        return hashCode() == other.hashCode() && Arrays.equals(clauses, other.clauses);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        if (hash == 0) {
+            hash = 1 + Arrays.hashCode(clauses);
+        }
+        return hash;
+    }
 }
@@ -19,25 +19,47 @@
  */
 package org.objectweb.wildcat.expressions;
 
-import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.objectweb.wildcat.expressions.functions.FunctionsLibrary;
 import org.objectweb.wildcat.expressions.functions.StandardLibrary;
 
-import antlr.RecognitionException;
-import antlr.TokenStreamException;
-
 /**
  * Default implementation of the {@link Interpreter} interface.
+ * <p>
+ * Expressions are parsed by a {@link RecursiveDescentParser}. The most recently parsed
+ * expressions are kept in a cache indexed by their source text, so that evaluating the
+ * same strings repeatedly does not parse them again: expressions are immutable, and can
+ * be shared.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
 public class BasicInterpreter implements Interpreter {
+    /**
+     * The maximum number of parsed expressions kept in the cache.
+     */
+    public static final int PARSE_CACHE_SIZE = 256;
+
     /**
      * The top-level environment containing functions definitions and global variables.
      */
     private Environment topLevel = new Environment();
 
+    /**
+     * The most recently parsed expressions, indexed by their source text, in least
+     * recently used order.
+     */
+    private final Map<String, Expression> parsed = new LinkedHashMap<String, Expression>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest) {
+            return size() > PARSE_CACHE_SIZE;
+        }
+    };
+
     /**
      * Creates a new interpreter with the default library of functions.
      */
@@ -71,15 +93,18 @@ public class BasicInterpreter implements Interpreter {
      * @see org.objectweb.wildcat.expressions.Interpreter#parse(java.lang.String)
      */
     public Expression parse(String expr) throws IllegalArgumentException {
-        ExpressionsLexer lexer = new ExpressionsLexer(new StringReader(expr));
-        ExpressionsParser parser = new ExpressionsParser(lexer);
-        try {
-            return parser.expression();
-        } catch (RecognitionException e) {
-            throw new IllegalArgumentException("Syntax error: " + e.getMessage(), e);
-        } catch (TokenStreamException e) {
-            throw new IllegalArgumentException("Syntax error: " + e.getMessage(), e);
+        Expression result;
+        synchronized (parsed) {
+            result = parsed.get(expr);
+        }
+        if (result == null) {
+            // Parsed outside of the lock; at worst, the same text is parsed twice.
+            result = RecursiveDescentParser.parse(expr);
+            synchronized (parsed) {
+                parsed.put(expr, result);
+            }
         }
+        return result;
     }
 
     /*
@@ -99,4 +124,13 @@ public class BasicInterpreter implements Interpreter {
     public Object evaluate(Expression expr) throws EvaluationException {
         return expr.evaluate(topLevel);
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Interpreter#optimize(org.objectweb.wildcat.expressions.Expression)
+     */
+    public Expression optimize(Expression expr) {
+        return new ExpressionOptimizer(topLevel).optimize(expr);
+    }
 }
@@ -19,11 +19,15 @@
  */
 package org.objectweb.wildcat.expressions;
 
+import java.util.Arrays;
+
 import org.objectweb.wildcat.expressions.functions.Function;
+import org.objectweb.wildcat.expressions.functions.LazyFunction;
 
 /**
  * Represents a function call with arguments. Arguments are evaluated in order, and the
- * results are passed to the underlying {@link Function}.
+ * results are passed to the underlying {@link Function}, unless it is a
+ * {@link LazyFunction}, which evaluates the arguments it needs itself.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
@@ -33,11 +37,21 @@ public class CallExpression implements Expression {
      */
     private String functionName;
 
+    /**
+     * The slot of the function name in the environments.
+     */
+    private final int functionSlot;
+
     /**
      * The expressions to evaluate to obtain the arguments to the call.
      */
     private Expression[] parameters;
 
+    /**
+     * The hash code of this expression, computed on demand.
+     */
+    private int hash;
+
     /**
      * Creates a new <code>CallExpression</code>.
      * 
@@ -48,6 +62,7 @@ public class CallExpression implements Expression {
      */
     public CallExpression(String functionName, Expression... params) {
         this.functionName = functionName;
+        this.functionSlot = Environment.slot(functionName);
         this.parameters = params;
     }
     
@@ -71,10 +86,14 @@ public class CallExpression implements Expression {
      * @see org.objectweb.wildcat.expressions.Expression#evaluate(org.objectweb.wildcat.expressions.Environment)
      */
     public Object evaluate(Environment env) throws EvaluationException {
-        Function f = env.lookupFunction(functionName);
+        Function f = env.lookupFunction(functionSlot);
         if (f == null) {
             throw new EvaluationException("Undefined function '" + functionName + "'.");
         }
+        if (f instanceof LazyFunction) {
+            return LazyArgument.apply(functionName, (LazyFunction) f, lazyArguments(env),
+                    env);
+        }
         Object[] args = evalArguments(env);
         try {
             return f.apply(args, env);
@@ -106,6 +125,25 @@ public class CallExpression implements Expression {
         }
     }
     
+    /**
+     * Wraps the parameters into arguments which are only evaluated on demand, for a
+     * {@link LazyFunction}.
+     */
+    private LazyArgument[] lazyArguments(final Environment env) {
+        int count = (parameters != null) ? parameters.length : 0;
+        LazyArgument[] args = new LazyArgument[count];
+        for (int i = 0; i < count; i++) {
+            final Expression param = parameters[i];
+            args[i] = new LazyArgument() {
+                @Override
+                Object compute() throws EvaluationException {
+                    return param.evaluate(env);
+                }
+            };
+        }
+        return args;
+    }
+
     /* (non-Javadoc)
      * @see org.objectweb.wildcat.expressions.Expression#accept(org.objectweb.wildcat.expressions.ExpressionVisitor)
      */
@@ -115,4 +153,34 @@ public class CallExpression implements Expression {
             param.accept(visitor);
         }
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof CallExpression)) {
+            return false;
+        }
+        CallExpression other = (CallExpression) obj;
+        return hashCode() == other.hashCode() && functionName.equals(other.functionName)
+                && Arrays.equals(parameters, other.parameters);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        if (hash == 0) {
+            hash = 31 * functionName.hashCode() + Arrays.hashCode(parameters);
+        }
+        return hash;
+    }
 }
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import org.objectweb.wildcat.expressions.ExpressionCompiler.Code;
+import org.objectweb.wildcat.expressions.ExpressionCompiler.NotABoolean;
+import org.objectweb.wildcat.expressions.ExpressionCompiler.NotANumber;
+
+/**
+ * An expression compiled by a {@link CompilingInterpreter}. It evaluates to the same
+ * value as its source expression, but its function calls are bound once, to the
+ * functions of the interpreter's environment, and the standard arithmetic and
+ * comparisons are computed without boxing the intermediate results. The
+ * {@link TypedExpression} methods also avoid boxing the final result.
+ * <p>
+ * If a function is (re)defined in the interpreter's environment after the compilation,
+ * the expression is transparently recompiled before its next evaluation. When evaluated
+ * in another environment than the interpreter's, the source expression is interpreted
+ * instead. Visitors visit the source expression.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class CompiledExpression implements TypedExpression {
+    /**
+     * The expression this one was compiled from.
+     */
+    private final Expression source;
+
+    /**
+     * The environment the function calls are bound to.
+     */
+    private final Environment environment;
+
+    /**
+     * The compiled code, with the version of the environment's functions it was
+     * compiled against.
+     */
+    private volatile Compilation compilation;
+
+    /**
+     * Compiles an expression. Use {@link CompilingInterpreter#compile(Expression)}.
+     */
+    CompiledExpression(Expression source, Environment environment) {
+        this.source = source;
+        this.environment = environment;
+        this.compilation = new Compilation(source, environment);
+    }
+
+    /**
+     * Returns the expression this one was compiled from.
+     */
+    public Expression getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the environment whose functions this expression is bound to.
+     */
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Expression#evaluate(org.objectweb.wildcat.expressions.Environment)
+     */
+    public Object evaluate(Environment env) throws EvaluationException {
+        if (env != environment) {
+            return source.evaluate(env);
+        }
+        return code().eval(env);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.TypedExpression#evaluateDouble(org.objectweb.wildcat.expressions.Environment)
+     */
+    public double evaluateDouble(Environment env) throws EvaluationException {
+        if (env != environment) {
+            return asNumber(source.evaluate(env)).doubleValue();
+        }
+        try {
+            return code().evalDouble(env);
+        } catch (NotANumber e) {
+            throw notA("number");
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.TypedExpression#evaluateLong(org.objectweb.wildcat.expressions.Environment)
+     */
+    public long evaluateLong(Environment env) throws EvaluationException {
+        if (env != environment) {
+            return asNumber(source.evaluate(env)).longValue();
+        }
+        try {
+            return code().evalLong(env);
+        } catch (NotANumber e) {
+            throw notA("number");
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.TypedExpression#evaluateBoolean(org.objectweb.wildcat.expressions.Environment)
+     */
+    public boolean evaluateBoolean(Environment env) throws EvaluationException {
+        if (env != environment) {
+            Object value = source.evaluate(env);
+            if (value instanceof Boolean) {
+                return ((Boolean) value).booleanValue();
+            } else {
+                throw notA("boolean");
+            }
+        }
+        try {
+            return code().evalBoolean(env);
+        } catch (NotABoolean e) {
+            throw notA("boolean");
+        }
+    }
+
+    /**
+     * Returns the compiled code, recompiling it first if functions have been defined
+     * since its compilation.
+     */
+    private Code code() {
+        Compilation current = compilation;
+        if (current.version != environment.getFunctionsVersion()) {
+            current = new Compilation(source, environment);
+            compilation = current;
+        }
+        return current.code;
+    }
+
+    private Number asNumber(Object value) throws EvaluationException {
+        if (value instanceof Number) {
+            return (Number) value;
+        } else {
+            throw notA("number");
+        }
+    }
+
+    private EvaluationException notA(String type) {
+        return new EvaluationException("The expression does not evaluate to a " + type
+                + ".");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Expression#accept(org.objectweb.wildcat.expressions.ExpressionVisitor)
+     */
+    public void accept(ExpressionVisitor visitor) {
+        source.accept(visitor);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+
+    private static final class Compilation {
+        private final Code code;
+
+        private final int version;
+
+        Compilation(Expression source, Environment environment) {
+            // Read the version first: a concurrent redefinition forces a recompilation.
+            this.version = environment.getFunctionsVersion();
+            this.code = ExpressionCompiler.compile(source, environment);
+        }
+    }
+}
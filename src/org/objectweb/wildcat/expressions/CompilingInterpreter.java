@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.objectweb.wildcat.expressions.functions.FunctionsLibrary;
+import org.objectweb.wildcat.expressions.functions.StandardLibrary;
+
+/**
+ * An {@link Interpreter} which compiles the expressions before evaluating them. The
+ * expressions returned by {@link #parse(String)} are already
+ * {@linkplain CompiledExpression compiled}, as are the ones returned by
+ * {@link #optimize(Expression)}; other expressions are compiled the first time they are
+ * evaluated, and the result is kept as long as it is in use.
+ * <p>
+ * Compiled expressions compute the same values and raise the same errors as with a
+ * {@link BasicInterpreter}, so both can be used interchangeably, but they avoid looking
+ * up the functions by name and boxing the intermediate numbers on every evaluation.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class CompilingInterpreter extends BasicInterpreter {
+    /**
+     * The compiled form of the expressions which were not parsed by this interpreter.
+     * The compiled expressions reference their source, so they must not be strongly
+     * referenced by the map, or the entries would never be removed.
+     */
+    private final Map<Expression, WeakReference<CompiledExpression>> compiled = Collections
+            .synchronizedMap(new WeakHashMap<Expression, WeakReference<CompiledExpression>>());
+
+    /**
+     * Creates a new interpreter with the default library of functions.
+     */
+    public CompilingInterpreter() {
+        this(new StandardLibrary());
+    }
+
+    /**
+     * Creates a new interpreter with a specific library of functions pre-loaded.
+     * 
+     * @param library
+     *            the library of functions to load.
+     */
+    public CompilingInterpreter(FunctionsLibrary library) {
+        super(library);
+    }
+
+    /**
+     * Compiles an expression against the top-level environment of this interpreter.
+     * 
+     * @param expr
+     *            the expression to compile.
+     * @return the compiled expression, which can be evaluated by this interpreter.
+     */
+    public CompiledExpression compile(Expression expr) {
+        if (expr instanceof CompiledExpression) {
+            CompiledExpression ce = (CompiledExpression) expr;
+            if (ce.getEnvironment() == getEnvironment()) {
+                return ce;
+            }
+            expr = ce.getSource();
+        }
+        WeakReference<CompiledExpression> ref = compiled.get(expr);
+        CompiledExpression result = (ref != null) ? ref.get() : null;
+        if (result == null) {
+            result = new CompiledExpression(expr, getEnvironment());
+            compiled.put(expr, new WeakReference<CompiledExpression>(result));
+        }
+        return result;
+    }
+
+    /**
+     * Parses and compiles an expression.
+     * 
+     * @return a {@link CompiledExpression}.
+     * @see org.objectweb.wildcat.expressions.BasicInterpreter#parse(java.lang.String)
+     */
+    @Override
+    public Expression parse(String expr) throws IllegalArgumentException {
+        // The parsed expression comes from the cache when possible, and so does its
+        // compiled form.
+        return compile(super.parse(expr));
+    }
+
+    /**
+     * Optimizes and compiles an expression.
+     * 
+     * @return a {@link CompiledExpression}.
+     * @see org.objectweb.wildcat.expressions.BasicInterpreter#optimize(org.objectweb.wildcat.expressions.Expression)
+     */
+    @Override
+    public Expression optimize(Expression expr) {
+        return new CompiledExpression(super.optimize(expr), getEnvironment());
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.BasicInterpreter#evaluate(org.objectweb.wildcat.expressions.Expression)
+     */
+    @Override
+    public Object evaluate(Expression expr) throws EvaluationException {
+        return compile(expr).evaluate(getEnvironment());
+    }
+
+    /**
+     * Evaluates an expression whose value must be a number, without boxing its value.
+     * 
+     * @see TypedExpression#evaluateDouble(Environment)
+     */
+    public double evaluateDouble(Expression expr) throws EvaluationException {
+        return compile(expr).evaluateDouble(getEnvironment());
+    }
+
+    /**
+     * Evaluates an expression whose value must be a number, without boxing its value.
+     * 
+     * @see TypedExpression#evaluateLong(Environment)
+     */
+    public long evaluateLong(Expression expr) throws EvaluationException {
+        return compile(expr).evaluateLong(getEnvironment());
+    }
+
+    /**
+     * Evaluates an expression whose value must be a boolean, without boxing its value.
+     * 
+     * @see TypedExpression#evaluateBoolean(Environment)
+     */
+    public boolean evaluateBoolean(Expression expr) throws EvaluationException {
+        return compile(expr).evaluateBoolean(getEnvironment());
+    }
+}
@@ -63,6 +63,30 @@ public class ConstantExpression implements Expression {
         visitor.visitConstantExpression(this);
     }
     
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ConstantExpression)) {
+            return false;
+        }
+        Object other = ((ConstantExpression) obj).value;
+        return (value == null) ? other == null : value.equals(other);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return (value == null) ? 0 : value.hashCode();
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
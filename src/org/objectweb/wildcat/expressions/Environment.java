@@ -19,37 +19,67 @@
  */
 package org.objectweb.wildcat.expressions;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.objectweb.wildcat.expressions.functions.Function;
 import org.objectweb.wildcat.expressions.functions.FunctionsLibrary;
 
 /**
  * Represents the dynamic environment in which expressions are evaluated.
+ * <p>
+ * The names of the variables and of the functions are resolved once to <em>slots</em>,
+ * numbers shared by all the environments: the expressions resolve the names they use
+ * when they are created, and then look them up in the tables of the environments by
+ * index, without hashing them. The tables are never modified once published: defining a
+ * variable or a function replaces the table of the environment by an updated copy.
+ * Lookups therefore do not take any lock, and an environment can be used by several
+ * threads to evaluate expressions while variables and functions are being (re)defined.
+ * Definitions are meant to be much less frequent than lookups.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
 public class Environment {
+    /**
+     * The slots of all the names resolved so far.
+     */
+    private static final ConcurrentMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * The number of slots allocated so far.
+     */
+    private static final AtomicInteger slotsCount = new AtomicInteger();
+
+    private static final Object[] NO_VARIABLES = new Object[0];
+
+    private static final Function[] NO_FUNCTIONS = new Function[0];
+
     /**
      * The parent environment from which this one inherits; <code>null</code> for the
      * top-level.
      */
-    private Environment parent;
+    private final Environment parent;
 
     /**
-     * Local variables defined in this environment; may shadow same-named variables from
-     * the parent.
+     * Local variables defined in this environment, indexed by slot; may shadow
+     * same-named variables from the parent. Empty until a variable is defined, so that
+     * nested environments are cheap to create.
      */
-    private Map<String, Object> variables;
+    private volatile Object[] variables = NO_VARIABLES;
 
     /**
-     * Local functions defined in this environment. This is initialized only if a new
-     * function is defined explicitely, and hence is generally <code>null</code> except
-     * in the top-level. The field is nevertheless defined here to avoid creating a
-     * special-purpose <code>TopLevelEnvironment</code>.
+     * Local functions defined in this environment, indexed by slot. This is generally
+     * empty except in the top-level. The field is nevertheless defined here to avoid
+     * creating a special-purpose <code>TopLevelEnvironment</code>.
      */
-    private Map<String, Function> functions;
+    private volatile Function[] functions = NO_FUNCTIONS;
+
+    /**
+     * Incremented each time a function is defined in this environment, so that compiled
+     * expressions can detect that the functions they are bound to may have changed.
+     */
+    private volatile int functionsVersion;
 
     /**
      * Creates a new top-level environment.
@@ -66,8 +96,28 @@ public class Environment {
      */
     public Environment(Environment parent) {
         this.parent = parent;
-        this.variables = new HashMap<String, Object>();
-        this.functions = null;
+    }
+
+    /**
+     * Returns the slot of a name, allocating it if the name has never been resolved.
+     */
+    static int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            Integer allocated = slotsCount.getAndIncrement();
+            slot = slots.putIfAbsent(name, allocated);
+            if (slot == null) {
+                slot = allocated;
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the parent of this environment, or <code>null</code> for the top-level.
+     */
+    Environment getParent() {
+        return parent;
     }
 
     /**
@@ -78,14 +128,24 @@ public class Environment {
      * @return the function, or <code>null</code> if it was not found.
      */
     public Function lookupFunction(String name) {
-        Function fun = null;
-        if (functions != null) {
-            fun = functions.get(name);
-        }
-        if (fun == null && parent != null) {
-            fun = parent.lookupFunction(name);
+        // A name which has no slot yet has never been defined.
+        Integer slot = slots.get(name);
+        return (slot != null) ? lookupFunction(slot) : null;
+    }
+
+    /**
+     * Finds a function by the slot of its name.
+     * 
+     * @see #lookupFunction(String)
+     */
+    Function lookupFunction(int slot) {
+        for (Environment env = this; env != null; env = env.parent) {
+            Function[] table = env.functions;
+            if (slot < table.length && table[slot] != null) {
+                return table[slot];
+            }
         }
-        return fun;
+        return null;
     }
 
     /**
@@ -126,10 +186,27 @@ public class Environment {
         } else if (name == null || name.equals("")) {
             throw new IllegalArgumentException("The function to define must have a name.");
         }
-        if (functions == null) {
-            functions = new HashMap<String, Function>();
+        int slot = slot(name);
+        synchronized (this) {
+            Function[] table = functions;
+            Function[] updated = new Function[Math.max(table.length, slot + 1)];
+            System.arraycopy(table, 0, updated, 0, table.length);
+            updated[slot] = fun;
+            functions = updated;
+            functionsVersion++;
+        }
+    }
+
+    /**
+     * Returns a number which changes whenever a function is defined in this environment
+     * or in one of its ancestors.
+     */
+    int getFunctionsVersion() {
+        if (parent == null) {
+            return functionsVersion;
+        } else {
+            return functionsVersion + parent.getFunctionsVersion();
         }
-        functions.put(name, fun);
     }
 
     /**
@@ -140,11 +217,23 @@ public class Environment {
      * @return the value of the variable, or <code>null</code> if it was not found.
      */
     public Object lookupVariable(String name) {
-        Object value = variables.get(name);
-        if (value == null && parent != null) {
-            value = parent.lookupVariable(name);
+        Integer slot = slots.get(name);
+        return (slot != null) ? lookupVariable(slot) : null;
+    }
+
+    /**
+     * Finds a variable by the slot of its name.
+     * 
+     * @see #lookupVariable(String)
+     */
+    Object lookupVariable(int slot) {
+        for (Environment env = this; env != null; env = env.parent) {
+            Object[] table = env.variables;
+            if (slot < table.length && table[slot] != null) {
+                return table[slot];
+            }
         }
-        return value;
+        return null;
     }
 
     /**
@@ -161,6 +250,13 @@ public class Environment {
         if (value == null) {
             throw new IllegalArgumentException("Variable value may not be null.");
         }
-        variables.put(name, value);
+        int slot = slot(name);
+        synchronized (this) {
+            Object[] table = variables;
+            Object[] updated = new Object[Math.max(table.length, slot + 1)];
+            System.arraycopy(table, 0, updated, 0, table.length);
+            updated[slot] = value;
+            variables = updated;
+        }
     }
 }
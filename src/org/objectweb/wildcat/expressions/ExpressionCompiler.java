@@ -0,0 +1,964 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import org.objectweb.wildcat.Aggregate;
+import org.objectweb.wildcat.AttributeHandle;
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.expressions.functions.AddFunction;
+import org.objectweb.wildcat.expressions.functions.AggregateFunction;
+import org.objectweb.wildcat.expressions.functions.AttributeFunction;
+import org.objectweb.wildcat.expressions.functions.DivideFunction;
+import org.objectweb.wildcat.expressions.functions.EqualsFunction;
+import org.objectweb.wildcat.expressions.functions.Function;
+import org.objectweb.wildcat.expressions.functions.IfFunction;
+import org.objectweb.wildcat.expressions.functions.LazyFunction;
+import org.objectweb.wildcat.expressions.functions.LessThanFunction;
+import org.objectweb.wildcat.expressions.functions.MultiplyFunction;
+import org.objectweb.wildcat.expressions.functions.NotFunction;
+import org.objectweb.wildcat.expressions.functions.SubstractFunction;
+
+/**
+ * Lowers {@link Expression} trees into trees of {@link Code} nodes, which evaluate the
+ * same values, with the same errors, but faster:
+ * <ul>
+ * <li>functions are looked up once, when the expression is compiled, instead of on
+ * every call;</li>
+ * <li>calls to the standard arithmetic functions and to <code>less</code> are
+ * evaluated directly on <code>double</code>s, without allocating arguments arrays nor
+ * boxing the intermediate results;</li>
+ * <li>calls to the standard <code>equals</code> and <code>not</code> functions are
+ * evaluated directly, without allocating arguments arrays;</li>
+ * <li>the nodes can be evaluated as primitive <code>double</code>, <code>long</code>
+ * or <code>boolean</code> values: the numeric and boolean operators exchange unboxed
+ * values, so that an expression such as <code>$x + $y &gt; 2</code> is evaluated
+ * without allocating anything.</li>
+ * <li>{@link LetExpression}s only allocate the scope holding the values of their
+ * {@link SharedExpression}s.</li>
+ * <li>calls to the standard <code>if</code> function evaluate the chosen branch with
+ * the type expected from the call;</li>
+ * <li>references to definite attributes are bound to their storage the first time they
+ * are evaluated (see {@link Context#bindAttribute(Path)}), and only bound again when
+ * their handle becomes invalid.</li>
+ * <li>calls to an {@linkplain AggregateFunction aggregate function} over a pattern read
+ * use the aggregate maintained by the context (see {@link Context#aggregate(Path)})
+ * instead of looking up the matching attributes.</li>
+ * </ul>
+ * Other functions are called through the {@link Function} interface (or the
+ * {@link LazyFunction} one), and unknown kinds of expressions are simply evaluated as
+ * they are.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+final class ExpressionCompiler {
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Compiles an expression, binding its function calls to the functions currently
+     * defined in <code>env</code>.
+     */
+    static Code compile(Expression expr, Environment env) {
+        if (expr instanceof ConstantExpression) {
+            return new Constant(((ConstantExpression) expr).getValue());
+        } else if (expr instanceof VariableExpression) {
+            return new Variable(((VariableExpression) expr).getVariableName());
+        } else if (expr instanceof AndExpression) {
+            return new And(compile(((AndExpression) expr).getClauses(), env));
+        } else if (expr instanceof OrExpression) {
+            return new Or(compile(((OrExpression) expr).getClauses(), env));
+        } else if (expr instanceof LetExpression) {
+            LetExpression let = (LetExpression) expr;
+            return new Let(let.getShared(), compile(let.getBody(), env));
+        } else if (expr instanceof SharedExpression) {
+            SharedExpression shared = (SharedExpression) expr;
+            return new Shared(shared, compile(shared.getExpression(), env));
+        } else if (expr instanceof CallExpression) {
+            CallExpression call = (CallExpression) expr;
+            String name = call.getFunctionName();
+            Function fun = env.lookupFunction(name);
+            Expression[] params = call.getParameters();
+            Code[] args = compile((params != null) ? params : new Expression[0], env);
+            // Only the exact standard classes are inlined: subclasses may redefine them.
+            Class<?> type = (fun != null) ? fun.getClass() : null;
+            if (type == AddFunction.class) {
+                return new Arithmetic(name, fun, Arithmetic.ADD, args, 0);
+            } else if (type == SubstractFunction.class) {
+                return new Arithmetic(name, fun, Arithmetic.SUBSTRACT, args, 2);
+            } else if (type == MultiplyFunction.class) {
+                return new Arithmetic(name, fun, Arithmetic.MULTIPLY, args, 0);
+            } else if (type == DivideFunction.class) {
+                return new Arithmetic(name, fun, Arithmetic.DIVIDE, args, 2);
+            } else if (type == LessThanFunction.class && args.length == 2) {
+                return new Less(name, fun, args[0], args[1]);
+            } else if (type == EqualsFunction.class && args.length == 2) {
+                return new Equals(args[0], args[1]);
+            } else if (type == NotFunction.class && args.length == 1) {
+                return new Not(name, fun, args[0]);
+            } else if (type == IfFunction.class && args.length == 3) {
+                return new If(name, fun, args[0], args[1], args[2]);
+            } else if (type == AttributeFunction.class && args.length == 2
+                    && isDefiniteAttribute(params[0])) {
+                Path path = (Path) ((ConstantExpression) params[0]).getValue();
+                return new Attribute(name, fun, path, args);
+            } else if (fun instanceof AggregateFunction && args.length == 1
+                    && isPatternRead(params[0], env)) {
+                Expression[] read = ((CallExpression) params[0]).getParameters();
+                Path pattern = (Path) ((ConstantExpression) read[0]).getValue();
+                return new Aggregated(name, (AggregateFunction) fun, pattern, args[0],
+                        compile(read[1], env));
+            } else if (fun instanceof LazyFunction) {
+                return new LazyCall(name, (LazyFunction) fun, args);
+            } else {
+                return new Call(name, fun, args);
+            }
+        } else {
+            return new Interpreted(expr);
+        }
+    }
+
+    private static boolean isDefiniteAttribute(Expression expr) {
+        if (!(expr instanceof ConstantExpression)) {
+            return false;
+        }
+        Object value = ((ConstantExpression) expr).getValue();
+        if (!(value instanceof Path)) {
+            return false;
+        }
+        Path path = (Path) value;
+        return path.isAbsolute() && path.isAttribute() && !path.isPattern();
+    }
+
+    /**
+     * Tests whether an expression is a call to the standard <code>attribute</code>
+     * function on a constant absolute pattern.
+     */
+    private static boolean isPatternRead(Expression expr, Environment env) {
+        if (!(expr instanceof CallExpression)) {
+            return false;
+        }
+        CallExpression call = (CallExpression) expr;
+        Function fun = env.lookupFunction(call.getFunctionName());
+        Expression[] params = call.getParameters();
+        if (fun == null || fun.getClass() != AttributeFunction.class || params == null
+                || params.length != 2 || !(params[0] instanceof ConstantExpression)) {
+            return false;
+        }
+        Object value = ((ConstantExpression) params[0]).getValue();
+        if (!(value instanceof Path)) {
+            return false;
+        }
+        Path path = (Path) value;
+        return path.isAbsolute() && path.isAttribute() && path.isPattern();
+    }
+
+    private static Code[] compile(Expression[] exprs, Environment env) {
+        Code[] result = new Code[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            result[i] = compile(exprs[i], env);
+        }
+        return result;
+    }
+
+    /**
+     * Wraps an error raised by a function the same way {@link CallExpression} does.
+     * 
+     * @param name
+     *            the name under which the function was called, which may be an alias:
+     *            the messages of the functions themselves use their own name.
+     */
+    private static EvaluationException callError(String name, Exception cause) {
+        return new EvaluationException("Error while executing function " + name + ".",
+                cause);
+    }
+
+    /**
+     * A compiled expression.
+     */
+    abstract static class Code {
+        /**
+         * Evaluates the expression.
+         */
+        abstract Object eval(Environment env) throws EvaluationException;
+
+        /**
+         * Evaluates the expression, which is expected to have a numeric value.
+         * 
+         * @throws NotANumber
+         *             if the value is not a number.
+         */
+        double evalDouble(Environment env) throws EvaluationException {
+            Object value = eval(env);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            } else {
+                throw new NotANumber();
+            }
+        }
+
+        /**
+         * Evaluates the expression, which is expected to have a numeric value, converted
+         * as by {@link Number#longValue()}.
+         * 
+         * @throws NotANumber
+         *             if the value is not a number.
+         */
+        long evalLong(Environment env) throws EvaluationException {
+            Object value = eval(env);
+            if (value instanceof Number) {
+                return ((Number) value).longValue();
+            } else {
+                throw new NotANumber();
+            }
+        }
+
+        /**
+         * Evaluates the expression, which is expected to have a boolean value.
+         * 
+         * @throws NotABoolean
+         *             if the value is not a boolean.
+         */
+        boolean evalBoolean(Environment env) throws EvaluationException {
+            Object value = eval(env);
+            if (value instanceof Boolean) {
+                return ((Boolean) value).booleanValue();
+            } else {
+                throw new NotABoolean();
+            }
+        }
+
+        /**
+         * Tests whether the value of the expression is <code>true</code>. Any value
+         * other than a boolean counts as <code>false</code>, as in the clauses of
+         * {@link AndExpression} and {@link OrExpression}.
+         */
+        boolean isTrue(Environment env) throws EvaluationException {
+            return Boolean.TRUE.equals(eval(env));
+        }
+
+        /**
+         * Tests whether the value of the expression is always a {@link Double}, so that
+         * it can be compared with {@link #evalDouble(Environment)} without changing
+         * the semantics of {@link Object#equals(Object)}.
+         */
+        boolean isDouble() {
+            return false;
+        }
+    }
+
+    /**
+     * A node whose value is always a boolean.
+     */
+    private abstract static class BooleanCode extends Code {
+        @Override
+        final Object eval(Environment env) throws EvaluationException {
+            return evalBoolean(env);
+        }
+
+        @Override
+        abstract boolean evalBoolean(Environment env) throws EvaluationException;
+
+        @Override
+        final boolean isTrue(Environment env) throws EvaluationException {
+            return evalBoolean(env);
+        }
+    }
+
+    /**
+     * A node whose value is always a double.
+     */
+    private abstract static class DoubleCode extends Code {
+        @Override
+        final Object eval(Environment env) throws EvaluationException {
+            return evalDouble(env);
+        }
+
+        @Override
+        abstract double evalDouble(Environment env) throws EvaluationException;
+
+        @Override
+        final long evalLong(Environment env) throws EvaluationException {
+            return (long) evalDouble(env);
+        }
+
+        @Override
+        final boolean isDouble() {
+            return true;
+        }
+    }
+
+    /**
+     * Signals a non-numeric value to the numeric nodes, which report it with the message
+     * of the function they implement.
+     */
+    static final class NotANumber extends EvaluationException {
+        private static final long serialVersionUID = 1L;
+
+        NotANumber() {
+            super("Not a number.");
+        }
+    }
+
+    /**
+     * Signals a non-boolean value to the boolean nodes, which report it with the message
+     * of the function they implement.
+     */
+    static final class NotABoolean extends EvaluationException {
+        private static final long serialVersionUID = 1L;
+
+        NotABoolean() {
+            super("Not a boolean.");
+        }
+    }
+
+    private static final class Constant extends Code {
+        private final Object value;
+
+        /**
+         * The numeric value of the constant, if it is a number.
+         */
+        private final double number;
+
+        Constant(Object value) {
+            this.value = value;
+            this.number = (value instanceof Number) ? ((Number) value).doubleValue() : 0.0;
+        }
+
+        @Override
+        Object eval(Environment env) {
+            return value;
+        }
+
+        @Override
+        double evalDouble(Environment env) throws EvaluationException {
+            if (value instanceof Number) {
+                return number;
+            } else {
+                throw new NotANumber();
+            }
+        }
+
+        @Override
+        boolean isDouble() {
+            return value instanceof Double;
+        }
+    }
+
+    private static final class Variable extends Code {
+        private final String name;
+
+        private final int slot;
+
+        Variable(String name) {
+            this.name = name;
+            this.slot = Environment.slot(name);
+        }
+
+        @Override
+        Object eval(Environment env) throws EvaluationException {
+            Object result = env.lookupVariable(slot);
+            if (result == null) {
+                throw new EvaluationException("Unknown variable dereferenced: " + name
+                        + ".");
+            }
+            return result;
+        }
+    }
+
+    private static final class And extends BooleanCode {
+        private final Code[] clauses;
+
+        And(Code[] clauses) {
+            this.clauses = clauses;
+        }
+
+        @Override
+        boolean evalBoolean(Environment env) throws EvaluationException {
+            for (Code clause : clauses) {
+                if (!clause.isTrue(env)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Or extends BooleanCode {
+        private final Code[] clauses;
+
+        Or(Code[] clauses) {
+            this.clauses = clauses;
+        }
+
+        @Override
+        boolean evalBoolean(Environment env) throws EvaluationException {
+            for (Code clause : clauses) {
+                if (clause.isTrue(env)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Evaluates its body in a new {@link Scope}. The body is evaluated with the same type
+     * as the <code>LetExpression</code> itself.
+     */
+    private static final class Let extends Code {
+        private final SharedExpression[] shared;
+
+        private final Code body;
+
+        Let(SharedExpression[] shared, Code body) {
+            this.shared = shared;
+            this.body = body;
+        }
+
+        @Override
+        Object eval(Environment env) throws EvaluationException {
+            return body.eval(new Scope(env, shared));
+        }
+
+        @Override
+        double evalDouble(Environment env) throws EvaluationException {
+            return body.evalDouble(new Scope(env, shared));
+        }
+
+        @Override
+        long evalLong(Environment env) throws EvaluationException {
+            return body.evalLong(new Scope(env, shared));
+        }
+
+        @Override
+        boolean evalBoolean(Environment env) throws EvaluationException {
+            return body.evalBoolean(new Scope(env, shared));
+        }
+
+        @Override
+        boolean isTrue(Environment env) throws EvaluationException {
+            return body.isTrue(new Scope(env, shared));
+        }
+
+        @Override
+        boolean isDouble() {
+            return body.isDouble();
+        }
+    }
+
+    /**
+     * An occurrence of a {@link SharedExpression}, whose value is computed once per
+     * scope.
+     */
+    private static final class Shared extends Code {
+        private final SharedExpression source;
+
+        private final int slot;
+
+        private final Code value;
+
+        Shared(SharedExpression source, Code value) {
+            this.source = source;
+            this.slot = source.getSlot();
+            this.value = value;
+        }
+
+        @Override
+        Object eval(Environment env) throws EvaluationException {
+            Scope scope = Scope.find(env, source);
+            if (scope == null) {
+                return value.eval(env);
+            } else if (!scope.isComputed(slot)) {
+                scope.setValue(slot, value.eval(env));
+            }
+            return scope.getValue(slot);
+        }
+
+        @Override
+        boolean isDouble() {
+            return value.isDouble();
+        }
+    }
+
+    /**
+     * A generic call to a function bound at compile time.
+     */
+    private static final class Call extends Code {
+        private final String name;
+
+        private final Function function;
+
+        private final Code[] args;
+
+        Call(String name, Function function, Code[] args) {
+            this.name = name;
+            this.function = function;
+            this.args = args;
+        }
+
+        @Override
+        Object eval(Environment env) throws EvaluationException {
+            if (function == null) {
+                throw new EvaluationException("Undefined function '" + name + "'.");
+            }
+            Object[] values = new Object[args.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = args[i].eval(env);
+            }
+            try {
+                return function.apply(values, env);
+            } catch (Exception e) {
+                throw callError(name, e);
+            }
+        }
+    }
+
+    /**
+     * A generic call to a {@link LazyFunction} bound at compile time.
+     */
+    private static final class LazyCall extends Code {
+        private final String name;
+
+        private final LazyFunction function;
+
+        private final Code[] args;
+
+        LazyCall(String name, LazyFunction function, Code[] args) {
+            this.name = name;
+            this.function = function;
+            this.args = args;
+        }
+
+        @Override
+        Object eval(final Environment env) throws EvaluationException {
+            LazyArgument[] values = new LazyArgument[args.length];
+            for (int i = 0; i < values.length; i++) {
+                final Code arg = args[i];
+                values[i] = new LazyArgument() {
+                    @Override
+                    Object compute() throws EvaluationException {
+                        return arg.eval(env);
+                    }
+                };
+            }
+            return LazyArgument.apply(name, function, values, env);
+        }
+    }
+
+    /**
+     * A call to the standard <code>if</code> function, which evaluates the chosen branch
+     * with the same type as itself.
+     */
+    private static final class If extends Code {
+        private final String name;
+
+        private final String functionName;
+
+        private final Code condition;
+
+        private final Code then;
+
+        private final Code otherwise;
+
+        If(String name, Function function, Code condition, Code then, Code otherwise) {
+            this.name = name;
+            this.functionName = function.getName();
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        private Code branch(Environment env) throws EvaluationException {
+            Object value = condition.eval(env);
+            if (!(value instanceof Boolean)) {
+                throw callError(name, new EvaluationException(functionName
+                        + "() requires a boolean condition."));
+            }
+            return ((Boolean) value).booleanValue() ? then : otherwise;
+        }
+
+        @Override
+        Object eval(Environment env) throws EvaluationException {
+            return branch(env).eval(env);
+        }
+
+        @Override
+        double evalDouble(Environment env) throws EvaluationException {
+            return branch(env).evalDouble(env);
+        }
+
+        @Override
+        long evalLong(Environment env) throws EvaluationException {
+            return branch(env).evalLong(env);
+        }
+
+        @Override
+        boolean evalBoolean(Environment env) throws EvaluationException {
+            return branch(env).evalBoolean(env);
+        }
+
+        @Override
+        boolean isTrue(Environment env) throws EvaluationException {
+            return branch(env).isTrue(env);
+        }
+
+        @Override
+        boolean isDouble() {
+            return then.isDouble() && otherwise.isDouble();
+        }
+    }
+
+    /**
+     * A call to the standard <code>attribute</code> function on a definite path, which
+     * reads the attribute through a handle bound the first time, instead of looking it
+     * up in the context on every evaluation.
+     */
+    private static final class Attribute extends Code {
+        private final String name;
+
+        private final Function function;
+
+        private final Path path;
+
+        private final Code[] args;
+
+        /**
+         * The handle last bound, and the context it was bound in.
+         */
+        private volatile Binding binding;
+
+        Attribute(String name, Function function, Path path, Code[] args) {
+            this.name = name;
+            this.function = function;
+            this.path = path;
+            this.args = args;
+        }
+
+        @Override
+        Object eval(Environment env) throws EvaluationException {
+            Object ctx = args[1].eval(env);
+            if (!(ctx instanceof Context)) {
+                // Let the function fail as usual.
+                try {
+                    return function.apply(new Object[] { path, ctx }, env);
+                } catch (Exception e) {
+                    throw callError(name, e);
+                }
+            }
+            Binding current = binding;
+            if (current == null || current.context != ctx || !current.handle.isValid()) {
+                AttributeHandle handle;
+                try {
+                    handle = ((Context) ctx).bindAttribute(path);
+                    if (handle == null) {
+                        return ((Context) ctx).lookupAttribute(path);
+                    }
+                } catch (Exception e) {
+                    throw callError(name, e);
+                }
+                current = new Binding((Context) ctx, handle);
+                binding = current;
+            }
+            return current.handle.getValue();
+        }
+
+        private static final class Binding {
+            final Context context;
+
+            final AttributeHandle handle;
+
+            Binding(Context context, AttributeHandle handle) {
+                this.context = context;
+                this.handle = handle;
+            }
+        }
+    }
+
+    /**
+     * A call to an aggregate function over a pattern read, which reads the aggregate
+     * maintained by the context for the pattern, obtained the first time.
+     */
+    private static final class Aggregated extends Code {
+        private final String name;
+
+        private final AggregateFunction function;
+
+        private final Path pattern;
+
+        /**
+         * The compiled pattern read, and its context argument.
+         */
+        private final Code read;
+
+        private final Code context;
+
+        /**
+         * The aggregate last obtained, and the context it was obtained from.
+         */
+        private volatile Binding binding;
+
+        Aggregated(String name, AggregateFunction function, Path pattern, Code read,
+                Code context) {
+            this.name = name;
+            this.function = function;
+            this.pattern = pattern;
+            this.read = read;
+            this.context = context;
+        }
+
+        @Override
+        Object eval(Environment env) throws EvaluationException {
+            Object ctx = context.eval(env);
+            if (!(ctx instanceof Context)) {
+                // Let the attribute function fail as usual.
+                Object values = read.eval(env);
+                try {
+                    return function.apply(new Object[] { values }, env);
+                } catch (Exception e) {
+                    throw callError(name, e);
+                }
+            }
+            Binding current = binding;
+            if (current == null || current.context != ctx) {
+                current = new Binding((Context) ctx, ((Context) ctx).aggregate(pattern));
+                binding = current;
+            }
+            try {
+                return function.apply(current.aggregate);
+            } catch (Exception e) {
+                throw callError(name, e);
+            }
+        }
+
+        private static final class Binding {
+            final Context context;
+
+            final Aggregate aggregate;
+
+            Binding(Context context, Aggregate aggregate) {
+                this.context = context;
+                this.aggregate = aggregate;
+            }
+        }
+    }
+
+    /**
+     * A call to one of the standard arithmetic functions, computed on
+     * <code>double</code>s.
+     */
+    private static final class Arithmetic extends DoubleCode {
+        static final int ADD = 0;
+
+        static final int SUBSTRACT = 1;
+
+        static final int MULTIPLY = 2;
+
+        static final int DIVIDE = 3;
+
+        private final String name;
+
+        private final String functionName;
+
+        private final int operator;
+
+        private final Code[] args;
+
+        private final int minimumArgs;
+
+        Arithmetic(String name, Function function, int operator, Code[] args,
+                int minimumArgs) {
+            this.name = name;
+            this.functionName = function.getName();
+            this.operator = operator;
+            this.args = args;
+            this.minimumArgs = minimumArgs;
+        }
+
+        @Override
+        double evalDouble(Environment env) throws EvaluationException {
+            // As with the interpreted call, all the arguments are evaluated before any of
+            // them is checked, and the errors are reported in the same order.
+            double result = (operator == MULTIPLY) ? 1.0 : 0.0;
+            int notANumber = -1;
+            boolean divisionByZero = false;
+            for (int i = 0; i < args.length; i++) {
+                double value;
+                try {
+                    value = args[i].evalDouble(env);
+                } catch (NotANumber e) {
+                    if (notANumber == -1) {
+                        notANumber = i;
+                    }
+                    continue;
+                }
+                if (i == 0 && (operator == SUBSTRACT || operator == DIVIDE)) {
+                    result = value;
+                    continue;
+                }
+                switch (operator) {
+                case ADD:
+                    result += value;
+                    break;
+                case SUBSTRACT:
+                    result -= value;
+                    break;
+                case MULTIPLY:
+                    result *= value;
+                    break;
+                default:
+                    if (value == 0) {
+                        divisionByZero = true;
+                    }
+                    result /= value;
+                }
+            }
+            if (args.length < minimumArgs) {
+                throw callError(name, new EvaluationException("Function " + functionName
+                        + " needs at least " + minimumArgs + " arguments."));
+            } else if (notANumber != -1) {
+                throw callError(name, new EvaluationException("Invalid argument type: "
+                        + functionName + "() expected a number at position " + notANumber
+                        + "."));
+            } else if (divisionByZero) {
+                throw callError(name, new EvaluationException(new ArithmeticException(
+                        "Attempted division by zero.")));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A call to the standard <code>less</code> function with two arguments, compared as
+     * <code>double</code>s.
+     */
+    private static final class Less extends BooleanCode {
+        private final String name;
+
+        private final String functionName;
+
+        private final Code left;
+
+        private final Code right;
+
+        Less(String name, Function function, Code left, Code right) {
+            this.name = name;
+            this.functionName = function.getName();
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean evalBoolean(Environment env) throws EvaluationException {
+            boolean numbers = true;
+            double l = 0.0;
+            double r = 0.0;
+            try {
+                l = left.evalDouble(env);
+            } catch (NotANumber e) {
+                numbers = false;
+            }
+            try {
+                r = right.evalDouble(env);
+            } catch (NotANumber e) {
+                numbers = false;
+            }
+            if (!numbers) {
+                throw callError(name, new EvaluationException("Function " + functionName
+                        + " expected numbers as argument."));
+            }
+            return l < r;
+        }
+    }
+
+    /**
+     * A call to the standard <code>equals</code> function with two arguments. When both
+     * arguments are known to be {@link Double}s, they are compared without boxing, as
+     * {@link Double#equals(Object)} does.
+     */
+    private static final class Equals extends BooleanCode {
+        private final Code left;
+
+        private final Code right;
+
+        private final boolean doubles;
+
+        Equals(Code left, Code right) {
+            this.left = left;
+            this.right = right;
+            this.doubles = left.isDouble() && right.isDouble();
+        }
+
+        @Override
+        boolean evalBoolean(Environment env) throws EvaluationException {
+            if (doubles) {
+                double l = left.evalDouble(env);
+                double r = right.evalDouble(env);
+                return Double.doubleToLongBits(l) == Double.doubleToLongBits(r);
+            }
+            Object l = left.eval(env);
+            Object r = right.eval(env);
+            return (l == null) ? r == null : l.equals(r);
+        }
+    }
+
+    /**
+     * A call to the standard <code>not</code> function.
+     */
+    private static final class Not extends BooleanCode {
+        private final String name;
+
+        private final String functionName;
+
+        private final Code arg;
+
+        Not(String name, Function function, Code arg) {
+            this.name = name;
+            this.functionName = function.getName();
+            this.arg = arg;
+        }
+
+        @Override
+        boolean evalBoolean(Environment env) throws EvaluationException {
+            try {
+                return !arg.evalBoolean(env);
+            } catch (NotABoolean e) {
+                throw callError(name, new EvaluationException(functionName
+                        + "() requires a boolean argument."));
+            }
+        }
+    }
+
+    /**
+     * An expression of an unknown kind, evaluated as is.
+     */
+    private static final class Interpreted extends Code {
+        private final Expression expr;
+
+        Interpreted(Expression expr) {
+            this.expr = expr;
+        }
+
+        @Override
+        Object eval(Environment env) throws EvaluationException {
+            return expr.evaluate(env);
+        }
+    }
+}
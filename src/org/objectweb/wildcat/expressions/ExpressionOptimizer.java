@@ -0,0 +1,687 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.wildcat.expressions.functions.AddFunction;
+import org.objectweb.wildcat.expressions.functions.AttributeFunction;
+import org.objectweb.wildcat.expressions.functions.DivideFunction;
+import org.objectweb.wildcat.expressions.functions.EqualsFunction;
+import org.objectweb.wildcat.expressions.functions.Function;
+import org.objectweb.wildcat.expressions.functions.IfFunction;
+import org.objectweb.wildcat.expressions.functions.LessThanFunction;
+import org.objectweb.wildcat.expressions.functions.MultiplyFunction;
+import org.objectweb.wildcat.expressions.functions.NotFunction;
+import org.objectweb.wildcat.expressions.functions.SubstractFunction;
+
+/**
+ * Rewrites expressions into equivalent ones which are cheaper to evaluate repeatedly:
+ * <ul>
+ * <li>calls to the standard functions whose arguments are all constants are replaced by
+ * their value, e.g. <code>1024 * 1024</code>, as are the leading constant arguments of
+ * the arithmetic functions, e.g. <code>1 + 2 + $x</code>;</li>
+ * <li>nested calls to the same arithmetic function are merged when this does not change
+ * the order of the operations, e.g. <code>$x - $y - $z</code>, and neutral constants
+ * are removed, e.g. <code>$x * 1</code>;</li>
+ * <li>nested conjunctions and disjunctions are flattened, and their constant clauses are
+ * either removed or make the following clauses unnecessary;</li>
+ * <li>double negations of boolean expressions are removed;</li>
+ * <li>conditionals whose condition is constant are replaced by the chosen branch, e.g.
+ * <code>if(1 &lt; 2, $x, $y)</code>;</li>
+ * <li>subexpressions which read attributes and occur several times, e.g. in
+ * <code>/a#b &gt; 2</code>, which is parsed as
+ * <code>not(or(less(/a#b, 2), equals(/a#b, 2)))</code>, are evaluated only once, by
+ * wrapping the result in a {@link LetExpression}. Arithmetic on variables and constants
+ * is cheaper to recompute than to share.</li>
+ * </ul>
+ * The optimized expressions evaluate to the same values as the original ones, and fail
+ * in the same cases, although possibly with different error messages. Only the calls to
+ * the standard functions defined in the environment given to the optimizer, which have
+ * no side effects, are rewritten; the optimized expressions should not be evaluated in
+ * an environment where these functions have been redefined.
+ * <p>
+ * The expressions are traversed with an {@link ExpressionVisitor}, and rewritten from
+ * the leaves up. Unknown kinds of expressions are kept as is.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class ExpressionOptimizer {
+    private static final ConstantExpression TRUE = new ConstantExpression(Boolean.TRUE);
+
+    private static final ConstantExpression FALSE = new ConstantExpression(Boolean.FALSE);
+
+    /**
+     * The environment defining the functions called by the optimized expressions.
+     */
+    private final Environment env;
+
+    /**
+     * Creates a new optimizer.
+     * 
+     * @param env
+     *            the environment in which the optimized expressions will be evaluated.
+     */
+    public ExpressionOptimizer(Environment env) {
+        this.env = env;
+    }
+
+    /**
+     * Optimizes an expression. The expression itself is not modified, but the result
+     * can share some subexpressions with it.
+     * 
+     * @param expr
+     *            the expression to optimize. A {@link CompiledExpression} is replaced by
+     *            the optimized form of its source.
+     * @return an equivalent expression, which may be <code>expr</code> itself.
+     */
+    public Expression optimize(Expression expr) {
+        if (expr instanceof CompiledExpression) {
+            expr = ((CompiledExpression) expr).getSource();
+        }
+        return eliminateCommonSubexpressions(simplify(expr));
+    }
+
+    /**
+     * Applies the local simplifications to all the nodes of an expression, children
+     * first.
+     */
+    private Expression simplify(Expression expr) {
+        final List<Expression> nodes = new ArrayList<Expression>();
+        expr.accept(new ExpressionVisitorAdapter() {
+            @Override
+            public void visitAndExpression(AndExpression e) {
+                nodes.add(e);
+            }
+
+            @Override
+            public void visitOrExpression(OrExpression e) {
+                nodes.add(e);
+            }
+
+            @Override
+            public void visitCallExpression(CallExpression e) {
+                nodes.add(e);
+            }
+        });
+        // The nodes are listed in pre-order: the descendants of a node come after it.
+        Map<Expression, Expression> simplified = new IdentityHashMap<Expression, Expression>();
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Expression node = nodes.get(i);
+            if (!simplified.containsKey(node)) {
+                simplified.put(node, simplifyNode(node, simplified));
+            }
+        }
+        Expression result = simplified.get(expr);
+        return (result != null) ? result : expr;
+    }
+
+    private Expression simplifyNode(Expression node, Map<Expression, Expression> simplified) {
+        if (node instanceof AndExpression) {
+            Expression[] clauses = ((AndExpression) node).getClauses();
+            Expression[] args = simplified(clauses, simplified);
+            return simplifyAnd(node, args, args != clauses);
+        } else if (node instanceof OrExpression) {
+            Expression[] clauses = ((OrExpression) node).getClauses();
+            Expression[] args = simplified(clauses, simplified);
+            return simplifyOr(node, args, args != clauses);
+        } else {
+            CallExpression call = (CallExpression) node;
+            Expression[] params = parameters(call);
+            Expression[] args = simplified(params, simplified);
+            Expression result = simplifyCall(call.getFunctionName(), args);
+            if (result == null) {
+                return (args != params) ? new CallExpression(call.getFunctionName(), args)
+                        : call;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Returns the simplified forms of some expressions, or the array itself if none of
+     * them has changed.
+     */
+    private Expression[] simplified(Expression[] exprs,
+            Map<Expression, Expression> simplified) {
+        Expression[] result = exprs;
+        for (int i = 0; i < exprs.length; i++) {
+            Expression s = simplified.get(exprs[i]);
+            if (s != null && s != exprs[i]) {
+                if (result == exprs) {
+                    result = exprs.clone();
+                }
+                result[i] = s;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Flattens a conjunction. The evaluation stops at the first clause which is not
+     * <code>true</code>, so the clauses following a constant which is not
+     * <code>true</code> are removed, and <code>true</code> constants are ignored.
+     */
+    private Expression simplifyAnd(Expression node, Expression[] clauses, boolean changed) {
+        List<Expression> result = new ArrayList<Expression>();
+        changed |= !flattenAnd(clauses, result);
+        if (result.isEmpty()) {
+            return TRUE;
+        } else if (result.size() == 1 && isBoolean(result.get(0))) {
+            return result.get(0);
+        } else if (changed) {
+            return new AndExpression(result.toArray(new Expression[result.size()]));
+        } else {
+            return node;
+        }
+    }
+
+    /**
+     * Adds the clauses of a conjunction to <code>result</code>, merging nested
+     * conjunctions.
+     * 
+     * @return <code>true</code> if the clauses have been added unchanged.
+     */
+    private boolean flattenAnd(Expression[] clauses, List<Expression> result) {
+        boolean unchanged = true;
+        for (Expression clause : clauses) {
+            if (clause instanceof AndExpression) {
+                flattenAnd(((AndExpression) clause).getClauses(), result);
+                unchanged = false;
+            } else if (clause instanceof ConstantExpression) {
+                if (!Boolean.TRUE.equals(((ConstantExpression) clause).getValue())) {
+                    if (result.isEmpty()) {
+                        result.add(FALSE);
+                    } else {
+                        result.add(clause);
+                    }
+                    return false;
+                }
+                unchanged = false;
+            } else {
+                result.add(clause);
+            }
+        }
+        return unchanged;
+    }
+
+    /**
+     * Flattens a disjunction. The evaluation stops at the first clause which is
+     * <code>true</code>, so the clauses following a <code>true</code> constant are
+     * removed, and other constants are ignored.
+     */
+    private Expression simplifyOr(Expression node, Expression[] clauses, boolean changed) {
+        List<Expression> result = new ArrayList<Expression>();
+        changed |= !flattenOr(clauses, result);
+        if (result.isEmpty()) {
+            return FALSE;
+        } else if (result.size() == 1 && isBoolean(result.get(0))) {
+            return result.get(0);
+        } else if (changed) {
+            return new OrExpression(result.toArray(new Expression[result.size()]));
+        } else {
+            return node;
+        }
+    }
+
+    /**
+     * Adds the clauses of a disjunction to <code>result</code>, merging nested
+     * disjunctions.
+     * 
+     * @return <code>true</code> if the clauses have been added unchanged.
+     */
+    private boolean flattenOr(Expression[] clauses, List<Expression> result) {
+        boolean unchanged = true;
+        for (Expression clause : clauses) {
+            if (clause instanceof OrExpression) {
+                flattenOr(((OrExpression) clause).getClauses(), result);
+                unchanged = false;
+            } else if (clause instanceof ConstantExpression) {
+                if (Boolean.TRUE.equals(((ConstantExpression) clause).getValue())) {
+                    result.add(clause);
+                    return false;
+                }
+                unchanged = false;
+            } else {
+                result.add(clause);
+            }
+        }
+        return unchanged;
+    }
+
+    /**
+     * Simplifies a call whose arguments have already been simplified.
+     * 
+     * @return the simplified expression, or <code>null</code> if the call can not be
+     *         simplified.
+     */
+    private Expression simplifyCall(String name, Expression[] args) {
+        Function fun = env.lookupFunction(name);
+        if (fun != null && fun.getClass() == IfFunction.class && args.length == 3
+                && args[0] instanceof ConstantExpression) {
+            // The branch not taken is never evaluated, even if it would fail.
+            Object condition = ((ConstantExpression) args[0]).getValue();
+            if (condition instanceof Boolean) {
+                return ((Boolean) condition).booleanValue() ? args[1] : args[2];
+            }
+        }
+        Class<?> type = standardType(name);
+        if (type == null || type == AttributeFunction.class) {
+            return null;
+        }
+        Expression[] original = args;
+        if (isArithmetic(type)) {
+            args = mergeNested(type, args);
+            args = foldLeadingConstants(name, args);
+            args = removeNeutralConstants(type, args);
+            if (args.length == 1 && args != original && type != AddFunction.class
+                    && isDouble(args[0])) {
+                // x * 1, x - 0 and x / 1 are x, but -0.0 + 0 is 0.0.
+                return args[0];
+            }
+        } else if (type == NotFunction.class && args.length == 1
+                && args[0] instanceof CallExpression) {
+            CallExpression arg = (CallExpression) args[0];
+            Expression[] params = parameters(arg);
+            if (standardType(arg.getFunctionName()) == NotFunction.class
+                    && params.length == 1 && isBoolean(params[0])) {
+                return params[0];
+            }
+        }
+        Expression folded = fold(name, args);
+        if (folded != null) {
+            return folded;
+        } else if (args != original) {
+            return new CallExpression(name, args);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Merges a call to an arithmetic function with a call to the same function as its
+     * first argument: <code>(a - b) - c</code> is computed exactly as
+     * <code>a - b - c</code>.
+     */
+    private Expression[] mergeNested(Class<?> type, Expression[] args) {
+        if (args.length > 0 && args[0] instanceof CallExpression) {
+            CallExpression first = (CallExpression) args[0];
+            Expression[] params = parameters(first);
+            if (standardType(first.getFunctionName()) == type
+                    && params.length >= minimumArgs(type)) {
+                Expression[] result = new Expression[params.length + args.length - 1];
+                System.arraycopy(params, 0, result, 0, params.length);
+                System.arraycopy(args, 1, result, params.length, args.length - 1);
+                return result;
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Replaces the leading constant arguments of an arithmetic function by their
+     * result, which is computed first anyway.
+     */
+    private Expression[] foldLeadingConstants(String name, Expression[] args) {
+        int constants = 0;
+        while (constants < args.length && args[constants] instanceof ConstantExpression) {
+            constants++;
+        }
+        if (constants < 2 || constants == args.length) {
+            return args;
+        }
+        Expression[] prefix = new Expression[constants];
+        System.arraycopy(args, 0, prefix, 0, constants);
+        Expression folded = fold(name, prefix);
+        if (folded == null) {
+            return args;
+        }
+        Expression[] result = new Expression[args.length - constants + 1];
+        result[0] = folded;
+        System.arraycopy(args, constants, result, 1, args.length - constants);
+        return result;
+    }
+
+    /**
+     * Removes the constant arguments which do not change the result of an arithmetic
+     * function: zeros in an addition, ones in a multiplication, and the same after the
+     * first argument of a substraction or division. The error raised when a
+     * substraction or division has too few arguments is preserved.
+     */
+    private Expression[] removeNeutralConstants(Class<?> type, Expression[] args) {
+        int first = (type == SubstractFunction.class || type == DivideFunction.class) ? 1
+                : 0;
+        List<Expression> result = new ArrayList<Expression>(args.length);
+        for (int i = 0; i < args.length; i++) {
+            if (i < first || !isNeutral(type, args[i])) {
+                result.add(args[i]);
+            }
+        }
+        if (result.size() == args.length) {
+            return args;
+        } else if (result.size() < minimumArgs(type)
+                && !(result.size() == 1 && isDouble(result.get(0)))) {
+            return args;
+        }
+        return result.toArray(new Expression[result.size()]);
+    }
+
+    private boolean isNeutral(Class<?> type, Expression arg) {
+        if (!(arg instanceof ConstantExpression)
+                || !(((ConstantExpression) arg).getValue() instanceof Number)) {
+            return false;
+        }
+        double value = ((Number) ((ConstantExpression) arg).getValue()).doubleValue();
+        if (type == AddFunction.class) {
+            // The running sum starts at 0.0 and is never -0.0, so both zeros are neutral.
+            return value == 0.0;
+        } else if (type == SubstractFunction.class) {
+            return Double.doubleToLongBits(value) == 0L;
+        } else {
+            return value == 1.0;
+        }
+    }
+
+    /**
+     * Computes the value of a call to a standard function whose arguments are all
+     * constants.
+     * 
+     * @return the constant value, or <code>null</code> if the call can not be folded,
+     *         in particular if it raises an error, which will then be raised when the
+     *         expression is evaluated.
+     */
+    private Expression fold(String name, Expression[] args) {
+        for (Expression arg : args) {
+            if (!(arg instanceof ConstantExpression)) {
+                return null;
+            }
+        }
+        try {
+            Object value = new CallExpression(name, args).evaluate(env);
+            return (value != null) ? new ConstantExpression(value) : null;
+        } catch (EvaluationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Makes the subexpressions which read attributes and occur several times evaluated
+     * only once.
+     */
+    private Expression eliminateCommonSubexpressions(Expression expr) {
+        final Map<Expression, Integer> counts = new HashMap<Expression, Integer>();
+        final boolean[] alreadyShared = { false };
+        expr.accept(new ExpressionVisitorAdapter() {
+            @Override
+            public void visitAndExpression(AndExpression e) {
+                increment(counts, e, 1);
+            }
+
+            @Override
+            public void visitOrExpression(OrExpression e) {
+                increment(counts, e, 1);
+            }
+
+            @Override
+            public void visitCallExpression(CallExpression e) {
+                increment(counts, e, 1);
+            }
+
+            @Override
+            public void visitLetExpression(LetExpression e) {
+                alreadyShared[0] = true;
+            }
+
+            @Override
+            public void visitSharedExpression(SharedExpression e) {
+                alreadyShared[0] = true;
+            }
+        });
+        if (alreadyShared[0]) {
+            return expr;
+        }
+        Sharing sharing = new Sharing(counts);
+        Expression body = sharing.replace(expr);
+        if (sharing.shared.isEmpty()) {
+            return expr;
+        }
+        return new LetExpression(sharing.shared.toArray(new SharedExpression[sharing.shared
+                .size()]), body);
+    }
+
+    private static void increment(Map<Expression, Integer> counts, Expression expr,
+            int delta) {
+        Integer count = counts.get(expr);
+        counts.put(expr, ((count != null) ? count : 0) + delta);
+    }
+
+    /**
+     * The state of the elimination of common subexpressions in one expression.
+     */
+    private class Sharing {
+        /**
+         * The number of occurrences of each (structurally distinct) subexpression which
+         * remain once the shared ones have been replaced.
+         */
+        private final Map<Expression, Integer> counts;
+
+        /**
+         * Whether each subexpression can be shared: it only calls standard functions,
+         * and reads at least one attribute.
+         */
+        private final Map<Expression, Boolean> shareable = new HashMap<Expression, Boolean>();
+
+        private final Map<Expression, SharedExpression> replacements = new HashMap<Expression, SharedExpression>();
+
+        private final List<SharedExpression> shared = new ArrayList<SharedExpression>();
+
+        Sharing(Map<Expression, Integer> counts) {
+            this.counts = counts;
+        }
+
+        /**
+         * Returns <code>expr</code> with its common subexpressions replaced by
+         * {@link SharedExpression}s. The expressions are replaced from the root down, so
+         * that the largest common subexpressions are shared.
+         */
+        Expression replace(Expression expr) {
+            Integer count = counts.get(expr);
+            if (count == null || count < 2 || !isShareable(expr)) {
+                return replaceChildren(expr);
+            }
+            SharedExpression result = replacements.get(expr);
+            if (result == null) {
+                // All the occurrences are merged into one: so are their subexpressions.
+                final int merged = count - 1;
+                for (Expression child : children(expr)) {
+                    child.accept(new ExpressionVisitorAdapter() {
+                        @Override
+                        public void visitAndExpression(AndExpression e) {
+                            increment(counts, e, -merged);
+                        }
+
+                        @Override
+                        public void visitOrExpression(OrExpression e) {
+                            increment(counts, e, -merged);
+                        }
+
+                        @Override
+                        public void visitCallExpression(CallExpression e) {
+                            increment(counts, e, -merged);
+                        }
+                    });
+                }
+                int slot = shared.size();
+                shared.add(null);
+                result = new SharedExpression(slot, replaceChildren(expr));
+                shared.set(slot, result);
+                replacements.put(expr, result);
+            }
+            return result;
+        }
+
+        private Expression replaceChildren(Expression expr) {
+            Expression[] children = children(expr);
+            Expression[] replaced = children;
+            for (int i = 0; i < children.length; i++) {
+                Expression r = replace(children[i]);
+                if (r != children[i]) {
+                    if (replaced == children) {
+                        replaced = children.clone();
+                    }
+                    replaced[i] = r;
+                }
+            }
+            if (replaced == children) {
+                return expr;
+            } else if (expr instanceof AndExpression) {
+                return new AndExpression(replaced);
+            } else if (expr instanceof OrExpression) {
+                return new OrExpression(replaced);
+            } else {
+                return new CallExpression(((CallExpression) expr).getFunctionName(),
+                        replaced);
+            }
+        }
+
+        private boolean isShareable(Expression expr) {
+            Boolean result = shareable.get(expr);
+            if (result == null) {
+                result = Boolean.valueOf(callsOnlyStandardFunctions(expr)
+                        && readsAttribute(expr));
+                shareable.put(expr, result);
+            }
+            return result.booleanValue();
+        }
+
+        private boolean callsOnlyStandardFunctions(Expression expr) {
+            if (expr instanceof ConstantExpression || expr instanceof VariableExpression) {
+                return true;
+            } else if (expr instanceof CallExpression
+                    && standardType(((CallExpression) expr).getFunctionName()) == null) {
+                return false;
+            } else if (!(expr instanceof CallExpression || expr instanceof AndExpression
+                    || expr instanceof OrExpression)) {
+                return false;
+            }
+            for (Expression child : children(expr)) {
+                if (!callsOnlyStandardFunctions(child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean readsAttribute(Expression expr) {
+            if (expr instanceof CallExpression
+                    && standardType(((CallExpression) expr).getFunctionName()) == AttributeFunction.class) {
+                return true;
+            }
+            for (Expression child : children(expr)) {
+                if (readsAttribute(child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the direct subexpressions of a call, conjunction or disjunction, or an
+     * empty array for other kinds of expressions.
+     */
+    private static Expression[] children(Expression expr) {
+        if (expr instanceof CallExpression) {
+            return parameters((CallExpression) expr);
+        } else if (expr instanceof AndExpression) {
+            return ((AndExpression) expr).getClauses();
+        } else if (expr instanceof OrExpression) {
+            return ((OrExpression) expr).getClauses();
+        } else {
+            return new Expression[0];
+        }
+    }
+
+    private static Expression[] parameters(CallExpression call) {
+        Expression[] params = call.getParameters();
+        return (params != null) ? params : new Expression[0];
+    }
+
+    /**
+     * Returns the class of the function called by <code>name</code>, if it is one of the
+     * standard functions without side effects. Only the exact standard classes are
+     * recognized: subclasses may redefine them.
+     */
+    private Class<?> standardType(String name) {
+        Function fun = env.lookupFunction(name);
+        if (fun == null) {
+            return null;
+        }
+        Class<?> type = fun.getClass();
+        if (isArithmetic(type) || type == LessThanFunction.class
+                || type == EqualsFunction.class || type == NotFunction.class
+                || type == AttributeFunction.class) {
+            return type;
+        }
+        return null;
+    }
+
+    private static boolean isArithmetic(Class<?> type) {
+        return type == AddFunction.class || type == SubstractFunction.class
+                || type == MultiplyFunction.class || type == DivideFunction.class;
+    }
+
+    private static int minimumArgs(Class<?> type) {
+        return (type == SubstractFunction.class || type == DivideFunction.class) ? 2 : 0;
+    }
+
+    /**
+     * Tests whether an expression always evaluates to a {@link Boolean} (or fails).
+     */
+    private boolean isBoolean(Expression expr) {
+        if (expr instanceof AndExpression || expr instanceof OrExpression) {
+            return true;
+        } else if (expr instanceof ConstantExpression) {
+            return ((ConstantExpression) expr).getValue() instanceof Boolean;
+        } else if (expr instanceof CallExpression) {
+            Class<?> type = standardType(((CallExpression) expr).getFunctionName());
+            return type == LessThanFunction.class || type == EqualsFunction.class
+                    || type == NotFunction.class;
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether an expression always evaluates to a {@link Double} (or fails).
+     */
+    private boolean isDouble(Expression expr) {
+        if (expr instanceof ConstantExpression) {
+            return ((ConstantExpression) expr).getValue() instanceof Double;
+        } else if (expr instanceof CallExpression) {
+            Class<?> type = standardType(((CallExpression) expr).getFunctionName());
+            return type != null && isArithmetic(type);
+        }
+        return false;
+    }
+}
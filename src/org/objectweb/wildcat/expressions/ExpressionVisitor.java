@@ -31,4 +31,15 @@ public interface ExpressionVisitor {
      * Visit a {@link VariableExpression}.
      */
     void visitVariableExpression(VariableExpression expr);
+
+    /**
+     * Visit a {@link LetExpression}.
+     */
+    void visitLetExpression(LetExpression expr);
+
+    /**
+     * Visit a {@link SharedExpression}. A shared expression can be visited several
+     * times, once for each of its occurrences.
+     */
+    void visitSharedExpression(SharedExpression expr);
 }
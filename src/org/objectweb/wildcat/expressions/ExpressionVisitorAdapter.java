@@ -46,4 +46,20 @@ public class ExpressionVisitorAdapter implements ExpressionVisitor {
      */
     public void visitVariableExpression(VariableExpression expr) {
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.ExpressionVisitor#visitLetExpression(org.objectweb.wildcat.expressions.LetExpression)
+     */
+    public void visitLetExpression(LetExpression expr) {
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.ExpressionVisitor#visitSharedExpression(org.objectweb.wildcat.expressions.SharedExpression)
+     */
+    public void visitSharedExpression(SharedExpression expr) {
+    }
 }
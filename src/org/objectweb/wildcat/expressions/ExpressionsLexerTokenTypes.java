@@ -0,0 +1,62 @@
+// $ANTLR 2.7.6 (20060919): "expressions.g" -> "ExpressionsParser.java"$
+
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import java.util.*;
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.expressions.functions.Function;
+
+public interface ExpressionsLexerTokenTypes {
+	int EOF = 1;
+	int NULL_TREE_LOOKAHEAD = 3;
+	int AND = 4;
+	int OR = 5;
+	int DIV = 6;
+	int NAME = 7;
+	int NUMBER = 8;
+	int STRING = 9;
+	int PLUS = 10;
+	int MINUS = 11;
+	int STAR = 12;
+	int SLASH = 13;
+	int EQUAL = 14;
+	int NEQUAL = 15;
+	int LESS = 16;
+	int GREATER = 17;
+	int LEQ = 18;
+	int GEQ = 19;
+	int COMMA = 20;
+	int LPAREN = 21;
+	int RPAREN = 22;
+	int DOT = 23;
+	int DOLLAR = 24;
+	int SHARP = 25;
+	int WS = 26;
+	int SL_COMMENT = 27;
+	int SQ_STRING = 28;
+	int DQ_STRING = 29;
+	int ESC = 30;
+	int DIGIT = 31;
+	int NAME_CHAR = 32;
+	int LETTER = 33;
+}
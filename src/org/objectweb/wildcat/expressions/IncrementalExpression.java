@@ -0,0 +1,703 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.wildcat.Aggregate;
+import org.objectweb.wildcat.AttributeHandle;
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.expressions.functions.AddFunction;
+import org.objectweb.wildcat.expressions.functions.AggregateFunction;
+import org.objectweb.wildcat.expressions.functions.AttributeFunction;
+import org.objectweb.wildcat.expressions.functions.AvgFunction;
+import org.objectweb.wildcat.expressions.functions.CoalesceFunction;
+import org.objectweb.wildcat.expressions.functions.CountFunction;
+import org.objectweb.wildcat.expressions.functions.DivideFunction;
+import org.objectweb.wildcat.expressions.functions.EqualsFunction;
+import org.objectweb.wildcat.expressions.functions.Function;
+import org.objectweb.wildcat.expressions.functions.IfFunction;
+import org.objectweb.wildcat.expressions.functions.LazyFunction;
+import org.objectweb.wildcat.expressions.functions.LessThanFunction;
+import org.objectweb.wildcat.expressions.functions.MaxFunction;
+import org.objectweb.wildcat.expressions.functions.MinFunction;
+import org.objectweb.wildcat.expressions.functions.MultiplyFunction;
+import org.objectweb.wildcat.expressions.functions.NotFunction;
+import org.objectweb.wildcat.expressions.functions.SubstractFunction;
+import org.objectweb.wildcat.expressions.functions.SumFunction;
+
+/**
+ * An expression which remembers the value of each of its subexpressions, and only
+ * recomputes the ones whose inputs have changed since its previous evaluation. It is
+ * meant for expressions which are evaluated again each time one of the attributes they
+ * read changes, like the definitions of synthetic attributes: when only one attribute out
+ * of many has changed, only the subexpressions on the path from the read of that
+ * attribute to the root of the expression are computed again.
+ * <p>
+ * The source expression is turned into a graph of nodes, in which identical
+ * subexpressions are a single node. On each evaluation, the inputs of the graph are read
+ * again: the attributes (those with a definite path through an {@link AttributeHandle}
+ * bound once) and the variables. When the caller knows which paths have changed since
+ * the previous evaluation (see {@link #evaluate(Environment, Collection)}), only the
+ * attributes with one of these paths are read again. Then the nodes which depend on an
+ * input whose value has changed are computed again from the values of their children,
+ * children first, up to the root. The other nodes keep their value without even being
+ * visited. The {@linkplain AggregateFunction aggregate functions} over a pattern read
+ * are inputs too: they read the aggregate maintained by the context for the pattern (see
+ * {@link Context#aggregate(Path)}), and the pattern itself is not looked up.
+ * <p>
+ * Walking the graph costs more than running the code of an expression compiled by a
+ * {@link CompilingInterpreter}, unless it saves the evaluation of many subexpressions: a
+ * compiled expression with fewer than a dozen inputs is simply evaluated with its
+ * compiled code.
+ * <p>
+ * This only applies to the expressions made of the standard functions, whose result only
+ * depends on their arguments: as all the inputs are read on each evaluation, the
+ * subexpressions are computed even when a conjunction, a disjunction or a
+ * {@linkplain LazyFunction lazy function} would not have evaluated them, and a function
+ * with side effects could observe the difference. The other expressions are simply
+ * evaluated as usual. In both cases, the values and errors are the same as with the
+ * source expression: an error raised by a subexpression is remembered as its value, and
+ * only raised if it is used. Visitors visit the source expression. The evaluations are
+ * synchronized, as they update the remembered values.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class IncrementalExpression implements Expression {
+    /**
+     * The minimum number of inputs for the graph of a compiled expression to be used.
+     * Below, a single change costs more through the graph than through the compiled code.
+     */
+    private static final int MIN_COMPILED_INPUTS = 12;
+
+    /**
+     * The expression this one computes, as given to the constructor, evaluated when the
+     * graph is not used.
+     */
+    private final Expression original;
+
+    /**
+     * The expression this one computes, without its compiled form.
+     */
+    private final Expression source;
+
+    /**
+     * The nodes of the graph, children first, or <code>null</code> if the source
+     * contains an expression of an unknown kind.
+     */
+    private final Node[] nodes;
+
+    /**
+     * The indices of the inputs of the graph, which are read on each evaluation.
+     */
+    private final BitSet inputs = new BitSet();
+
+    /**
+     * The indices of the inputs which are read on each evaluation, whatever the paths
+     * which have changed: the variables, and the attributes whose path is not constant.
+     */
+    private final BitSet unconditional = new BitSet();
+
+    /**
+     * The indices of the inputs reading each definite attribute, and the aggregate of
+     * (or the paths matching) each pattern.
+     */
+    private final Map<Path, BitSet> readers = new HashMap<Path, BitSet>();
+
+    private final Map<Path, BitSet> patterns = new HashMap<Path, BitSet>();
+
+    /**
+     * The indices of the nodes which remain to be computed by the current evaluation.
+     */
+    private final BitSet pending = new BitSet();
+
+    /**
+     * Whether all the calls in the graph are calls to standard functions, and the graph
+     * is worth using.
+     */
+    private boolean incremental;
+
+    /**
+     * The environment the functions of the calls were looked up in, and the version of
+     * its functions at that time.
+     */
+    private Environment environment;
+
+    private int functionsVersion;
+
+    /**
+     * Creates a new <code>IncrementalExpression</code>.
+     * 
+     * @param source
+     *            the expression to compute. The graph is built from the source of a
+     *            {@link CompiledExpression}, but the compiled code is kept for the
+     *            evaluations which do not use the graph.
+     */
+    public IncrementalExpression(Expression source) {
+        this.original = source;
+        if (source instanceof CompiledExpression) {
+            source = ((CompiledExpression) source).getSource();
+        }
+        this.source = source;
+        Builder builder = new Builder();
+        builder.node(source);
+        if (builder.opaque) {
+            this.nodes = null;
+        } else {
+            this.nodes = builder.order.toArray(new Node[builder.order.size()]);
+            for (Node node : nodes) {
+                for (Node child : node.children) {
+                    child.parents.add(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the expression this one computes.
+     */
+    public Expression getSource() {
+        return source;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Expression#evaluate(org.objectweb.wildcat.expressions.Environment)
+     */
+    public Object evaluate(Environment env) throws EvaluationException {
+        return evaluate(env, null);
+    }
+
+    /**
+     * Evaluates the expression, knowing which paths have changed since the previous
+     * evaluation. The attributes read by the expression whose path is not in
+     * <code>changes</code> keep the value read by the previous evaluation, so
+     * <code>changes</code> must contain every path whose change may have affected
+     * them: the paths of the attributes added, removed or changed, and the paths of the
+     * resources added or removed.
+     * 
+     * @param env
+     *            the environment in which to evaluate the expression.
+     * @param changes
+     *            the absolute paths which have changed since the previous evaluation,
+     *            or <code>null</code> if they are not known, in which case all the
+     *            inputs are read again.
+     * @return the value of the expression.
+     * @throws EvaluationException
+     *             if the expression can not be evaluated.
+     */
+    public synchronized Object evaluate(Environment env, Collection<Path> changes)
+            throws EvaluationException {
+        if (nodes == null) {
+            return original.evaluate(env);
+        }
+        int version = env.getFunctionsVersion();
+        if (env != environment || version != functionsVersion) {
+            bind(env);
+            environment = env;
+            functionsVersion = version;
+        }
+        if (!incremental) {
+            return original.evaluate(env);
+        }
+        if (changes == null) {
+            pending.or(inputs);
+        } else {
+            markChanged(changes);
+        }
+        for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+            pending.clear(i);
+            Node node = nodes[i];
+            if (node.update(env)) {
+                for (Node parent : node.parents) {
+                    pending.set(parent.index);
+                }
+            }
+        }
+        return nodes[nodes.length - 1].get();
+    }
+
+    /**
+     * Marks the inputs concerned by some changed paths as pending. A resource added or
+     * removed may concern any input.
+     */
+    private void markChanged(Collection<Path> changes) {
+        pending.or(unconditional);
+        for (Path path : changes) {
+            if (path.isResource()) {
+                pending.or(inputs);
+                return;
+            }
+            BitSet concerned = readers.get(path);
+            if (concerned != null) {
+                pending.or(concerned);
+            }
+            for (Map.Entry<Path, BitSet> entry : patterns.entrySet()) {
+                if (path.matches(entry.getKey())) {
+                    pending.or(entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Looks up the functions of the calls again, and forgets all the values computed
+     * with the previous ones.
+     */
+    private void bind(Environment env) {
+        incremental = true;
+        inputs.clear();
+        unconditional.clear();
+        readers.clear();
+        patterns.clear();
+        for (Node node : nodes) {
+            node.computed = false;
+            if (node instanceof Call) {
+                Call call = (Call) node;
+                call.bind(env);
+                incremental &= call.standard;
+                if (call.input) {
+                    inputs.set(call.index);
+                }
+            } else if (node instanceof Variable) {
+                inputs.set(node.index);
+            }
+        }
+        for (Node node : nodes) {
+            if (node instanceof Call && ((Call) node).pattern != null) {
+                Call call = (Call) node;
+                call.unused = true;
+                for (Node parent : call.parents) {
+                    call.unused &= parent instanceof Call && ((Call) parent).read == call;
+                }
+                if (call.unused) {
+                    inputs.clear(call.index);
+                }
+            }
+        }
+        if (original instanceof CompiledExpression) {
+            incremental &= inputs.cardinality() >= MIN_COMPILED_INPUTS;
+        }
+        for (int i = inputs.nextSetBit(0); i >= 0; i = inputs.nextSetBit(i + 1)) {
+            Path path = null;
+            Map<Path, BitSet> index = null;
+            if (nodes[i] instanceof Call) {
+                Call call = (Call) nodes[i];
+                if (call.attribute != null) {
+                    path = call.attribute;
+                    index = readers;
+                } else if (call.pattern != null || call.read != null) {
+                    path = (call.read != null) ? call.read.pattern : call.pattern;
+                    index = patterns;
+                }
+            }
+            if (path == null) {
+                unconditional.set(i);
+            } else {
+                BitSet concerned = index.get(path);
+                if (concerned == null) {
+                    concerned = new BitSet();
+                    index.put(path, concerned);
+                }
+                concerned.set(i);
+            }
+        }
+        pending.set(0, nodes.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Expression#accept(org.objectweb.wildcat.expressions.ExpressionVisitor)
+     */
+    public void accept(ExpressionVisitor visitor) {
+        source.accept(visitor);
+    }
+
+    /**
+     * Builds the graph of nodes of an expression.
+     */
+    private static final class Builder {
+        private final Map<Expression, Node> nodes = new HashMap<Expression, Node>();
+
+        /**
+         * The nodes created, children first.
+         */
+        final List<Node> order = new ArrayList<Node>();
+
+        /**
+         * Whether an expression of an unknown kind has been found.
+         */
+        boolean opaque;
+
+        Node node(Expression expr) {
+            // Evaluating a shared expression once per evaluation is what the graph does
+            // anyway.
+            while (expr instanceof LetExpression || expr instanceof SharedExpression
+                    || expr instanceof CompiledExpression) {
+                if (expr instanceof LetExpression) {
+                    expr = ((LetExpression) expr).getBody();
+                } else if (expr instanceof SharedExpression) {
+                    expr = ((SharedExpression) expr).getExpression();
+                } else {
+                    expr = ((CompiledExpression) expr).getSource();
+                }
+            }
+            Node node = nodes.get(expr);
+            if (node == null) {
+                node = create(expr);
+                node.index = order.size();
+                order.add(node);
+                nodes.put(expr, node);
+            }
+            return node;
+        }
+
+        private Node create(Expression expr) {
+            if (expr instanceof ConstantExpression) {
+                return new Constant(((ConstantExpression) expr).getValue());
+            } else if (expr instanceof VariableExpression) {
+                return new Variable((VariableExpression) expr);
+            } else if (expr instanceof AndExpression) {
+                return new Junction(nodes(((AndExpression) expr).getClauses()), false);
+            } else if (expr instanceof OrExpression) {
+                return new Junction(nodes(((OrExpression) expr).getClauses()), true);
+            } else if (expr instanceof CallExpression) {
+                CallExpression call = (CallExpression) expr;
+                return new Call(call.getFunctionName(), nodes(call.getParameters()));
+            } else {
+                opaque = true;
+                return new Constant(null);
+            }
+        }
+
+        private Node[] nodes(Expression[] exprs) {
+            Node[] result = new Node[exprs.length];
+            for (int i = 0; i < exprs.length; i++) {
+                result[i] = node(exprs[i]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A subexpression, with its last value.
+     */
+    private abstract static class Node {
+        /**
+         * The position of the node in the graph, after all its children.
+         */
+        int index;
+
+        final Node[] children;
+
+        /**
+         * The nodes which have this one as a child.
+         */
+        final List<Node> parents = new ArrayList<Node>(1);
+
+        /**
+         * The last value computed, or the error raised instead, valid if
+         * <code>computed</code>.
+         */
+        Object value;
+
+        Exception error;
+
+        boolean computed;
+
+        Node(Node[] children) {
+            this.children = children;
+        }
+
+        /**
+         * Computes the value of the node again.
+         * 
+         * @return <code>true</code> if the value may have changed.
+         */
+        final boolean update(Environment env) {
+            Object result = null;
+            Exception failure = null;
+            try {
+                result = compute(env);
+            } catch (Exception e) {
+                failure = e;
+            }
+            boolean changed = !computed || failure != null || error != null
+                    || !(value == null ? result == null : value.equals(result));
+            value = result;
+            error = failure;
+            computed = true;
+            return changed;
+        }
+
+        /**
+         * Returns the last value computed, or raises the error raised instead.
+         */
+        final Object get() throws EvaluationException {
+            if (error instanceof EvaluationException) {
+                throw (EvaluationException) error;
+            } else if (error != null) {
+                throw (RuntimeException) error;
+            }
+            return value;
+        }
+
+        /**
+         * Computes the current value of the node, from the values of its children.
+         */
+        abstract Object compute(Environment env) throws EvaluationException;
+    }
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Constant extends Node {
+        final Object constant;
+
+        Constant(Object constant) {
+            super(NO_CHILDREN);
+            this.constant = constant;
+        }
+
+        @Override
+        Object compute(Environment env) {
+            return constant;
+        }
+    }
+
+    private static final class Variable extends Node {
+        private final VariableExpression expr;
+
+        Variable(VariableExpression expr) {
+            super(NO_CHILDREN);
+            this.expr = expr;
+        }
+
+        @Override
+        Object compute(Environment env) throws EvaluationException {
+            return expr.evaluate(env);
+        }
+    }
+
+    /**
+     * A conjunction or a disjunction.
+     */
+    private static final class Junction extends Node {
+        /**
+         * The value of the clause which decides the value of the junction:
+         * <code>true</code> for a disjunction, <code>false</code> for a conjunction.
+         */
+        private final boolean decisive;
+
+        Junction(Node[] clauses, boolean decisive) {
+            super(clauses);
+            this.decisive = decisive;
+        }
+
+        @Override
+        Object compute(Environment env) throws EvaluationException {
+            for (Node clause : children) {
+                if (Boolean.TRUE.equals(clause.get()) == decisive) {
+                    return Boolean.valueOf(decisive);
+                }
+            }
+            return Boolean.valueOf(!decisive);
+        }
+    }
+
+    /**
+     * A function call.
+     */
+    private static final class Call extends Node {
+        private final String name;
+
+        private Function function;
+
+        /**
+         * Whether the function is one of the standard functions.
+         */
+        boolean standard;
+
+        /**
+         * Whether the function reads the context, so that the call must be made on each
+         * evaluation.
+         */
+        boolean input;
+
+        /**
+         * The definite path read, if the function is the standard <code>attribute</code>
+         * function and its path argument is a constant definite attribute path.
+         */
+        Path attribute;
+
+        /**
+         * The handle through which the attribute is read, and the context it was bound
+         * in.
+         */
+        private AttributeHandle handle;
+
+        private Context context;
+
+        /**
+         * The pattern read, if the function is the standard <code>attribute</code>
+         * function and its path argument is a constant absolute attribute pattern.
+         */
+        Path pattern;
+
+        /**
+         * Whether the pattern read is only used by aggregate functions, which do not
+         * need its value.
+         */
+        boolean unused;
+
+        /**
+         * The pattern read argument, if the function is a standard aggregate function
+         * called on one, and the aggregate maintained for its pattern.
+         */
+        Call read;
+
+        private Aggregate aggregate;
+
+        Call(String name, Node[] args) {
+            super(args);
+            this.name = name;
+        }
+
+        void bind(Environment env) {
+            function = env.lookupFunction(name);
+            Class<?> type = (function != null) ? function.getClass() : null;
+            input = type == AttributeFunction.class;
+            standard = input || type == AddFunction.class || type == SubstractFunction.class
+                    || type == MultiplyFunction.class || type == DivideFunction.class
+                    || type == LessThanFunction.class || type == EqualsFunction.class
+                    || type == NotFunction.class || type == IfFunction.class
+                    || type == CoalesceFunction.class;
+            boolean aggregator = type == SumFunction.class || type == AvgFunction.class
+                    || type == MinFunction.class || type == MaxFunction.class
+                    || type == CountFunction.class;
+            standard |= aggregator;
+            attribute = null;
+            pattern = null;
+            if (input && children.length == 2 && children[0] instanceof Constant) {
+                Object path = ((Constant) children[0]).constant;
+                if (path instanceof Path && ((Path) path).isAbsolute()
+                        && ((Path) path).isAttribute()) {
+                    if (((Path) path).isPattern()) {
+                        pattern = (Path) path;
+                    } else {
+                        attribute = (Path) path;
+                    }
+                }
+            }
+            // The children are bound first.
+            read = null;
+            if (aggregator && children.length == 1 && children[0] instanceof Call
+                    && ((Call) children[0]).pattern != null) {
+                read = (Call) children[0];
+                input = true;
+            }
+            unused = false;
+            handle = null;
+            context = null;
+            aggregate = null;
+        }
+
+        @Override
+        Object compute(Environment env) throws EvaluationException {
+            if (unused && children[1].get() instanceof Context) {
+                // Its parents read the aggregate of the pattern instead.
+                return null;
+            }
+            if (read != null) {
+                Object ctx = read.children[1].get();
+                if (ctx instanceof Context) {
+                    if (aggregate == null || context != ctx) {
+                        aggregate = ((Context) ctx).aggregate(read.pattern);
+                        context = (Context) ctx;
+                    }
+                    try {
+                        return ((AggregateFunction) function).apply(aggregate);
+                    } catch (Exception e) {
+                        throw new EvaluationException("Error while executing function "
+                                + name + ".", e);
+                    }
+                }
+            }
+            if (attribute != null) {
+                Object ctx = children[1].get();
+                if (ctx instanceof Context) {
+                    try {
+                        return read((Context) ctx);
+                    } catch (Exception e) {
+                        throw new EvaluationException("Error while executing function "
+                                + name + ".", e);
+                    }
+                }
+            }
+            if (function instanceof LazyFunction) {
+                // The arguments not used keep their value, or their error, for later.
+                LazyArgument[] values = new LazyArgument[children.length];
+                for (int i = 0; i < values.length; i++) {
+                    final Node child = children[i];
+                    values[i] = new LazyArgument() {
+                        @Override
+                        Object compute() throws EvaluationException {
+                            return child.get();
+                        }
+                    };
+                }
+                return LazyArgument.apply(name, (LazyFunction) function, values, env);
+            }
+            // As with CallExpression, the arguments are evaluated in order, and only the
+            // errors raised by the function itself are wrapped.
+            Object[] values = new Object[children.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = children[i].get();
+            }
+            try {
+                return function.apply(values, env);
+            } catch (Exception e) {
+                throw new EvaluationException("Error while executing function " + name
+                        + ".", e);
+            }
+        }
+
+        /**
+         * Reads the attribute through its handle, binding it first if needed.
+         */
+        private Object read(Context ctx) {
+            if (handle == null || context != ctx || !handle.isValid()) {
+                handle = ctx.bindAttribute(attribute);
+                context = ctx;
+                if (handle == null) {
+                    return ctx.lookupAttribute(attribute);
+                }
+            }
+            return handle.getValue();
+        }
+    }
+}
@@ -60,6 +60,17 @@ public interface Interpreter {
      */
     Object evaluate(String expr) throws EvaluationException;
 
+    /**
+     * Prepares an expression which will be evaluated many times by this interpreter.
+     * 
+     * @param expr
+     *            the expression to prepare.
+     * @return an expression which evaluates to the same values as <code>expr</code> in
+     *         the interpreter's top-level environment, but faster.
+     * @see ExpressionOptimizer
+     */
+    Expression optimize(Expression expr);
+
     /**
      * Returns the top-level environement of this interpreter. This environment can be
      * manipulated to define or redefine top-level variables and load new functions.
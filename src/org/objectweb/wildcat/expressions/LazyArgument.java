@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import org.objectweb.wildcat.expressions.functions.LazyFunction;
+import org.objectweb.wildcat.expressions.functions.Thunk;
+
+/**
+ * The argument of a call to a {@link LazyFunction}, which remembers its value, or the
+ * error raised by its evaluation.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+abstract class LazyArgument implements Thunk {
+    private Object value;
+
+    private boolean evaluated;
+
+    private Exception failure;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.Thunk#getValue()
+     */
+    public final Object getValue() throws EvaluationException {
+        if (failure != null) {
+            throw rethrow(failure);
+        }
+        if (!evaluated) {
+            try {
+                value = compute();
+                evaluated = true;
+            } catch (EvaluationException e) {
+                failure = e;
+                throw e;
+            } catch (RuntimeException e) {
+                failure = e;
+                throw e;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Evaluates the argument.
+     */
+    abstract Object compute() throws EvaluationException;
+
+    /**
+     * Calls a lazy function. As with {@link CallExpression}, the errors raised by the
+     * function are wrapped, but the ones raised by the evaluation of its arguments are
+     * propagated as they are.
+     * 
+     * @param name
+     *            the name under which the function is called.
+     */
+    static Object apply(String name, LazyFunction fun, LazyArgument[] args,
+            Environment env) throws EvaluationException {
+        try {
+            return fun.applyLazily(args, env);
+        } catch (Exception e) {
+            for (LazyArgument arg : args) {
+                if (arg.failure == e) {
+                    throw rethrow(e);
+                }
+            }
+            throw new EvaluationException("Error while executing function " + name + ".",
+                    e);
+        }
+    }
+
+    /**
+     * Raises again an error raised by an evaluation, which is either an
+     * {@link EvaluationException} or a {@link RuntimeException}.
+     */
+    private static EvaluationException rethrow(Exception e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        return (EvaluationException) e;
+    }
+}
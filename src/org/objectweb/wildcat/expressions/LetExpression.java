@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+/**
+ * Introduces a scope in which {@link SharedExpression}s are evaluated at most once. The
+ * value of a <code>LetExpression</code> is the value of its body; the first occurrence
+ * of a shared expression evaluated in the body computes its value, and the other
+ * occurrences reuse it. Each evaluation of the <code>LetExpression</code> starts afresh.
+ * <p>
+ * Such expressions are not produced by the parser, but by the
+ * {@link ExpressionOptimizer} when it eliminates common subexpressions.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class LetExpression implements Expression {
+    /**
+     * The expressions shared in the body, indexed by their slot.
+     */
+    private final SharedExpression[] shared;
+
+    /**
+     * The expression which gives its value to this one.
+     */
+    private final Expression body;
+
+    /**
+     * Creates a new <code>LetExpression</code>.
+     * 
+     * @param shared
+     *            the expressions shared in the body, each one at the index given by its
+     *            {@linkplain SharedExpression#getSlot() slot}.
+     * @param body
+     *            the expression to evaluate.
+     * @throws IllegalArgumentException
+     *             if a shared expression is not at the index of its slot.
+     */
+    public LetExpression(SharedExpression[] shared, Expression body) {
+        for (int i = 0; i < shared.length; i++) {
+            if (shared[i].getSlot() != i) {
+                throw new IllegalArgumentException("Shared expression at index " + i
+                        + " has slot " + shared[i].getSlot() + ".");
+            }
+        }
+        this.shared = shared;
+        this.body = body;
+    }
+
+    /**
+     * @return the shared expressions, indexed by their slot
+     */
+    public SharedExpression[] getShared() {
+        return shared;
+    }
+
+    /**
+     * @return the body
+     */
+    public Expression getBody() {
+        return body;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Expression#evaluate(org.objectweb.wildcat.expressions.Environment)
+     */
+    public Object evaluate(Environment env) throws EvaluationException {
+        return body.evaluate(new Scope(env, shared));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Expression#accept(org.objectweb.wildcat.expressions.ExpressionVisitor)
+     */
+    public void accept(ExpressionVisitor visitor) {
+        visitor.visitLetExpression(this);
+        body.accept(visitor);
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.objectweb.wildcat.expressions;
 
+import java.util.Arrays;
+
 /**
  * Represents a boolean disjunction.
  * 
@@ -27,6 +29,11 @@ package org.objectweb.wildcat.expressions;
 public class OrExpression implements Expression {
     private Expression[] clauses;
 
+    /**
+     * The hash code of this expression, computed on demand.
+     */
+    private int hash;
+
     /**
      * Creates a new <code>OrExpression</code>.
      * 
@@ -73,4 +80,33 @@ public class OrExpression implements Expression {
             clause.accept(visitor);
         }
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        } else if (!(obj instanceof OrExpression)) {
+            return false;
+        }
+        OrExpression other = (OrExpression) obj;
+        return hashCode() == other.hashCode() && Arrays.equals(clauses, other.clauses);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        if (hash == 0) {
+            hash = 2 + Arrays.hashCode(clauses);
+        }
+        return hash;
+    }
 }
@@ -0,0 +1,541 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.wildcat.Context;
+
+/**
+ * A hand-written parser for the expressions language, which builds the same expressions
+ * as the ANTLR parser generated from <code>expressions.g</code>, but several times
+ * faster: it scans the characters of the source text directly, and does not create
+ * token objects. Each non-terminal of the grammar is parsed by the method of the same
+ * name, so the two parsers can be compared rule by rule.
+ * <p>
+ * Unlike the generated parser, which stops at the end of the first complete expression,
+ * this parser rejects any text following it.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class RecursiveDescentParser {
+    private static final int EOF = 0;
+
+    private static final int NAME = 1;
+
+    private static final int NUMBER = 2;
+
+    private static final int STRING = 3;
+
+    private static final int AND = 4;
+
+    private static final int OR = 5;
+
+    private static final int DIV = 6;
+
+    private static final int PLUS = 7;
+
+    private static final int MINUS = 8;
+
+    private static final int STAR = 9;
+
+    private static final int SLASH = 10;
+
+    private static final int EQUAL = 11;
+
+    private static final int NEQUAL = 12;
+
+    private static final int LESS = 13;
+
+    private static final int GREATER = 14;
+
+    private static final int LEQ = 15;
+
+    private static final int GEQ = 16;
+
+    private static final int COMMA = 17;
+
+    private static final int LPAREN = 18;
+
+    private static final int RPAREN = 19;
+
+    private static final int DOT = 20;
+
+    private static final int DOLLAR = 21;
+
+    private static final int SHARP = 22;
+
+    private static final String[] TOKEN_NAMES = { "end of input", "NAME", "NUMBER",
+            "STRING", "\"and\"", "\"or\"", "\"div\"", "'+'", "'-'", "'*'", "'/'",
+            "\"==\"", "\"!=\"", "'<'", "'>'", "\"<=\"", "\">=\"", "','", "'('", "')'",
+            "'.'", "'$'", "'#'" };
+
+    /**
+     * The source text.
+     */
+    private final String text;
+
+    /**
+     * The index of the first character after the current token.
+     */
+    private int pos;
+
+    /**
+     * The type of the current token.
+     */
+    private int token;
+
+    /**
+     * The index of the first character of the current token.
+     */
+    private int start;
+
+    /**
+     * Parses an expression.
+     * 
+     * @param text
+     *            the source text of the expression.
+     * @return the parsed expression.
+     * @throws IllegalArgumentException
+     *             if the text is not a valid expression.
+     */
+    public static Expression parse(String text) throws IllegalArgumentException {
+        RecursiveDescentParser parser = new RecursiveDescentParser(text);
+        Expression expr = parser.expression();
+        if (parser.token != EOF) {
+            throw parser.unexpected();
+        }
+        return expr;
+    }
+
+    private RecursiveDescentParser(String text) {
+        this.text = text;
+        next();
+    }
+
+    private Expression expression() {
+        return orExpression();
+    }
+
+    private Expression orExpression() {
+        Expression result = andExpression();
+        if (token == OR) {
+            List<Expression> clauses = new ArrayList<Expression>();
+            clauses.add(result);
+            while (token == OR) {
+                next();
+                clauses.add(andExpression());
+            }
+            result = new OrExpression(reversed(clauses));
+        }
+        return result;
+    }
+
+    private Expression andExpression() {
+        Expression result = compExpression();
+        if (token == AND) {
+            List<Expression> clauses = new ArrayList<Expression>();
+            clauses.add(result);
+            while (token == AND) {
+                next();
+                clauses.add(compExpression());
+            }
+            result = new AndExpression(reversed(clauses));
+        }
+        return result;
+    }
+
+    private Expression compExpression() {
+        Expression result = plusExpression();
+        while (true) {
+            int op = token;
+            if (op < EQUAL || op > GEQ) {
+                return result;
+            }
+            next();
+            Expression right = plusExpression();
+            switch (op) {
+            case EQUAL:
+                result = new CallExpression("equals", result, right);
+                break;
+            case NEQUAL:
+                result = new CallExpression("not", new CallExpression("equals", result,
+                        right));
+                break;
+            case LESS:
+                result = new CallExpression("less", result, right);
+                break;
+            case GREATER:
+                result = new CallExpression("not", new OrExpression(new CallExpression(
+                        "less", result, right), new CallExpression("equals", result,
+                        right)));
+                break;
+            case LEQ:
+                result = new OrExpression(new CallExpression("less", result, right),
+                        new CallExpression("equals", result, right));
+                break;
+            default:
+                result = new CallExpression("not", new CallExpression("less", result,
+                        right));
+            }
+        }
+    }
+
+    private Expression plusExpression() {
+        Expression result = multiplyExpression();
+        while (token == PLUS || token == MINUS) {
+            String function = (token == PLUS) ? "add" : "substract";
+            next();
+            result = new CallExpression(function, result, multiplyExpression());
+        }
+        return result;
+    }
+
+    private Expression multiplyExpression() {
+        Expression result = unaryExpression();
+        while (token == STAR || token == DIV) {
+            String function = (token == STAR) ? "multiply" : "divide";
+            next();
+            result = new CallExpression(function, result, unaryExpression());
+        }
+        return result;
+    }
+
+    private Expression unaryExpression() {
+        if (token == MINUS) {
+            next();
+            return new CallExpression("substract", new ConstantExpression(0), atom());
+        } else {
+            return atom();
+        }
+    }
+
+    private Expression atom() {
+        Expression result;
+        switch (token) {
+        case NUMBER:
+            result = new ConstantExpression(Double.valueOf(tokenText()));
+            next();
+            return result;
+        case STRING:
+            result = new ConstantExpression(unquote(tokenText()));
+            next();
+            return result;
+        case DOLLAR:
+            next();
+            result = new VariableExpression(name());
+            return result;
+        case LPAREN:
+            next();
+            result = expression();
+            match(RPAREN);
+            return result;
+        case NAME:
+            return function();
+        case SLASH:
+        case SHARP:
+            return ctxpath();
+        default:
+            throw unexpected();
+        }
+    }
+
+    private Expression function() {
+        String func = name();
+        match(LPAREN);
+        List<Expression> args = new ArrayList<Expression>();
+        if (token != RPAREN) {
+            args.add(expression());
+            while (token == COMMA) {
+                next();
+                args.add(expression());
+            }
+        }
+        match(RPAREN);
+        return new CallExpression(func, args.toArray(new Expression[args.size()]));
+    }
+
+    private Expression ctxpath() {
+        StringBuilder str = new StringBuilder();
+        while (token == SLASH) {
+            next();
+            str.append('/').append(ctxstep());
+        }
+        match(SHARP);
+        str.append('#').append(ctxname());
+        return new CallExpression("attribute", new ConstantExpression(Context
+                .createPath(str.toString())), new VariableExpression("_context"));
+    }
+
+    private String ctxstep() {
+        if (token == STAR) {
+            next();
+            if (token == STAR) {
+                next();
+                return "**";
+            }
+            return "*";
+        }
+        return name();
+    }
+
+    private String ctxname() {
+        if (token == STAR) {
+            next();
+            return "*";
+        }
+        return name();
+    }
+
+    private String name() {
+        if (token != NAME) {
+            throw expecting(NAME);
+        }
+        String name = tokenText();
+        next();
+        return name;
+    }
+
+    private void match(int expected) {
+        if (token != expected) {
+            throw expecting(expected);
+        }
+        next();
+    }
+
+    private static Expression[] reversed(List<Expression> exprs) {
+        int n = exprs.size();
+        Expression[] result = new Expression[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = exprs.get(n - 1 - i);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the quotes around a string literal, and unquotes the quotes it contains.
+     * Other escape sequences are kept as is, as by the generated parser.
+     */
+    private static String unquote(String str) {
+        str = str.substring(1, str.length() - 1);
+        if (str.indexOf('\\') == -1) {
+            return str;
+        }
+        return str.replace("\\'", "'").replace("\\\"", "\"");
+    }
+
+    private String tokenText() {
+        return text.substring(start, pos);
+    }
+
+    /**
+     * Scans the next token.
+     */
+    private void next() {
+        int length = text.length();
+        while (pos < length) {
+            char c = text.charAt(pos);
+            if (c == ' ' || c == '\t' || c == '\f' || c == '\r' || c == '\n') {
+                pos++;
+            } else if (c == '/' && pos + 1 < length && text.charAt(pos + 1) == '/') {
+                // Single-line comment, which must be terminated by a newline.
+                int end = pos + 2;
+                while (end < length && text.charAt(end) != '\n'
+                        && text.charAt(end) != '\r') {
+                    end++;
+                }
+                if (end == length) {
+                    start = pos = end;
+                    throw syntaxError("unterminated comment");
+                }
+                pos = end + 1;
+            } else {
+                break;
+            }
+        }
+        start = pos;
+        if (pos == length) {
+            token = EOF;
+            return;
+        }
+        char c = text.charAt(pos++);
+        switch (c) {
+        case '+':
+            token = PLUS;
+            break;
+        case '-':
+            token = MINUS;
+            break;
+        case '*':
+            token = STAR;
+            break;
+        case '/':
+            token = SLASH;
+            break;
+        case ',':
+            token = COMMA;
+            break;
+        case '(':
+            token = LPAREN;
+            break;
+        case ')':
+            token = RPAREN;
+            break;
+        case '.':
+            token = DOT;
+            break;
+        case '$':
+            token = DOLLAR;
+            break;
+        case '#':
+            token = SHARP;
+            break;
+        case '=':
+            expect('=');
+            token = EQUAL;
+            break;
+        case '!':
+            expect('=');
+            token = NEQUAL;
+            break;
+        case '<':
+            token = accept('=') ? LEQ : LESS;
+            break;
+        case '>':
+            token = accept('=') ? GEQ : GREATER;
+            break;
+        case '"':
+        case '\'':
+            scanString(c);
+            token = STRING;
+            break;
+        default:
+            if (isDigit(c)) {
+                while (pos < length && isDigit(text.charAt(pos))) {
+                    pos++;
+                }
+                if (accept('.')) {
+                    while (pos < length && isDigit(text.charAt(pos))) {
+                        pos++;
+                    }
+                }
+                token = NUMBER;
+            } else if (isLetter(c)) {
+                while (pos < length && isNameChar(text.charAt(pos))) {
+                    pos++;
+                }
+                token = keyword(start, pos);
+            } else {
+                pos--;
+                throw syntaxError("unexpected char '" + c + "'");
+            }
+        }
+    }
+
+    private void scanString(char quote) {
+        int length = text.length();
+        while (pos < length) {
+            char c = text.charAt(pos++);
+            if (c == quote) {
+                return;
+            } else if (c == '\\') {
+                char escaped = (pos < length) ? text.charAt(pos) : 0;
+                if (escaped != 'n' && escaped != 'r' && escaped != 't' && escaped != '\''
+                        && escaped != '"') {
+                    throw syntaxError("invalid escape sequence");
+                }
+                pos++;
+            }
+        }
+        throw syntaxError("unterminated string");
+    }
+
+    private int keyword(int from, int to) {
+        int length = to - from;
+        if (length == 3) {
+            if (text.startsWith("and", from)) {
+                return AND;
+            } else if (text.startsWith("div", from)) {
+                return DIV;
+            }
+        } else if (length == 2 && text.startsWith("or", from)) {
+            return OR;
+        }
+        return NAME;
+    }
+
+    private boolean accept(char c) {
+        if (pos < text.length() && text.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!accept(c)) {
+            throw syntaxError("expecting '" + c + "'");
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNameChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '$' || c == '.' || c == '-';
+    }
+
+    /**
+     * The letters of the grammar, which are not exactly the ones of
+     * {@link Character#isLetter(char)}.
+     */
+    private static boolean isLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || c == '_' || (c >= 'a' && c <= 'z')
+                || (c >= '\u00c0' && c <= '\u00d6') || (c >= '\u00d8' && c <= '\u00f6')
+                || (c >= '\u00f8' && c <= '\u00ff') || (c >= '\u0100' && c <= '\u1fff')
+                || (c >= '\u3040' && c <= '\u318f') || (c >= '\u3300' && c <= '\u337f')
+                || (c >= '\u3400' && c <= '\u3d2d') || (c >= '\u4e00' && c <= '\u9fff')
+                || (c >= '\uf900' && c <= '\ufaff');
+    }
+
+    private IllegalArgumentException expecting(int expected) {
+        return syntaxError("expecting " + TOKEN_NAMES[expected] + ", found "
+                + describeToken());
+    }
+
+    private IllegalArgumentException unexpected() {
+        return syntaxError("unexpected " + describeToken());
+    }
+
+    private String describeToken() {
+        if (token == EOF) {
+            return TOKEN_NAMES[EOF];
+        } else {
+            return "'" + tokenText() + "'";
+        }
+    }
+
+    private IllegalArgumentException syntaxError(String message) {
+        return new IllegalArgumentException("Syntax error: " + message + " at column "
+                + (start + 1) + ".");
+    }
+}
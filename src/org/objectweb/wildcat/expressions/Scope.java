@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import java.util.Arrays;
+
+/**
+ * The environment in which the body of a {@link LetExpression} is evaluated. It holds the
+ * values of the {@link SharedExpression}s computed so far, and inherits everything else
+ * from its parent.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+final class Scope extends Environment {
+    /**
+     * Marks the values which have not been computed yet.
+     */
+    private static final Object UNSET = new Object();
+
+    private final SharedExpression[] shared;
+
+    private final Object[] values;
+
+    Scope(Environment parent, SharedExpression[] shared) {
+        super(parent);
+        this.shared = shared;
+        this.values = new Object[shared.length];
+        Arrays.fill(values, UNSET);
+    }
+
+    /**
+     * Finds the innermost scope of <code>env</code> in which <code>expr</code> is
+     * shared.
+     * 
+     * @return the scope, or <code>null</code> if <code>expr</code> is evaluated outside
+     *         of its <code>LetExpression</code>.
+     */
+    static Scope find(Environment env, SharedExpression expr) {
+        int slot = expr.getSlot();
+        for (Environment e = env; e != null; e = e.getParent()) {
+            if (e instanceof Scope) {
+                Scope scope = (Scope) e;
+                if (slot < scope.shared.length && scope.shared[slot] == expr) {
+                    return scope;
+                }
+            }
+        }
+        return null;
+    }
+
+    boolean isComputed(int slot) {
+        return values[slot] != UNSET;
+    }
+
+    Object getValue(int slot) {
+        return values[slot];
+    }
+
+    void setValue(int slot, Object value) {
+        values[slot] = value;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+/**
+ * A subexpression which occurs several times in the body of a {@link LetExpression}, and
+ * is evaluated only once per evaluation of the <code>LetExpression</code>. All the
+ * occurrences are the same <code>SharedExpression</code> object: the first one to be
+ * evaluated computes the value of the underlying expression, including
+ * <code>null</code>, and the others reuse it. Outside of its <code>LetExpression</code>,
+ * a shared expression is simply evaluated as its underlying expression.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class SharedExpression implements Expression {
+    /**
+     * The index of this expression in its <code>LetExpression</code>.
+     */
+    private final int slot;
+
+    /**
+     * The expression whose value is shared.
+     */
+    private final Expression expr;
+
+    /**
+     * Creates a new <code>SharedExpression</code>.
+     * 
+     * @param slot
+     *            the index of this expression in the <code>LetExpression</code> in
+     *            which it will be shared.
+     * @param expr
+     *            the expression whose value is shared.
+     */
+    public SharedExpression(int slot, Expression expr) {
+        this.slot = slot;
+        this.expr = expr;
+    }
+
+    /**
+     * @return the slot
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * @return the expression whose value is shared
+     */
+    public Expression getExpression() {
+        return expr;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Expression#evaluate(org.objectweb.wildcat.expressions.Environment)
+     */
+    public Object evaluate(Environment env) throws EvaluationException {
+        Scope scope = Scope.find(env, this);
+        if (scope == null) {
+            return expr.evaluate(env);
+        } else if (!scope.isComputed(slot)) {
+            scope.setValue(slot, expr.evaluate(env));
+        }
+        return scope.getValue(slot);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.Expression#accept(org.objectweb.wildcat.expressions.ExpressionVisitor)
+     */
+    public void accept(ExpressionVisitor visitor) {
+        visitor.visitSharedExpression(this);
+        expr.accept(visitor);
+    }
+}
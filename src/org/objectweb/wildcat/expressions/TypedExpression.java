@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+/**
+ * An expression which can also be evaluated directly as a primitive value, without boxing
+ * it, and without boxing the intermediate values of its sub-expressions when they are
+ * numbers or booleans.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public interface TypedExpression extends Expression {
+    /**
+     * Evaluates this expression, whose value must be a number, as a <code>double</code>.
+     * 
+     * @param env
+     *            the evaluation environment.
+     * @return the value of the expression, as by {@link Number#doubleValue()}.
+     * @throws EvaluationException
+     *             if an error occurred during the evaluation, or if the value is not a
+     *             number.
+     */
+    double evaluateDouble(Environment env) throws EvaluationException;
+
+    /**
+     * Evaluates this expression, whose value must be a number, as a <code>long</code>.
+     * 
+     * @param env
+     *            the evaluation environment.
+     * @return the value of the expression, as by {@link Number#longValue()}.
+     * @throws EvaluationException
+     *             if an error occurred during the evaluation, or if the value is not a
+     *             number.
+     */
+    long evaluateLong(Environment env) throws EvaluationException;
+
+    /**
+     * Evaluates this expression, whose value must be a boolean, as a
+     * <code>boolean</code>.
+     * 
+     * @param env
+     *            the evaluation environment.
+     * @return the value of the expression.
+     * @throws EvaluationException
+     *             if an error occurred during the evaluation, or if the value is not a
+     *             boolean.
+     */
+    boolean evaluateBoolean(Environment env) throws EvaluationException;
+}
@@ -27,6 +27,11 @@ package org.objectweb.wildcat.expressions;
 public class VariableExpression implements Expression {
     private String variableName;
 
+    /**
+     * The slot of the name in the environments.
+     */
+    private final int slot;
+
     /**
      * Creates a new <code>VariableExpression</code>.
      * 
@@ -35,6 +40,7 @@ public class VariableExpression implements Expression {
      */
     public VariableExpression(String name) {
         variableName = name;
+        slot = Environment.slot(name);
     }
     
     /**
@@ -50,7 +56,7 @@ public class VariableExpression implements Expression {
      * @see org.objectweb.wildcat.expressions.Expression#evaluate(org.objectweb.wildcat.expressions.Environment)
      */
     public Object evaluate(Environment env) throws EvaluationException {
-        Object result = env.lookupVariable(variableName);
+        Object result = env.lookupVariable(slot);
         if (result == null) {
             throw new EvaluationException("Unknown variable dereferenced: "
                     + variableName + ".");
@@ -64,4 +70,25 @@ public class VariableExpression implements Expression {
     public void accept(ExpressionVisitor visitor) {
         visitor.visitVariableExpression(this);
     }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return (obj instanceof VariableExpression)
+                && variableName.equals(((VariableExpression) obj).variableName);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return variableName.hashCode();
+    }
 }
@@ -251,7 +251,7 @@ paren returns [ Expression result ]
 function returns [ Expression result ]
 {
 	result = null;
-	List args = null;
+	List args = new ArrayList();
 }
     : func:NAME LPAREN (args=arguments)? RPAREN
         {
@@ -268,17 +268,39 @@ arguments returns [ List args ]
 
 /**
  * /steps/to/resource#attribute
+ *
+ * Steps can be patterns (* or **), and so can the attribute (*). The value of a
+ * pattern is the list of the values of the matching attributes.
  */
 ctxpath returns [ Expression result ]
 {
 	result = null;
 	StringBuilder str = new StringBuilder();
+	String step = null, attr = null;
 }
     :
-     ( SLASH step:NAME { str.append("/").append(step.getText()); } )*
-       SHARP attr:NAME { str.append("#").append(attr.getText()); }
+     ( SLASH step=ctxstep { str.append("/").append(step); } )*
+       SHARP attr=ctxname { str.append("#").append(attr); }
        {
        	   Path path = Context.createPath(str.toString());
            result = new CallExpression("attribute", new ConstantExpression(path), new VariableExpression("_context"));
        }
     ;
+
+/**
+ * name, * or **
+ */
+ctxstep returns [ String name ]
+{ name = null; }
+    : name=ctxname
+    | STAR STAR { name = "**"; }
+    ;
+
+/**
+ * name or *
+ */
+ctxname returns [ String name ]
+{ name = null; }
+    : n:NAME { name = n.getText(); }
+    | STAR { name = "*"; }
+    ;
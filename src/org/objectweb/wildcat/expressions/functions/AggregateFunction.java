@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.objectweb.wildcat.Aggregate;
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * Base class used to implement the aggregate functions, which summarize a set of values:
+ * typically the list of the values of the attributes matching a pattern, as in
+ * <code>sum(/cluster/*&#47;cpu#load)</code>. The arguments which are collections
+ * contribute all their elements, the others their own value, and the <code>null</code>
+ * values are ignored.
+ * <p>
+ * When the argument is a pattern read, the compiled and incremental expressions do not
+ * build the list of values: they read the {@link Aggregate} the context maintains for
+ * the pattern instead (see {@link Context#aggregate(Path)}). Both ways end in
+ * {@link #apply(Aggregate)}.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public abstract class AggregateFunction implements Function {
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.Function#apply(java.lang.Object[],
+     *      org.objectweb.wildcat.expressions.Environment)
+     */
+    public final Object apply(Object[] args, Environment env) throws EvaluationException {
+        if (args.length == 1 && args[0] instanceof Collection) {
+            return apply(Context.createAggregate((Collection<?>) args[0]));
+        }
+        List<Object> values = new ArrayList<Object>();
+        for (Object arg : args) {
+            if (arg instanceof Collection) {
+                values.addAll((Collection<?>) arg);
+            } else {
+                values.add(arg);
+            }
+        }
+        return apply(Context.createAggregate(values));
+    }
+
+    /**
+     * Computes the result of the function from the aggregate of its arguments.
+     */
+    public abstract Object apply(Aggregate values) throws EvaluationException;
+
+    /**
+     * Checks that the values to aggregate are all numbers.
+     */
+    protected void checkNumbers(Aggregate values) throws EvaluationException {
+        if (!values.containsOnlyNumbers()) {
+            throw new EvaluationException("Invalid argument type: " + getName()
+                    + "() expected numbers only.");
+        }
+    }
+}
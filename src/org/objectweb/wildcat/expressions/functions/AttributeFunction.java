@@ -1,14 +1,20 @@
 package org.objectweb.wildcat.expressions.functions;
 
-import org.objectweb.wildcat.Context;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.objectweb.wildcat.ContextView;
 import org.objectweb.wildcat.Path;
 import org.objectweb.wildcat.expressions.Environment;
 import org.objectweb.wildcat.expressions.EvaluationException;
 
 /**
  * Implements the <code>attribute</code> function which, given a {@link Path} and a
- * {@link Context}, returns the current value of the attribute denoted by the path, in
- * that context.
+ * {@link ContextView} (a context or one of its snapshots), returns the current value of
+ * the attribute denoted by the path, in that context. If the path is a pattern, the
+ * result is a {@link List} of the values of all the attributes which currently match
+ * it, in no particular order.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
@@ -30,7 +36,19 @@ public class AttributeFunction implements Function {
      */
     public Object apply(Object[] args, Environment env) throws EvaluationException {
         Path path = (Path) args[0];
-        Context ctx = (Context) args[1];
-        return ctx.lookupAttribute(path);
+        ContextView ctx = (ContextView) args[1];
+        if (path.isDefinite()) {
+            return ctx.lookupAttribute(path);
+        }
+        Collection<Path> matches = ctx.lookup(path);
+        List<Object> values = new ArrayList<Object>(matches.size());
+        for (Path match : matches) {
+            Object value = ctx.lookupAttribute(match);
+            // The attribute may have disappeared since the lookup.
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
     }
 }
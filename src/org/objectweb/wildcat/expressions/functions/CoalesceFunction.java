@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * Returns the value of the first of its arguments which is not <code>null</code>, for
+ * example to give a default value to an attribute which may not exist:
+ * <code>coalesce(/host#load, 0)</code>. The arguments after it are not evaluated. The
+ * value is <code>null</code> if all the arguments are.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class CoalesceFunction implements LazyFunction {
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.Function#getName()
+     */
+    public String getName() {
+        return "coalesce";
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.Function#apply(java.lang.Object[],
+     *      org.objectweb.wildcat.expressions.Environment)
+     */
+    public Object apply(Object[] args, Environment env) {
+        for (Object arg : args) {
+            if (arg != null) {
+                return arg;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.LazyFunction#applyLazily(org.objectweb.wildcat.expressions.functions.Thunk[],
+     *      org.objectweb.wildcat.expressions.Environment)
+     */
+    public Object applyLazily(Thunk[] args, Environment env) throws EvaluationException {
+        for (Thunk arg : args) {
+            Object value = arg.getValue();
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
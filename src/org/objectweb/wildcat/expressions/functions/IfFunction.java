@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * Implements the conditional: <code>if(c, a, b)</code> is the value of <code>a</code>
+ * if <code>c</code> is true, and of <code>b</code> if it is false. Only the chosen
+ * branch is evaluated.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class IfFunction implements LazyFunction {
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.Function#getName()
+     */
+    public String getName() {
+        return "if";
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.Function#apply(java.lang.Object[],
+     *      org.objectweb.wildcat.expressions.Environment)
+     */
+    public Object apply(Object[] args, Environment env) throws EvaluationException {
+        checkArity(args.length);
+        return condition(args[0]) ? args[1] : args[2];
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.LazyFunction#applyLazily(org.objectweb.wildcat.expressions.functions.Thunk[],
+     *      org.objectweb.wildcat.expressions.Environment)
+     */
+    public Object applyLazily(Thunk[] args, Environment env) throws EvaluationException {
+        checkArity(args.length);
+        return condition(args[0].getValue()) ? args[1].getValue() : args[2].getValue();
+    }
+
+    private void checkArity(int count) throws EvaluationException {
+        if (count != 3) {
+            throw new EvaluationException(getName()
+                    + "() requires exactly three arguments.");
+        }
+    }
+
+    private boolean condition(Object value) throws EvaluationException {
+        if (!(value instanceof Boolean)) {
+            throw new EvaluationException(getName() + "() requires a boolean condition.");
+        }
+        return ((Boolean) value).booleanValue();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * A function which receives its arguments unevaluated, and only evaluates the ones it
+ * needs, such as a conditional. The expressions call
+ * {@link #applyLazily(Thunk[], Environment)} instead of
+ * {@link Function#apply(Object[], Environment)}, which is only used by the code which
+ * already has the values of all the arguments.
+ * <p>
+ * The errors raised by the evaluation of the arguments are propagated as they are, as
+ * if the arguments had been evaluated before the call; only the errors raised by the
+ * function itself are reported as such.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public interface LazyFunction extends Function {
+    /**
+     * Applies the function to the provided parameters, evaluating only the ones it
+     * needs.
+     * 
+     * @param args
+     *            the actual parameters of the invocation, not evaluated yet.
+     * @param env
+     *            the dynamic environment.
+     * @return an optional return value for the invocation;
+     * @throws EvaluationException
+     */
+    Object applyLazily(Thunk[] args, Environment env) throws EvaluationException;
+}
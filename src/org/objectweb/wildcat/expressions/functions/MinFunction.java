@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import org.objectweb.wildcat.Aggregate;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * Implements the minimum of a set of numbers, which is <code>null</code> if the set is
+ * empty.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class MinFunction extends AggregateFunction {
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.Function#getName()
+     */
+    public String getName() {
+        return "min";
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.expressions.functions.AggregateFunction#apply(org.objectweb.wildcat.Aggregate)
+     */
+    @Override
+    public Object apply(Aggregate values) throws EvaluationException {
+        checkNumbers(values);
+        return values.getMinimum();
+    }
+}
@@ -46,6 +46,13 @@ public class StandardLibrary implements FunctionsLibrary {
         functions.add(new NotFunction());
         functions.add(new SubstractFunction());
         functions.add(new AttributeFunction());
+        functions.add(new IfFunction());
+        functions.add(new CoalesceFunction());
+        functions.add(new SumFunction());
+        functions.add(new AvgFunction());
+        functions.add(new MinFunction());
+        functions.add(new MaxFunction());
+        functions.add(new CountFunction());
     }
 
     /* (non-Javadoc)
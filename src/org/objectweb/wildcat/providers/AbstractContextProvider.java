@@ -1,5 +1,6 @@
 package org.objectweb.wildcat.providers;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.objectweb.wildcat.ContextProvider;
@@ -58,9 +59,9 @@ public abstract class AbstractContextProvider extends EventSource implements
      * (non-Javadoc)
      * 
      * @see org.objectweb.wildcat.ContextProvider#update(org.objectweb.wildcat.Path,
-     *      org.objectweb.wildcat.events.PathEvent)
+     *      java.util.Collection)
      */
-    public void update(Path path, PathEvent cause) {
+    public void update(Path path, Collection<Path> changes) {
         // Ignore
     }
 
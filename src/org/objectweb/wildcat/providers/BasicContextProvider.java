@@ -21,12 +21,16 @@ package org.objectweb.wildcat.providers;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.objectweb.wildcat.AttributeHandle;
 import org.objectweb.wildcat.Context;
 import org.objectweb.wildcat.ContextProvider;
 import org.objectweb.wildcat.MalformedPathException;
 import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.VersionedContextProvider;
 import org.objectweb.wildcat.dependencies.DependencyGraph;
 import org.objectweb.wildcat.events.EventForwarder;
 import org.objectweb.wildcat.events.EventListener;
@@ -38,18 +42,44 @@ import org.objectweb.wildcat.events.PathRemovedEvent;
  * This class implements the notion of {@link ContextProvider} using a simple in-memory
  * data-structure to represent the tree of resources and attributes. It essentially wraps
  * a top-level {@link Resource} and provides the high-level
- * {@link ContextProvider ContextProvider} APIs on it.
+ * {@link ContextProvider ContextProvider} APIs on it. The resources keep the states the
+ * open {@linkplain Versions readers} of the context need, so this provider can also
+ * answer queries as of a past version.
+ * <p>
+ * Several attributes can be modified atomically, with a single batch of events, using a
+ * {@link Transaction}.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
-public class BasicContextProvider extends EventForwarder implements ContextProvider {
+public class BasicContextProvider extends EventForwarder implements
+        VersionedContextProvider {
     /**
      * The top-level resource.
      */
-    protected Resource content;
+    protected volatile Resource content;
 
     protected DependencyGraph<Path> dependencyGraph;
 
+    /**
+     * The clock of the context, own to this provider until it is given the one of its
+     * container.
+     */
+    private volatile Versions versions = new Versions();
+
+    /**
+     * The events collected by each thread committing a transaction, to be notified in a
+     * single batch.
+     */
+    private final ThreadLocal<List<PathEvent>> transactionEvents = new ThreadLocal<List<PathEvent>>();
+
+    /**
+     * The number of transactions being committed, so that the other events do not look
+     * up {@link #transactionEvents} when there is none.
+     */
+    private final AtomicInteger committing = new AtomicInteger();
+
+    private final TransactionCounters transactionCounters = new TransactionCounters();
+
     /*
      * (non-Javadoc)
      * 
@@ -68,6 +98,28 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
         this.dependencyGraph = dg;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.VersionedContextProvider#getVersions()
+     */
+    public Versions getVersions() {
+        return versions;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.VersionedContextProvider#setVersions(org.objectweb.wildcat.providers.Versions)
+     */
+    public void setVersions(Versions versions) {
+        if (content != null) {
+            throw new IllegalStateException("Provider already mounted at "
+                    + content.getPath() + ".");
+        }
+        this.versions = versions;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -109,7 +161,7 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
             throw new IllegalStateException("Context provider already mounted at "
                     + content.getPath() + ".");
         }
-        content = new Resource(path, this);
+        content = new Resource(path, this, versions);
         notify(new PathAddedEvent(path));
     }
 
@@ -132,9 +184,9 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
      * (non-Javadoc)
      * 
      * @see org.objectweb.wildcat.ContextProvider#update(org.objectweb.wildcat.Path,
-     *      org.objectweb.wildcat.events.PathEvent)
+     *      java.util.Collection)
      */
-    public void update(Path path, PathEvent cause) {
+    public void update(Path path, Collection<Path> changes) {
         // Ignore
     }
 
@@ -227,7 +279,70 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
      *            the new value to set
      */
     public void setValue(Path attr, Object value) {
-        if (attr.isResource()) {
+        findAttributeOwner(attr).setAttributeValue(attr.getAttributePart(), value);
+    }
+
+    /**
+     * Sets the value of an attribute to a <code>long</code>. The value is stored
+     * unboxed, so that once the attribute holds a <code>long</code>, changing it again
+     * only allocates the event notifying the change, if any.
+     * 
+     * @param attr
+     *            the attribute to change
+     * @param value
+     *            the new value to set
+     */
+    public void setLongValue(Path attr, long value) {
+        findAttributeOwner(attr).setLongAttributeValue(attr.getAttributePart(), value);
+    }
+
+    /**
+     * Sets the value of an attribute to a <code>double</code>, which is stored
+     * unboxed.
+     * 
+     * @see #setLongValue(Path, long)
+     */
+    public void setDoubleValue(Path attr, double value) {
+        findAttributeOwner(attr).setDoubleAttributeValue(attr.getAttributePart(), value);
+    }
+
+    /**
+     * Sets the value of an attribute to a <code>boolean</code>, which is stored
+     * unboxed.
+     * 
+     * @see #setLongValue(Path, long)
+     */
+    public void setBooleanValue(Path attr, boolean value) {
+        findAttributeOwner(attr).setBooleanAttributeValue(attr.getAttributePart(), value);
+    }
+
+    /**
+     * Starts a transaction, to modify several attributes of this provider atomically.
+     * 
+     * @return the new transaction, which applies nothing until it is committed.
+     */
+    public Transaction beginTransaction() {
+        if (content == null) {
+            throw new IllegalStateException("Context provider not mounted.");
+        }
+        return new Transaction(this);
+    }
+
+    /**
+     * Returns the metrics of the transactions committed on this provider so far: the
+     * number of events notified by each, and the time taken to commit them.
+     */
+    public TransactionStatistics getTransactionStatistics() {
+        return transactionCounters.getStatistics();
+    }
+
+    /**
+     * Finds the resource holding an attribute whose value is to be set.
+     */
+    Resource findAttributeOwner(Path attr) {
+        if (content == null) {
+            throw new IllegalStateException("Context provider not mounted.");
+        } else if (attr.isResource()) {
             throw new IllegalArgumentException("Can not set the value of a resource.");
         } else if (attr.isAbsolute()) {
             throw new IllegalArgumentException("Context provider expects relative paths.");
@@ -236,7 +351,7 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
         }
         Resource res = findResource(attr, false);
         if (res != null) {
-            res.setAttributeValue(attr.getAttributePart(), value);
+            return res;
         } else {
             throw new IllegalArgumentException("No such attribute.");
         }
@@ -280,6 +395,69 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
         }
     }
 
+    /**
+     * Starts collecting the events of the current thread instead of notifying them,
+     * until the matching call to {@link #endCollecting()}.
+     */
+    void beginCollecting() {
+        assert transactionEvents.get() == null;
+        transactionEvents.set(new ArrayList<PathEvent>());
+        committing.incrementAndGet();
+    }
+
+    /**
+     * Notifies all the events collected since {@link #beginCollecting()}, if any, in a
+     * single batch.
+     * 
+     * @return the number of events notified.
+     */
+    int endCollecting() {
+        List<PathEvent> events = transactionEvents.get();
+        transactionEvents.remove();
+        committing.decrementAndGet();
+        if (!events.isEmpty()) {
+            notify(events);
+        }
+        return events.size();
+    }
+
+    /**
+     * Records the metrics of a committed transaction.
+     */
+    void transactionCommitted(int events, long nanos) {
+        transactionCounters.record(events, nanos);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.events.EventForwarder#eventOccured(org.objectweb.wildcat.events.PathEvent)
+     */
+    @Override
+    public void eventOccured(PathEvent evt) {
+        List<PathEvent> events = (committing.get() > 0) ? transactionEvents.get() : null;
+        if (events != null) {
+            events.add(evt);
+        } else {
+            super.eventOccured(evt);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.events.EventForwarder#eventOccured(java.util.List)
+     */
+    @Override
+    public void eventOccured(List<PathEvent> evts) {
+        List<PathEvent> events = (committing.get() > 0) ? transactionEvents.get() : null;
+        if (events != null) {
+            events.addAll(evts);
+        } else {
+            super.eventOccured(evts);
+        }
+    }
+
     /**
      * Finds the {@link Resource} implementing the given location.
      * 
@@ -290,8 +468,9 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
         assert path.isRelative();
         Resource result = content;
         for (String step : path.getResourcesPart()) {
-            if (result.hasChild(step)) {
-                result = result.getChild(step);
+            Resource child = result.getChild(step);
+            if (child != null) {
+                result = child;
             } else if (create) {
                 result = result.createChild(step);
             } else {
@@ -307,13 +486,24 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
      * @see org.objectweb.wildcat.ContextProvider#lookup(org.objectweb.wildcat.Path)
      */
     public Collection<Path> lookup(Path query) {
-        if (content == null) {
+        return lookup(query, Versions.LATEST);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.VersionedContextProvider#lookup(org.objectweb.wildcat.Path,
+     *      long)
+     */
+    public Collection<Path> lookup(Path query, long version) {
+        Resource top = content;
+        if (top == null) {
             throw new IllegalStateException("Context provider not mounted.");
         } else if (query.isAbsolute()) {
             throw new IllegalArgumentException(
                     "Context provider expects relative queries.");
         } else {
-            return relativeLookup(query);
+            return relativeLookup(top, query, version);
         }
     }
 
@@ -323,7 +513,18 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
      * @see org.objectweb.wildcat.Query#lookupAttribute(org.objectweb.wildcat.Path)
      */
     public Object lookupAttribute(Path query) {
-        if (content == null) {
+        return lookupAttribute(query, Versions.LATEST);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.VersionedContextProvider#lookupAttribute(org.objectweb.wildcat.Path,
+     *      long)
+     */
+    public Object lookupAttribute(Path query, long version) {
+        Resource top = content;
+        if (top == null) {
             throw new IllegalStateException("Context provider not mounted.");
         } else if (query.isAbsolute()) {
             throw new IllegalArgumentException(
@@ -331,22 +532,54 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
         } else if (query.isPattern() || query.isResource()) {
             throw new IllegalArgumentException(query.toString());
         } else {
-            return relativeLookupAttribute(query);
+            return relativeLookupAttribute(top, query, version);
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.ContextProvider#bindAttribute(org.objectweb.wildcat.Path)
+     */
+    public AttributeHandle bindAttribute(Path attribute) {
+        Resource current = content;
+        if (current == null) {
+            throw new IllegalStateException("Context provider not mounted.");
+        } else if (attribute.isAbsolute()) {
+            throw new IllegalArgumentException(
+                    "Context provider expects relative queries.");
+        } else if (attribute.isPattern() || attribute.isResource()) {
+            throw new IllegalArgumentException(attribute.toString());
+        }
+        for (String step : attribute.getResourcesPart()) {
+            current = current.getChild(step);
+            if (current == null) {
+                return null;
+            }
+        }
+        return current.getAttributeHandle(attribute.getAttributePart());
+    }
+
     /*
      * (non-Javadoc)
      * 
      * @see org.objectweb.wildcat.Query#lookup(org.objectweb.wildcat.Path)
      */
-    private Collection<Path> relativeLookup(Path query) {
+    private Collection<Path> relativeLookup(Resource top, Path query, long version) {
         Collection<Resource> current = new ArrayList<Resource>();
-        current.add(content);
+        current.add(top);
         for (String step : query.getResourcesPart()) {
-            Collection<Resource> next = new ArrayList<Resource>();
-            for (Resource r : current) {
-                next.addAll(r.getChildrenMatching(step));
+            Collection<Resource> next;
+            if (step.equals("**")) {
+                next = new LinkedHashSet<Resource>();
+                for (Resource r : current) {
+                    addWithDescendants(r, version, next);
+                }
+            } else {
+                next = new ArrayList<Resource>();
+                for (Resource r : current) {
+                    next.addAll(r.getChildrenMatching(step, version));
+                }
             }
             current = next;
         }
@@ -355,24 +588,69 @@ public class BasicContextProvider extends EventForwarder implements ContextProvi
             if (query.isResource()) {
                 result.add(r.getPath());
             } else {
-                result.addAll(r.getAttributesMatching(query.getAttributePart()));
+                result.addAll(r.getAttributesMatching(query.getAttributePart(), version));
             }
         }
         return result;
     }
 
-    private Object relativeLookupAttribute(Path query) {
-        Resource current = content;
+    /**
+     * Adds a resource and all its descendants to a collection, unless they are already
+     * in it (several resources matched by a previous step may be nested).
+     */
+    private void addWithDescendants(Resource resource, long version,
+            Collection<Resource> result) {
+        if (!result.contains(resource)) {
+            result.add(resource);
+            for (Resource child : resource.getChildren(version)) {
+                addWithDescendants(child, version, result);
+            }
+        }
+    }
+
+    private Object relativeLookupAttribute(Resource top, Path query, long version) {
+        Resource current = top;
         for (String step : query.getResourcesPart()) {
-            current = current.getChild(step);
+            current = current.getChild(step, version);
             if (current == null) {
                 return null;
             }
         }
-        if (current.hasAttribute(query.getAttributePart())) {
-            return current.getAttributeValue(query.getAttributePart());
-        } else {
-            return null;
+        return current.getAttributeValue(query.getAttributePart(), version);
+    }
+
+    /**
+     * The metrics of the committed transactions, from which the
+     * {@link TransactionStatistics} are taken.
+     */
+    private static final class TransactionCounters {
+        private long commits;
+
+        private long events;
+
+        private int lastBatchSize;
+
+        private int maxBatchSize;
+
+        private long totalNanos;
+
+        private long lastNanos;
+
+        private long maxNanos;
+
+        synchronized void record(int batchSize, long nanos) {
+            commits++;
+            events += batchSize;
+            lastBatchSize = batchSize;
+            maxBatchSize = Math.max(maxBatchSize, batchSize);
+            totalNanos += nanos;
+            lastNanos = nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        synchronized TransactionStatistics getStatistics() {
+            return new TransactionStatistics(commits, events, lastBatchSize, maxBatchSize,
+                    totalNanos / 1000, lastNanos / 1000, maxNanos / 1000);
         }
     }
 }
@@ -30,9 +30,9 @@ import java.util.concurrent.TimeUnit;
 import org.objectweb.wildcat.Context;
 import org.objectweb.wildcat.Path;
 import org.objectweb.wildcat.dependencies.ExpressionDependenciesCollector;
-import org.objectweb.wildcat.events.PathEvent;
 import org.objectweb.wildcat.expressions.EvaluationException;
 import org.objectweb.wildcat.expressions.Expression;
+import org.objectweb.wildcat.expressions.IncrementalExpression;
 import org.objectweb.wildcat.expressions.Interpreter;
 
 /**
@@ -100,26 +100,32 @@ public class DynamicContextProvider extends BasicContextProvider {
         }
     }
 
-    public synchronized void setDefinition(Path attribute, Expression def) {
+    public void setDefinition(Path attribute, Expression def) {
         if (attribute == null || attribute.isPattern() || attribute.isAbsolute()
                 || attribute.isResource()) {
             throw new IllegalArgumentException();
         }
-        Expression oldDef = definitions.get(attribute);
-        Expression expr = def;
-        definitions.put(attribute, expr);
-        declareDependencies(attribute, expr);
-        if (oldDef != null) {
-            retractDependencies(attribute, oldDef); // FIXME handle common dependencies
+        // The definition is stored in its optimized form, ready for repeated evaluations,
+        // which only recompute the parts whose inputs have changed when it has enough of
+        // them.
+        Expression expr = new IncrementalExpression(inter.optimize(def));
+        synchronized (this) {
+            Expression oldDef = definitions.get(attribute);
+            // Fails without any effect if the definition would create a cycle.
+            declareDependencies(attribute, expr);
+            definitions.put(attribute, expr);
+            if (oldDef != null) {
+                retractDependencies(attribute, oldDef, expr);
+            }
         }
         update(attribute, null);
     }
 
-    public synchronized void setDefinition(Path attribute, String def) {
+    public void setDefinition(Path attribute, String def) {
         setDefinition(attribute, inter.parse(def));
     }
 
-    public synchronized void setDefinition(String attribute, String def) {
+    public void setDefinition(String attribute, String def) {
         setDefinition(Context.createPath(attribute), inter.parse(def));
     }
 
@@ -127,32 +133,70 @@ public class DynamicContextProvider extends BasicContextProvider {
      * (non-Javadoc)
      * 
      * @see org.objectweb.wildcat.dependencies.Updatable#update(org.objectweb.wildcat.Path,
-     *      org.objectweb.wildcat.events.PathEvent)
+     *      java.util.Collection)
      */
-    public synchronized void update(Path path, PathEvent cause) {
-        Expression def = definitions.get(path);
+    public void update(Path path, Collection<Path> changes) {
+        // The evaluation may lock what it reads in other providers, and changing a
+        // resource locks this provider to forward the events: do not evaluate while
+        // holding this monitor.
+        Expression def;
+        synchronized (this) {
+            def = definitions.get(path);
+        }
         if (def != null) {
             try {
-                setValue(path, inter.evaluate(def));
+                Object value;
+                if (def instanceof IncrementalExpression) {
+                    value = ((IncrementalExpression) def).evaluate(inter.getEnvironment(),
+                            changes);
+                } else {
+                    value = def.evaluate(inter.getEnvironment());
+                }
+                setValue(path, value);
             } catch (EvaluationException e) {
                 // TODO Log the error, but otherwise ignore it.
                 // It's OK for a definition to be invalid (maybe temporarily).
             }
-        } else {
-            throw new IllegalArgumentException("Path " + path
-                    + " is not a synthetic attribute.");
         }
+        // Otherwise the definition has been removed since the update was requested.
     }
 
-    private void declareDependencies(Path attr, Expression expr) {
-        for (Path dep : getDependencies(expr)) {
-            dependencyGraph.addDependency(this.getPath().append(attr), dep);
+    /**
+     * Turns a synthetic attribute back into a plain one, which keeps its current value
+     * but does not depend on other attributes anymore.
+     * 
+     * @param attribute
+     *            the synthetic attribute.
+     * @throws IllegalArgumentException
+     *             if the attribute has no definition.
+     */
+    public void removeDefinition(Path attribute) {
+        synchronized (this) {
+            Expression oldDef = definitions.remove(attribute);
+            if (oldDef == null) {
+                throw new IllegalArgumentException("Path " + attribute
+                        + " is not a synthetic attribute.");
+            }
+            for (Path dep : getDependencies(oldDef)) {
+                dependencyGraph.removeDependency(this.getPath().append(attribute), dep);
+            }
         }
     }
 
-    private void retractDependencies(Path attr, Expression expr) {
-        for (Path dep : getDependencies(expr)) {
-            dependencyGraph.removeDependency(this.getPath().append(attr), dep);
+    private void declareDependencies(Path attr, Expression expr) {
+        dependencyGraph.addDependencies(this.getPath().append(attr), getDependencies(expr));
+    }
+
+    /**
+     * Retracts the dependencies of an old definition which are not dependencies of the
+     * new one.
+     */
+    private void retractDependencies(Path attr, Expression oldExpr, Expression newExpr) {
+        Collection<Path> kept = getDependencies(newExpr);
+        for (Path dep : getDependencies(oldExpr)) {
+            if (!kept.contains(dep)) {
+                dependencyGraph.removeDependency(this.getPath().append(attr), dep);
+            }
         }
     }
 
@@ -173,6 +217,7 @@ public class DynamicContextProvider extends BasicContextProvider {
         private long period;
         private TimeUnit unit;
         private ScheduledFuture future;
+        private final SampleBuffer buffer = new SampleBuffer();
 
         public AttributesUpdater(Path path, Sampler sampler, long period, TimeUnit unit) {
             this.path = path;
@@ -199,9 +244,19 @@ public class DynamicContextProvider extends BasicContextProvider {
         }
 
         public void run() {
-            Map<String, Object> samples = sampler.sample();
             Resource target = findResource(path, false);
-            target.setAttributesValues(samples);
+            if (sampler instanceof PrimitiveSampler) {
+                // The runs of a periodic task never overlap: the buffer can be reused.
+                try {
+                    ((PrimitiveSampler) sampler).sample(buffer);
+                    target.setAttributesValues(buffer);
+                } finally {
+                    buffer.clear();
+                }
+            } else {
+                Map<String, Object> samples = sampler.sample();
+                target.setAttributesValues(samples);
+            }
         }
     }
 }
@@ -3,12 +3,12 @@ package org.objectweb.wildcat.providers;
 import java.util.Collection;
 import java.util.Collections;
 
+import org.objectweb.wildcat.AttributeHandle;
 import org.objectweb.wildcat.ContextProvider;
 import org.objectweb.wildcat.Path;
 import org.objectweb.wildcat.dependencies.DependencyGraph;
 import org.objectweb.wildcat.events.EventListener;
 import org.objectweb.wildcat.events.EventSource;
-import org.objectweb.wildcat.events.PathEvent;
 
 /**
  * Null implementation of {@link ContextProvider}: represents an empty tree with no
@@ -52,6 +52,14 @@ public class EmptyContextProvider extends EventSource implements ContextProvider
         return null;
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.objectweb.wildcat.ContextProvider#bindAttribute(org.objectweb.wildcat.Path)
+     */
+    public AttributeHandle bindAttribute(Path attribute) {
+        return null;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.objectweb.wildcat.ContextProvider#mounted(org.objectweb.wildcat.Path)
@@ -62,9 +70,9 @@ public class EmptyContextProvider extends EventSource implements ContextProvider
 
     /*
      * (non-Javadoc)
-     * @see org.objectweb.wildcat.ContextProvider#update(org.objectweb.wildcat.Path, org.objectweb.wildcat.events.PathEvent)
+     * @see org.objectweb.wildcat.ContextProvider#update(org.objectweb.wildcat.Path, java.util.Collection)
      */
-    public void update(Path path, PathEvent cause) {
+    public void update(Path path, Collection<Path> changes) {
         // Ignore
     }
 
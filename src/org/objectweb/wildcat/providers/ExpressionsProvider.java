@@ -1,14 +1,39 @@
 package org.objectweb.wildcat.providers;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.objectweb.wildcat.Context;
 import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.expressions.AndExpression;
+import org.objectweb.wildcat.expressions.CallExpression;
+import org.objectweb.wildcat.expressions.CompiledExpression;
+import org.objectweb.wildcat.expressions.ConstantExpression;
+import org.objectweb.wildcat.expressions.Expression;
 import org.objectweb.wildcat.expressions.Interpreter;
+import org.objectweb.wildcat.expressions.OrExpression;
+import org.objectweb.wildcat.expressions.VariableExpression;
+import org.objectweb.wildcat.expressions.functions.AttributeFunction;
+import org.objectweb.wildcat.expressions.functions.Function;
+import org.objectweb.wildcat.expressions.functions.LazyFunction;
 
 /**
  * Custom context provider used to monitor watched expressions. Watched expressions are
  * implemented as synthetic attributes with automatically generated names (<code>#expression_N</code>)
  * on the top-level resource of an internal {@link DynamicContextProvider}.
- * 
+ * <p>
+ * The expressions are hash-consed: all the registrations of the same expression share
+ * the same attribute, which is deleted when the last of them is cancelled. Moreover,
+ * when a subexpression which reads attributes is computed by the definitions of several
+ * watched expressions, it gets its own attribute, which the definitions read instead:
+ * it is then evaluated only once per change, whatever the number of expressions using
+ * it. The attributes are reference-counted by the registrations and by the definitions
+ * reading them.
+ *
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
 public class ExpressionsProvider extends DynamicContextProvider {
@@ -17,9 +42,32 @@ public class ExpressionsProvider extends DynamicContextProvider {
      */
     private int expressionIndex = 0;
 
+    /**
+     * The expressions which have an attribute, indexed by their parsed form. Used as the
+     * lock for all the terms.
+     */
+    private final Map<Expression, Term> terms = new HashMap<Expression, Term>();
+
+    /**
+     * The expressions which have an attribute, indexed by the relative path of the
+     * attribute.
+     */
+    private final Map<Path, Term> termsByPath = new HashMap<Path, Term>();
+
+    /**
+     * For each subexpression which could get its own attribute, the terms whose
+     * definitions compute it directly.
+     */
+    private final Map<Expression, Set<Term>> occurrences = new HashMap<Expression, Set<Term>>();
+
+    /**
+     * The terms whose definition is being computed, which can not be redefined yet.
+     */
+    private final Set<Term> building = new HashSet<Term>();
+
     /**
      * Creates a new <code>ExpressionsProvider</code>.
-     * 
+     *
      * @param inter
      *            the interpreter to use to evaluate expressions.
      */
@@ -28,33 +76,313 @@ public class ExpressionsProvider extends DynamicContextProvider {
     }
 
     /**
-     * Creates a new synthetic attribute with the supplied definition.
-     * 
+     * Returns a synthetic attribute with the supplied definition, creating it unless the
+     * same expression already has one. Each call must be matched by a call to
+     * {@link #deleteExpressionAttribute(Path)}.
+     *
      * @param expression
      *            the definition of the attribute to create.
-     * @return the full path of the created attribute.
+     * @return the full path of the attribute.
      */
     public Path createExpressionAttribute(String expression) {
         if (getPath() == null) {
             throw new IllegalStateException();
         }
-        synchronized (this) {
-            expressionIndex++;
+        Expression expr = inter.parse(expression);
+        if (expr instanceof CompiledExpression) {
+            expr = ((CompiledExpression) expr).getSource();
+        }
+        synchronized (terms) {
+            Term term = terms.get(expr);
+            if (term == null) {
+                term = createTerm(expr);
+            }
+            term.refs++;
+            return getPath().append(term.path);
         }
-        Path path = Context.createPath("#expression_" + expressionIndex);
-        createAttribute(path, null);
-        setDefinition(path, expression);
-        return getPath().append(path);
     }
 
     /**
-     * Deletes a synthetic attribute.
-     * 
+     * Releases a synthetic attribute, which is deleted once it is not used anymore.
+     *
      * @param path
      *            the full path to the attribute to delete (as returned from
      *            {@link #createExpressionAttribute(String)}).
      */
     public void deleteExpressionAttribute(Path path) {
-        super.delete(path.relativeTo(getPath()));
+        synchronized (terms) {
+            Term term = termsByPath.get(path.relativeTo(getPath()));
+            if (term == null) {
+                throw new IllegalArgumentException("No expression attribute at " + path
+                        + ".");
+            }
+            release(term);
+        }
+    }
+
+    /**
+     * Creates the attribute of an expression, with no references yet.
+     */
+    private Term createTerm(Expression expr) {
+        synchronized (this) {
+            expressionIndex++;
+        }
+        Term term = new Term(Context.createPath("#expression_" + expressionIndex), expr);
+        terms.put(expr, term);
+        termsByPath.put(term.path, term);
+        building.add(term);
+        Expression def;
+        try {
+            def = share(expr, term, true);
+        } finally {
+            building.remove(term);
+        }
+        createAttribute(term.path, null);
+        setDefinition(term.path, def);
+        return term;
+    }
+
+    /**
+     * Recomputes the definition of a term, to read the attributes created since.
+     */
+    private void redefine(Term term) {
+        List<Term> oldUses = new ArrayList<Term>(term.uses);
+        term.uses.clear();
+        building.add(term);
+        Expression def;
+        try {
+            def = share(term.expr, term, true);
+        } finally {
+            building.remove(term);
+        }
+        setDefinition(term.path, def);
+        // Released last, as the new definition may still use them.
+        for (Term used : oldUses) {
+            release(used);
+        }
+    }
+
+    private void release(Term term) {
+        if (--term.refs > 0) {
+            return;
+        }
+        terms.remove(term.expr);
+        termsByPath.remove(term.path);
+        forget(term);
+        removeDefinition(term.path);
+        delete(term.path);
+        for (Term used : term.uses) {
+            release(used);
+        }
+    }
+
+    /**
+     * Computes the definition of <code>user</code>'s attribute from (a part of) its
+     * expression: the subexpressions which have an attribute are replaced by a reference
+     * to it, and the ones which are also computed by another term are first given one.
+     *
+     * @param root
+     *            whether <code>expr</code> is the whole expression of <code>user</code>.
+     */
+    private Expression share(Expression expr, Term user, boolean root) {
+        boolean shareable = !root && isShareable(expr);
+        if (shareable) {
+            Term term = terms.get(expr);
+            if (term == null) {
+                term = shareOccurrences(expr, user);
+            }
+            if (term != null) {
+                term.refs++;
+                user.uses.add(term);
+                return reference(term);
+            }
+        }
+        Expression result = expr;
+        if (expr instanceof CallExpression && isLazyCall(expr)) {
+            // The arguments may not be evaluated at all: giving them an attribute of
+            // their own would compute them on every change.
+        } else if (expr instanceof CallExpression) {
+            CallExpression call = (CallExpression) expr;
+            Expression[] args = share(call.getParameters(), user);
+            if (args != call.getParameters()) {
+                result = new CallExpression(call.getFunctionName(), args);
+            }
+        } else if (expr instanceof AndExpression) {
+            Expression[] clauses = ((AndExpression) expr).getClauses();
+            Expression[] shared = share(clauses, user);
+            if (shared != clauses) {
+                result = new AndExpression(shared);
+            }
+        } else if (expr instanceof OrExpression) {
+            Expression[] clauses = ((OrExpression) expr).getClauses();
+            Expression[] shared = share(clauses, user);
+            if (shared != clauses) {
+                result = new OrExpression(shared);
+            }
+        }
+        if (shareable) {
+            Set<Term> users = occurrences.get(expr);
+            if (users == null) {
+                users = new HashSet<Term>();
+                occurrences.put(expr, users);
+            }
+            users.add(user);
+            user.inline.add(expr);
+        }
+        return result;
+    }
+
+    private Expression[] share(Expression[] exprs, Term user) {
+        Expression[] result = exprs;
+        for (int i = 0; i < exprs.length; i++) {
+            Expression shared = share(exprs[i], user, false);
+            if (shared != exprs[i]) {
+                if (result == exprs) {
+                    result = exprs.clone();
+                }
+                result[i] = shared;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gives its own attribute to a subexpression of <code>user</code> if other terms
+     * compute it too, and makes them read it.
+     *
+     * @return the new term, or <code>null</code> if no other term computes
+     *         <code>expr</code>.
+     */
+    private Term shareOccurrences(Expression expr, Term user) {
+        Set<Term> users = occurrences.get(expr);
+        if (users == null) {
+            return null;
+        }
+        List<Term> others = new ArrayList<Term>();
+        for (Term other : users) {
+            if (other != user && !building.contains(other)) {
+                others.add(other);
+            }
+        }
+        if (others.isEmpty()) {
+            return null;
+        }
+        // Their subexpressions will not be computed by them anymore, but by the new term.
+        for (Term other : others) {
+            forget(other);
+        }
+        Term term = createTerm(expr);
+        for (Term other : others) {
+            redefine(other);
+        }
+        return term;
+    }
+
+    /**
+     * Removes the subexpressions computed by a term from the occurrences.
+     */
+    private void forget(Term term) {
+        for (Expression expr : term.inline) {
+            Set<Term> users = occurrences.get(expr);
+            users.remove(term);
+            if (users.isEmpty()) {
+                occurrences.remove(expr);
+            }
+        }
+        term.inline.clear();
+    }
+
+    /**
+     * Tests whether a subexpression is worth an attribute of its own: it must read some
+     * attributes, but not be a simple attribute read itself.
+     */
+    private boolean isShareable(Expression expr) {
+        if (expr instanceof CallExpression) {
+            return !isAttributeRead(expr) && readsAttribute(expr);
+        } else {
+            return (expr instanceof AndExpression || expr instanceof OrExpression)
+                    && readsAttribute(expr);
+        }
+    }
+
+    private boolean readsAttribute(Expression expr) {
+        Expression[] children;
+        if (expr instanceof CallExpression) {
+            if (isAttributeRead(expr)) {
+                return true;
+            }
+            children = ((CallExpression) expr).getParameters();
+        } else if (expr instanceof AndExpression) {
+            children = ((AndExpression) expr).getClauses();
+        } else if (expr instanceof OrExpression) {
+            children = ((OrExpression) expr).getClauses();
+        } else {
+            return false;
+        }
+        for (Expression child : children) {
+            if (readsAttribute(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether a call is to a {@link LazyFunction}, which only evaluates the
+     * arguments it needs.
+     */
+    private boolean isLazyCall(Expression expr) {
+        Function fun = inter.getEnvironment().lookupFunction(
+                ((CallExpression) expr).getFunctionName());
+        return fun instanceof LazyFunction;
+    }
+
+    private boolean isAttributeRead(Expression expr) {
+        Function fun = inter.getEnvironment().lookupFunction(
+                ((CallExpression) expr).getFunctionName());
+        return fun instanceof AttributeFunction;
+    }
+
+    /**
+     * Returns an expression reading the attribute of a term, as parsed from its path.
+     */
+    private Expression reference(Term term) {
+        return new CallExpression("attribute", new ConstantExpression(getPath().append(
+                term.path)), new VariableExpression("_context"));
+    }
+
+    /**
+     * An expression which has its own attribute.
+     */
+    private static final class Term {
+        /**
+         * The relative path of the attribute.
+         */
+        final Path path;
+
+        /**
+         * The expression, as parsed.
+         */
+        final Expression expr;
+
+        /**
+         * The number of registrations and of definitions using the attribute.
+         */
+        int refs;
+
+        /**
+         * The terms read by the definition of this one, once per reference.
+         */
+        final List<Term> uses = new ArrayList<Term>();
+
+        /**
+         * The shareable subexpressions computed directly by the definition.
+         */
+        final Set<Expression> inline = new HashSet<Expression>();
+
+        Term(Path path, Expression expr) {
+            this.path = path;
+            this.expr = expr;
+        }
     }
 }
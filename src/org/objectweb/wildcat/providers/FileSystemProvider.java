@@ -25,11 +25,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import org.objectweb.wildcat.AttributeHandle;
 import org.objectweb.wildcat.ContextProvider;
 import org.objectweb.wildcat.Path;
 import org.objectweb.wildcat.dependencies.DependencyGraph;
 import org.objectweb.wildcat.events.EventListener;
-import org.objectweb.wildcat.events.PathEvent;
 
 /**
  * A provider to expose (part of) the filesystem inside a WildCAT context. Experitmental.
@@ -96,9 +96,9 @@ public class FileSystemProvider implements ContextProvider {
      * (non-Javadoc)
      * 
      * @see org.objectweb.wildcat.ContextProvider#update(org.objectweb.wildcat.Path,
-     *      org.objectweb.wildcat.events.PathEvent)
+     *      java.util.Collection)
      */
-    public void update(Path path, PathEvent cause) {
+    public void update(Path path, Collection<Path> changes) {
         // Ignore
     }
 
@@ -177,6 +177,15 @@ public class FileSystemProvider implements ContextProvider {
         }
     }
 
+    /**
+     * The attributes of files are computed on each lookup: they can not be bound.
+     * 
+     * @see org.objectweb.wildcat.ContextProvider#bindAttribute(org.objectweb.wildcat.Path)
+     */
+    public AttributeHandle bindAttribute(Path attribute) {
+        return null;
+    }
+
     /*
      * (non-Javadoc)
      * 
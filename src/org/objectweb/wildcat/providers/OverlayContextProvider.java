@@ -23,29 +23,36 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 
+import org.objectweb.wildcat.AttributeHandle;
 import org.objectweb.wildcat.ContextProvider;
 import org.objectweb.wildcat.ContextProviderContainer;
 import org.objectweb.wildcat.InvalidMountPointException;
 import org.objectweb.wildcat.MalformedPathException;
 import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.PathPattern;
+import org.objectweb.wildcat.VersionedContextProvider;
 import org.objectweb.wildcat.dependencies.DependencyGraph;
 import org.objectweb.wildcat.events.EventForwarder;
 import org.objectweb.wildcat.events.EventListener;
 import org.objectweb.wildcat.events.PathAddedEvent;
-import org.objectweb.wildcat.events.PathEvent;
 import org.objectweb.wildcat.events.PathRemovedEvent;
 
 /**
  * An overlay context provider wraps a normal context provider, but is able to divert
  * requests to some sub-path to other providers (un)mounted using the
  * {@link ContextProviderContainer} API.
+ * <p>
+ * The queries as of a past version are forwarded to the providers which support them;
+ * the others answer with their current state. The mount points themselves are not
+ * versioned.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
 public class OverlayContextProvider extends EventForwarder implements
-        ContextProviderContainer {
+        ContextProviderContainer, VersionedContextProvider {
     /**
      * <code>true</code> iff this <code>ContextProvider</code> is currently mounted.
      */
@@ -61,6 +68,11 @@ public class OverlayContextProvider extends EventForwarder implements
      */
     private Map<Path, ContextProvider> mountPoints;
 
+    /**
+     * The clock of the context, shared with the versioned providers inside this one.
+     */
+    private Versions versions;
+
     /**
      * Creates a new <code>OverlayContextProvider</code> wrapping the specified
      * provider.
@@ -77,6 +89,7 @@ public class OverlayContextProvider extends EventForwarder implements
         defaultProvider.setEventListener(this);
         this.mountPoints = new HashMap<Path, ContextProvider>();
         this.mounted = false;
+        setVersions(new Versions());
     }
 
     /*
@@ -109,6 +122,30 @@ public class OverlayContextProvider extends EventForwarder implements
         defaultProvider.setDependencyGraph(dg);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.VersionedContextProvider#getVersions()
+     */
+    public synchronized Versions getVersions() {
+        return versions;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.VersionedContextProvider#setVersions(org.objectweb.wildcat.providers.Versions)
+     */
+    public synchronized void setVersions(Versions versions) {
+        if (mounted) {
+            throw new IllegalStateException("Provider already mounted.");
+        }
+        if (defaultProvider instanceof VersionedContextProvider) {
+            ((VersionedContextProvider) defaultProvider).setVersions(versions);
+        }
+        this.versions = versions;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -124,19 +161,39 @@ public class OverlayContextProvider extends EventForwarder implements
      * @see org.objectweb.wildcat.ContextProvider#lookup(org.objectweb.wildcat.Path)
      */
     public Collection<Path> lookup(Path query) {
+        return lookup(query, Versions.LATEST);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.objectweb.wildcat.VersionedContextProvider#lookup(org.objectweb.wildcat.Path,
+     *      long)
+     */
+    public Collection<Path> lookup(Path query, long version) {
         assert query != null : "no query specified";
         assert query.isRelative() : "query must be relative";
 
-        Collection<ContextProvider> contributors = findPotentialContributorsTo(query);
-        Collection<Path> result = new ArrayList<Path>();
         Path absoluteQuery = defaultProvider.getPath().append(query);
+        PathPattern compiled = PathPattern.compile(absoluteQuery);
+        Collection<ContextProvider> contributors = findPotentialContributorsTo(compiled);
+        // A set, as a mount point can be found both by its provider and below.
+        Collection<Path> result = new LinkedHashSet<Path>();
         for (ContextProvider provider : contributors) {
-            Path relativeQuery = absoluteQuery.subPath(provider.getPath().size() + 1);
-            result.addAll(provider.lookup(relativeQuery));
+            // A "**" step can end above the mount point or inside the provider.
+            Path mountPoint = provider.getPath();
+            for (Path relativeQuery : compiled.getRemaindersBelow(mountPoint)) {
+                if (provider instanceof VersionedContextProvider) {
+                    result.addAll(((VersionedContextProvider) provider).lookup(
+                            relativeQuery, version));
+                } else {
+                    result.addAll(provider.lookup(relativeQuery));
+                }
+            }
         }
         // Don't forget the mount points themselves, which don't appear anywhere else.
+        PathPattern pattern = PathPattern.compile(query);
         for (Path path : mountPoints.keySet()) {
-            if (path.matches(query)) {
+            if (pattern.matches(path)) {
                 result.add(defaultProvider.getPath().append(path));
             }
         }
@@ -148,9 +205,10 @@ public class OverlayContextProvider extends EventForwarder implements
      * which can contribute an answer to the specified query.
      * 
      * @param query
+     *            the compiled absolute query.
      * @return
      */
-    private Collection<ContextProvider> findPotentialContributorsTo(Path query) {
+    private Collection<ContextProvider> findPotentialContributorsTo(PathPattern query) {
         Collection<ContextProvider> candidates = new ArrayList<ContextProvider>();
         candidates.add(defaultProvider);
         candidates.addAll(mountPoints.values());
@@ -164,23 +222,16 @@ public class OverlayContextProvider extends EventForwarder implements
 
     /**
      * Returns <code>true</code> iff the specified provider can potentially contribute
-     * to the result of the query.
+     * to the result of the query, i.e. if the query can match something strictly below
+     * the provider's mount point.
      * 
      * @param provider
      * @param query
+     *            the compiled absolute query.
      * @return
      */
-    private boolean canContribute(ContextProvider provider, Path query) {
-        Path mountPoint = provider.getPath();
-        Path absoluteQuery = defaultProvider.getPath().append(query);
-        if (absoluteQuery.size() <= mountPoint.size()) {
-            // Request not "deep" enough to see below the provider's mountPoint.
-            return false;
-        } else {
-            // Checks whether the mount-point matches the beginning of the query.
-            Path queryPrefix = absoluteQuery.subPath(0, mountPoint.size() + 1);
-            return mountPoint.matches(queryPrefix);
-        }
+    private boolean canContribute(ContextProvider provider, PathPattern query) {
+        return query.matchesBelow(provider.getPath());
     }
 
     /*
@@ -189,10 +240,38 @@ public class OverlayContextProvider extends EventForwarder implements
      * @see org.objectweb.wildcat.ContextProvider#lookupAttribute(org.objectweb.wildcat.Path)
      */
     public Object lookupAttribute(Path attribute) {
+        return lookupAttribute(attribute, Versions.LATEST);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.objectweb.wildcat.VersionedContextProvider#lookupAttribute(org.objectweb.wildcat.Path,
+     *      long)
+     */
+    public Object lookupAttribute(Path attribute, long version) {
+        ContextProvider provider = providerFor(attribute);
+        Path absoluteQuery = defaultProvider.getPath().append(attribute);
+        Path relativeQuery = absoluteQuery.subPath(provider.getPath().size() + 1);
+        if (provider instanceof VersionedContextProvider) {
+            return ((VersionedContextProvider) provider).lookupAttribute(relativeQuery,
+                    version);
+        } else {
+            return provider.lookupAttribute(relativeQuery);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.ContextProvider#bindAttribute(org.objectweb.wildcat.Path)
+     */
+    public AttributeHandle bindAttribute(Path attribute) {
+        // The handle does not depend on the mount points: a provider can not be mounted
+        // over existing resources, and unmounting one invalidates the handles inside it.
         ContextProvider provider = providerFor(attribute);
         Path absoluteQuery = defaultProvider.getPath().append(attribute);
         Path relativeQuery = absoluteQuery.subPath(provider.getPath().size() + 1);
-        return provider.lookupAttribute(relativeQuery);
+        return provider.bindAttribute(relativeQuery);
     }
 
     /*
@@ -250,6 +329,9 @@ public class OverlayContextProvider extends EventForwarder implements
                 try {
                     provider.setEventListener(this);
                     provider.setDependencyGraph(defaultProvider.getDependencyGraph());
+                    if (provider instanceof VersionedContextProvider) {
+                        ((VersionedContextProvider) provider).setVersions(versions);
+                    }
                     provider.mounted(defaultProvider.getPath().append(mountPoint));
                     mountPoints.put(mountPoint, provider);
                     notify(new PathAddedEvent(this.getPath().append(mountPoint)));
@@ -301,11 +383,11 @@ public class OverlayContextProvider extends EventForwarder implements
      * (non-Javadoc)
      * 
      * @see org.objectweb.wildcat.dependencies.Updatable#update(org.objectweb.wildcat.Path,
-     *      org.objectweb.wildcat.events.PathEvent)
+     *      java.util.Collection)
      */
-    public void update(Path path, PathEvent cause) {
+    public void update(Path path, Collection<Path> changes) {
         ContextProvider cp = providerFor(path.relativeTo(getPath()));
-        cp.update(path.relativeTo(cp.getPath()), cause);
+        cp.update(path.relativeTo(cp.getPath()), changes);
     }
 
     /**
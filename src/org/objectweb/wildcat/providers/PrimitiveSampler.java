@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.providers;
+
+/**
+ * A {@link Sampler} which can also report its observations without boxing the numeric
+ * and boolean values nor building a map. When such a sampler is attached to a
+ * {@link DynamicContextProvider}, it is always used through
+ * {@link #sample(PrimitiveSampler.Samples)}, so that a periodic update which only
+ * changes numbers does not allocate anything but the events describing the changes.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public interface PrimitiveSampler extends Sampler {
+    /**
+     * Observes some element of the context and reports its current status as a set of
+     * named values.
+     * 
+     * @param samples
+     *            where to put the result of the observation. It is only valid during
+     *            this call.
+     */
+    void sample(Samples samples);
+
+    /**
+     * Receives the named values observed by a {@link PrimitiveSampler}.
+     */
+    interface Samples {
+        void put(String name, long value);
+
+        void put(String name, double value);
+
+        void put(String name, boolean value);
+
+        void put(String name, Object value);
+    }
+}
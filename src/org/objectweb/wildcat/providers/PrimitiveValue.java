@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.providers;
+
+/**
+ * A mutable slot holding the unboxed value of a numeric or boolean attribute, so that
+ * updating it does not allocate anything. The value is only boxed when it is read
+ * through the generic, <code>Object</code>-based API.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+final class PrimitiveValue {
+    static final byte LONG = 0;
+
+    static final byte DOUBLE = 1;
+
+    static final byte BOOLEAN = 2;
+
+    /**
+     * The type of the value: {@link #LONG}, {@link #DOUBLE} or {@link #BOOLEAN}.
+     */
+    final byte kind;
+
+    /**
+     * The value, encoded as by {@link #encode(double)} or {@link #encode(boolean)} for
+     * the non-<code>long</code> kinds. Volatile, as it is read without locking.
+     */
+    volatile long bits;
+
+    PrimitiveValue(byte kind, long bits) {
+        this.kind = kind;
+        this.bits = bits;
+    }
+
+    /**
+     * Returns the value as an object.
+     */
+    Object box() {
+        return box(kind, bits);
+    }
+
+    static Object box(byte kind, long bits) {
+        switch (kind) {
+        case LONG:
+            return Long.valueOf(bits);
+        case DOUBLE:
+            return Double.valueOf(Double.longBitsToDouble(bits));
+        default:
+            return Boolean.valueOf(bits != 0);
+        }
+    }
+
+    /**
+     * Encodes a <code>double</code> so that two values have the same encoding iff they
+     * are equal according to {@link Double#equals(Object)}.
+     */
+    static long encode(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
+    static long encode(boolean value) {
+        return value ? 1 : 0;
+    }
+}
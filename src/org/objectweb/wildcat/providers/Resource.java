@@ -20,57 +20,141 @@
 package org.objectweb.wildcat.providers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.ConcurrentModificationException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import org.objectweb.wildcat.AttributeHandle;
 import org.objectweb.wildcat.MalformedPathException;
 import org.objectweb.wildcat.Path;
 import org.objectweb.wildcat.events.EventListener;
-import org.objectweb.wildcat.events.EventSource;
 import org.objectweb.wildcat.events.PathAddedEvent;
 import org.objectweb.wildcat.events.PathChangedEvent;
+import org.objectweb.wildcat.events.PathEvent;
 import org.objectweb.wildcat.events.PathRemovedEvent;
 
 /**
  * Simple rescursive data-structure to represent resources and their attributes.
+ * <p>
+ * As a context can contain millions of resources, their representation is kept compact.
+ * A resource does not store its path, but only its parent and its name, from which the
+ * path is computed when needed; only the top-level resource knows its own path and the
+ * listener to notify. The names are interned, so that all the resources and attributes
+ * with the same name share it. Up to {@value #MAX_ARRAY_SIZE} sub-resources and
+ * attributes are kept in arrays sorted by name, searched by dichotomy, and only larger
+ * sets are moved to hash tables. The numeric and boolean values set through the
+ * primitive setters are stored unboxed, in {@link PrimitiveValue} slots updated in
+ * place.
+ * <p>
+ * All the modifications are synchronized on the resource, but the reads do not take any
+ * lock, so that queries are never blocked by the sensors updating the attributes. The
+ * arrays are never modified once published: they are replaced by updated copies, while
+ * the larger sets are kept in concurrent maps. A reader thus sees each sub-resource and
+ * attribute either before or after a concurrent modification, but a sequence of reads
+ * is not atomic.
+ * <p>
+ * The reads which take a version see the resource as it was at that version of the
+ * context (see {@link Versions}), whatever the modifications made since. While some
+ * reader may need it, the state of the resource is kept in its history before it is
+ * modified for the first time in a new version: the immutable arrays are shared, and
+ * only the hash tables and the unboxed values are copied. The states are chained from
+ * the newest to the oldest, and dropped once no reader needs them anymore.
  * 
  * @author Pierre-Charles David <pcdavid@gmail.com>
  */
-class Resource extends EventSource {
+class Resource {
     /**
-     * This resource's absolute path.
+     * The number of sub-resources, and of attributes, above which they are stored in a
+     * hash table instead of a sorted array.
      */
-    protected Path path;
+    static final int MAX_ARRAY_SIZE = 32;
 
     /**
-     * Local attributes on this resource.
+     * The parent of this resource, or for a top-level resource the {@link Mount} which
+     * holds its path, listener and clock.
      */
-    protected Map<String, Object> attributes;
+    private final Object parent;
 
     /**
-     * Direct sub-resources.
+     * The (interned) name of this resource, or <code>null</code> for a top-level
+     * resource.
      */
-    protected Map<String, Resource> children;
+    private final String name;
 
     /**
-     * Creates a new resource.
+     * Direct sub-resources: either <code>null</code>, an array sorted by name, or a
+     * concurrent map indexed by name.
+     */
+    private volatile Object children;
+
+    /**
+     * Local attributes on this resource: either <code>null</code>, an array of
+     * alternate names and values sorted by name, or a concurrent map from names to
+     * values. The values stored are either the attributes' values themselves,
+     * {@link #NULL_VALUE}, or {@link PrimitiveValue}s.
+     */
+    private volatile Object attributes;
+
+    /**
+     * The events collected instead of being notified while the attributes are updated
+     * all at once, or <code>null</code> if no batch is open. Empty batches are
+     * represented by {@link #NO_EVENTS}.
+     */
+    private List<PathEvent> batch;
+
+    private static final List<PathEvent> NO_EVENTS = Collections.emptyList();
+
+    /**
+     * The value stored for the attributes whose value is <code>null</code>, as
+     * concurrent maps do not accept it.
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * Whether this resource has been removed from the context. Once set, the handles on
+     * its attributes are invalid.
+     */
+    private volatile boolean disposed;
+
+    /**
+     * The previous states of this resource which some reader may need, newest first, or
+     * <code>null</code>.
+     */
+    private volatile State history;
+
+    private static final AtomicReferenceFieldUpdater<Resource, State> HISTORY = AtomicReferenceFieldUpdater
+            .newUpdater(Resource.class, State.class, "history");
+
+    /**
+     * Creates a new top-level resource.
      * 
      * @param path
      *            the absolute path of the new resource.
      * @param listener
      *            the listener which will be notified of local events on this resource,
      *            and inherited by sub-resources.
+     * @param versions
+     *            the clock of the context, which gives the versions of the modifications
+     *            of this resource and its sub-resources.
      */
-    Resource(Path path, EventListener listener) {
-        assert path != null && listener != null;
+    Resource(Path path, EventListener listener, Versions versions) {
+        assert path != null && listener != null && versions != null;
         assert path.isAbsolute() && path.isDefinite() && path.isResource();
 
-        this.path = path;
-        this.listener = listener;
+        this.parent = new Mount(path, listener, versions);
+        this.name = null;
+    }
+
+    private Resource(Resource parent, String name) {
+        this.parent = parent;
+        this.name = name;
     }
 
     /**
@@ -79,7 +163,11 @@ class Resource extends EventSource {
      * @return this resource's absolute path
      */
     public Path getPath() {
-        return path;
+        if (parent instanceof Mount) {
+            return ((Mount) parent).path;
+        } else {
+            return ((Resource) parent).getPath().appendResource(name);
+        }
     }
 
     /**
@@ -101,15 +189,13 @@ class Resource extends EventSource {
             throw new IllegalArgumentException("A sub-resource named " + name
                     + " already exists.");
         }
-        Resource kid = new Resource(path.append(name), listener);
-        if (children == null) {
-            children = new HashMap<String, Resource>();
-        }
-        children.put(name, kid);
+        Path kidPath = getPath().appendResource(name);
+        Resource kid = new Resource(this, name.intern());
+        addChild(kid);
         assert hasChild(name);
         assert getChild(name) == kid;
-        assert getChild(name).getPath().equals(path.append(name));
-        notify(new PathAddedEvent(kid.getPath()));
+        assert kid.getPath().equals(kidPath);
+        notify(new PathAddedEvent(kidPath));
         return kid;
     }
 
@@ -125,15 +211,23 @@ class Resource extends EventSource {
      */
     public synchronized void deleteChild(String name) {
         if (!hasChild(name)) {
-            throw new IllegalArgumentException(path + " has no child named " + name
+            throw new IllegalArgumentException(getPath() + " has no child named " + name
                     + " to delete.");
         }
         Resource kid = getChild(name);
         Path kidPath = kid.getPath();
-        kid.dispose();
-        children.remove(name);
+        List<PathEvent> events = new ArrayList<PathEvent>();
+        // Readers see the whole sub-tree, or nothing.
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            kid.dispose(events);
+            removeChild(name);
+        } finally {
+            write.end();
+        }
         assert !hasChild(name);
-        notify(new PathRemovedEvent(kidPath));
+        events.add(new PathRemovedEvent(kidPath));
+        notify(events.toArray(new PathEvent[events.size()]));
     }
 
     /**
@@ -145,7 +239,7 @@ class Resource extends EventSource {
      *         <code>name</code>.
      */
     public boolean hasChild(String name) {
-        return children != null && children.containsKey(name);
+        return getChild(name) != null;
     }
 
     /**
@@ -156,19 +250,24 @@ class Resource extends EventSource {
      * @return the sub-resource with the given name, or <code>null</code> if there is
      *         none.
      */
-    public synchronized Resource getChild(String name) {
-        if (children == null) {
-            return null;
-        }
-        Resource kid = children.get(name);
-        if (kid == null) {
-            return null;
-        }
-        Path kidPath = kid.getPath();
-        assert kidPath.isAbsolute() && kidPath.isResource() && kidPath.isDefinite();
-        assert kidPath.startsWith(this.path) && kidPath.size() == this.path.size() + 1;
-        assert kidPath.getResourcesPart().get(kidPath.size() - 1).equals(name);
-        return kid;
+    public Resource getChild(String name) {
+        return childIn(children, name);
+    }
+
+    /**
+     * Returns the direct sub-resource with the given name at a version of the context.
+     * 
+     * @param name
+     *            the name of the sub-resource to find.
+     * @param version
+     *            the version read, as given by {@link Versions}.
+     * @return the sub-resource with the given name at that version, or
+     *         <code>null</code> if there was none.
+     */
+    public Resource getChild(String name, long version) {
+        Resource kid = childIn(children, name);
+        State state = stateAt(version);
+        return (state != null) ? childIn(state.children, name) : kid;
     }
 
     /**
@@ -178,11 +277,24 @@ class Resource extends EventSource {
      *         resource.
      */
     public Collection<Resource> getChildren() {
-        if (children != null) {
-            return Collections.unmodifiableCollection(children.values());
-        } else {
-            return Collections.emptySet();
-        }
+        return childrenIn(children);
+    }
+
+    /**
+     * Returns all the direct sub-resources this resource had at a version of the
+     * context.
+     * 
+     * @param version
+     *            the version read, as given by {@link Versions}.
+     * @return an unmodifiable collection of the sub-resources at that version.
+     */
+    public Collection<Resource> getChildren(long version) {
+        Object kids = children;
+        // Copied before checking the version, as the hash tables are modified in place.
+        Collection<Resource> current = (kids instanceof Map) ? new ArrayList<Resource>(
+                childrenIn(kids)) : childrenIn(kids);
+        State state = stateAt(version);
+        return (state != null) ? childrenIn(state.children) : current;
     }
 
     /**
@@ -198,8 +310,28 @@ class Resource extends EventSource {
     public Collection<Resource> getChildrenMatching(String pattern) {
         if ("*".equals(pattern)) {
             return getChildren();
-        } else if (hasChild(pattern)) {
-            return Collections.singleton(getChild(pattern));
+        }
+        Resource kid = getChild(pattern);
+        if (kid != null) {
+            return Collections.singleton(kid);
+        } else {
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Returns all the direct sub-resources this resource had at a version of the context
+     * whose name matches the given pattern.
+     * 
+     * @see #getChildrenMatching(String)
+     */
+    public Collection<Resource> getChildrenMatching(String pattern, long version) {
+        if ("*".equals(pattern)) {
+            return getChildren(version);
+        }
+        Resource kid = getChild(pattern, version);
+        if (kid != null) {
+            return Collections.singleton(kid);
         } else {
             return Collections.emptySet();
         }
@@ -207,17 +339,63 @@ class Resource extends EventSource {
 
     /**
      * Deletes all the sub-resources and attributes of this resource, generating all the
-     * corresponding events (depth-first).
+     * corresponding events (depth-first). The events are notified together once
+     * everything has been deleted.
      */
     synchronized void dispose() {
-        for (String kid : keysCopy(children)) {
-            deleteChild(kid);
+        List<PathEvent> events = new ArrayList<PathEvent>();
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            dispose(events);
+        } finally {
+            write.end();
         }
-        for (String attrName : keysCopy(attributes)) {
-            deleteAttribute(attrName);
+        if (!events.isEmpty()) {
+            notify(events.toArray(new PathEvent[events.size()]));
         }
     }
 
+    /**
+     * Deletes all the sub-resources and attributes of this resource, and collects the
+     * corresponding events (depth-first) instead of notifying them: the listeners must
+     * not be called while the modification is in progress, as they may wait for it to
+     * complete (see {@link Versions#open(Object)}).
+     */
+    private synchronized void dispose(List<PathEvent> events) {
+        disposed = true;
+        for (Resource kid : getChildren().toArray(new Resource[0])) {
+            Path kidPath = kid.getPath();
+            kid.dispose(events);
+            removeChild(kid.name);
+            events.add(new PathRemovedEvent(kidPath));
+        }
+        for (String attrName : getAttributes().toArray(new String[0])) {
+            events.add(new PathRemovedEvent(getPath().appendAttribute(attrName)));
+            removeAttribute(attrName);
+        }
+    }
+
+    /**
+     * Tests whether this resource has been removed from the context, either by itself or
+     * with one of its ancestors.
+     */
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    /**
+     * Returns a handle to read the value of an attribute of this resource directly. The
+     * handle is valid as long as this resource is not disposed, even if the attribute
+     * itself does not exist yet or is deleted and created again.
+     * 
+     * @param name
+     *            the name of the attribute.
+     * @return a handle on the attribute.
+     */
+    public AttributeHandle getAttributeHandle(String name) {
+        return new Handle(this, name);
+    }
+
     /**
      * Creates a new attribute for this resource. If the creation succeeds, two distinct
      * events are generated: one corresponding to the actual
@@ -237,18 +415,23 @@ class Resource extends EventSource {
      *             if the name is not a valid attribute name
      */
     public synchronized void createAttribute(String name, Object initialValue) {
+        createAttribute(name, initialValue, wrap(initialValue));
+    }
+
+    /**
+     * Creates a new attribute, with the given representation of its initial value.
+     */
+    private void createAttribute(String name, Object initialValue, Object stored) {
+        Path path = getPath();
         if (path.size() == 0) {
             throw new IllegalArgumentException("No attributes allowed on root resource.");
         } else if (hasAttribute(name)) {
             throw new IllegalArgumentException("Attribute " + name + " already exists.");
         }
         Path p = path.appendAttribute(name);
-        if (attributes == null) {
-            attributes = new HashMap<String, Object>();
-        }
-        attributes.put(name, initialValue);
+        addAttribute(name.intern(), stored);
         assert hasAttribute(name);
-        assert getAttributeValue(name) == initialValue;
+        assert !different(getAttributeValue(name), initialValue);
         notify(new PathAddedEvent(p), new PathChangedEvent(p, null, initialValue));
     }
 
@@ -264,13 +447,13 @@ class Resource extends EventSource {
      */
     public synchronized void deleteAttribute(String attrName) {
         if (hasAttribute(attrName)) {
-            Path attrPath = path.appendAttribute(attrName);
-            attributes.remove(attrName);
+            Path attrPath = getPath().appendAttribute(attrName);
+            removeAttribute(attrName);
             notify(new PathRemovedEvent(attrPath));
             assert !hasAttribute(attrName);
         } else {
             throw new IllegalArgumentException("No attribute named " + attrName + " in "
-                    + path + ".");
+                    + getPath() + ".");
         }
     }
 
@@ -283,7 +466,7 @@ class Resource extends EventSource {
      *         <code>name</code>
      */
     public boolean hasAttribute(String name) {
-        return attributes != null && attributes.containsKey(name);
+        return getStoredValue(name) != null;
     }
 
     /**
@@ -297,12 +480,25 @@ class Resource extends EventSource {
      * @return the current value of the attribute named <code>name</code> of
      *         <code>null</code> if this resource does not have such an attribute.
      */
-    public synchronized Object getAttributeValue(String name) {
-        if (attributes != null) {
-            return attributes.get(name);
-        } else {
-            return null;
-        }
+    public Object getAttributeValue(String name) {
+        return unwrap(getStoredValue(name));
+    }
+
+    /**
+     * Returns the value an attribute had at a version of the context, or
+     * <code>null</code> if this resource did not have such an attribute.
+     * 
+     * @param name
+     *            the name of the attribute to retrieve
+     * @param version
+     *            the version read, as given by {@link Versions}.
+     * @return the value of the attribute at that version.
+     */
+    public Object getAttributeValue(String name, long version) {
+        // Unboxed before checking the version, as the primitive values change in place.
+        Object value = unwrap(storedIn(attributes, name));
+        State state = stateAt(version);
+        return (state != null) ? unwrap(storedIn(state.attributes, name)) : value;
     }
 
     /**
@@ -317,17 +513,82 @@ class Resource extends EventSource {
      *             if this resource does not have an attribute named <code>name</code>
      */
     public synchronized void setAttributeValue(String name, Object value) {
-        if (hasAttribute(name)) {
-            Path attrPath = path.appendAttribute(name);
-            Object oldValue = attributes.get(name);
-            attributes.put(name, value);
-            if (different(oldValue, value)) {
-                notify(new PathChangedEvent(attrPath, oldValue, value));
+        if (!hasAttribute(name)) {
+            throw new IllegalArgumentException("Not attribute " + name + " to change.");
+        }
+        Object oldValue = unwrap(getStoredValue(name));
+        setStoredValue(name, wrap(value));
+        if (different(oldValue, value)) {
+            notify(new PathChangedEvent(getPath().appendAttribute(name), oldValue, value));
+        }
+        assert (getAttributeValue(name) == null && value == null)
+                || getAttributeValue(name).equals(value);
+    }
+
+    /**
+     * Changes the value of the specified attribute to a <code>long</code>. The value
+     * is stored unboxed, and once the attribute holds a <code>long</code>, the next
+     * changes are done in place, without allocating anything but the event.
+     * 
+     * @param name
+     *            the name of the attribute to change.
+     * @param value
+     *            the new value to give to the attribute.
+     * @throws IllegalArgumentException
+     *             if this resource does not have an attribute named <code>name</code>
+     * @see #setAttributeValue(String, Object)
+     */
+    public synchronized void setLongAttributeValue(String name, long value) {
+        setPrimitiveValue(name, PrimitiveValue.LONG, value);
+    }
+
+    /**
+     * Changes the value of the specified attribute to a <code>double</code>, which is
+     * stored unboxed.
+     * 
+     * @see #setLongAttributeValue(String, long)
+     */
+    public synchronized void setDoubleAttributeValue(String name, double value) {
+        setPrimitiveValue(name, PrimitiveValue.DOUBLE, PrimitiveValue.encode(value));
+    }
+
+    /**
+     * Changes the value of the specified attribute to a <code>boolean</code>, which
+     * is stored unboxed.
+     * 
+     * @see #setLongAttributeValue(String, long)
+     */
+    public synchronized void setBooleanAttributeValue(String name, boolean value) {
+        setPrimitiveValue(name, PrimitiveValue.BOOLEAN, PrimitiveValue.encode(value));
+    }
+
+    private void setPrimitiveValue(String name, byte kind, long bits) {
+        if (!hasAttribute(name)) {
+            throw new IllegalArgumentException("Not attribute " + name + " to change.");
+        }
+        Object stored = getStoredValue(name);
+        if (stored instanceof PrimitiveValue && ((PrimitiveValue) stored).kind == kind) {
+            PrimitiveValue slot = (PrimitiveValue) stored;
+            long oldBits = slot.bits;
+            if (oldBits != bits) {
+                Versions.Write write = getVersions().beginWrite();
+                try {
+                    keepState(write.version);
+                    slot.bits = bits;
+                } finally {
+                    write.end();
+                }
+                notify(new PrimitiveChangedEvent(getPath().appendAttribute(name), kind,
+                        oldBits, bits));
             }
-            assert (getAttributeValue(name) == null && value == null)
-                    || getAttributeValue(name).equals(value);
         } else {
-            throw new IllegalArgumentException("Not attribute " + name + " to change.");
+            Object oldValue = unwrap(stored);
+            Object value = PrimitiveValue.box(kind, bits);
+            setStoredValue(name, new PrimitiveValue(kind, bits));
+            if (different(oldValue, value)) {
+                notify(new PathChangedEvent(getPath().appendAttribute(name), oldValue,
+                        value));
+            }
         }
     }
 
@@ -336,12 +597,8 @@ class Resource extends EventSource {
      * 
      * @return the names of all the attributes of this resource.
      */
-    public synchronized Collection<String> getAttributes() {
-        if (attributes != null) {
-            return Collections.unmodifiableCollection(attributes.keySet());
-        } else {
-            return Collections.emptySet();
-        }
+    public Collection<String> getAttributes() {
+        return namesIn(attributes);
     }
 
     /**
@@ -358,22 +615,56 @@ class Resource extends EventSource {
      * @param pattern
      * @return
      */
-    public synchronized Collection<Path> getAttributesMatching(String pattern) {
+    public Collection<Path> getAttributesMatching(String pattern) {
         if (attributes == null) {
             return Collections.emptySet();
         } else if ("*".equals(pattern)) {
-            Collection<Path> result = new ArrayList<Path>(attributes.size());
-            for (String name : attributes.keySet()) {
+            Path path = getPath();
+            Collection<String> names = getAttributes();
+            Collection<Path> result = new ArrayList<Path>(names.size());
+            for (String name : names) {
                 result.add(path.appendAttribute(name));
             }
             return result;
         } else if (hasAttribute(pattern)) {
-            return Collections.singleton(path.appendAttribute(pattern));
+            return Collections.singleton(getPath().appendAttribute(pattern));
         } else {
             return Collections.emptySet();
         }
     }
 
+    /**
+     * Returns the path of all the attributes this resource had at a version of the
+     * context whose name matches the provided pattern.
+     * 
+     * @see #getAttributesMatching(String)
+     */
+    public Collection<Path> getAttributesMatching(String pattern, long version) {
+        Object attrs = attributes;
+        Collection<String> names;
+        if ("*".equals(pattern)) {
+            // Copied before checking the version, as the hash tables change in place.
+            names = (attrs instanceof Map) ? new ArrayList<String>(namesIn(attrs))
+                    : namesIn(attrs);
+        } else {
+            names = namesMatching(attrs, pattern);
+        }
+        State state = stateAt(version);
+        if (state != null) {
+            names = "*".equals(pattern) ? namesIn(state.attributes) : namesMatching(
+                    state.attributes, pattern);
+        }
+        if (names.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Path path = getPath();
+        Collection<Path> result = new ArrayList<Path>(names.size());
+        for (String name : names) {
+            result.add(path.appendAttribute(name));
+        }
+        return result;
+    }
+
     /**
      * Changes the values of a set of attributes all at once. Attributes which do not
      * exist are automatically created with the initial value supplied. Attributes which
@@ -395,6 +686,9 @@ class Resource extends EventSource {
      * removed, i.e. after this method has executed, this resource only contains the
      * attributes explicitely mentioned in the update.
      * <p>
+     * All the resulting events are notified in a single batch once the update is
+     * complete.
+     * <p>
      * <em>Note:</em> This method is not atomic: if some of the attribute names are
      * invalid (resulting in a {@link MalformedPathException}), some but not all of the
      * valid attributes may have been updated.
@@ -406,22 +700,29 @@ class Resource extends EventSource {
             boolean keepOthers) {
         Set<String> toDelete = null;
         if (!keepOthers) {
-            toDelete = attributes.keySet();
+            toDelete = new HashSet<String>(getAttributes());
         }
-        for (String attrName : samples.keySet()) {
-            if (!hasAttribute(attrName)) {
-                createAttribute(attrName, samples.get(attrName));
-            } else {
-                setAttributeValue(attrName, samples.get(attrName));
+        beginBatch();
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            for (String attrName : samples.keySet()) {
+                if (!hasAttribute(attrName)) {
+                    createAttribute(attrName, samples.get(attrName));
+                } else {
+                    setAttributeValue(attrName, samples.get(attrName));
+                }
+                if (!keepOthers) {
+                    toDelete.remove(attrName);
+                }
             }
             if (!keepOthers) {
-                toDelete.remove(attrName);
-            }
-        }
-        if (!keepOthers) {
-            for (String name : toDelete) {
-                deleteAttribute(name);
+                for (String name : toDelete) {
+                    deleteAttribute(name);
+                }
             }
+        } finally {
+            write.end();
+            endBatch();
         }
         for (String name : samples.keySet()) {
             assert hasAttribute(name);
@@ -433,6 +734,42 @@ class Resource extends EventSource {
         }
     }
 
+    /**
+     * Changes the values of a set of attributes all at once, as reported by a
+     * {@link PrimitiveSampler}. Attributes which do not exist are automatically created
+     * with the initial value supplied; the others are not modified. All the resulting
+     * events are notified in a single batch once the update is complete.
+     * 
+     * @param samples
+     *            the names and values of the attributes to create or update.
+     */
+    synchronized void setAttributesValues(SampleBuffer samples) {
+        beginBatch();
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            for (int i = 0; i < samples.size(); i++) {
+                String name = samples.getName(i);
+                byte kind = samples.getKind(i);
+                if (kind == SampleBuffer.OBJECT) {
+                    if (!hasAttribute(name)) {
+                        createAttribute(name, samples.getObject(i));
+                    } else {
+                        setAttributeValue(name, samples.getObject(i));
+                    }
+                } else if (!hasAttribute(name)) {
+                    long bits = samples.getBits(i);
+                    createAttribute(name, PrimitiveValue.box(kind, bits), new PrimitiveValue(
+                            kind, bits));
+                } else {
+                    setPrimitiveValue(name, kind, samples.getBits(i));
+                }
+            }
+        } finally {
+            write.end();
+            endBatch();
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -440,22 +777,472 @@ class Resource extends EventSource {
      */
     @Override
     public String toString() {
-        return path.toString();
+        return getPath().toString();
+    }
+
+    /**
+     * Returns the listener of the top-level resource, which is notified of the events of
+     * all its descendants.
+     */
+    private EventListener getListener() {
+        Object top = parent;
+        while (top instanceof Resource) {
+            top = ((Resource) top).parent;
+        }
+        return ((Mount) top).listener;
+    }
+
+    /**
+     * Returns the clock of the context, inherited from the top-level resource.
+     */
+    Versions getVersions() {
+        Object top = parent;
+        while (top instanceof Resource) {
+            top = ((Resource) top).parent;
+        }
+        return ((Mount) top).versions;
+    }
+
+    /**
+     * Starts collecting the events instead of notifying them. Must be called by a
+     * thread which holds this object's monitor until the matching call to
+     * {@link #endBatch()}.
+     */
+    private void beginBatch() {
+        assert batch == null;
+        batch = NO_EVENTS;
+    }
+
+    /**
+     * Notifies all the events collected since {@link #beginBatch()}, if any, in a single
+     * notification.
+     */
+    private void endBatch() {
+        List<PathEvent> events = batch;
+        batch = null;
+        if (events != NO_EVENTS) {
+            getListener().eventOccured(events);
+        }
     }
 
     /**
-     * Utility method to copy all the keys in a map into an array which can be iterated on
-     * without risk of {@link ConcurrentModificationException}.
+     * Notifies the listener of the specified event, or adds it to the current batch if
+     * there is one.
      */
-    private String[] keysCopy(Map<String, ?> map) {
-        if (map == null) {
-            return new String[0];
+    private void notify(PathEvent event) {
+        if (batch == NO_EVENTS) {
+            batch = new ArrayList<PathEvent>();
+        }
+        if (batch != null) {
+            batch.add(event);
+        } else {
+            getListener().eventOccured(event);
+        }
+    }
+
+    /**
+     * Notifies the listener of the specified events, or adds them to the current batch
+     * if there is one.
+     */
+    private void notify(PathEvent... events) {
+        if (batch == NO_EVENTS) {
+            batch = new ArrayList<PathEvent>();
+        }
+        if (batch != null) {
+            batch.addAll(Arrays.asList(events));
+        } else {
+            getListener().eventOccured(Arrays.asList(events));
+        }
+    }
+
+    /**
+     * Returns the value stored for an attribute: either its value, or a
+     * {@link PrimitiveValue}. Returns <code>null</code> if there is no such attribute.
+     */
+    private Object getStoredValue(String name) {
+        return storedIn(attributes, name);
+    }
+
+    /**
+     * Replaces the value stored for an existing attribute.
+     */
+    @SuppressWarnings("unchecked")
+    private void setStoredValue(String name, Object stored) {
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            keepState(write.version);
+            if (attributes instanceof Object[]) {
+                Object[] attrs = ((Object[]) attributes).clone();
+                attrs[indexOfAttribute(attrs, name) + 1] = stored;
+                attributes = attrs;
+            } else {
+                ((Map<String, Object>) attributes).put(name, stored);
+            }
+        } finally {
+            write.end();
+        }
+    }
+
+    /**
+     * Finds a sub-resource in a set of sub-resources, as stored in {@link #children}.
+     */
+    @SuppressWarnings("unchecked")
+    private static Resource childIn(Object kids, String name) {
+        if (kids instanceof Resource[]) {
+            Resource[] array = (Resource[]) kids;
+            int index = indexOfChild(array, name);
+            return (index >= 0) ? array[index] : null;
+        } else if (kids != null) {
+            return ((Map<String, Resource>) kids).get(name);
+        } else {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Resource> childrenIn(Object kids) {
+        if (kids instanceof Resource[]) {
+            return Collections.unmodifiableList(Arrays.asList((Resource[]) kids));
+        } else if (kids != null) {
+            return Collections.unmodifiableCollection(((Map<String, Resource>) kids)
+                    .values());
+        } else {
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Finds the value stored for an attribute in a set of attributes, as stored in
+     * {@link #attributes}.
+     */
+    private static Object storedIn(Object attrs, String name) {
+        if (attrs instanceof Object[]) {
+            Object[] array = (Object[]) attrs;
+            int index = indexOfAttribute(array, name);
+            return (index >= 0) ? array[index + 1] : null;
+        } else if (attrs != null) {
+            return ((Map<?, ?>) attrs).get(name);
+        } else {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<String> namesIn(Object attrs) {
+        if (attrs instanceof Object[]) {
+            Object[] array = (Object[]) attrs;
+            List<String> names = new ArrayList<String>(array.length / 2);
+            for (int i = 0; i < array.length; i += 2) {
+                names.add((String) array[i]);
+            }
+            return Collections.unmodifiableList(names);
+        } else if (attrs != null) {
+            return Collections.unmodifiableCollection(((Map<String, Object>) attrs)
+                    .keySet());
         } else {
-            Set<String> k = map.keySet();
-            return k.toArray(new String[k.size()]);
+            return Collections.emptySet();
+        }
+    }
+
+    private static Collection<String> namesMatching(Object attrs, String name) {
+        if (storedIn(attrs, name) != null) {
+            return Collections.singleton(name);
+        } else {
+            return Collections.emptySet();
+        }
+    }
+
+    /**
+     * Keeps the current state of this resource in its history before it is modified, if
+     * some open reader can see it. Must be called with the lock on this resource.
+     * 
+     * @param version
+     *            the version of the modification.
+     */
+    private void keepState(long version) {
+        State head = history;
+        long since = (head != null) ? head.until : 0;
+        if (since == version || !getVersions().isRead(since)) {
+            // Already kept for this version, or nobody needs it.
+            return;
+        }
+        State state = new State(version, frozen(children), frozen(attributes));
+        // Only pruneHistory() can change the history concurrently.
+        do {
+            head = history;
+            state.older = head;
+        } while (!HISTORY.compareAndSet(this, head, state));
+        if (head == null) {
+            getVersions().keepsHistory(this);
+        }
+    }
+
+    /**
+     * Removes from the history of this resource the states no open reader needs anymore.
+     * 
+     * @return <code>true</code> if some states are still kept.
+     */
+    boolean pruneHistory() {
+        while (true) {
+            // Read before the oldest version, so that a state kept for a reader opened
+            // in between is not dropped.
+            State head = history;
+            if (head == null) {
+                return false;
+            }
+            long oldest = getVersions().getOldestRead();
+            if (head.until <= oldest) {
+                if (HISTORY.compareAndSet(this, head, null)) {
+                    return false;
+                }
+            } else {
+                State state = head;
+                while (state.older != null && state.older.until > oldest) {
+                    state = state.older;
+                }
+                state.older = null;
+                return true;
+            }
         }
     }
-    
+
+    /**
+     * Returns the state of this resource at a version, or <code>null</code> if it has
+     * not changed since.
+     */
+    private State stateAt(long version) {
+        State state = history;
+        if (state == null || state.until <= version) {
+            return null;
+        }
+        while (state.older != null && state.older.until > version) {
+            state = state.older;
+        }
+        return state;
+    }
+
+    /**
+     * Returns an immutable copy of the sub-resources or the attributes of this resource:
+     * the arrays are shared, but the hash tables copied, and the primitive values boxed.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object frozen(Object elements) {
+        if (elements instanceof Object[]) {
+            Object[] array = (Object[]) elements;
+            Object[] result = array;
+            for (int i = 1; i < array.length; i += 2) {
+                if (array[i] instanceof PrimitiveValue) {
+                    if (result == array) {
+                        result = array.clone();
+                    }
+                    result[i] = ((PrimitiveValue) array[i]).box();
+                }
+            }
+            return result;
+        } else if (elements != null) {
+            Map<String, Object> result = new HashMap<String, Object>(
+                    (Map<String, Object>) elements);
+            for (Map.Entry<String, Object> entry : result.entrySet()) {
+                if (entry.getValue() instanceof PrimitiveValue) {
+                    entry.setValue(((PrimitiveValue) entry.getValue()).box());
+                }
+            }
+            return result;
+        } else {
+            return null;
+        }
+    }
+
+    private static Object wrap(Object value) {
+        return (value == null) ? NULL_VALUE : value;
+    }
+
+    private static Object unwrap(Object stored) {
+        if (stored instanceof PrimitiveValue) {
+            return ((PrimitiveValue) stored).box();
+        } else if (stored == NULL_VALUE) {
+            return null;
+        } else {
+            return stored;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addChild(Resource kid) {
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            keepState(write.version);
+            if (children == null) {
+                children = new Resource[] { kid };
+            } else if (children instanceof Resource[]) {
+                Resource[] kids = (Resource[]) children;
+                if (kids.length < MAX_ARRAY_SIZE) {
+                    int index = -indexOfChild(kids, kid.name) - 1;
+                    Resource[] result = new Resource[kids.length + 1];
+                    System.arraycopy(kids, 0, result, 0, index);
+                    result[index] = kid;
+                    System.arraycopy(kids, index, result, index + 1, kids.length - index);
+                    children = result;
+                } else {
+                    Map<String, Resource> map = new ConcurrentHashMap<String, Resource>();
+                    for (Resource r : kids) {
+                        map.put(r.name, r);
+                    }
+                    map.put(kid.name, kid);
+                    children = map;
+                }
+            } else {
+                ((Map<String, Resource>) children).put(kid.name, kid);
+            }
+        } finally {
+            write.end();
+        }
+    }
+
+    private void removeChild(String name) {
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            keepState(write.version);
+            if (children instanceof Resource[]) {
+                Resource[] kids = (Resource[]) children;
+                if (kids.length == 1) {
+                    children = null;
+                } else {
+                    int index = indexOfChild(kids, name);
+                    Resource[] result = new Resource[kids.length - 1];
+                    System.arraycopy(kids, 0, result, 0, index);
+                    System.arraycopy(kids, index + 1, result, index, result.length
+                            - index);
+                    children = result;
+                }
+            } else {
+                Map<?, ?> map = (Map<?, ?>) children;
+                map.remove(name);
+                if (map.isEmpty()) {
+                    children = null;
+                }
+            }
+        } finally {
+            write.end();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addAttribute(String name, Object stored) {
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            keepState(write.version);
+            if (attributes == null) {
+                attributes = new Object[] { name, stored };
+            } else if (attributes instanceof Object[]) {
+                Object[] attrs = (Object[]) attributes;
+                if (attrs.length < 2 * MAX_ARRAY_SIZE) {
+                    int index = -indexOfAttribute(attrs, name) - 1;
+                    Object[] result = new Object[attrs.length + 2];
+                    System.arraycopy(attrs, 0, result, 0, index);
+                    result[index] = name;
+                    result[index + 1] = stored;
+                    System.arraycopy(attrs, index, result, index + 2, attrs.length
+                            - index);
+                    attributes = result;
+                } else {
+                    Map<String, Object> map = new ConcurrentHashMap<String, Object>();
+                    for (int i = 0; i < attrs.length; i += 2) {
+                        map.put((String) attrs[i], attrs[i + 1]);
+                    }
+                    map.put(name, stored);
+                    attributes = map;
+                }
+            } else {
+                ((Map<String, Object>) attributes).put(name, stored);
+            }
+        } finally {
+            write.end();
+        }
+    }
+
+    private void removeAttribute(String name) {
+        Versions.Write write = getVersions().beginWrite();
+        try {
+            keepState(write.version);
+            if (attributes instanceof Object[]) {
+                Object[] attrs = (Object[]) attributes;
+                if (attrs.length == 2) {
+                    attributes = null;
+                } else {
+                    int index = indexOfAttribute(attrs, name);
+                    Object[] result = new Object[attrs.length - 2];
+                    System.arraycopy(attrs, 0, result, 0, index);
+                    System.arraycopy(attrs, index + 2, result, index, result.length
+                            - index);
+                    attributes = result;
+                }
+            } else {
+                Map<?, ?> map = (Map<?, ?>) attributes;
+                map.remove(name);
+                if (map.isEmpty()) {
+                    attributes = null;
+                }
+            }
+        } finally {
+            write.end();
+        }
+    }
+
+    /**
+     * Finds a sub-resource by dichotomy in a sorted array.
+     * 
+     * @return the index of the sub-resource, or <code>(-(insertion point) - 1)</code>
+     *         if there is none with this name.
+     */
+    private static int indexOfChild(Resource[] kids, String name) {
+        int low = 0;
+        int high = kids.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(kids[mid].name, name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Finds an attribute by dichotomy in a sorted array of names and values.
+     * 
+     * @return the index of the attribute's name, or
+     *         <code>(-(insertion point) - 1)</code> if there is none with this name.
+     */
+    private static int indexOfAttribute(Object[] attrs, String name) {
+        int low = 0;
+        int high = attrs.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare((String) attrs[2 * mid], name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return 2 * mid;
+            }
+        }
+        return -(2 * low + 1);
+    }
+
+    /**
+     * Compares two names, starting with an identity test as they are usually both
+     * interned.
+     */
+    private static int compare(String s1, String s2) {
+        return (s1 == s2) ? 0 : s1.compareTo(s2);
+    }
+
     private boolean different(Object o1, Object o2) {
         if (o1 == null) {
             return o2 != null;
@@ -463,4 +1250,118 @@ class Resource extends EventSource {
             return !o1.equals(o2);
         }
     }
+
+    /**
+     * The change of a primitive attribute value, whose values are only boxed when they
+     * are read.
+     */
+    private static final class PrimitiveChangedEvent extends PathChangedEvent {
+        private final byte kind;
+
+        private final long oldBits;
+
+        private final long newBits;
+
+        PrimitiveChangedEvent(Path path, byte kind, long oldBits, long newBits) {
+            super(path, null, null);
+            this.kind = kind;
+            this.oldBits = oldBits;
+            this.newBits = newBits;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see org.objectweb.wildcat.events.PathChangedEvent#getOldValue()
+         */
+        @Override
+        public Object getOldValue() {
+            return PrimitiveValue.box(kind, oldBits);
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see org.objectweb.wildcat.events.PathChangedEvent#getNewValue()
+         */
+        @Override
+        public Object getNewValue() {
+            return PrimitiveValue.box(kind, newBits);
+        }
+    }
+
+    /**
+     * A previous state of a resource, which was current until some version.
+     */
+    private static final class State {
+        /**
+         * The version of the modification which ended this state.
+         */
+        final long until;
+
+        final Object children;
+
+        final Object attributes;
+
+        /**
+         * The state before this one, or <code>null</code> if no reader needs it.
+         */
+        volatile State older;
+
+        State(long until, Object children, Object attributes) {
+            this.until = until;
+            this.children = children;
+            this.attributes = attributes;
+        }
+    }
+
+    /**
+     * The location of a top-level resource in the context, the listener notified of the
+     * events of its sub-tree, and the clock of the context.
+     */
+    private static final class Mount {
+        final Path path;
+
+        final EventListener listener;
+
+        final Versions versions;
+
+        Mount(Path path, EventListener listener, Versions versions) {
+            this.path = path;
+            this.listener = listener;
+            this.versions = versions;
+        }
+    }
+
+    /**
+     * A handle on an attribute of a resource.
+     */
+    private static final class Handle implements AttributeHandle {
+        private final Resource resource;
+
+        private final String name;
+
+        Handle(Resource resource, String name) {
+            this.resource = resource;
+            this.name = name;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see org.objectweb.wildcat.AttributeHandle#getValue()
+         */
+        public Object getValue() {
+            return resource.getAttributeValue(name);
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see org.objectweb.wildcat.AttributeHandle#isValid()
+         */
+        public boolean isValid() {
+            return !resource.disposed;
+        }
+    }
 }
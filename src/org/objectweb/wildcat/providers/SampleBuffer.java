@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.providers;
+
+/**
+ * A reusable buffer of samples, which records the values reported by a
+ * {@link PrimitiveSampler} before they are applied to a {@link Resource} all at once.
+ * Once its arrays are large enough, it does not allocate anything.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+final class SampleBuffer implements PrimitiveSampler.Samples {
+    /**
+     * The kind of the samples which are not primitive values.
+     */
+    static final byte OBJECT = -1;
+
+    private String[] names = new String[8];
+
+    private byte[] kinds = new byte[8];
+
+    private long[] bits = new long[8];
+
+    private Object[] objects = new Object[8];
+
+    private int size;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.providers.PrimitiveSampler.Samples#put(java.lang.String,
+     *      long)
+     */
+    public void put(String name, long value) {
+        add(name, PrimitiveValue.LONG, value, null);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.providers.PrimitiveSampler.Samples#put(java.lang.String,
+     *      double)
+     */
+    public void put(String name, double value) {
+        add(name, PrimitiveValue.DOUBLE, PrimitiveValue.encode(value), null);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.providers.PrimitiveSampler.Samples#put(java.lang.String,
+     *      boolean)
+     */
+    public void put(String name, boolean value) {
+        add(name, PrimitiveValue.BOOLEAN, PrimitiveValue.encode(value), null);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.objectweb.wildcat.providers.PrimitiveSampler.Samples#put(java.lang.String,
+     *      java.lang.Object)
+     */
+    public void put(String name, Object value) {
+        add(name, OBJECT, 0, value);
+    }
+
+    int size() {
+        return size;
+    }
+
+    String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * Returns the kind of a sample: one of the kinds of {@link PrimitiveValue}, or
+     * {@link #OBJECT}.
+     */
+    byte getKind(int i) {
+        return kinds[i];
+    }
+
+    long getBits(int i) {
+        return bits[i];
+    }
+
+    Object getObject(int i) {
+        return objects[i];
+    }
+
+    /**
+     * Forgets all the samples, to reuse the buffer.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            names[i] = null;
+            objects[i] = null;
+        }
+        size = 0;
+    }
+
+    private void add(String name, byte kind, long value, Object object) {
+        if (size == names.length) {
+            int capacity = 2 * size;
+            String[] newNames = new String[capacity];
+            byte[] newKinds = new byte[capacity];
+            long[] newBits = new long[capacity];
+            Object[] newObjects = new Object[capacity];
+            System.arraycopy(names, 0, newNames, 0, size);
+            System.arraycopy(kinds, 0, newKinds, 0, size);
+            System.arraycopy(bits, 0, newBits, 0, size);
+            System.arraycopy(objects, 0, newObjects, 0, size);
+            names = newNames;
+            kinds = newKinds;
+            bits = newBits;
+            objects = newObjects;
+        }
+        names[size] = name;
+        kinds[size] = kind;
+        bits[size] = value;
+        objects[size] = object;
+        size++;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.providers;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+
+/**
+ * A group of modifications of the attributes of a {@link BasicContextProvider}, which
+ * are only recorded until the transaction is {@linkplain #commit() committed}, and then
+ * applied all at once.
+ * <p>
+ * The commit is atomic. All the modifications are checked before any of them is made,
+ * so that if one of them is invalid (for example because the attribute it changes has
+ * been deleted since it was recorded), none is applied. The resources concerned are
+ * locked until all the modifications are made, so that the concurrent modifications of
+ * these resources happen either before or after the whole transaction, and the
+ * modifications get the same version of the context, so that a
+ * {@linkplain org.objectweb.wildcat.ContextSnapshot snapshot} sees either all of them or
+ * none. All the resulting events are notified in a single batch: the synthetic
+ * attributes depending on several of the attributes changed are only recomputed once
+ * per commit, and {@linkplain org.objectweb.wildcat.BatchContextListener batch
+ * listeners} receive the events in a single call. The size of the batches and the time
+ * taken by the commits are reported by
+ * {@link BasicContextProvider#getTransactionStatistics()}.
+ * <p>
+ * A transaction is meant to be used by a single thread, and can only be committed once.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class Transaction {
+    /**
+     * The order in which the resources are locked: by path, so that an ancestor is
+     * always locked before its descendants, as when a sub-tree is deleted.
+     */
+    private static final Comparator<Resource> LOCK_ORDER = new Comparator<Resource>() {
+        public int compare(Resource r1, Resource r2) {
+            return r1.getPath().toString().compareTo(r2.getPath().toString());
+        }
+    };
+
+    private final BasicContextProvider provider;
+
+    /**
+     * The modifications recorded, by resource.
+     */
+    private final Map<Resource, Changes> changes = new LinkedHashMap<Resource, Changes>();
+
+    private boolean committed;
+
+    /**
+     * Creates a new, empty transaction. Use
+     * {@link BasicContextProvider#beginTransaction()}.
+     */
+    Transaction(BasicContextProvider provider) {
+        this.provider = provider;
+    }
+
+    /**
+     * Convenience shortcut for {@link #createAttribute(Path, Object)} using a string
+     * instead of a preparsed {@link Path}.
+     */
+    public void createAttribute(String attr, Object initialValue) {
+        createAttribute(Context.createPath(attr), initialValue);
+    }
+
+    /**
+     * Records the creation of an attribute. It must not exist when the transaction is
+     * committed.
+     * 
+     * @param attr
+     *            the location of the attribute to create, relative to the provider.
+     * @param initialValue
+     *            the initial value of the attribute.
+     * @throws IllegalArgumentException
+     *             if the resource of the attribute does not exist, or if the attribute
+     *             is already modified by this transaction.
+     */
+    public void createAttribute(Path attr, Object initialValue) {
+        Changes c = changesOf(attr);
+        String name = attr.getAttributePart();
+        if (c.created.contains(name) || c.updated.contains(name)) {
+            throw new IllegalArgumentException("Attribute " + attr + " already exists.");
+        }
+        c.created.add(name);
+        c.samples.put(name, initialValue);
+    }
+
+    /**
+     * Convenience shortcut for {@link #setValue(Path, Object)} using a string instead of
+     * a preparsed {@link Path}.
+     */
+    public void setValue(String attr, Object value) {
+        setValue(Context.createPath(attr), value);
+    }
+
+    /**
+     * Records the change of the value of an attribute. It must exist when the
+     * transaction is committed, unless it is created by the transaction.
+     * 
+     * @param attr
+     *            the attribute to change, relative to the provider.
+     * @param value
+     *            the new value to set.
+     * @throws IllegalArgumentException
+     *             if the resource of the attribute does not exist.
+     */
+    public void setValue(Path attr, Object value) {
+        changesToUpdate(attr).samples.put(attr.getAttributePart(), value);
+    }
+
+    /**
+     * Records the change of the value of an attribute to a <code>long</code>, which is
+     * stored unboxed.
+     * 
+     * @see #setValue(Path, Object)
+     * @see BasicContextProvider#setLongValue(Path, long)
+     */
+    public void setLongValue(Path attr, long value) {
+        changesToUpdate(attr).samples.put(attr.getAttributePart(), value);
+    }
+
+    /**
+     * Records the change of the value of an attribute to a <code>double</code>, which
+     * is stored unboxed.
+     * 
+     * @see #setValue(Path, Object)
+     */
+    public void setDoubleValue(Path attr, double value) {
+        changesToUpdate(attr).samples.put(attr.getAttributePart(), value);
+    }
+
+    /**
+     * Records the change of the value of an attribute to a <code>boolean</code>, which
+     * is stored unboxed.
+     * 
+     * @see #setValue(Path, Object)
+     */
+    public void setBooleanValue(Path attr, boolean value) {
+        changesToUpdate(attr).samples.put(attr.getAttributePart(), value);
+    }
+
+    /**
+     * Applies all the modifications recorded, in the order they were recorded, and
+     * notifies the resulting events in a single batch.
+     * 
+     * @throws IllegalArgumentException
+     *             if some modification can not be applied anymore. None of them is
+     *             applied then.
+     * @throws IllegalStateException
+     *             if the transaction has already been committed.
+     */
+    public void commit() {
+        if (committed) {
+            throw new IllegalStateException("Transaction already committed.");
+        }
+        committed = true;
+        long start = System.nanoTime();
+        Resource[] owners = changes.keySet().toArray(new Resource[changes.size()]);
+        Arrays.sort(owners, LOCK_ORDER);
+        int events = lockAndApply(owners, 0);
+        provider.transactionCommitted(events, System.nanoTime() - start);
+    }
+
+    /**
+     * Locks the resources from <code>index</code> on, then applies all the
+     * modifications.
+     * 
+     * @return the number of events notified.
+     */
+    private int lockAndApply(Resource[] owners, int index) {
+        if (index < owners.length) {
+            synchronized (owners[index]) {
+                return lockAndApply(owners, index + 1);
+            }
+        }
+        for (Map.Entry<Resource, Changes> entry : changes.entrySet()) {
+            entry.getValue().check(entry.getKey());
+        }
+        int events;
+        provider.beginCollecting();
+        Versions.Write write = provider.getVersions().beginWrite();
+        try {
+            for (Map.Entry<Resource, Changes> entry : changes.entrySet()) {
+                entry.getKey().setAttributesValues(entry.getValue().samples);
+            }
+        } finally {
+            write.end();
+            // Still holding the locks, so that the later events of these resources are
+            // notified after these ones.
+            events = provider.endCollecting();
+        }
+        return events;
+    }
+
+    /**
+     * Returns the changes of the resource of an attribute which must exist, unless it
+     * is created by this transaction.
+     */
+    private Changes changesToUpdate(Path attr) {
+        Changes result = changesOf(attr);
+        String name = attr.getAttributePart();
+        if (!result.created.contains(name)) {
+            result.updated.add(name);
+        }
+        return result;
+    }
+
+    private Changes changesOf(Path attr) {
+        if (committed) {
+            throw new IllegalStateException("Transaction already committed.");
+        }
+        Resource owner = provider.findAttributeOwner(attr);
+        Changes result = changes.get(owner);
+        if (result == null) {
+            result = new Changes();
+            changes.put(owner, result);
+        }
+        return result;
+    }
+
+    /**
+     * The modifications of the attributes of a resource.
+     */
+    private static final class Changes {
+        /**
+         * The new values, in the order they were recorded.
+         */
+        final SampleBuffer samples = new SampleBuffer();
+
+        /**
+         * The attributes which must not exist yet.
+         */
+        final Set<String> created = new HashSet<String>();
+
+        /**
+         * The attributes which must already exist.
+         */
+        final Set<String> updated = new HashSet<String>();
+
+        /**
+         * Checks that the changes can be applied to the resource, which must be locked.
+         */
+        void check(Resource owner) {
+            if (owner.isDisposed()) {
+                throw new IllegalArgumentException("Resource " + owner.getPath()
+                        + " has been deleted.");
+            } else if (!created.isEmpty() && owner.getPath().size() == 0) {
+                throw new IllegalArgumentException(
+                        "No attributes allowed on root resource.");
+            }
+            for (String name : created) {
+                if (owner.hasAttribute(name)) {
+                    throw new IllegalArgumentException("Attribute " + name
+                            + " already exists in " + owner.getPath() + ".");
+                }
+            }
+            for (String name : updated) {
+                if (!owner.hasAttribute(name)) {
+                    throw new IllegalArgumentException("No attribute named " + name
+                            + " in " + owner.getPath() + ".");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.providers;
+
+/**
+ * A snapshot of the metrics of the {@link Transaction}s committed on a provider, as
+ * returned by {@link BasicContextProvider#getTransactionStatistics()}. The <em>batch
+ * size</em> of a transaction is the number of events it has notified, and its
+ * <em>latency</em> the time taken to commit it, from the call to
+ * {@link Transaction#commit()} until its events have been handed to the provider's
+ * listener.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class TransactionStatistics {
+    private final long commitCount;
+
+    private final long eventCount;
+
+    private final int lastBatchSize;
+
+    private final int maxBatchSize;
+
+    private final long totalLatency;
+
+    private final long lastLatency;
+
+    private final long maxLatency;
+
+    /**
+     * Creates a new snapshot. The latencies are in microseconds.
+     */
+    TransactionStatistics(long commitCount, long eventCount, int lastBatchSize,
+            int maxBatchSize, long totalLatency, long lastLatency, long maxLatency) {
+        this.commitCount = commitCount;
+        this.eventCount = eventCount;
+        this.lastBatchSize = lastBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.totalLatency = totalLatency;
+        this.lastLatency = lastLatency;
+        this.maxLatency = maxLatency;
+    }
+
+    /**
+     * Returns the number of transactions committed so far.
+     */
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * Returns the total number of events notified by the transactions.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the number of events notified by the last transaction.
+     */
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    /**
+     * Returns the largest number of events notified by a transaction.
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Returns the average number of events notified by a transaction, or
+     * <code>0</code> if none has been committed.
+     */
+    public double getAverageBatchSize() {
+        return (commitCount == 0) ? 0 : (double) eventCount / commitCount;
+    }
+
+    /**
+     * Returns the time taken to commit the last transaction, in microseconds.
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Returns the longest time taken to commit a transaction, in microseconds.
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Returns the average time taken to commit a transaction, in microseconds, or
+     * <code>0</code> if none has been committed.
+     */
+    public double getAverageLatency() {
+        return (commitCount == 0) ? 0 : (double) totalLatency / commitCount;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "[commits=" + commitCount + ", batch=" + lastBatchSize + ", maxBatch="
+                + maxBatchSize + ", latency=" + lastLatency + "us, maxLatency="
+                + maxLatency + "us]";
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.providers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The clock giving versions to the modifications of a context, and the registry of the
+ * readers which need to see an old version of it.
+ * <p>
+ * The modifications are grouped by epochs: all the modifications made during an epoch
+ * get the same version. {@linkplain #open(Object) Opening} a reader ends the current
+ * epoch, and waits for the modifications started during it and the previous ones to
+ * complete: the reader then sees all of them, and none of the modifications of the
+ * following epochs. As long as a reader is open, the {@link Resource}s keep the states it
+ * can see, and share everything else with their current state; the old states are
+ * reclaimed once no reader needs them anymore. Nothing is kept when no reader is open.
+ * <p>
+ * Each context has its own clock, shared by all its providers so that a reader sees the
+ * same version of all of them. The readers and the modifications of different contexts
+ * never wait for each other.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public final class Versions {
+    /**
+     * A version greater than all the others, to read the current state of the context.
+     */
+    public static final long LATEST = Long.MAX_VALUE;
+
+    /**
+     * The epoch of the modifications starting now.
+     */
+    private volatile Epoch epoch = new Epoch(1, null);
+
+    /**
+     * The modification in progress in the current thread, if any.
+     */
+    private final ThreadLocal<Write> currentWrite = new ThreadLocal<Write>() {
+        @Override
+        protected Write initialValue() {
+            return new Write();
+        }
+    };
+
+    /**
+     * Serializes the ends of the epochs. Never held while waiting for the modifications.
+     */
+    private final Object clockLock = new Object();
+
+    /**
+     * The open readers. Used as the lock for {@link #versions}.
+     */
+    private final Set<Reader> readers = new HashSet<Reader>();
+
+    /**
+     * The number of open readers of each version.
+     */
+    private final SortedMap<Long, Integer> versions = new TreeMap<Long, Integer>();
+
+    /**
+     * The readers whose owner has been garbage-collected without closing them.
+     */
+    private final ReferenceQueue<Object> forgotten = new ReferenceQueue<Object>();
+
+    /**
+     * The oldest version being read, or {@link Long#MAX_VALUE} if no reader is open.
+     */
+    private volatile long oldest = Long.MAX_VALUE;
+
+    /**
+     * The newest version being read, or <code>-1</code> if no reader is open.
+     */
+    private volatile long newest = -1;
+
+    /**
+     * The resources which keep old states, to reclaim when the readers are closed.
+     */
+    private final Queue<Resource> histories = new ConcurrentLinkedQueue<Resource>();
+
+    /**
+     * Opens a reader on the current version of the context. The states of the resources
+     * it can see are kept until the reader is {@linkplain Reader#close() closed}, or its
+     * owner is garbage-collected.
+     * <p>
+     * This method waits for the modifications in progress to complete, so it must not
+     * be called by a thread holding a lock they need, nor during a modification (for
+     * example by a listener notified synchronously). The modifications themselves never
+     * wait for the listeners: their events are only notified once they are complete.
+     * If the current thread is interrupted while waiting, it keeps waiting and its
+     * interrupted status is set again before returning.
+     * 
+     * @param owner
+     *            the object using the reader, typically a snapshot of the context.
+     * @return the new reader.
+     * @throws IllegalStateException
+     *             if the current thread is modifying the context.
+     */
+    public Reader open(Object owner) {
+        if (currentWrite.get().depth > 0) {
+            throw new IllegalStateException(
+                    "Can not read a version of the context while modifying it.");
+        }
+        Reader reader;
+        Epoch ended;
+        synchronized (clockLock) {
+            ended = epoch;
+            // Registered before the epoch ends, so that the modifications of the next
+            // ones know they must keep the states this reader sees.
+            reader = new Reader(this, owner, ended.version);
+            synchronized (readers) {
+                readers.add(reader);
+                Integer count = versions.get(ended.version);
+                versions.put(ended.version, (count == null) ? 1 : count + 1);
+                updateBounds();
+            }
+            ended.ended = true;
+            epoch = new Epoch(ended.version + 1, ended);
+        }
+        // The previous epochs may have been ended by readers still waiting for them.
+        boolean interrupted = false;
+        for (Epoch e = ended; e != null; e = e.previous) {
+            interrupted |= e.awaitWriters();
+        }
+        ended.previous = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        reclaimForgotten();
+        return reader;
+    }
+
+    /**
+     * Unregisters a reader, and reclaims the states no other reader needs.
+     */
+    private void close(Reader reader) {
+        synchronized (readers) {
+            if (!readers.remove(reader)) {
+                return;
+            }
+            int count = versions.get(reader.version);
+            if (count == 1) {
+                versions.remove(reader.version);
+            } else {
+                versions.put(reader.version, count - 1);
+            }
+            updateBounds();
+        }
+        reclaim();
+    }
+
+    /**
+     * Closes the readers whose owner has been garbage-collected.
+     */
+    private void reclaimForgotten() {
+        Reference<?> ref;
+        while ((ref = forgotten.poll()) != null) {
+            close((Reader) ref);
+        }
+    }
+
+    /**
+     * Updates {@link #oldest} and {@link #newest} after a change of the readers. Must be
+     * called with the lock on {@link #readers}.
+     */
+    private void updateBounds() {
+        if (versions.isEmpty()) {
+            oldest = Long.MAX_VALUE;
+            newest = -1;
+        } else {
+            oldest = versions.firstKey();
+            newest = versions.lastKey();
+        }
+    }
+
+    /**
+     * Removes the old states which are not needed anymore from all the resources.
+     */
+    private void reclaim() {
+        for (Iterator<Resource> iter = histories.iterator(); iter.hasNext();) {
+            if (!iter.next().pruneHistory()) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Starts a modification, or joins the one in progress in the current thread: all
+     * the changes it makes until the matching call to {@link Write#end()} get the same
+     * version.
+     * 
+     * @return the modification in progress.
+     */
+    Write beginWrite() {
+        Write write = currentWrite.get();
+        if (write.depth++ == 0) {
+            while (true) {
+                Epoch current = epoch;
+                current.writers.incrementAndGet();
+                // The epoch may have ended before the modification was counted.
+                if (epoch == current) {
+                    write.epoch = current;
+                    write.version = current.version;
+                    break;
+                }
+                current.leave();
+            }
+        }
+        return write;
+    }
+
+    /**
+     * Tests whether an open reader can see a state of a resource, i.e. reads the version
+     * which gave it this state or a later one.
+     */
+    boolean isRead(long version) {
+        return version <= newest;
+    }
+
+    /**
+     * Returns the oldest version being read, or {@link Long#MAX_VALUE} if none is.
+     */
+    long getOldestRead() {
+        return oldest;
+    }
+
+    /**
+     * Registers a resource which has started keeping old states.
+     */
+    void keepsHistory(Resource resource) {
+        histories.add(resource);
+    }
+
+    /**
+     * The modifications made during an epoch.
+     */
+    private static final class Epoch {
+        /**
+         * The version of the modifications.
+         */
+        final long version;
+
+        /**
+         * The number of modifications in progress.
+         */
+        final AtomicInteger writers = new AtomicInteger();
+
+        /**
+         * Whether a reader has ended this epoch, and may wait for its modifications.
+         */
+        volatile boolean ended;
+
+        /**
+         * The previous epoch, until a reader has waited for its modifications and the
+         * ones before.
+         */
+        volatile Epoch previous;
+
+        Epoch(long version, Epoch previous) {
+            this.version = version;
+            this.previous = previous;
+        }
+
+        /**
+         * Ends a modification, and wakes up the readers waiting for it if it was the last
+         * one of this ended epoch.
+         */
+        void leave() {
+            if (writers.decrementAndGet() == 0 && ended) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits for the modifications of this ended epoch to complete.
+         * 
+         * @return <code>true</code> if the current thread was interrupted while waiting.
+         */
+        synchronized boolean awaitWriters() {
+            boolean interrupted = false;
+            while (writers.get() > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return interrupted;
+        }
+    }
+
+    /**
+     * The modification in progress in a thread.
+     */
+    static final class Write {
+        /**
+         * The number of nested modifications in progress.
+         */
+        private int depth;
+
+        /**
+         * The epoch of the modification in progress.
+         */
+        private Epoch epoch;
+
+        /**
+         * The version of the modification in progress.
+         */
+        long version;
+
+        /**
+         * Ends the modification started by the matching call to {@link #beginWrite()}.
+         */
+        void end() {
+            if (--depth == 0) {
+                Epoch e = epoch;
+                epoch = null;
+                e.leave();
+            }
+        }
+    }
+
+    /**
+     * A reader of a version of the context, open until it is closed or its owner is
+     * garbage-collected.
+     */
+    public static final class Reader extends WeakReference<Object> {
+        private final Versions clock;
+
+        private final long version;
+
+        private volatile boolean closed;
+
+        Reader(Versions clock, Object owner, long version) {
+            super(owner, clock.forgotten);
+            this.clock = clock;
+            this.version = version;
+        }
+
+        /**
+         * Returns the version of the context read. It includes all the modifications
+         * completed before the reader was opened.
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Tests whether this reader has been closed.
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Closes this reader. The old states it was the only one to need are reclaimed.
+         * Closing a reader several times has no effect.
+         */
+        public void close() {
+            closed = true;
+            clock.close(this);
+            clock.reclaimForgotten();
+        }
+    }
+}
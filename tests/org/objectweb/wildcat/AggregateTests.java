@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.wildcat.Context.createPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.providers.BasicContextProvider;
+
+/**
+ * Tests for the {@link MutableAggregate} class, and for the aggregates maintained by a
+ * {@link Context}.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class AggregateTests {
+    private static final Path LOADS = createPath("/cluster/*/cpu#load");
+
+    private Context ctx;
+
+    private BasicContextProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        ctx = new Context();
+        provider = new BasicContextProvider();
+        ctx.mount("/cluster", provider);
+    }
+
+    @Test
+    public void emptyAggregate() {
+        MutableAggregate agg = new MutableAggregate();
+        assertEquals(0, agg.getCount());
+        assertEquals(0.0, agg.getSum(), 0.0);
+        assertNull(agg.getAverage());
+        assertNull(agg.getMinimum());
+        assertNull(agg.getMaximum());
+        assertTrue(agg.containsOnlyNumbers());
+    }
+
+    @Test
+    public void extremaAfterRemovals() {
+        MutableAggregate agg = new MutableAggregate();
+        for (int i : new int[] { 3, 1, 4, 1, 5 }) {
+            agg.add(i);
+        }
+        assertEquals(1.0, agg.getMinimum(), 0.0);
+        assertEquals(5.0, agg.getMaximum(), 0.0);
+        agg.remove(1);
+        assertEquals(1.0, agg.getMinimum(), 0.0);
+        agg.remove(1);
+        agg.remove(5);
+        assertEquals(3.0, agg.getMinimum(), 0.0);
+        assertEquals(4.0, agg.getMaximum(), 0.0);
+        assertEquals(7.0, agg.getSum(), 0.0);
+        assertEquals(3.5, agg.getAverage(), 0.0);
+        assertEquals(2, agg.getCount());
+    }
+
+    @Test
+    public void otherValuesAreOnlyCounted() {
+        MutableAggregate agg = new MutableAggregate();
+        agg.add("foo");
+        agg.add(2);
+        assertEquals(2, agg.getCount());
+        assertFalse(agg.containsOnlyNumbers());
+        assertEquals(2.0, agg.getSum(), 0.0);
+        assertEquals(2.0, agg.getAverage(), 0.0);
+        agg.remove("foo");
+        assertTrue(agg.containsOnlyNumbers());
+    }
+
+    @Test
+    public void sumDoesNotDrift() {
+        MutableAggregate agg = new MutableAggregate();
+        agg.add(0.1);
+        for (int i = 0; i < 1000; i++) {
+            agg.add(1e16 + i);
+            agg.add(0.7);
+            agg.remove(1e16 + i);
+            agg.remove(0.7);
+        }
+        assertEquals(0.1, agg.getSum(), 0.0);
+    }
+
+    @Test
+    public void precisionIsRecovered() {
+        MutableAggregate agg = new MutableAggregate();
+        agg.add(1e300);
+        int precision = agg.getPrecision();
+        agg.add(Double.MIN_VALUE);
+        assertTrue(agg.getPrecision() > 2000);
+        agg.remove(Double.MIN_VALUE);
+        assertEquals(precision, agg.getPrecision());
+        assertEquals(1e300, agg.getSum(), 0.0);
+        agg.remove(1e300);
+        agg.add(0.5);
+        assertEquals(1, agg.getPrecision());
+    }
+
+    @Test
+    public void createdAggregatesIgnoreNulls() {
+        Aggregate agg = Context.createAggregate(Arrays.asList(1, null, 2.5));
+        assertEquals(2, agg.getCount());
+        assertEquals(3.5, agg.getSum(), 0.0);
+    }
+
+    @Test
+    public void aggregatesFollowTheContext() throws Exception {
+        createLoads(0, 5);
+        Aggregate agg = ctx.aggregate(LOADS);
+        assertEquals(5, agg.getCount());
+        assertEquals(10.0, agg.getSum(), 0.0);
+        provider.setValue("n4/cpu#load", 0.5);
+        assertEquals(3.0, agg.getMaximum(), 0.0);
+        provider.delete("n0/cpu#load");
+        assertEquals(0.5, agg.getMinimum(), 0.0);
+        assertEquals(4, agg.getCount());
+        provider.delete("n1");
+        assertEquals(3, agg.getCount());
+        assertEquals(5.5, agg.getSum(), 0.0);
+        createLoads(5, 7);
+        assertEquals(5, agg.getCount());
+        assertEquals(6.0, agg.getMaximum(), 0.0);
+        ctx.unmount("/cluster");
+        assertEquals(0, agg.getCount());
+        assertNull(agg.getMaximum());
+    }
+
+    @Test
+    public void sameAsLookups() throws Exception {
+        Aggregate agg = ctx.aggregate(LOADS);
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            String node = "n" + random.nextInt(20);
+            Path res = createPath(node + "/cpu");
+            Path attr = createPath(node + "/cpu#load");
+            boolean exists = !provider.lookup(res).isEmpty();
+            switch (random.nextInt(4)) {
+            case 0:
+                if (exists) {
+                    provider.delete(node);
+                }
+                break;
+            case 1:
+                if (!exists) {
+                    provider.createResource(res);
+                    provider.createAttribute(attr, random.nextInt(100));
+                }
+                break;
+            default:
+                if (exists) {
+                    provider.setValue(attr, random.nextDouble());
+                }
+            }
+            Aggregate expected = lookupAggregate(LOADS);
+            assertEquals(expected.getCount(), agg.getCount());
+            assertEquals(expected.getSum(), agg.getSum(), 0.0);
+            assertEquals(expected.getMinimum(), agg.getMinimum());
+            assertEquals(expected.getMaximum(), agg.getMaximum());
+        }
+    }
+
+    @Test
+    public void aggregatesAreShared() {
+        Aggregate agg = ctx.aggregate(LOADS);
+        assertSame(agg, ctx.aggregate(createPath("/cluster/*/cpu#load")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void resourcesCanNotBeAggregated() {
+        ctx.aggregate(createPath("/cluster/*"));
+    }
+
+    private void createLoads(int from, int to) {
+        for (int i = from; i < to; i++) {
+            provider.createResource(createPath("n" + i + "/cpu"));
+            provider.createAttribute("n" + i + "/cpu#load", (double) i);
+        }
+    }
+
+    private Aggregate lookupAggregate(Path pattern) {
+        List<Object> values = new ArrayList<Object>();
+        for (Path path : ctx.lookup(pattern)) {
+            values.add(ctx.lookupAttribute(path));
+        }
+        return Context.createAggregate(values);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.wildcat.Context.createPath;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.expressions.CompilingInterpreter;
+import org.objectweb.wildcat.providers.BasicContextProvider;
+
+public class ContextSnapshotTests {
+    private Context ctx;
+
+    private BasicContextProvider provider;
+
+    @Before
+    public void setUp() throws InvalidMountPointException {
+        ctx = new Context();
+        provider = new BasicContextProvider();
+        ctx.mount("/hosts", provider);
+        provider.createResource("a");
+        provider.createAttribute("a#load", 1);
+        provider.createResource("b");
+        provider.createAttribute("b#load", 2);
+    }
+
+    @Test
+    public void laterChangesAreNotSeen() {
+        ContextSnapshot snapshot = ctx.snapshot();
+        provider.setValue("a#load", 10);
+        provider.setLongValue(createPath("b#load"), 20);
+        provider.createAttribute("a#mem", 512);
+        provider.createResource("c");
+        assertEquals(1, snapshot.lookupAttribute("/hosts/a#load"));
+        assertEquals(2, snapshot.lookupAttribute("/hosts/b#load"));
+        assertNull(snapshot.lookupAttribute("/hosts/a#mem"));
+        assertEquals(paths("/hosts/a", "/hosts/b"), new HashSet<Path>(snapshot
+                .lookup("/hosts/*")));
+        assertEquals(paths("/hosts/a#load"), new HashSet<Path>(snapshot
+                .lookup("/hosts/a#*")));
+        // The context itself is up to date.
+        assertEquals(10, ctx.lookupAttribute("/hosts/a#load"));
+        assertEquals(20L, ctx.lookupAttribute("/hosts/b#load"));
+        snapshot.close();
+    }
+
+    @Test
+    public void deletedResourcesAreStillSeen() {
+        ContextSnapshot snapshot = ctx.snapshot();
+        provider.delete("a");
+        provider.delete("b#load");
+        assertEquals(1, snapshot.lookupAttribute("/hosts/a#load"));
+        assertEquals(2, snapshot.lookupAttribute("/hosts/b#load"));
+        assertEquals(paths("/hosts/a#load", "/hosts/b#load"), new HashSet<Path>(snapshot
+                .lookup("/hosts/**#load")));
+        assertTrue(ctx.lookup("/hosts/**#load").isEmpty());
+        snapshot.close();
+    }
+
+    @Test
+    public void successiveSnapshots() {
+        ContextSnapshot first = ctx.snapshot();
+        provider.setValue("a#load", 10);
+        ContextSnapshot second = ctx.snapshot();
+        provider.setValue("a#load", 100);
+        assertTrue(first.getVersion() < second.getVersion());
+        assertEquals(1, first.lookupAttribute("/hosts/a#load"));
+        assertEquals(10, second.lookupAttribute("/hosts/a#load"));
+        first.close();
+        assertEquals(10, second.lookupAttribute("/hosts/a#load"));
+        second.close();
+        assertEquals(100, ctx.lookupAttribute("/hosts/a#load"));
+    }
+
+    @Test
+    public void expressionsAreEvaluatedInTheSnapshot() throws Exception {
+        ContextSnapshot snapshot = ctx.snapshot();
+        provider.setValue("a#load", 10);
+        provider.createResource("c");
+        provider.createAttribute("c#load", 30);
+        assertEquals(3.0, snapshot.evaluate("/hosts/a#load + /hosts/b#load"));
+        assertEquals(3.0, snapshot.evaluate("sum(/hosts/*#load)"));
+        assertEquals(2.0, snapshot.evaluate("count(/hosts/*#load)"));
+        snapshot.close();
+    }
+
+    @Test
+    public void compiledExpressionsAreEvaluatedInTheSnapshot() throws Exception {
+        Context compiled = new Context(null, new CompilingInterpreter());
+        BasicContextProvider hosts = new BasicContextProvider();
+        compiled.mount("/hosts", hosts);
+        hosts.createResource("a");
+        hosts.createAttribute("a#load", 1);
+        ContextSnapshot snapshot = compiled.snapshot();
+        hosts.setValue("a#load", 10);
+        assertEquals(2.0, snapshot.evaluate("/hosts/a#load * 2"));
+        assertEquals(1.0, snapshot.evaluate("max(/hosts/*#load)"));
+        snapshot.close();
+    }
+
+    @Test(timeout = 10000)
+    public void snapshotFromListenerDuringDeletion() throws Exception {
+        // More events than the buffers can hold, so that the deletion has to wait for
+        // the listener.
+        provider.createResource("c");
+        for (int i = 0; i < 200; i++) {
+            provider.createAttribute("c#a" + i, i);
+        }
+        final AtomicInteger removed = new AtomicInteger();
+        final AtomicInteger stillSeen = new AtomicInteger();
+        ctx.register(EventKind.ATTRIBUTE_REMOVED, createPath("/hosts/c#*"),
+                new ContextListenerAdapter() {
+                    @Override
+                    public void attributeRemoved(Path attr, long timeStamp) {
+                        ContextSnapshot snapshot = ctx.snapshot();
+                        if (snapshot.lookupAttribute(attr) != null) {
+                            stillSeen.incrementAndGet();
+                        }
+                        snapshot.close();
+                        removed.incrementAndGet();
+                    }
+                });
+        provider.delete("c");
+        while (removed.get() < 200) {
+            Thread.sleep(10);
+        }
+        // The events are only notified once the whole sub-tree has been deleted.
+        assertEquals(0, stillSeen.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedSnapshot() {
+        ContextSnapshot snapshot = ctx.snapshot();
+        snapshot.close();
+        snapshot.close();
+        snapshot.lookupAttribute("/hosts/a#load");
+    }
+
+    private static Collection<Path> paths(String... paths) {
+        Collection<Path> result = new HashSet<Path>();
+        for (String path : Arrays.asList(paths)) {
+            result.add(createPath(path));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Runs all the {@link PathTests} against {@link InternedPath}, plus some tests specific
+ * to its canonical representation.
+ */
+public class InternedPathTests extends PathTests {
+    @Override
+    protected Path pathFromString(String path) {
+        return InternedPath.parse(path);
+    }
+
+    @Test
+    public void samePathsAreIdentical() throws MalformedPathException {
+        String[] paths = { "/", "/foo", "/foo/bar#baz", "foo/*#bar", "**/foo", "#foo" };
+        for (String path : paths) {
+            assertSame(pathFromString(path), pathFromString(path));
+        }
+    }
+
+    @Test
+    public void derivedPathsAreIdentical() throws MalformedPathException {
+        Path base = pathFromString("/foo/bar");
+        assertSame(pathFromString("/foo/bar/baz"), base.appendResource("baz"));
+        assertSame(pathFromString("/foo/bar#baz"), base.appendAttribute("baz"));
+        assertSame(pathFromString("/foo/bar/baz#qux"), base.append("baz#qux"));
+        assertSame(base, pathFromString("/foo/bar#baz").getParent());
+        assertSame(pathFromString("/foo"), base.getParent());
+        assertSame(pathFromString("foo/bar"), base.subPath(1));
+        assertSame(pathFromString("/foo"), base.subPath(0, 2));
+    }
+
+    @Test
+    public void compatibleWithSimplePath() throws MalformedPathException {
+        String[] paths = { "/", "/foo", "/foo/bar", "/foo/bar#baz", "foo", "foo/bar",
+                "#foo", "foo/*#bar", "/**/foo", "/foo#*" };
+        for (String path : paths) {
+            Path interned = pathFromString(path);
+            Path simple = new SimplePath(path);
+            assertEquals(simple, interned);
+            assertEquals(interned, simple);
+            assertEquals(simple.hashCode(), interned.hashCode());
+            assertEquals(simple.getResourcesPart(), interned.getResourcesPart());
+            assertEquals(simple.size(), interned.size());
+        }
+    }
+
+    @Test
+    public void startsWith() throws MalformedPathException {
+        Path path = pathFromString("/foo/bar#baz");
+        assertTrue(path.startsWith(pathFromString("/")));
+        assertTrue(path.startsWith(pathFromString("/foo")));
+        assertTrue(path.startsWith(pathFromString("/foo/bar")));
+        assertTrue(path.startsWith(pathFromString("/foo/bar#baz")));
+        assertTrue(path.startsWith(new SimplePath("/foo")));
+        assertFalse(path.startsWith(pathFromString("foo")));
+        assertFalse(path.startsWith(pathFromString("/foo/baz")));
+        assertFalse(path.startsWith(pathFromString("/foo/bar#qux")));
+        assertFalse(pathFromString("/foo").startsWith(path));
+    }
+
+    @Test
+    public void endsWith() throws MalformedPathException {
+        Path path = pathFromString("/foo/bar#baz");
+        assertTrue(path.endsWith(pathFromString("bar#baz")));
+        assertTrue(path.endsWith(pathFromString("#baz")));
+        assertTrue(path.endsWith(pathFromString("/foo/bar#baz")));
+        assertFalse(path.endsWith(pathFromString("foo#baz")));
+        assertFalse(path.endsWith(pathFromString("/bar#baz")));
+        assertFalse(path.endsWith(pathFromString("bar")));
+    }
+
+    @Test
+    public void invalidSteps() {
+        String[] paths = { "", "//", "/foo//bar", "/foo##bar", "/foo/#bar", "/fo*o",
+                "/***", "/foo#", "/foo#b*r", "/#bar" };
+        for (String path : paths) {
+            try {
+                pathFromString(path);
+                fail("Invalid path \"" + path + "\" should not be accepted.");
+            } catch (MalformedPathException e) {
+                // Expected
+            }
+        }
+    }
+}
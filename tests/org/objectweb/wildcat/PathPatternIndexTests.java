@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.wildcat.Context.createPath;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PathPatternIndexTests {
+    private static final String[] PATTERNS = { "/", "/foo", "/foo/bar", "/foo/bar#baz",
+            "/*", "/foo/*", "/foo/*#baz", "/foo/bar#*", "/**", "/**#*", "/foo/**/qux",
+            "/**/bar#baz", "/**/**", "/*/**/*#*", "foo/bar", "foo/*#baz" };
+
+    private static final String[] PATHS = { "/", "/foo", "/bar", "/foo/bar",
+            "/foo/bar#baz", "/foo/bar#qux", "/foo/qux", "/foo/bar/qux", "/foo/a/b/qux",
+            "/a/b/bar#baz", "/foo#baz", "foo/bar", "foo/bar#baz", "foo/qux#baz" };
+
+    private PathPatternIndex<String> index;
+
+    @Before
+    public void setUp() {
+        index = new PathPatternIndex<String>();
+        for (String pattern : PATTERNS) {
+            index.add(createPath(pattern), pattern);
+        }
+    }
+
+    @Test
+    public void sameResultsAsPatterns() {
+        for (String path : PATHS) {
+            Set<String> expected = new HashSet<String>();
+            for (String pattern : PATTERNS) {
+                if (PathPattern.compile(pattern).matches(createPath(path))) {
+                    expected.add(pattern);
+                }
+            }
+            List<String> found = index.getMatches(createPath(path));
+            assertEquals(path, expected, new HashSet<String>(found));
+            assertEquals(path + " (duplicates)", expected.size(), found.size());
+        }
+    }
+
+    @Test
+    public void removal() {
+        assertTrue(index.remove(createPath("/foo/bar#baz"), "/foo/bar#baz"));
+        assertFalse(index.remove(createPath("/foo/bar#baz"), "/foo/bar#baz"));
+        assertTrue(index.remove(createPath("/**#*"), "/**#*"));
+        assertFalse(index.remove(createPath("/a/b/c"), "/a/b/c"));
+        List<String> found = index.getMatches(createPath("/foo/bar#baz"));
+        assertEquals(new HashSet<String>(Arrays.asList("/foo/*#baz", "/foo/bar#*",
+                "/**/bar#baz", "/*/**/*#*")), new HashSet<String>(found));
+    }
+
+    @Test
+    public void severalValuesPerPattern() {
+        index.add(createPath("/foo/bar#baz"), "other");
+        List<String> found = new ArrayList<String>();
+        index.collectMatches(createPath("/foo/bar#baz"), found);
+        assertTrue(found.contains("other"));
+        assertTrue(found.contains("/foo/bar#baz"));
+        index.remove(createPath("/foo/bar#baz"), "/foo/bar#baz");
+        found = index.getMatches(createPath("/foo/bar#baz"));
+        assertTrue(found.contains("other"));
+        assertFalse(found.contains("/foo/bar#baz"));
+    }
+
+    @Test
+    public void matchesBelow() {
+        for (String path : PATHS) {
+            Path resource = createPath(path);
+            if (resource.isAttribute()) {
+                continue;
+            }
+            Set<String> expected = new HashSet<String>();
+            for (String pattern : PATTERNS) {
+                PathPattern compiled = PathPattern.compile(pattern);
+                if (compiled.matches(resource) || compiled.matchesBelow(resource)) {
+                    expected.add(pattern);
+                }
+            }
+            List<String> found = index.getMatchesBelow(resource);
+            assertEquals(path, expected, new HashSet<String>(found));
+            assertEquals(path + " (duplicates)", expected.size(), found.size());
+        }
+    }
+}
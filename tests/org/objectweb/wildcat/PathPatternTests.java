@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.objectweb.wildcat.Context.createPath;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class PathPatternTests {
+    private void assertMatches(boolean expected, String pattern, String path) {
+        PathPattern compiled = PathPattern.compile(pattern);
+        assertEquals(pattern + " vs " + path, expected, compiled.matches(createPath(path)));
+        assertEquals(pattern + " vs " + path, expected, compiled.matches(new SimplePath(
+                path)));
+        assertEquals(pattern + " vs " + path, expected, createPath(path).matches(
+                createPath(pattern)));
+    }
+
+    @Test
+    public void definitePatterns() {
+        assertMatches(true, "/", "/");
+        assertMatches(true, "/foo/bar", "/foo/bar");
+        assertMatches(true, "/foo/bar#baz", "/foo/bar#baz");
+        assertMatches(true, "foo#bar", "foo#bar");
+        assertMatches(false, "/foo/bar", "/foo");
+        assertMatches(false, "/foo", "/foo/bar");
+        assertMatches(false, "/foo/bar", "/foo/bar#baz");
+        assertMatches(false, "/foo/bar#baz", "/foo/bar");
+        assertMatches(false, "/foo/bar#baz", "/foo/bar#qux");
+        assertMatches(false, "/foo", "foo");
+        assertMatches(false, "/f.o", "/foo");
+    }
+
+    @Test
+    public void singleStepPatterns() {
+        assertMatches(true, "/*", "/foo");
+        assertMatches(false, "/*", "/");
+        assertMatches(false, "/*", "/foo/bar");
+        assertMatches(true, "/foo/*/baz", "/foo/bar/baz");
+        assertMatches(false, "/foo/*/baz", "/foo/baz");
+        assertMatches(true, "/foo#*", "/foo#bar");
+        assertMatches(false, "/foo#*", "/foo");
+        assertMatches(true, "/*/*#*", "/foo/bar#baz");
+    }
+
+    @Test
+    public void multipleStepsPatterns() {
+        assertMatches(true, "/**", "/");
+        assertMatches(true, "/**", "/foo/bar/baz");
+        assertMatches(false, "/**", "/foo#bar");
+        assertMatches(true, "/**#*", "/foo/bar#baz");
+        assertMatches(true, "/**#*", "/foo#baz");
+        assertMatches(true, "/foo/**/baz", "/foo/baz");
+        assertMatches(true, "/foo/**/baz", "/foo/bar/baz");
+        assertMatches(true, "/foo/**/baz", "/foo/a/b/c/baz");
+        assertMatches(false, "/foo/**/baz", "/foo/a/b/c/qux");
+        assertMatches(true, "/**/baz/*", "/foo/baz/baz/qux");
+        assertMatches(false, "/**/baz/*", "/foo/baz");
+        assertMatches(true, "/**/*/**#load", "/hosts/h1/cpu#load");
+    }
+
+    @Test
+    public void parentSteps() {
+        assertMatches(true, "/foo/bar/..", "/foo");
+        assertMatches(true, "/foo/bar/../baz#qux", "/foo/baz#qux");
+        assertMatches(true, "/foo/*/..", "/foo");
+        assertMatches(true, "/foo/**/..", "/foo/bar");
+        assertMatches(false, "/foo/bar/..", "/foo/bar");
+    }
+
+    @Test(expected = MalformedPathException.class)
+    public void parentOfRoot() {
+        PathPattern.compile("/foo/../..");
+    }
+
+    @Test
+    public void matchesBelow() {
+        PathPattern pattern = PathPattern.compile("/foo/*/baz#qux");
+        assertEquals(true, pattern.matchesBelow(createPath("/")));
+        assertEquals(true, pattern.matchesBelow(createPath("/foo")));
+        assertEquals(true, pattern.matchesBelow(createPath("/foo/bar")));
+        assertEquals(true, pattern.matchesBelow(createPath("/foo/bar/baz")));
+        assertEquals(false, pattern.matchesBelow(createPath("/bar")));
+        assertEquals(false, pattern.matchesBelow(createPath("/foo/bar/qux")));
+        assertEquals(false, pattern.matchesBelow(createPath("/foo/bar/baz/qux")));
+        pattern = PathPattern.compile("/foo/bar");
+        assertEquals(true, pattern.matchesBelow(createPath("/foo")));
+        assertEquals(false, pattern.matchesBelow(createPath("/foo/bar")));
+        pattern = PathPattern.compile("/**/bar");
+        assertEquals(true, pattern.matchesBelow(createPath("/foo/bar/baz")));
+    }
+
+    @Test
+    public void remaindersBelow() {
+        PathPattern pattern = PathPattern.compile("/foo/*/baz#qux");
+        assertEquals(Arrays.asList(createPath("*/baz#qux")), pattern
+                .getRemaindersBelow(createPath("/foo")));
+        assertEquals(Arrays.asList(createPath("#qux")), pattern
+                .getRemaindersBelow(createPath("/foo/bar/baz")));
+        assertEquals(Collections.emptyList(), pattern
+                .getRemaindersBelow(createPath("/bar")));
+        pattern = PathPattern.compile("/**/bar#*");
+        assertEquals(new HashSet<Path>(Arrays.asList(createPath("**/bar#*"),
+                createPath("#*"))), new HashSet<Path>(pattern
+                .getRemaindersBelow(createPath("/foo/bar"))));
+        pattern = PathPattern.compile("/foo/**");
+        assertEquals(Arrays.asList(createPath("**")), pattern
+                .getRemaindersBelow(createPath("/foo")));
+        assertEquals(Collections.emptyList(), pattern
+                .getRemaindersBelow(createPath("/bar")));
+    }
+
+    @Test
+    public void compiledFormIsCached() {
+        Path path = createPath("/foo/*#bar");
+        assertSame(PathPattern.compile(path), PathPattern.compile(path));
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.wildcat.Context.createPath;
+import static org.objectweb.wildcat.TestUtils.added;
+import static org.objectweb.wildcat.TestUtils.changed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.objectweb.wildcat.events.PathChangedEvent;
+import org.objectweb.wildcat.events.PathEvent;
+
+public class SubscriptionManagerTests {
+    private static final int EVENTS = 200;
+
+    private ExecutorService executor;
+
+    private Thread dispatcher;
+
+    private SubscriptionManager start(ExecutorService executor) {
+        this.executor = executor;
+        SubscriptionManager manager = new SubscriptionManager(executor);
+        dispatcher = new Thread(manager);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        return manager;
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.interrupt();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sequentialDelivery() throws InterruptedException {
+        SubscriptionManager manager = start(null);
+        Recorder recorder = new Recorder(EVENTS);
+        Object cookie = manager.register(EnumSet.of(EventKind.ATTRIBUTE_CHANGED),
+                createPath("/foo#*"), recorder);
+        postEvents(manager);
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        recorder.assertInOrder();
+        assertEquals((long) EVENTS, manager.getStatistics(cookie).getDeliveredCount());
+        assertEquals(0, manager.getStatistics(cookie).getQueueDepth());
+    }
+
+    @Test
+    public void slowListenerDoesNotBlockOthers() throws InterruptedException {
+        SubscriptionManager manager = start(Executors.newFixedThreadPool(4));
+        final CountDownLatch release = new CountDownLatch(1);
+        Recorder slow = new Recorder(EVENTS) {
+            @Override
+            public void attributeChanged(Path attr, Object oldValue, Object newValue,
+                    long timeStamp) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                super.attributeChanged(attr, oldValue, newValue, timeStamp);
+            }
+        };
+        Recorder fast1 = new Recorder(EVENTS);
+        Recorder fast2 = new Recorder(EVENTS);
+        EnumSet<EventKind> kinds = EnumSet.of(EventKind.ATTRIBUTE_CHANGED);
+        Object slowCookie = manager.register(kinds, createPath("/foo#*"), slow);
+        manager.register(kinds, createPath("/foo#bar"), fast1);
+        manager.register(kinds, createPath("/**#*"), fast2);
+        postEvents(manager);
+        assertTrue(fast1.done.await(5, TimeUnit.SECONDS));
+        assertTrue(fast2.done.await(5, TimeUnit.SECONDS));
+        fast1.assertInOrder();
+        fast2.assertInOrder();
+        // The slow listener is blocked on its first event; the others are queued.
+        assertEquals(EVENTS - 1, manager.getStatistics(slowCookie).getQueueDepth());
+        release.countDown();
+        assertTrue(slow.done.await(5, TimeUnit.SECONDS));
+        slow.assertInOrder();
+        DeliveryStatistics stats = manager.getStatistics(slowCookie);
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals((long) EVENTS, stats.getDeliveredCount());
+        assertTrue(stats.getMaxLag() >= stats.getLastLag());
+    }
+
+    @Test
+    public void failingListenerKeepsReceivingEvents() throws InterruptedException {
+        SubscriptionManager manager = start(Executors.newFixedThreadPool(2));
+        Recorder failing = new Recorder(EVENTS) {
+            @Override
+            public void attributeChanged(Path attr, Object oldValue, Object newValue,
+                    long timeStamp) {
+                super.attributeChanged(attr, oldValue, newValue, timeStamp);
+                throw new RuntimeException("Expected failure.");
+            }
+        };
+        manager.register(EnumSet.of(EventKind.ATTRIBUTE_CHANGED), createPath("/foo#bar"),
+                failing);
+        Thread.UncaughtExceptionHandler handler = Thread
+                .getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            public void uncaughtException(Thread t, Throwable e) {
+            }
+        });
+        try {
+            postEvents(manager);
+            assertTrue(failing.done.await(5, TimeUnit.SECONDS));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+        failing.assertInOrder();
+    }
+
+    @Test
+    public void batchDelivery() throws InterruptedException {
+        SubscriptionManager manager = start(null);
+        final List<List<PathEvent>> batches = new ArrayList<List<PathEvent>>();
+        final CountDownLatch done = new CountDownLatch(1);
+        BatchContextListener listener = new BatchRecorder() {
+            public void eventsOccured(Object cookie, List<PathEvent> events) {
+                batches.add(events);
+                done.countDown();
+            }
+        };
+        manager.register(EnumSet.of(EventKind.ATTRIBUTE_CHANGED), createPath("/foo#*"),
+                listener);
+        List<PathEvent> batch = new ArrayList<PathEvent>();
+        batch.add(changed("/foo#a", 1, 2));
+        batch.add(changed("/foo#b", 1, 2));
+        batch.add(added("/foo#c"));
+        batch.add(changed("/foo#a", 2, 3));
+        batch.add(changed("/bar#a", 1, 2));
+        manager.eventOccured(batch);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, batches.size());
+        List<PathEvent> received = batches.get(0);
+        assertEquals(2, received.size());
+        PathChangedEvent first = (PathChangedEvent) received.get(0);
+        assertEquals(createPath("/foo#a"), first.getPath());
+        assertEquals(1, first.getOldValue());
+        assertEquals(3, first.getNewValue());
+        assertEquals(createPath("/foo#b"), received.get(1).getPath());
+    }
+
+    @Test
+    public void largeBatchIsDeliveredAtOnce() throws InterruptedException {
+        SubscriptionManager manager = start(null);
+        final List<List<PathEvent>> batches = new ArrayList<List<PathEvent>>();
+        final CountDownLatch done = new CountDownLatch(1);
+        manager.register(EnumSet.of(EventKind.ATTRIBUTE_CHANGED), createPath("/foo#*"),
+                new BatchRecorder() {
+                    public void eventsOccured(Object cookie, List<PathEvent> events) {
+                        batches.add(events);
+                        done.countDown();
+                    }
+                });
+        List<PathEvent> batch = new ArrayList<PathEvent>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(changed("/foo#a" + i, i, i + 1));
+        }
+        assertTrue(batch.size() > manager.getBuffer().getCapacity());
+        manager.eventOccured(batch);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, batches.size());
+        assertEquals(batch, batches.get(0));
+    }
+
+    @Test
+    public void plainListenersReceiveEveryChange() throws InterruptedException {
+        SubscriptionManager manager = start(null);
+        Recorder recorder = new Recorder(EVENTS);
+        manager.register(EnumSet.of(EventKind.ATTRIBUTE_CHANGED), createPath("/foo#bar"),
+                recorder);
+        List<PathEvent> batch = new ArrayList<PathEvent>();
+        for (int i = 0; i < EVENTS; i++) {
+            batch.add(changed("/foo#bar", i, i + 1));
+        }
+        manager.eventOccured(batch);
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        recorder.assertInOrder();
+    }
+
+    @Test
+    public void conditionsAreNotCoalesced() throws InterruptedException {
+        SubscriptionManager manager = start(null);
+        final CountDownLatch done = new CountDownLatch(2);
+        manager.register(EnumSet.of(EventKind.CONDITION_OCCURED), createPath("/foo#a"),
+                new ContextListenerAdapter() {
+                    @Override
+                    public void conditionOccured(Object cookie, long timeStamp) {
+                        done.countDown();
+                    }
+                });
+        List<PathEvent> batch = new ArrayList<PathEvent>();
+        batch.add(changed("/foo#a", false, true));
+        batch.add(changed("/foo#a", true, false));
+        batch.add(changed("/foo#a", false, true));
+        manager.eventOccured(batch);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void statisticsOfUnknownSubscription() {
+        start(null).getStatistics(new Object());
+    }
+
+    private void postEvents(SubscriptionManager manager) {
+        for (int i = 0; i < EVENTS; i++) {
+            manager.eventOccured(changed("/foo#bar", i, i + 1));
+        }
+    }
+
+    private abstract static class BatchRecorder extends ContextListenerAdapter implements
+            BatchContextListener {
+    }
+
+    private static class Recorder extends ContextListenerAdapter {
+        private final List<Object> values = Collections
+                .synchronizedList(new ArrayList<Object>());
+
+        private final CountDownLatch done;
+
+        public Recorder(int expected) {
+            this.done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void attributeChanged(Path attr, Object oldValue, Object newValue,
+                long timeStamp) {
+            values.add(newValue);
+            done.countDown();
+        }
+
+        public void assertInOrder() {
+            assertEquals(EVENTS, values.size());
+            for (int i = 0; i < EVENTS; i++) {
+                assertEquals(i + 1, values.get(i));
+            }
+        }
+    }
+}
@@ -20,6 +20,10 @@
 package org.objectweb.wildcat.dependencies;
 
 import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.objectweb.wildcat.dependencies.DependencyGraph;
@@ -31,11 +35,15 @@ import org.objectweb.wildcat.dependencies.DependencyGraphImpl;
  *
  */
 public class DependencyGraphTests {
-    private DependencyGraph<String> graph;
+    protected DependencyGraph<String> graph;
+    
+    protected DependencyGraph<String> createGraph() {
+        return new DependencyGraphImpl<String>();
+    }
     
     @Before
     public void setUp() {
-        graph = new DependencyGraphImpl<String>();
+        graph = createGraph();
     }
     
     @Test
@@ -75,4 +83,59 @@ public class DependencyGraphTests {
         }
         graph.addDependency("x1", "x7");
     }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void addSelfDependency() {
+        graph.addDependency("foo", "foo");
+    }
+
+    @Test
+    public void removeDependency() {
+        graph.addDependency("foo", "bar");
+        graph.removeDependency("foo", "bar");
+        assertTrue(graph.getAllDependingOn("bar").isEmpty());
+        // The reverse dependency is now allowed.
+        graph.addDependency("bar", "foo");
+        assertTrue(graph.getAllDependingOn("foo").contains("bar"));
+    }
+
+    @Test
+    public void addDependencies() {
+        graph.addDependencies("foo", Arrays.asList("bar", "baz"));
+        assertTrue(graph.getAllDependingOn("bar").contains("foo"));
+        assertTrue(graph.getAllDependingOn("baz").contains("foo"));
+    }
+
+    @Test
+    public void addDependenciesIsAtomic() {
+        graph.addDependency("qux", "foo");
+        try {
+            graph.addDependencies("foo", Arrays.asList("bar", "qux", "baz"));
+            fail("Cycle not detected.");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertTrue(graph.getAllDependingOn("bar").isEmpty());
+        assertTrue(graph.getAllDependingOn("baz").isEmpty());
+        assertFalse(graph.getAllDependingOn("qux").contains("foo"));
+    }
+
+    @Test
+    public void dependantsAreSnapshots() {
+        graph.addDependency("foo", "bar");
+        Collection<String> dependants = graph.getAllDependingOn("bar");
+        assertSame(dependants, graph.getAllDependingOn("bar"));
+        graph.addDependency("baz", "bar");
+        graph.removeDependency("foo", "bar");
+        assertEquals(1, dependants.size());
+        assertTrue(dependants.contains("foo"));
+        assertEquals(1, graph.getAllDependingOn("bar").size());
+        assertTrue(graph.getAllDependingOn("bar").contains("baz"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void dependantsAreUnmodifiable() {
+        graph.addDependency("foo", "bar");
+        graph.getAllDependingOn("bar").clear();
+    }
 }
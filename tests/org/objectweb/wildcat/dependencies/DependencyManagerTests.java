@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.dependencies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.wildcat.Context.createPath;
+import static org.objectweb.wildcat.TestUtils.added;
+import static org.objectweb.wildcat.TestUtils.changed;
+import static org.objectweb.wildcat.TestUtils.removed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.events.EventMultiplexer;
+import org.objectweb.wildcat.events.PathEvent;
+import org.objectweb.wildcat.providers.EmptyContextProvider;
+import org.objectweb.wildcat.providers.EventRecorder;
+
+public class DependencyManagerTests {
+    private List<Path> updated;
+
+    private List<Collection<Path>> causes;
+
+    private EventMultiplexer muxer;
+
+    private DependencyManager manager;
+
+    @Before
+    public void setUp() {
+        updated = new ArrayList<Path>();
+        causes = new ArrayList<Collection<Path>>();
+        muxer = new EventMultiplexer();
+        EmptyContextProvider target = new EmptyContextProvider() {
+            @Override
+            public void update(Path path, Collection<Path> changes) {
+                updated.add(path);
+                causes.add(new HashSet<Path>(changes));
+                muxer.eventOccured(changed(path.toString(), null, updated.size()));
+            }
+        };
+        manager = new DependencyManager(target, muxer);
+        muxer.addListener(manager);
+    }
+
+    private void depends(String dependant, String dependency) {
+        manager.addDependency(createPath(dependant), createPath(dependency));
+    }
+
+    private void propagate(String... changes) {
+        List<PathEvent> events = new ArrayList<PathEvent>();
+        for (String change : changes) {
+            events.add(changed(change, 0, 1));
+        }
+        manager.propagate(events);
+    }
+
+    private int indexOf(String path) {
+        return updated.indexOf(createPath(path));
+    }
+
+    @Test
+    public void diamondIsUpdatedOnce() {
+        depends("/b#x", "/a#x");
+        depends("/c#x", "/a#x");
+        depends("/d#x", "/b#x");
+        depends("/d#x", "/c#x");
+        propagate("/a#x");
+        assertEquals(3, updated.size());
+        assertEquals(3, indexOf("/d#x") + 1);
+    }
+
+    @Test
+    public void topologicalOrder() {
+        // e depends on a directly and through the chain b, c, d.
+        depends("/b#x", "/a#x");
+        depends("/c#x", "/b#x");
+        depends("/d#x", "/c#x");
+        depends("/e#x", "/d#x");
+        depends("/e#x", "/a#x");
+        propagate("/a#x");
+        assertEquals(Arrays.asList(createPath("/b#x"), createPath("/c#x"),
+                createPath("/d#x"), createPath("/e#x")), updated);
+    }
+
+    @Test
+    public void severalChangesInOneBatch() {
+        depends("/c#x", "/a#x");
+        depends("/c#x", "/b#x");
+        depends("/d#x", "/c#x");
+        depends("/b#x", "/z#x");
+        propagate("/a#x", "/z#x", "/b#x");
+        assertEquals(3, updated.size());
+        assertTrue(indexOf("/b#x") < indexOf("/c#x"));
+        assertTrue(indexOf("/c#x") < indexOf("/d#x"));
+    }
+
+    @Test
+    public void updatesAreGivenTheChanges() {
+        depends("/b#x", "/a#x");
+        depends("/c#x", "/b#x");
+        propagate("/a#x", "/z#x");
+        assertEquals(paths("/a#x", "/z#x"), causes.get(0));
+        assertEquals(paths("/a#x", "/z#x", "/b#x"), causes.get(1));
+    }
+
+    private Set<Path> paths(String... paths) {
+        Set<Path> result = new HashSet<Path>();
+        for (String path : paths) {
+            result.add(createPath(path));
+        }
+        return result;
+    }
+
+    @Test
+    public void unrelatedChangesDoNothing() {
+        depends("/b#x", "/a#x");
+        propagate("/b#x", "/c#x");
+        assertEquals(Collections.emptyList(), updated);
+    }
+
+    @Test
+    public void resultsArePublishedInOneBatch() {
+        EventRecorder recorder = new EventRecorder();
+        muxer.addListener(recorder);
+        depends("/b#x", "/a#x");
+        depends("/c#x", "/a#x");
+        depends("/d#x", "/b#x");
+        propagate("/a#x");
+        assertEquals(1, recorder.getNotificationsCount());
+        assertEquals(3, recorder.size());
+        // The manager ignores the events caused by its own updates.
+        assertEquals(0, manager.getBuffer().size());
+    }
+
+    @Test
+    public void patternDependency() {
+        depends("/total#load", "/hosts/*#load");
+        depends("/max#load", "/total#load");
+        propagate("/hosts/h1#load");
+        assertEquals(Arrays.asList(createPath("/total#load"), createPath("/max#load")),
+                updated);
+        updated.clear();
+        propagate("/hosts/h1#mem", "/hosts/h1/cpu#load", "/other/h1#load");
+        assertEquals(Collections.emptyList(), updated);
+    }
+
+    @Test
+    public void membershipChanges() {
+        depends("/total#load", "/hosts/*#load");
+        manager.propagate(Arrays.asList((PathEvent) added("/hosts/h1#load")));
+        assertEquals(1, updated.size());
+        manager.propagate(Arrays.asList((PathEvent) removed("/hosts/h1#load")));
+        assertEquals(2, updated.size());
+        // Resources containing matching attributes.
+        manager.propagate(Arrays.asList((PathEvent) removed("/hosts/h2")));
+        assertEquals(3, updated.size());
+        manager.propagate(Arrays.asList((PathEvent) added("/hosts")));
+        assertEquals(4, updated.size());
+        manager.propagate(Arrays.asList((PathEvent) removed("/other")));
+        assertEquals(4, updated.size());
+    }
+
+    @Test
+    public void severalPatternsMatching() {
+        depends("/total#load", "/hosts/*#load");
+        depends("/total#load", "/hosts/**#load");
+        depends("/all#x", "/hosts/**#*");
+        propagate("/hosts/h1#load");
+        assertEquals(2, updated.size());
+        assertTrue(indexOf("/total#load") != -1);
+        assertTrue(indexOf("/all#x") != -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void selfMatchingPattern() {
+        depends("/hosts/h1#load", "/hosts/*#load");
+    }
+
+    @Test
+    public void removePatternDependency() {
+        depends("/total#load", "/hosts/*#load");
+        depends("/max#load", "/hosts/*#load");
+        manager.removeDependency(createPath("/total#load"), createPath("/hosts/*#load"));
+        propagate("/hosts/h1#load");
+        assertEquals(Arrays.asList(createPath("/max#load")), updated);
+        manager.removeDependency(createPath("/max#load"), createPath("/hosts/*#load"));
+        updated.clear();
+        propagate("/hosts/h1#load");
+        assertEquals(Collections.emptyList(), updated);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.dependencies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Runs all the {@link DependencyGraphTests} against {@link IncrementalDependencyGraph},
+ * and checks that it detects the same cycles as {@link DependencyGraphImpl}.
+ */
+public class IncrementalDependencyGraphTests extends DependencyGraphTests {
+    @Override
+    protected DependencyGraph<String> createGraph() {
+        return new IncrementalDependencyGraph<String>();
+    }
+
+    @Test
+    public void sameCyclesAsReference() {
+        Random random = new Random(42);
+        DependencyGraph<String> reference = new DependencyGraphImpl<String>();
+        List<String[]> added = new ArrayList<String[]>();
+        for (int i = 0; i < 2000; i++) {
+            String dependant = "n" + random.nextInt(60);
+            String dependency = "n" + random.nextInt(60);
+            if (random.nextInt(5) == 0 && !added.isEmpty()) {
+                String[] edge = added.remove(random.nextInt(added.size()));
+                graph.removeDependency(edge[0], edge[1]);
+                reference.removeDependency(edge[0], edge[1]);
+                continue;
+            }
+            boolean expected = accepts(reference, dependant, dependency);
+            assertEquals(dependant + " -> " + dependency, expected, accepts(graph,
+                    dependant, dependency));
+            if (expected) {
+                added.add(new String[] { dependant, dependency });
+            }
+        }
+        for (int i = 0; i < 60; i++) {
+            assertEquals(new HashSet<String>(reference.getAllDependingOn("n" + i)),
+                    new HashSet<String>(graph.getAllDependingOn("n" + i)));
+        }
+    }
+
+    @Test
+    public void longChainInReverseOrder() {
+        // Each insertion goes against the current order.
+        for (int i = 0; i < 1000; i++) {
+            graph.addDependency("n" + i, "n" + (i + 1));
+        }
+        assertTrue(graph.getAllDependingOn("n1000").contains("n999"));
+        assertTrue(!accepts(graph, "n1000", "n0"));
+    }
+
+    private boolean accepts(DependencyGraph<String> g, String dependant, String dependency) {
+        try {
+            g.addDependency(dependant, dependency);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.objectweb.wildcat.TestUtils.added;
+import static org.objectweb.wildcat.TestUtils.changed;
+import static org.objectweb.wildcat.TestUtils.removed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class EventBufferTests {
+    @Test
+    public void fifo() throws InterruptedException {
+        EventBuffer buffer = new EventBuffer(4);
+        PathEvent e1 = added("/foo");
+        PathEvent e2 = changed("/foo#bar", 1, 2);
+        buffer.eventOccured(e1);
+        buffer.eventOccured(e2);
+        assertEquals(2, buffer.size());
+        assertSame(e1, buffer.take());
+        assertSame(e2, buffer.take());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void takeBatch() throws InterruptedException {
+        EventBuffer buffer = new EventBuffer(8);
+        PathEvent e1 = added("/foo");
+        PathEvent e2 = changed("/foo#bar", 1, 2);
+        PathEvent e3 = changed("/foo#baz", 1, 2);
+        buffer.eventOccured(e1);
+        buffer.eventOccured(Arrays.asList(e2, e3));
+        assertEquals(Arrays.asList(e1, e2, e3), buffer.takeBatch());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void batchOccupiesOneEntry() throws InterruptedException {
+        EventBuffer buffer = new EventBuffer(2);
+        List<PathEvent> batch = new ArrayList<PathEvent>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(changed("/foo#a" + i, 1, 2));
+        }
+        // Does not block although the batch is larger than the capacity.
+        buffer.eventOccured(batch);
+        PathEvent e = added("/bar");
+        buffer.eventOccured(e);
+        assertEquals(51, buffer.size());
+        assertSame(batch.get(0), buffer.take());
+        List<PathEvent> rest = buffer.takeBatch();
+        assertEquals(50, rest.size());
+        assertEquals(batch.subList(1, 50), rest.subList(0, 49));
+        assertSame(e, rest.get(49));
+    }
+
+    @Test
+    public void dropOldestBatch() throws InterruptedException {
+        EventBuffer buffer = new EventBuffer(1, OverflowPolicy.DROP_OLDEST);
+        buffer.eventOccured(Arrays.asList(changed("/foo#a", 1, 2), changed("/foo#b", 1, 2)));
+        PathEvent e = changed("/foo#c", 1, 2);
+        buffer.eventOccured(e);
+        assertEquals(2L, buffer.getDroppedCount());
+        assertEquals(Arrays.asList(e), buffer.takeBatch());
+    }
+
+    @Test
+    public void dropOldest() throws InterruptedException {
+        EventBuffer buffer = new EventBuffer(2, OverflowPolicy.DROP_OLDEST);
+        PathEvent e1 = changed("/foo#a", 1, 2);
+        PathEvent e2 = changed("/foo#b", 1, 2);
+        PathEvent e3 = changed("/foo#c", 1, 2);
+        buffer.eventOccured(e1);
+        buffer.eventOccured(e2);
+        buffer.eventOccured(e3);
+        assertEquals(1L, buffer.getDroppedCount());
+        assertSame(e2, buffer.take());
+        assertSame(e3, buffer.take());
+    }
+
+    @Test
+    public void dropNewest() throws InterruptedException {
+        EventBuffer buffer = new EventBuffer(2, OverflowPolicy.DROP_NEWEST);
+        PathEvent e1 = changed("/foo#a", 1, 2);
+        PathEvent e2 = changed("/foo#b", 1, 2);
+        buffer.eventOccured(e1);
+        buffer.eventOccured(e2);
+        buffer.eventOccured(changed("/foo#c", 1, 2));
+        assertEquals(1L, buffer.getDroppedCount());
+        assertSame(e1, buffer.take());
+        assertSame(e2, buffer.take());
+    }
+
+    @Test
+    public void coalesce() throws InterruptedException {
+        EventBuffer buffer = new EventBuffer(8, OverflowPolicy.COALESCE);
+        buffer.eventOccured(changed("/foo#a", 1, 2));
+        buffer.eventOccured(changed("/foo#b", 1, 2));
+        buffer.eventOccured(changed("/foo#a", 2, 3));
+        buffer.eventOccured(changed("/foo#a", 3, 4));
+        assertEquals(2, buffer.size());
+        assertEquals(2L, buffer.getCoalescedCount());
+        PathChangedEvent first = (PathChangedEvent) buffer.take();
+        assertEquals("/foo#a", first.getPath().toString());
+        assertEquals(1, first.getOldValue());
+        assertEquals(4, first.getNewValue());
+        assertEquals("/foo#b", buffer.take().getPath().toString());
+        // Once taken, a change can not be coalesced any more.
+        buffer.eventOccured(changed("/foo#a", 4, 5));
+        assertEquals(4, ((PathChangedEvent) buffer.take()).getOldValue());
+    }
+
+    @Test
+    public void coalesceDoesNotCrossOtherEvents() throws InterruptedException {
+        EventBuffer buffer = new EventBuffer(8, OverflowPolicy.COALESCE);
+        buffer.eventOccured(changed("/foo#a", 1, 2));
+        buffer.eventOccured(removed("/foo#a"));
+        buffer.eventOccured(added("/foo#a"));
+        buffer.eventOccured(changed("/foo#a", null, 3));
+        assertEquals(4, buffer.size());
+        assertEquals(0L, buffer.getCoalescedCount());
+    }
+
+    @Test
+    public void blockUntilConsumed() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(1);
+        buffer.eventOccured(added("/foo"));
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                buffer.eventOccured(added("/bar"));
+                done.countDown();
+            }
+        };
+        producer.start();
+        assertTrue(!done.await(100, TimeUnit.MILLISECONDS));
+        buffer.take();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, buffer.size());
+    }
+
+    @Test
+    public void changingPolicyReleasesBlockedProducers() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(1);
+        buffer.eventOccured(added("/foo"));
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                buffer.eventOccured(added("/bar"));
+                done.countDown();
+            }
+        };
+        producer.start();
+        assertTrue(!done.await(100, TimeUnit.MILLISECONDS));
+        buffer.setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1L, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void increasingCapacityReleasesBlockedProducers() throws InterruptedException {
+        final EventBuffer buffer = new EventBuffer(1);
+        buffer.eventOccured(added("/foo"));
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                buffer.eventOccured(added("/bar"));
+                done.countDown();
+            }
+        };
+        producer.start();
+        assertTrue(!done.await(100, TimeUnit.MILLISECONDS));
+        buffer.setCapacity(2);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, buffer.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new EventBuffer(0);
+    }
+}
@@ -22,7 +22,9 @@ package org.objectweb.wildcat.expressions;
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
+import org.objectweb.wildcat.expressions.functions.CoalesceFunction;
 import org.objectweb.wildcat.expressions.functions.Function;
+import org.objectweb.wildcat.expressions.functions.IfFunction;
 
 /**
  * @author Pierre-Charles David <pcdavid@gmail.com>
@@ -113,4 +115,38 @@ public class CallExpressionTests {
             assertFalse(obs43.isEvaluated());
         }
     }
+
+    @Test
+    public void lazyArguments() throws EvaluationException {
+        env.defineFunction(new IfFunction());
+        ObservableExpression obs42 = new ObservableExpression(new ConstantExpression(42));
+        ObservableExpression obs43 = new ObservableExpression(new ConstantExpression(43));
+        Expression e = new CallExpression("if", new ConstantExpression(false), obs42,
+                obs43);
+        assertEquals(43, e.evaluate(env));
+        assertFalse(obs42.isEvaluated());
+        assertTrue(obs43.isEvaluated());
+    }
+
+    @Test
+    public void lazyArgumentsErrors() {
+        env.defineFunction(new CoalesceFunction());
+        Expression error = new Expression() {
+            public Object evaluate(Environment env) throws EvaluationException {
+                throw new EvaluationException("Error!");
+            }
+            public void accept(ExpressionVisitor visitor) {
+            }
+        };
+        ObservableExpression obs43 = new ObservableExpression(new ConstantExpression(43));
+        Expression e = new CallExpression("coalesce", error, obs43);
+        try {
+            e.evaluate(env);
+            fail("Error not propagated.");
+        } catch (EvaluationException ee) {
+            // Not wrapped, as if the argument had been evaluated before the call.
+            assertEquals("Error!", ee.getMessage());
+            assertFalse(obs43.isEvaluated());
+        }
+    }
 }
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.providers.BasicContextProvider;
+import org.objectweb.wildcat.dependencies.ExpressionDependenciesCollector;
+import org.objectweb.wildcat.expressions.functions.Function;
+
+/**
+ * Checks that compiled expressions behave exactly like interpreted ones.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class CompilingInterpreterTests {
+    private static final String[] EXPRESSIONS = { "1", "'foo'", "$x", "1 + 2 * 3",
+            "$x * 2 + $y div 4 - 1", "-$x", "add()", "multiply()", "add(1, 2, 3, $x)",
+            "substract(10, 1, 2)", "divide(100, 2, 5)", "$x < $y", "$y < $x", "$x <= 2",
+            "$x > 2", "$x >= 2", "$x == 2", "$x != 2", "$s == 'foo'",
+            "$x < $y and $y < 10", "$x < $y and $y < 1", "$y < $x or $x < $y",
+            "$y < $x or $x == 3", "not($x < $y)", "less(1, 2, 3)", "less(3, 2, 1)",
+            "equals(1, 1.0)", "$s", "1 + 'a'", "'a' + 1", "1 div 0", "divide(1, 'a', 0)",
+            "'a' < 1", "less(1)", "substract(1)", "divide(1)", "undefined(1)",
+            "$nope + 1", "not(1)", "not($x < 1)", "not(1, 2)", "equals($s, 'foo', 'a')",
+            "(1 + 'a') * 2", "2 * (1 div 0)", "plus(1, 2)", "plus(1, 'a')",
+            "if($x < $y, 'a', 'b')", "if($x > $y, 1 div 0, $x)", "if($x < $y, $y, 0) * 2",
+            "if($x, 1, 2)", "if($x < $y, 1)", "not(if($x < $y, $x == 2, $nope))",
+            "coalesce($s, 1 div 0)", "coalesce()", "coalesce(1 div 0, $s)",
+            "if($x < $y, 1 div 0, 2)" };
+
+    private Interpreter basic;
+
+    private CompilingInterpreter compiling;
+
+    @Before
+    public void setUp() {
+        basic = new BasicInterpreter();
+        compiling = new CompilingInterpreter();
+        for (Interpreter inter : new Interpreter[] { basic, compiling }) {
+            inter.getEnvironment().defineVariable("x", 2);
+            inter.getEnvironment().defineVariable("y", 4.5);
+            inter.getEnvironment().defineVariable("s", "foo");
+            inter.getEnvironment().defineFunction("plus",
+                    inter.getEnvironment().lookupFunction("add"));
+        }
+    }
+
+    /**
+     * Returns the value of the expression, or a description of the error it caused.
+     */
+    private Object outcome(Interpreter inter, String expression) {
+        try {
+            return inter.evaluate(expression);
+        } catch (EvaluationException e) {
+            String description = "error: " + e.getMessage();
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                description += " / " + cause.getClass().getName() + ": "
+                        + cause.getMessage();
+            }
+            return description;
+        }
+    }
+
+    @Test
+    public void sameOutcomesAsInterpreted() {
+        for (String expression : EXPRESSIONS) {
+            assertEquals(expression, outcome(basic, expression), outcome(compiling,
+                    expression));
+        }
+    }
+
+    @Test
+    public void parsedExpressionsAreCompiled() {
+        Expression expr = compiling.parse("1 + 2");
+        assertTrue(expr instanceof CompiledExpression);
+        assertSame(expr, compiling.compile(expr));
+    }
+
+    @Test
+    public void otherExpressionsAreCompiledOnce() throws EvaluationException {
+        Expression expr = basic.parse("1 + 2");
+        assertEquals(3.0, compiling.evaluate(expr));
+        assertSame(compiling.compile(expr), compiling.compile(expr));
+    }
+
+    @Test
+    public void redefinedFunctionsAreRebound() throws EvaluationException {
+        Expression expr = compiling.parse("add(1, 2)");
+        assertEquals(3.0, compiling.evaluate(expr));
+        compiling.getEnvironment().defineFunction(new Function() {
+            public String getName() {
+                return "add";
+            }
+
+            public Object apply(Object[] args, Environment env) {
+                return "redefined";
+            }
+        });
+        assertEquals("redefined", compiling.evaluate(expr));
+    }
+
+    @Test
+    public void otherEnvironmentsAreInterpreted() throws EvaluationException {
+        Expression expr = compiling.parse("$z * 2");
+        Environment env = new Environment(compiling.getEnvironment());
+        env.defineVariable("z", 21);
+        assertEquals(42.0, expr.evaluate(env));
+    }
+
+    @Test
+    public void argumentEvaluationOrder() {
+        ObservableExpression obs42 = new ObservableExpression(new ConstantExpression(42));
+        Expression error = new Expression() {
+            public Object evaluate(Environment env) throws EvaluationException {
+                throw new EvaluationException("Error!");
+            }
+
+            public void accept(ExpressionVisitor visitor) {
+            }
+        };
+        ObservableExpression obs43 = new ObservableExpression(new ConstantExpression(43));
+        try {
+            compiling.evaluate(new CallExpression("add", obs42, error, obs43));
+            fail("Error not propagated.");
+        } catch (EvaluationException e) {
+            assertEquals("Error!", e.getMessage());
+            assertTrue(obs42.isEvaluated());
+            assertFalse(obs43.isEvaluated());
+        }
+    }
+
+    @Test
+    public void visitorsSeeTheSource() {
+        Expression expr = compiling.parse("/foo#bar + 1");
+        ExpressionDependenciesCollector collector = new ExpressionDependenciesCollector();
+        expr.accept(collector);
+        assertTrue(collector.getDependencies().contains(Context.createPath("/foo#bar")));
+    }
+
+    @Test
+    public void typedEvaluation() throws EvaluationException {
+        assertEquals(8.5, compiling.evaluateDouble(compiling.parse("$x * 2 + $y")), 0.0);
+        assertEquals(2.0, compiling.evaluateDouble(compiling.parse("$x")), 0.0);
+        assertEquals(3L, compiling.evaluateLong(compiling.parse("7 div 2")));
+        assertEquals(4L, compiling.evaluateLong(compiling.parse("$y")));
+        assertTrue(compiling.evaluateBoolean(compiling.parse("$x + $y > 2")));
+        assertFalse(compiling.evaluateBoolean(compiling.parse("$x + $y == 2")));
+        assertTrue(compiling.evaluateBoolean(compiling.parse("$x + 2.5 == $y")));
+        assertTrue(compiling.evaluateBoolean(compiling.parse("not($s == 'bar')")));
+        assertEquals(9.0, compiling.evaluateDouble(compiling
+                .parse("if($x < $y, $y, 0) * 2")), 0.0);
+        assertTrue(compiling.evaluateBoolean(compiling
+                .parse("if($x < $y, $s == 'foo', $y)")));
+        // An Integer is not equal to a Double, compiled or not.
+        assertFalse(compiling.evaluateBoolean(compiling.parse("$x == 2")));
+    }
+
+    @Test
+    public void typedEvaluationOfInvalidTypes() {
+        String[] numbers = { "$s", "$x < 1", "'a' + 1" };
+        for (String expression : numbers) {
+            try {
+                compiling.evaluateDouble(compiling.parse(expression));
+                fail(expression);
+            } catch (EvaluationException e) {
+                // Expected
+            }
+        }
+        String[] booleans = { "$s", "$x + 1", "not(1)" };
+        for (String expression : booleans) {
+            try {
+                compiling.evaluateBoolean(compiling.parse(expression));
+                fail(expression);
+            } catch (EvaluationException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void typedEvaluationInOtherEnvironments() throws EvaluationException {
+        TypedExpression expr = (TypedExpression) compiling.parse("$z * 2");
+        Environment env = new Environment(compiling.getEnvironment());
+        env.defineVariable("z", 21);
+        assertEquals(42.0, expr.evaluateDouble(env), 0.0);
+        assertEquals(42L, expr.evaluateLong(env));
+    }
+
+    @Test
+    public void attributeReferencesAreRebound() throws Exception {
+        Context ctx = new Context(null, compiling);
+        Expression expr = compiling.parse("/b/r#a");
+        BasicContextProvider provider = new BasicContextProvider();
+        ctx.mount("/b", provider);
+        assertEquals(null, compiling.evaluate(expr));
+        provider.createResource(Context.createPath("r"));
+        provider.createAttribute("r#a", 1);
+        assertEquals(1, compiling.evaluate(expr));
+        provider.setValue("r#a", 2);
+        assertEquals(2, compiling.evaluate(expr));
+        // The resource is deleted and created again.
+        provider.delete("r");
+        assertEquals(null, compiling.evaluate(expr));
+        provider.createResource(Context.createPath("r"));
+        provider.createAttribute("r#a", 3);
+        assertEquals(3, compiling.evaluate(expr));
+        // Another provider is mounted at the same place.
+        ctx.unmount("/b");
+        assertEquals(null, compiling.evaluate(expr));
+        provider = new BasicContextProvider();
+        ctx.mount("/b", provider);
+        provider.createResource(Context.createPath("r"));
+        provider.createAttribute("r#a", 4);
+        assertEquals(4, compiling.evaluate(expr));
+        assertEquals(4, ctx.lookupAttribute("/b/r#a"));
+    }
+
+    @Test
+    public void aggregatesOfPatterns() throws Exception {
+        Context ctx = new Context(null, compiling);
+        Expression expr = compiling.parse(
+                "sum(/b/*#a) + count(/b/*#a) * coalesce(max(/b/*#a), 0)");
+        BasicContextProvider provider = new BasicContextProvider();
+        ctx.mount("/b", provider);
+        assertEquals(0.0, compiling.evaluate(expr));
+        for (int i = 0; i < 3; i++) {
+            provider.createResource(Context.createPath("r" + i));
+            provider.createAttribute("r" + i + "#a", i);
+        }
+        assertEquals(9.0, compiling.evaluate(expr));
+        provider.delete("r2");
+        assertEquals(3.0, compiling.evaluate(expr));
+        // All the attributes disappear with their provider.
+        ctx.unmount("/b");
+        assertEquals(0.0, compiling.evaluate(expr));
+    }
+}
@@ -179,4 +179,61 @@ public class EnvironmentTests {
         assertSame(dummy, topLevel.lookupFunction(dummy.getName()));
         assertSame(dummy2, local.lookupFunction(dummy.getName()));
     }
+
+    @Test
+    public void namesAreResolvedToSlots() {
+        assertEquals(Environment.slot("foo"), Environment.slot("foo"));
+        assertTrue(Environment.slot("foo") != Environment.slot("bar"));
+        topLevel.defineVariable("foo", "foo");
+        assertEquals("foo", local.lookupVariable(Environment.slot("foo")));
+        assertNull(local.lookupVariable(Environment.slot("bar")));
+    }
+
+    @Test
+    public void variablesDefinedAfterResolution() throws EvaluationException {
+        Expression expr = new VariableExpression("defined_later");
+        topLevel.defineVariable("defined_later", 42);
+        assertEquals(42, expr.evaluate(local));
+    }
+
+    @Test
+    public void concurrentDefinitionsAndLookups() throws Exception {
+        final Interpreter inter = new BasicInterpreter();
+        final Environment env = inter.getEnvironment();
+        env.defineVariable("a", 1);
+        env.defineVariable("b", 2);
+        final Expression expr = inter.parse("$a + $b");
+        final int[] errors = new int[1];
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 20000; j++) {
+                        try {
+                            if (!Double.valueOf(3.0).equals(inter.evaluate(expr))) {
+                                throw new EvaluationException("Wrong value.");
+                            }
+                        } catch (EvaluationException e) {
+                            synchronized (errors) {
+                                errors[0]++;
+                            }
+                        }
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        // Defining new names makes the tables grow while they are read.
+        for (int i = 0; i < 2000; i++) {
+            env.defineVariable("concurrent_" + i, i);
+            env.defineFunction("concurrent_" + i, dummy);
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(0, errors[0]);
+        assertEquals(1999, env.lookupVariable("concurrent_1999"));
+        assertSame(dummy, env.lookupFunction("concurrent_1999"));
+    }
 }
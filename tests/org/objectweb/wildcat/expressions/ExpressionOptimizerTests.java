@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.dependencies.ExpressionDependenciesCollector;
+
+/**
+ * Checks that optimized expressions are simpler, but evaluate to the same values.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class ExpressionOptimizerTests {
+    private static final String[] EXPRESSIONS = { "1", "$x", "1024 * 1024",
+            "1 + 2 + $x", "$x + 1 + 2", "1 - 2 - $x", "$x - $y - 1", "($x - $y) - ($y - $x)",
+            "$x * 1", "$x + 0", "$x * 2 * 1", "$x - 0", "($x + 1) - 0", "($x + 1) * 1",
+            "($x + 1) div 1", "1 * $x", "0 - $x", "-$x", "$x * (1 + 1) * 3", "add()",
+            "add(add(), $x)", "multiply(multiply(), $x)", "substract(substract(1), $x)",
+            "1 div 0", "$x + 1 div 0", "1 div 0 + $x", "divide(1, 0, $x)", "1 + 'a'",
+            "'a' + 1 + $x", "$x < 2", "$x > 2", "$x >= 2", "$x <= 2", "2 < 1",
+            "$x == 2 and 1 < 2", "1 < 2 and $x == 2", "2 < 1 and $x == 2",
+            "$x == 2 and 2 < 1", "$x == 2 or 1 < 2", "1 < 2 or $x == 2",
+            "$x < 2 or 2 < 1", "2 < 1 or $x < 2", "not(not($x < 1))", "not(not($x))",
+            "not(not(1 < 2))", "not(1)", "$s == 'foo' and ($x < 1 or $y < 10)",
+            "$nope + 1", "$nope + 1 > 2", "undefined(1 + 2)", "plus(1, 2)",
+            "$x + $y > $x * $y", "if(1 < 2, $x, 1 div 0)", "if(2 < 1, 1 div 0, $y)",
+            "if(1, $x, $y)", "if($x < 2, $x, $y)", "if(1 < 2, $x)" };
+
+    private Interpreter basic;
+
+    private ExpressionOptimizer optimizer;
+
+    @Before
+    public void setUp() {
+        basic = new BasicInterpreter();
+        basic.getEnvironment().defineVariable("x", 2);
+        basic.getEnvironment().defineVariable("y", 4.5);
+        basic.getEnvironment().defineVariable("s", "foo");
+        basic.getEnvironment().defineFunction("plus",
+                basic.getEnvironment().lookupFunction("add"));
+        optimizer = new ExpressionOptimizer(basic.getEnvironment());
+    }
+
+    private Expression optimize(String expression) {
+        return optimizer.optimize(basic.parse(expression));
+    }
+
+    private static Expression constant(Object value) {
+        return new ConstantExpression(value);
+    }
+
+    private static Expression variable(String name) {
+        return new VariableExpression(name);
+    }
+
+    private static Expression call(String name, Expression... args) {
+        return new CallExpression(name, args);
+    }
+
+    /**
+     * Returns the value of the expression, or a marker if it caused an error. The error
+     * messages may differ.
+     */
+    private Object outcome(Interpreter inter, Expression expr) {
+        try {
+            return inter.evaluate(expr);
+        } catch (EvaluationException e) {
+            return "error";
+        }
+    }
+
+    @Test
+    public void sameValuesAsUnoptimized() {
+        CompilingInterpreter compiling = new CompilingInterpreter();
+        compiling.getEnvironment().defineVariable("x", 2);
+        compiling.getEnvironment().defineVariable("y", 4.5);
+        compiling.getEnvironment().defineVariable("s", "foo");
+        compiling.getEnvironment().defineFunction("plus",
+                compiling.getEnvironment().lookupFunction("add"));
+        for (String expression : EXPRESSIONS) {
+            Expression expr = basic.parse(expression);
+            Object expected = outcome(basic, expr);
+            assertEquals(expression, expected, outcome(basic, optimizer.optimize(expr)));
+            assertEquals(expression, expected, outcome(compiling, compiling
+                    .optimize(expr)));
+        }
+    }
+
+    @Test
+    public void constantFolding() {
+        assertEquals(constant(1048576.0), optimize("1024 * 1024"));
+        assertEquals(constant(true), optimize("1 < 2"));
+        assertEquals(constant(false), optimize("'a' == 'b'"));
+        assertEquals(constant(3.0), optimize("plus(1, 2)"));
+        assertEquals(call("add", constant(3.0), variable("x")), optimize("1 + 2 + $x"));
+        assertEquals(call("substract", constant(-1.0), variable("x")),
+                optimize("1 - 2 - $x"));
+        // The order of the operations is preserved.
+        assertEquals(call("add", variable("x"), constant(1.0), constant(2.0)),
+                optimize("$x + 1 + 2"));
+    }
+
+    @Test
+    public void errorsAreNotFolded() {
+        assertEquals(basic.parse("1 div 0"), optimize("1 div 0"));
+        assertEquals(basic.parse("1 + 'a'"), optimize("1 + 'a'"));
+        assertEquals(basic.parse("undefined(3)"), optimize("undefined(1 + 2)"));
+    }
+
+    @Test
+    public void constantConditions() {
+        assertEquals(variable("x"), optimize("if(1 < 2, $x, 1 div 0)"));
+        assertEquals(call("add", variable("y"), constant(1.0)),
+                optimize("if(2 < 1, $x, $y + 1)"));
+        assertEquals(basic.parse("if(1, $x, $y)"), optimize("if(1, $x, $y)"));
+    }
+
+    @Test
+    public void algebraicSimplification() {
+        assertEquals(call("add", variable("x"), variable("y")), optimize("($x + $y) * 1"));
+        assertEquals(call("add", variable("x"), variable("y")), optimize("$x + $y - 0"));
+        assertEquals(call("multiply", variable("y"), constant(2.0)),
+                optimize("$y * 2 * 1"));
+        assertEquals(call("substract", variable("x"), variable("y"), variable("x")),
+                optimize("$x - $y - $x"));
+        assertEquals(call("multiply", variable("x"), variable("y"), variable("x")),
+                optimize("($x * $y) * $x"));
+        // The value of a variable is not necessarily a Double.
+        assertEquals(call("multiply", variable("x")), optimize("$x * 1"));
+        // -0.0 + 0 is 0.0
+        assertEquals(call("add", variable("x")), optimize("$x + 0"));
+        assertEquals(basic.parse("$x < 1"), optimize("not(not($x < 1))"));
+        assertEquals(basic.parse("not(not($x))"), optimize("not(not($x))"));
+    }
+
+    @Test
+    public void flattenConjunctions() {
+        Expression a = call("less", variable("x"), variable("y"));
+        Expression b = call("equals", variable("x"), constant(2.0));
+        Expression c = variable("z");
+        assertEquals(new AndExpression(a, b, c), optimizer.optimize(new AndExpression(
+                new AndExpression(a, b), c)));
+        assertEquals(new OrExpression(a, b, c), optimizer.optimize(new OrExpression(a,
+                new OrExpression(b, c))));
+        // An OrExpression is kept as a clause of an AndExpression.
+        assertEquals(new AndExpression(a, new OrExpression(b, c)), optimizer
+                .optimize(new AndExpression(a, new OrExpression(b, c))));
+    }
+
+    @Test
+    public void constantClauses() {
+        Expression a = call("less", variable("x"), variable("y"));
+        Expression b = variable("z");
+        assertEquals(new AndExpression(a, b), optimizer.optimize(new AndExpression(
+                constant(true), a, constant(true), b)));
+        assertEquals(new AndExpression(a, constant("a")), optimizer
+                .optimize(new AndExpression(a, constant("a"), b)));
+        assertEquals(constant(false), optimizer.optimize(new AndExpression(
+                constant(false), a)));
+        assertEquals(constant(true), optimizer.optimize(new AndExpression()));
+        assertEquals(new OrExpression(a, b), optimizer.optimize(new OrExpression(
+                constant(false), a, constant("a"), b)));
+        assertEquals(new OrExpression(b, constant(true)), optimizer
+                .optimize(new OrExpression(b, constant(true), a)));
+        assertEquals(constant(true), optimizer.optimize(new OrExpression(constant(true),
+                a)));
+        assertEquals(constant(false), optimizer.optimize(new OrExpression()));
+        // A single boolean clause is its own value, but other values are converted.
+        assertEquals(a, optimizer.optimize(new AndExpression(constant(true), a)));
+        assertEquals(new AndExpression(b), optimizer.optimize(new AndExpression(b,
+                constant(true))));
+    }
+
+    @Test
+    public void unchangedExpressionsAreKept() {
+        Expression expr = basic.parse("$x * 2 < $y and $s == 'foo'");
+        assertSame(expr, optimizer.optimize(expr));
+        Expression unknown = new ObservableExpression(basic.parse("1 + 2"));
+        assertSame(unknown, optimizer.optimize(unknown));
+    }
+
+    @Test
+    public void commonSubexpressions() {
+        Expression expr = optimize("/a#b > 2");
+        assertTrue(expr instanceof LetExpression);
+        LetExpression let = (LetExpression) expr;
+        assertEquals(1, let.getShared().length);
+        assertEquals(basic.parse("/a#b"), let.getShared()[0].getExpression());
+        SharedExpression load = let.getShared()[0];
+        assertEquals(call("not", new OrExpression(call("less", load, constant(2.0)), call(
+                "equals", load, constant(2.0)))), let.getBody());
+        // The dependencies are unchanged.
+        ExpressionDependenciesCollector collector = new ExpressionDependenciesCollector();
+        expr.accept(collector);
+        assertEquals(Context.createPath("/a#b"), collector.getDependencies().iterator()
+                .next());
+        assertEquals(1, collector.getDependencies().size());
+    }
+
+    @Test
+    public void largestSubexpressionsAreShared() {
+        // The parser reverses the clauses: "/a#b < 3" comes first.
+        LetExpression let = (LetExpression) optimize("/a#b + 1 > 2 and /a#b < 3");
+        assertEquals(2, let.getShared().length);
+        assertEquals(basic.parse("/a#b"), let.getShared()[0].getExpression());
+        assertEquals(call("add", let.getShared()[0], constant(1.0)), let.getShared()[1]
+                .getExpression());
+        LetExpression single = (LetExpression) optimize("/a#b * 2 > 1");
+        assertEquals(1, single.getShared().length);
+        // Arithmetic on variables is not shared.
+        assertTrue(optimize("$x + $y > 2") instanceof CallExpression);
+    }
+
+    @Test
+    public void sharedExpressionsAreEvaluatedOnce() throws EvaluationException {
+        final int[] evaluations = { 0 };
+        Expression counter = new Expression() {
+            public Object evaluate(Environment env) {
+                evaluations[0]++;
+                return (evaluations[0] == 1) ? null : "late";
+            }
+
+            public void accept(ExpressionVisitor visitor) {
+            }
+        };
+        SharedExpression shared = new SharedExpression(0, counter);
+        Expression let = new LetExpression(new SharedExpression[] { shared }, call(
+                "equals", shared, shared));
+        CompilingInterpreter compiling = new CompilingInterpreter();
+        for (Interpreter inter : new Interpreter[] { basic, compiling }) {
+            evaluations[0] = 0;
+            // null values are shared too.
+            assertEquals(Boolean.TRUE, inter.evaluate(let));
+            assertEquals(1, evaluations[0]);
+            // Each evaluation starts afresh.
+            evaluations[0] = 0;
+            inter.evaluate(let);
+            assertEquals(1, evaluations[0]);
+            // Outside of its LetExpression, a shared expression is not shared.
+            evaluations[0] = 0;
+            assertEquals(Boolean.FALSE, inter.evaluate(call("equals", shared, shared)));
+            assertEquals(2, evaluations[0]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sharedExpressionsMustBeInTheirSlot() {
+        new LetExpression(new SharedExpression[] { new SharedExpression(1, constant(1)) },
+                constant(1));
+    }
+
+    @Test
+    public void compilingInterpreterCompilesOptimizedExpressions()
+            throws EvaluationException {
+        CompilingInterpreter compiling = new CompilingInterpreter();
+        Expression expr = compiling.optimize(compiling.parse("1024 * 1024"));
+        assertTrue(expr instanceof CompiledExpression);
+        assertEquals(constant(1048576.0), ((CompiledExpression) expr).getSource());
+        assertSame(expr, compiling.compile(expr));
+    }
+}
@@ -21,9 +21,13 @@ package org.objectweb.wildcat.expressions;
 
 import static org.junit.Assert.*;
 
+import java.util.Collections;
+
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.dependencies.ExpressionDependenciesCollector;
 
 /**
  * @author Pierre-Charles David <pcdavid@gmail.com>
@@ -91,6 +95,22 @@ public class ExpressionsLanguageTests {
         }
     }
 
+    @Test
+    public void patternPathExpression() throws EvaluationException {
+        String[] paths = new String[] { "/hosts/*#load", "/**#load", "/hosts/h1#*",
+                "/**/cpu/*#*" };
+        for (String p : paths) {
+            Expression expr = inter.parse(p);
+            assertTrue(expr instanceof CallExpression);
+            ExpressionDependenciesCollector collector = new ExpressionDependenciesCollector();
+            expr.accept(collector);
+            assertEquals(Collections.singleton(Context.createPath(p)), collector
+                    .getDependencies());
+        }
+        // "*" is still the multiplication outside of paths.
+        assertExpressionValue(6.0, "2 * 3");
+    }
+
     @Test
     @Ignore("ANTLR grammar needs to be fixed.")
     public void invalidPathExpression() throws EvaluationException {
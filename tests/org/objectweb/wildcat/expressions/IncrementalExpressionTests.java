@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.Context;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.dependencies.ExpressionDependenciesCollector;
+import org.objectweb.wildcat.expressions.functions.Function;
+import org.objectweb.wildcat.providers.BasicContextProvider;
+
+/**
+ * Checks that incremental expressions compute the same values as the expressions they
+ * are built from, whatever the changes between two evaluations.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class IncrementalExpressionTests {
+    private static final String[] EXPRESSIONS = { "1", "$x", "$x * 2 + $y div 4 - 1",
+            "($x + 1) * ($y + 1) - ($x + 1)", "add(1, 2, 3, $x)", "$x < $y", "$x >= 2",
+            "$x == 2", "$s == 'foo'", "$x < $y and $y < 10", "$y < $x or $x == 3",
+            "not($x < $y)", "$x + $s", "1 div $y", "$y == 0 or 1 div $y > 1",
+            "$y != 0 and 1 div $y > 1", "$nope + 1", "undefined($x)",
+            "(1 div $y) * 2 + $x", "$x > 2 and $x > 2 or $x < 2",
+            "if($y == 0, $x, 1 div $y)", "if($x > 2, $s, $y) == $s",
+            "coalesce(if($x < 3, 1 div $y, $s), $x)" };
+
+    /**
+     * The successive values of the variables <code>x</code>, <code>y</code> and
+     * <code>s</code>.
+     */
+    private static final Object[][] VALUES = { { 2, 4.5, "foo" }, { 2, 4.5, "foo" },
+            { 3, 4.5, "foo" }, { 3, 0, "bar" }, { 2.0, 0.5, "foo" }, { 3, 0, "foo" } };
+
+    private BasicInterpreter inter;
+
+    @Before
+    public void setUp() {
+        inter = new BasicInterpreter();
+    }
+
+    private void define(Object[] values) {
+        inter.getEnvironment().defineVariable("x", values[0]);
+        inter.getEnvironment().defineVariable("y", values[1]);
+        inter.getEnvironment().defineVariable("s", values[2]);
+    }
+
+    /**
+     * Returns the value of the expression, or a description of the error it caused.
+     */
+    private Object outcome(Expression expr) {
+        try {
+            return expr.evaluate(inter.getEnvironment());
+        } catch (EvaluationException e) {
+            String description = "error: " + e.getMessage();
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                description += " / " + cause.getClass().getName() + ": "
+                        + cause.getMessage();
+            }
+            return description;
+        }
+    }
+
+    @Test
+    public void sameOutcomesAsEvaluated() {
+        for (String expression : EXPRESSIONS) {
+            Expression expr = inter.parse(expression);
+            Expression incremental = new IncrementalExpression(expr);
+            Expression optimized = new IncrementalExpression(inter.optimize(expr));
+            for (int i = 0; i < VALUES.length; i++) {
+                define(VALUES[i]);
+                String message = expression + " (" + i + ")";
+                Object expected = outcome(expr);
+                assertEquals(message, expected, outcome(incremental));
+                assertEquals(message, expected, outcome(optimized));
+            }
+        }
+    }
+
+    @Test
+    public void unchangedValuesAreNotRecomputed() throws EvaluationException {
+        define(VALUES[0]);
+        Expression expr = new IncrementalExpression(inter.parse("($x + 1) * ($y + 1)"));
+        Object first = inter.evaluate(expr);
+        assertSame(first, inter.evaluate(expr));
+        // Equal values do not count as changes.
+        inter.getEnvironment().defineVariable("x", Integer.valueOf(2));
+        assertSame(first, inter.evaluate(expr));
+        inter.getEnvironment().defineVariable("y", 5.5);
+        Object second = inter.evaluate(expr);
+        assertNotSame(first, second);
+        assertEquals(3.0 * 6.5, second);
+    }
+
+    @Test
+    public void attributesAreReadAgain() throws Exception {
+        Context ctx = new Context(null, inter);
+        BasicContextProvider provider = new BasicContextProvider();
+        ctx.mount("/b", provider);
+        provider.createAttribute("#x", 1);
+        provider.createAttribute("#y", 2);
+        Expression expr = inter.parse("(/b#x + 1) * 2 + /b#y");
+        Expression incremental = new IncrementalExpression(inter.optimize(expr));
+        assertEquals(6.0, inter.evaluate(incremental));
+        provider.setValue("#y", 3);
+        assertEquals(7.0, inter.evaluate(incremental));
+        provider.setValue("#x", 2);
+        assertEquals(9.0, inter.evaluate(incremental));
+        provider.delete("#x");
+        assertEquals(outcome(expr), outcome(incremental));
+        provider.createAttribute("#x", 0);
+        assertEquals(5.0, inter.evaluate(incremental));
+    }
+
+    @Test
+    public void onlyChangedAttributesAreReadAgain() throws Exception {
+        Context ctx = new Context(null, inter);
+        BasicContextProvider provider = new BasicContextProvider();
+        ctx.mount("/b", provider);
+        provider.createAttribute("#x", 1);
+        provider.createAttribute("#y", 2);
+        Environment env = inter.getEnvironment();
+        IncrementalExpression incremental = new IncrementalExpression(inter
+                .parse("(/b#x + 1) * 2 + /b#y"));
+        assertEquals(6.0, incremental.evaluate(env, null));
+        provider.setValue("#x", 2);
+        provider.setValue("#y", 3);
+        // x keeps the value read by the previous evaluation.
+        assertEquals(7.0, incremental.evaluate(env, changes("/b#y")));
+        assertEquals(9.0, incremental.evaluate(env, changes("/b#x")));
+        provider.setValue("#x", 3);
+        // A resource added or removed may concern any attribute.
+        provider.createResource(Context.createPath("r"));
+        assertEquals(11.0, incremental.evaluate(env, changes("/b/r")));
+    }
+
+    @Test
+    public void changedPatternsAreReadAgain() throws Exception {
+        Context ctx = new Context(null, inter);
+        BasicContextProvider provider = new BasicContextProvider();
+        ctx.mount("/b", provider);
+        provider.createAttribute("#y", 1);
+        provider.createResource(Context.createPath("r"));
+        provider.createAttribute("r#x", 2);
+        Environment env = inter.getEnvironment();
+        IncrementalExpression incremental = new IncrementalExpression(inter
+                .parse("sum(/b/*#x) + /b#y"));
+        assertEquals(3.0, incremental.evaluate(env, null));
+        provider.setValue("r#x", 3);
+        assertEquals(3.0, incremental.evaluate(env, changes("/b#y")));
+        assertEquals(4.0, incremental.evaluate(env, changes("/b/r#x")));
+    }
+
+    @Test
+    public void smallCompiledExpressionsRunTheirCode() throws Exception {
+        CompilingInterpreter compiling = new CompilingInterpreter();
+        Context ctx = new Context(null, compiling);
+        BasicContextProvider provider = new BasicContextProvider();
+        ctx.mount("/b", provider);
+        provider.createAttribute("#x", 1);
+        Environment env = compiling.getEnvironment();
+        IncrementalExpression incremental = new IncrementalExpression(compiling
+                .optimize(compiling.parse("/b#x + 1")));
+        assertEquals(2.0, incremental.evaluate(env, null));
+        provider.setValue("#x", 2);
+        // The compiled code reads all the attributes, whatever the changes.
+        assertEquals(3.0, incremental.evaluate(env, changes()));
+    }
+
+    private Collection<Path> changes(String... paths) {
+        Collection<Path> result = new HashSet<Path>();
+        for (String path : paths) {
+            result.add(Context.createPath(path));
+        }
+        return result;
+    }
+
+    @Test
+    public void aggregatesOfPatterns() throws Exception {
+        Context ctx = new Context(null, inter);
+        BasicContextProvider provider = new BasicContextProvider();
+        ctx.mount("/b", provider);
+        Expression expr = inter.parse("if(count(/b/*#x) < 3, avg(/b/*#x), "
+                + "sum(/b/*#x) - min(/b/*#x) + max(/b/*#x))");
+        Expression incremental = new IncrementalExpression(inter.optimize(expr));
+        for (int i = 0; i < 5; i++) {
+            provider.createResource(Context.createPath("r" + i));
+            provider.createAttribute("r" + i + "#x", i);
+            assertEquals(outcome(expr), outcome(incremental));
+        }
+        provider.setValue("r4#x", -1);
+        assertEquals(outcome(expr), outcome(incremental));
+        provider.delete("r0");
+        assertEquals(outcome(expr), outcome(incremental));
+        provider.setValue("r1#x", "foo");
+        assertEquals(outcome(expr), outcome(incremental));
+    }
+
+    @Test
+    public void redefinedFunctionsAreRebound() throws EvaluationException {
+        Expression expr = new IncrementalExpression(inter.parse("add(1, 2)"));
+        assertEquals(3.0, inter.evaluate(expr));
+        inter.getEnvironment().defineFunction(new Function() {
+            public String getName() {
+                return "add";
+            }
+
+            public Object apply(Object[] args, Environment env) {
+                return "redefined";
+            }
+        });
+        assertEquals("redefined", inter.evaluate(expr));
+    }
+
+    @Test
+    public void otherExpressionsAreEvaluated() {
+        define(VALUES[0]);
+        ObservableExpression obs = new ObservableExpression(new ConstantExpression(42));
+        Expression expr = new IncrementalExpression(new CallExpression("add", obs,
+                new VariableExpression("x")));
+        assertEquals(44.0, outcome(expr));
+        assertTrue(obs.isEvaluated());
+        obs.resetEvaluated();
+        assertEquals(44.0, outcome(expr));
+        assertTrue(obs.isEvaluated());
+    }
+
+    @Test
+    public void visitorsSeeTheSource() {
+        Expression expr = new IncrementalExpression(inter.parse("/foo#bar + 1"));
+        ExpressionDependenciesCollector collector = new ExpressionDependenciesCollector();
+        expr.accept(collector);
+        assertTrue(collector.getDependencies().contains(Context.createPath("/foo#bar")));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link RecursiveDescentParser} class, which must build the same
+ * expressions as the ANTLR parser.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class RecursiveDescentParserTests {
+    private static final String[] VALID = { "0", "42", "3.14", "1.", "\"\"", "\"foo\"",
+            "'bar'", "'it\\'s'", "\"say \\\"hi\\\"\"", "'a\\nb'", "$x", "$x.y-z$1",
+            "1+1", "1 - 2 - 3", "1+3*5", "(1+3)*5", "8 div 2 div 2", "-1", "2 * -$x",
+            "1 - -2", "f()", "f(1)", "max($a, $b + 1, g(2))", "$a == $b", "$a != $b",
+            "$a < $b", "$a > $b", "$a <= $b", "$a >= $b", "1 < 2 < 3",
+            "$a and $b", "$a and $b and $c", "$a or $b or $c",
+            "$a and $b or $c and not($d)", "#attr", "/a/b#c", "/hosts/*#load",
+            "/**#load", "/hosts/h1#*", "/**/cpu/*#*", "/a#b * 2", "/a#* * 2",
+            "/\u00e9/\u65e5\u672c#\u5c5e\u6027", "/a.b/c-d#e$f", "1 // comment\n + 2",
+            "\t1\r\n+\f2 ", "// leading comment\n$x" };
+
+    private static final String[] INVALID = { "", "1 +", "(1", "f(1", "f(1,)", "a",
+            "1 = 2", "1 ! 2", "/#attr", "--1", "/a/b", "/and#x", "$and", "$1",
+            "'unterminated", "'bad \\escape'", "1 // unterminated comment",
+            "domain:/#attribute", ".5", "/***#x", "1 2", "1 )", "/a#b c", "1.x" };
+
+    @Test
+    public void sameExpressionsAsAntlr() throws Exception {
+        for (String text : VALID) {
+            Expression expected = new ExpressionsParser(new ExpressionsLexer(
+                    new StringReader(text))).expression();
+            assertEquals(text, expected, RecursiveDescentParser.parse(text));
+        }
+    }
+
+    @Test
+    public void invalidExpressionsAreRejected() {
+        for (String text : INVALID) {
+            try {
+                RecursiveDescentParser.parse(text);
+                fail("Invalid expression '" + text + "' should be rejected.");
+            } catch (IllegalArgumentException e) {
+                // OK
+            }
+        }
+    }
+
+    @Test
+    public void comparisonOperandsAreShared() {
+        CallExpression not = (CallExpression) RecursiveDescentParser.parse("$a > $b");
+        OrExpression or = (OrExpression) not.getParameters()[0];
+        CallExpression less = (CallExpression) or.getClauses()[0];
+        CallExpression equals = (CallExpression) or.getClauses()[1];
+        assertSame(less.getParameters()[0], equals.getParameters()[0]);
+        assertSame(less.getParameters()[1], equals.getParameters()[1]);
+    }
+
+    @Test
+    public void parsedExpressionsAreCached() {
+        BasicInterpreter inter = new BasicInterpreter();
+        Expression expr = inter.parse("$a * 2 + 1");
+        assertSame(expr, inter.parse("$a * 2 + 1"));
+        for (int i = 0; i < BasicInterpreter.PARSE_CACHE_SIZE; i++) {
+            inter.parse("$a + " + i);
+        }
+        // Evicted, as the least recently used.
+        Expression reparsed = inter.parse("$a * 2 + 1");
+        assertEquals(expr, reparsed);
+        assertSame(reparsed, inter.parse("$a * 2 + 1"));
+    }
+
+    @Test
+    public void compiledExpressionsAreCached() {
+        CompilingInterpreter inter = new CompilingInterpreter();
+        assertSame(inter.parse("$a * 2 + 1"), inter.parse("$a * 2 + 1"));
+    }
+}
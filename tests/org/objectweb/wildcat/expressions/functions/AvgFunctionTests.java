@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class AvgFunctionTests {
+    private Environment topLevel;
+
+    private Function fun;
+
+    @Before
+    public void setUp() throws Exception {
+        topLevel = new Environment();
+        topLevel.defineFunction(new AvgFunction());
+        fun = topLevel.lookupFunction("avg");
+    }
+
+    @Test
+    public void avgFunctionExists() {
+        assertNotNull(fun);
+        assertEquals("avg", fun.getName());
+    }
+
+    @Test
+    public void averageOfNumbers() throws EvaluationException {
+        assertEquals(2.0, apply(1, 2.0, 3));
+        assertEquals(2.5, apply(Arrays.asList(1, 2.0), Arrays.asList(3, 4)));
+        assertEquals(2.0, apply(Arrays.asList(1, null, 3)));
+    }
+
+    @Test
+    public void averageOfNothing() throws EvaluationException {
+        assertNull(apply());
+        assertNull(apply(Arrays.asList()));
+    }
+
+    @Test(expected = EvaluationException.class)
+    public void averageOfStrings() throws EvaluationException {
+        apply("foo");
+    }
+
+    private Object apply(Object... args) throws EvaluationException {
+        return fun.apply(args, topLevel);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class CoalesceFunctionTests {
+    private Environment topLevel;
+
+    private Function fun;
+
+    @Before
+    public void setUp() throws Exception {
+        topLevel = new Environment();
+        topLevel.defineFunction(new CoalesceFunction());
+        fun = topLevel.lookupFunction("coalesce");
+    }
+
+    @Test
+    public void coalesceFunctionExists() {
+        assertNotNull(fun);
+        assertEquals("coalesce", fun.getName());
+    }
+
+    @Test
+    public void eagerApplication() throws EvaluationException {
+        assertEquals(1, fun.apply(new Object[] { null, 1, 2 }, topLevel));
+        assertNull(fun.apply(new Object[] { null, null }, topLevel));
+        assertNull(fun.apply(new Object[0], topLevel));
+    }
+
+    @Test
+    public void stopsAtTheFirstValue() throws EvaluationException {
+        final int[] evaluated = new int[1];
+        Thunk[] args = new Thunk[3];
+        for (int i = 0; i < args.length; i++) {
+            final Object value = (i == 0) ? null : i;
+            args[i] = new Thunk() {
+                public Object getValue() {
+                    evaluated[0]++;
+                    return value;
+                }
+            };
+        }
+        assertEquals(1, ((LazyFunction) fun).applyLazily(args, topLevel));
+        assertEquals(2, evaluated[0]);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class IfFunctionTests {
+    private Environment topLevel;
+
+    private Function fun;
+
+    @Before
+    public void setUp() throws Exception {
+        topLevel = new Environment();
+        topLevel.defineFunction(new IfFunction());
+        fun = topLevel.lookupFunction("if");
+    }
+
+    private static Thunk thunk(final Object value) {
+        return new Thunk() {
+            public Object getValue() {
+                return value;
+            }
+        };
+    }
+
+    private static Thunk failure() {
+        return new Thunk() {
+            public Object getValue() throws EvaluationException {
+                throw new EvaluationException("Not needed.");
+            }
+        };
+    }
+
+    @Test
+    public void ifFunctionExists() {
+        assertNotNull(fun);
+        assertEquals("if", fun.getName());
+    }
+
+    @Test
+    public void eagerApplication() throws EvaluationException {
+        assertEquals(1, fun.apply(new Object[] { true, 1, 2 }, topLevel));
+        assertEquals(2, fun.apply(new Object[] { false, 1, 2 }, topLevel));
+    }
+
+    @Test
+    public void onlyTheChosenBranchIsEvaluated() throws EvaluationException {
+        LazyFunction lazy = (LazyFunction) fun;
+        assertEquals(1, lazy.applyLazily(new Thunk[] { thunk(true), thunk(1), failure() },
+                topLevel));
+        assertEquals(2, lazy.applyLazily(
+                new Thunk[] { thunk(false), failure(), thunk(2) }, topLevel));
+    }
+
+    @Test(expected = EvaluationException.class)
+    public void nonBooleanCondition() throws EvaluationException {
+        fun.apply(new Object[] { 1, 1, 2 }, topLevel);
+    }
+
+    @Test(expected = EvaluationException.class)
+    public void missingBranch() throws EvaluationException {
+        fun.apply(new Object[] { true, 1 }, topLevel);
+    }
+}
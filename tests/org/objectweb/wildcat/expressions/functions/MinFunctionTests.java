@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class MinFunctionTests {
+    private Environment topLevel;
+
+    private Function fun;
+
+    @Before
+    public void setUp() throws Exception {
+        topLevel = new Environment();
+        topLevel.defineFunction(new MinFunction());
+        fun = topLevel.lookupFunction("min");
+    }
+
+    @Test
+    public void minFunctionExists() {
+        assertNotNull(fun);
+        assertEquals("min", fun.getName());
+    }
+
+    @Test
+    public void minimumOfNumbers() throws EvaluationException {
+        assertEquals(-1.0, apply(1, -1.0, 3));
+        assertEquals(1.0, apply(Arrays.asList(2, 1.0, 2), 3));
+        assertEquals(Double.NaN, apply(1, Double.NaN));
+    }
+
+    @Test
+    public void minimumOfNothing() throws EvaluationException {
+        assertNull(apply());
+        assertNull(apply(Arrays.asList(), null));
+    }
+
+    @Test(expected = EvaluationException.class)
+    public void minimumOfStrings() throws EvaluationException {
+        apply(Arrays.asList("foo", "bar"));
+    }
+
+    private Object apply(Object... args) throws EvaluationException {
+        return fun.apply(args, topLevel);
+    }
+}
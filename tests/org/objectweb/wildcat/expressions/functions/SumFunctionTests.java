@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.expressions.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.expressions.Environment;
+import org.objectweb.wildcat.expressions.EvaluationException;
+
+/**
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class SumFunctionTests {
+    private Environment topLevel;
+
+    private Function fun;
+
+    @Before
+    public void setUp() throws Exception {
+        topLevel = new Environment();
+        topLevel.defineFunction(new SumFunction());
+        fun = topLevel.lookupFunction("sum");
+    }
+
+    @Test
+    public void sumFunctionExists() {
+        assertNotNull(fun);
+        assertEquals("sum", fun.getName());
+    }
+
+    @Test
+    public void sumOfNumbers() throws EvaluationException {
+        assertEquals(0.0, apply());
+        assertEquals(6.0, apply(1, 2.0, 3));
+        assertEquals(6.0, apply(Arrays.asList(1, 2.0), 3));
+    }
+
+    @Test
+    public void nullsAreIgnored() throws EvaluationException {
+        assertEquals(3.0, apply(1, null, Arrays.asList(2, null)));
+    }
+
+    @Test
+    public void sumIsExact() throws EvaluationException {
+        assertEquals(1.0, apply(1e20, 1.0, -1e20));
+        assertEquals(Double.NaN, apply(Double.NEGATIVE_INFINITY, 1.0,
+                Double.POSITIVE_INFINITY));
+        assertEquals(Double.POSITIVE_INFINITY, apply(Double.POSITIVE_INFINITY, 1.0));
+    }
+
+    @Test(expected = EvaluationException.class)
+    public void sumOfStrings() throws EvaluationException {
+        apply(Arrays.asList(1, "foo"));
+    }
+
+    private Object apply(Object... args) throws EvaluationException {
+        return fun.apply(args, topLevel);
+    }
+}
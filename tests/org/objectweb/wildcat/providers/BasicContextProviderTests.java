@@ -232,6 +232,27 @@ public class BasicContextProviderTests {
         assertEquals("baz", provider.lookupAttribute(createPath("foo#bar")));
     }
 
+    @Test
+    public void changePrimitiveAttributeValues() {
+        provider.mounted(createPath("/"));
+        provider.createResource(createPath("foo"));
+        provider.createAttribute(createPath("foo#bar"), "bar");
+        recorder.clear();
+        provider.setLongValue(createPath("foo#bar"), 42);
+        provider.setDoubleValue(createPath("foo#bar"), 4.2);
+        provider.setBooleanValue(createPath("foo#bar"), true);
+        assertRecorded(recorder, changed("/foo#bar", "bar", 42L), changed("/foo#bar", 42L,
+                4.2), changed("/foo#bar", 4.2, true));
+        assertEquals(true, provider.lookupAttribute(createPath("foo#bar")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void changeMissingPrimitiveAttributeValue() {
+        provider.mounted(createPath("/"));
+        provider.createResource(createPath("foo"));
+        provider.setLongValue(createPath("foo#bar"), 42);
+    }
+
     @Test
     public void deleteAttribute() {
         provider.mounted(createPath("/"));
@@ -243,4 +264,78 @@ public class BasicContextProviderTests {
         assertLookup(provider, "foo#bar");
         assertLookup(provider, "foo#*");
     }
+
+    @Test
+    public void commitTransaction() {
+        provider.mounted(createPath("/"));
+        provider.createResource(createPath("foo"));
+        provider.createResource(createPath("bar"));
+        provider.createAttribute(createPath("foo#a"), "a");
+        provider.createAttribute(createPath("bar#b"), 1L);
+        recorder.clear();
+        Transaction tx = provider.beginTransaction();
+        tx.setValue("foo#a", "aa");
+        tx.setLongValue(createPath("bar#b"), 2);
+        tx.createAttribute("foo#c", "c");
+        tx.setValue("foo#c", "cc");
+        assertTrue(recorder.isEmpty());
+        assertEquals("a", provider.lookupAttribute(createPath("foo#a")));
+        assertNull(provider.lookupAttribute(createPath("foo#c")));
+        tx.commit();
+        assertEquals(1, recorder.getNotificationsCount());
+        assertRecorded(recorder, changed("/foo#a", "a", "aa"), added("/foo#c"), changed(
+                "/foo#c", null, "c"), changed("/foo#c", "c", "cc"), changed("/bar#b",
+                1L, 2L));
+        assertEquals("aa", provider.lookupAttribute(createPath("foo#a")));
+        assertEquals(2L, provider.lookupAttribute(createPath("bar#b")));
+        assertEquals("cc", provider.lookupAttribute(createPath("foo#c")));
+        TransactionStatistics stats = provider.getTransactionStatistics();
+        assertEquals(1L, stats.getCommitCount());
+        assertEquals(5, stats.getLastBatchSize());
+        assertEquals(5, stats.getMaxBatchSize());
+        assertEquals(5.0, stats.getAverageBatchSize(), 0.0);
+    }
+
+    @Test
+    public void failedTransactionChangesNothing() {
+        provider.mounted(createPath("/"));
+        provider.createResource(createPath("foo"));
+        provider.createAttribute(createPath("foo#a"), "a");
+        provider.createAttribute(createPath("foo#b"), "b");
+        recorder.clear();
+        Transaction tx = provider.beginTransaction();
+        tx.setValue("foo#a", "aa");
+        tx.setValue("foo#b", "bb");
+        provider.delete(createPath("foo#b"));
+        recorder.clear();
+        try {
+            tx.commit();
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertTrue(recorder.isEmpty());
+        assertEquals("a", provider.lookupAttribute(createPath("foo#a")));
+        assertEquals(0L, provider.getTransactionStatistics().getCommitCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createExistingAttributeInTransaction() {
+        provider.mounted(createPath("/"));
+        provider.createResource(createPath("foo"));
+        Transaction tx = provider.beginTransaction();
+        tx.setValue("foo#a", "a");
+        tx.createAttribute("foo#a", "a");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitTransactionTwice() {
+        provider.mounted(createPath("/"));
+        provider.createResource(createPath("foo"));
+        provider.createAttribute(createPath("foo#a"), "a");
+        Transaction tx = provider.beginTransaction();
+        tx.setValue("foo#a", "aa");
+        tx.commit();
+        tx.commit();
+    }
 }
@@ -40,11 +40,18 @@ public class EventRecorder implements EventListener {
      */
     private List<PathEvent> events = new ArrayList<PathEvent>();
 
+    /**
+     * The number of notifications (single events or lists) received since the recorder
+     * was created or cleared.
+     */
+    private int notifications;
+
     /*
      * (non-Javadoc)
      * @see org.objectweb.wildcat.events.EventListener#eventOccured(org.objectweb.wildcat.events.PathEvent)
      */
     public void eventOccured(PathEvent evt) {
+        notifications++;
         events.add(evt);
     }
 
@@ -53,11 +60,17 @@ public class EventRecorder implements EventListener {
      * @see org.objectweb.wildcat.events.EventListener#eventOccured(java.util.List)
      */
     public void eventOccured(List<PathEvent> evts) {
+        notifications++;
         events.addAll(evts);
     }
 
     public void clear() {
         events.clear();
+        notifications = 0;
+    }
+
+    public int getNotificationsCount() {
+        return notifications;
     }
 
     public int size() {
@@ -101,7 +114,7 @@ public class EventRecorder implements EventListener {
     private boolean equiv(PathEvent evt1, PathEvent evt2) {
         if (!evt1.getPath().equals(evt2.getPath())) {
             return false;
-        } else if (!evt1.getClass().equals(evt2.getClass())) {
+        } else if (!evt1.getClass().isInstance(evt2)) {
             return false;
         } else if (evt1 instanceof PathChangedEvent) {
             PathChangedEvent change1 = (PathChangedEvent) evt1;
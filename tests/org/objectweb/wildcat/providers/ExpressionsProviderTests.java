@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2004-2005 Universite de Nantes (LINA)
+ * Copyright (c) 2005-2006 France Telecom
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License version 2.1 as published by the Free Software Foundation.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ * Contact: Pierre-Charles David <pcdavid@gmail.com>
+ */
+package org.objectweb.wildcat.providers;
+
+import static org.junit.Assert.*;
+import static org.objectweb.wildcat.Context.createPath;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.wildcat.Path;
+import org.objectweb.wildcat.dependencies.DependencyGraphImpl;
+import org.objectweb.wildcat.expressions.BasicInterpreter;
+import org.objectweb.wildcat.expressions.ConstantExpression;
+import org.objectweb.wildcat.expressions.ExpressionVisitorAdapter;
+
+/**
+ * Tests for the {@link ExpressionsProvider} class.
+ * 
+ * @author Pierre-Charles David <pcdavid@gmail.com>
+ */
+public class ExpressionsProviderTests {
+    private ExpressionsProvider provider;
+
+    @Before
+    public void setUp() {
+        provider = new ExpressionsProvider(new BasicInterpreter());
+        provider.setEventListener(new EventRecorder());
+        provider.setDependencyGraph(new DependencyGraphImpl<Path>());
+        provider.mounted(createPath("/_expressions"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void createOnUnmountedProvider() {
+        new ExpressionsProvider(new BasicInterpreter()).createExpressionAttribute("/a#b");
+    }
+
+    @Test
+    public void identicalExpressionsShareAnAttribute() {
+        Path p1 = provider.createExpressionAttribute("/a#b > 3");
+        Path p2 = provider.createExpressionAttribute("/a#b  >  3");
+        Path p3 = provider.createExpressionAttribute("/a#b > 4");
+        assertEquals(p1, p2);
+        assertFalse(p1.equals(p3));
+        assertEquals(2, provider.definitions.size());
+    }
+
+    @Test
+    public void attributesAreReferenceCounted() {
+        Path p1 = provider.createExpressionAttribute("/a#b > 3");
+        Path p2 = provider.createExpressionAttribute("/a#b > 3");
+        provider.deleteExpressionAttribute(p1);
+        assertTrue(exists(p2));
+        provider.deleteExpressionAttribute(p2);
+        assertFalse(exists(p2));
+        assertTrue(provider.definitions.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deleteUnknownAttribute() {
+        Path p = provider.createExpressionAttribute("/a#b > 3");
+        provider.deleteExpressionAttribute(p);
+        provider.deleteExpressionAttribute(p);
+    }
+
+    @Test
+    public void commonSubexpressionsAreShared() {
+        Path p1 = provider.createExpressionAttribute("/a#b + /a#c > 3");
+        Path p2 = provider.createExpressionAttribute("/a#b + /a#c < 10");
+        // The sum now has its own attribute, read by both expressions.
+        assertEquals(3, provider.definitions.size());
+        Set<Path> read1 = attributesRead(p1);
+        Set<Path> read2 = attributesRead(p2);
+        assertEquals(1, read1.size());
+        assertEquals(read1, read2);
+        Path sum = read1.iterator().next();
+        assertEquals(set("/a#b", "/a#c"), attributesRead(sum));
+        // Attributes are not read through the sum by later expressions either.
+        Path p3 = provider.createExpressionAttribute("(/a#b + /a#c) * 2");
+        assertEquals(read1, attributesRead(p3));
+        assertEquals(4, provider.definitions.size());
+    }
+
+    @Test
+    public void sharedSubexpressionsAreDeletedWhenUnused() {
+        Path p1 = provider.createExpressionAttribute("/a#b + /a#c > 3");
+        Path p2 = provider.createExpressionAttribute("/a#b + /a#c < 10");
+        Path sum = attributesRead(p1).iterator().next();
+        provider.deleteExpressionAttribute(p1);
+        assertTrue(exists(sum));
+        provider.deleteExpressionAttribute(p2);
+        assertFalse(exists(sum));
+        assertTrue(provider.definitions.isEmpty());
+    }
+
+    @Test
+    public void simpleAttributeReadsAreNotShared() {
+        provider.createExpressionAttribute("/a#b > 3");
+        provider.createExpressionAttribute("/a#b < 10");
+        assertEquals(2, provider.definitions.size());
+    }
+
+    @Test
+    public void lazyArgumentsAreNotShared() {
+        Path p1 = provider.createExpressionAttribute("if(/t#c, /t#x + 1, 0)");
+        Path p2 = provider.createExpressionAttribute("if(/t#c, /t#x + 1, 2)");
+        assertEquals(2, provider.definitions.size());
+        assertEquals(set("/t#c", "/t#x"), attributesRead(p1));
+        assertEquals(set("/t#c", "/t#x"), attributesRead(p2));
+        // The conditional itself is still shared, as it is always evaluated.
+        Path p3 = provider.createExpressionAttribute("if(/t#c, /t#x + 1, 0) > 1");
+        assertEquals(set(p1.toString()), attributesRead(p3));
+    }
+
+    private boolean exists(Path attribute) {
+        return !provider.lookup(attribute.relativeTo(provider.getPath())).isEmpty();
+    }
+
+    /**
+     * Returns the absolute paths of the attributes read by the definition of an
+     * expression attribute.
+     */
+    private Set<Path> attributesRead(Path attribute) {
+        final Set<Path> result = new HashSet<Path>();
+        provider.definitions.get(attribute.relativeTo(provider.getPath())).accept(
+                new ExpressionVisitorAdapter() {
+                    @Override
+                    public void visitConstantExpression(ConstantExpression expr) {
+                        if (expr.getValue() instanceof Path) {
+                            result.add((Path) expr.getValue());
+                        }
+                    }
+                });
+        return result;
+    }
+
+    private static Set<Path> set(String... paths) {
+        Set<Path> result = new HashSet<Path>();
+        for (String path : paths) {
+            result.add(createPath(path));
+        }
+        return result;
+    }
+}
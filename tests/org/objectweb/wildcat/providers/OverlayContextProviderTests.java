@@ -25,6 +25,7 @@ import static org.objectweb.wildcat.Context.createPath;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.objectweb.wildcat.AttributeHandle;
 import org.objectweb.wildcat.InvalidMountPointException;
 import org.objectweb.wildcat.providers.BasicContextProvider;
 import org.objectweb.wildcat.providers.OverlayContextProvider;
@@ -160,6 +161,24 @@ public class OverlayContextProviderTests {
                 "/cartoons/simpsons/bart#moto");
     }
 
+    @Test
+    public void lookupAnyDepthAcrossMountPoints() throws InvalidMountPointException {
+        overlay.mounted(createPath("/"));
+        BasicContextProvider internal = new BasicContextProvider();
+        overlay.mount(createPath("cartoons"), internal);
+        defaultProvider.createResource(createPath("movies"));
+        defaultProvider.createAttribute(createPath("movies#moto"), "riddick");
+        internal.createResource(createPath("simpsons"));
+        internal.createResource(createPath("simpsons/homer"));
+        internal.createAttribute(createPath("simpsons/homer#moto"), "doh");
+        assertLookup(overlay, "**#moto", "/movies#moto", "/cartoons/simpsons/homer#moto");
+        assertLookup(overlay, "**/homer#*", "/cartoons/simpsons/homer#moto");
+        assertLookup(overlay, "cartoons/**", "/cartoons", "/cartoons/simpsons",
+                "/cartoons/simpsons/homer");
+        assertEquals(3, overlay.lookup(createPath("cartoons/**")).size());
+        assertEquals(5, overlay.lookup(createPath("**")).size());
+    }
+
     @Test
     public void lookupOverlayedAttributeValues() throws InvalidMountPointException {
         overlay.mounted(createPath("/"));
@@ -183,4 +202,23 @@ public class OverlayContextProviderTests {
         assertEquals("doh", overlay.lookupAttribute(createPath("cartoons/simpsons/homer#moto")));
         assertEquals("eat my shorts", overlay.lookupAttribute(createPath("cartoons/simpsons/bart#moto")));
     }
+
+    @Test
+    public void bindOverlayedAttributes() throws InvalidMountPointException {
+        overlay.mounted(createPath("/"));
+        BasicContextProvider internal = new BasicContextProvider();
+        overlay.mount(createPath("cartoons"), internal);
+        defaultProvider.createResource(createPath("movies"));
+        defaultProvider.createAttribute(createPath("movies#count"), 1);
+        internal.createResource(createPath("simpsons"));
+        internal.createAttribute(createPath("simpsons#moto"), "doh");
+        AttributeHandle movies = overlay.bindAttribute(createPath("movies#count"));
+        AttributeHandle simpsons = overlay.bindAttribute(createPath("cartoons/simpsons#moto"));
+        assertEquals(1, movies.getValue());
+        assertEquals("doh", simpsons.getValue());
+        assertNull(overlay.bindAttribute(createPath("cartoons/futurama#moto")));
+        overlay.unmount(createPath("cartoons"));
+        assertFalse(simpsons.isValid());
+        assertTrue(movies.isValid());
+    }
 }
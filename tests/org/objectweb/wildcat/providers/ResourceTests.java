@@ -25,9 +25,17 @@ import static org.objectweb.wildcat.TestUtils.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.objectweb.wildcat.AttributeHandle;
 import org.objectweb.wildcat.Context;
 import org.objectweb.wildcat.Path;
 
@@ -41,10 +49,13 @@ public class ResourceTests {
 
     private EventRecorder recorder;
 
+    private Versions versions;
+
     @Before
     public void setUp() {
         recorder = new EventRecorder();
-        root = new Resource(Context.getRootPath(), recorder);
+        versions = new Versions();
+        root = new Resource(Context.getRootPath(), recorder, versions);
     }
 
     @Test
@@ -58,7 +69,7 @@ public class ResourceTests {
     @Test
     public void createNonRootResource() {
         Path p = createPath("/foo/bar");
-        Resource r = new Resource(p, recorder);
+        Resource r = new Resource(p, recorder, versions);
         assertEquals(p, r.getPath());
         assertNoSubResources(r);
         assertNoAttributes(r);
@@ -67,27 +78,27 @@ public class ResourceTests {
 
     @Test(expected = AssertionError.class)
     public void createResourceWithNullPath() {
-        new Resource(null, recorder);
+        new Resource(null, recorder, versions);
     }
 
     @Test(expected = AssertionError.class)
     public void createResourceWithRelativePath() {
-        new Resource(createPath("foo/bar"), recorder);
+        new Resource(createPath("foo/bar"), recorder, versions);
     }
 
     @Test(expected = AssertionError.class)
     public void createResourceWithAttributePath() {
-        new Resource(createPath("/foo#bar"), recorder);
+        new Resource(createPath("/foo#bar"), recorder, versions);
     }
 
     @Test(expected = AssertionError.class)
     public void createResourceWithPatternPath() {
-        new Resource(createPath("/foo/*"), recorder);
+        new Resource(createPath("/foo/*"), recorder, versions);
     }
 
     @Test(expected = AssertionError.class)
     public void createResourceWithNullListener() {
-        new Resource(createPath("/foo"), null);
+        new Resource(createPath("/foo"), null, versions);
     }
 
     @Test
@@ -269,6 +280,353 @@ public class ResourceTests {
         assertRecorded(recorder, changed("/simpsons#homer", "doh", "Mmmm, donut..."));
     }
 
+    @Test
+    public void setAttributesValuesNotifiesOneBatch() {
+        Resource simpsons = root.createChild("simpsons");
+        simpsons.createAttribute("homer", "doh");
+        recorder.clear();
+        Map<String, Object> samples = new LinkedHashMap<String, Object>();
+        samples.put("homer", "Mmmm, donut...");
+        samples.put("bart", "Ay, caramba!");
+        simpsons.setAttributesValues(samples);
+        assertEquals(1, recorder.getNotificationsCount());
+        assertRecorded(recorder, changed("/simpsons#homer", "doh", "Mmmm, donut..."),
+                added("/simpsons#bart"), changed("/simpsons#bart", null, "Ay, caramba!"));
+    }
+
+    @Test
+    public void setAttributesValuesRemovesOthers() {
+        Resource simpsons = root.createChild("simpsons");
+        simpsons.createAttribute("homer", "doh");
+        simpsons.createAttribute("marge", "Hmmm");
+        recorder.clear();
+        Map<String, Object> samples = new HashMap<String, Object>();
+        samples.put("homer", "Woohoo!");
+        simpsons.setAttributesValues(samples, false);
+        assertEquals(Collections.singleton("homer"), new HashSet<String>(simpsons
+                .getAttributes()));
+        assertEquals(1, recorder.getNotificationsCount());
+        assertRecorded(recorder, changed("/simpsons#homer", "doh", "Woohoo!"),
+                removed("/simpsons#marge"));
+    }
+
+    @Test
+    public void attributeHandles() {
+        Resource simpsons = root.createChild("simpsons");
+        Resource homer = simpsons.createChild("homer");
+        homer.createAttribute("moto", "doh");
+        AttributeHandle handle = homer.getAttributeHandle("moto");
+        assertTrue(handle.isValid());
+        assertEquals("doh", handle.getValue());
+        homer.setAttributeValue("moto", "Woohoo!");
+        assertEquals("Woohoo!", handle.getValue());
+        homer.deleteAttribute("moto");
+        assertNull(handle.getValue());
+        assertTrue(handle.isValid());
+        homer.createAttribute("moto", "Mmm... donuts");
+        assertEquals("Mmm... donuts", handle.getValue());
+        // Removing an ancestor disposes the resource.
+        root.deleteChild("simpsons");
+        assertTrue(homer.isDisposed());
+        assertFalse(handle.isValid());
+    }
+
+    @Test
+    public void primitiveValues() {
+        Resource jvm = root.createChild("jvm");
+        jvm.createAttribute("memory", null);
+        jvm.createAttribute("load", 1);
+        jvm.createAttribute("busy", Boolean.TRUE);
+        recorder.clear();
+        jvm.setLongAttributeValue("memory", 1024);
+        jvm.setLongAttributeValue("memory", 2048);
+        jvm.setLongAttributeValue("memory", 2048);
+        jvm.setDoubleAttributeValue("load", 0.5);
+        jvm.setDoubleAttributeValue("load", 0.5);
+        jvm.setBooleanAttributeValue("busy", true);
+        jvm.setBooleanAttributeValue("busy", false);
+        assertRecorded(recorder, changed("/jvm#memory", null, 1024L), changed(
+                "/jvm#memory", 1024L, 2048L), changed("/jvm#load", 1, 0.5), changed(
+                "/jvm#busy", true, false));
+        assertEquals(2048L, jvm.getAttributeValue("memory"));
+        assertEquals(0.5, jvm.getAttributeValue("load"));
+        assertEquals(false, jvm.getAttributeHandle("busy").getValue());
+        recorder.clear();
+        jvm.setAttributeValue("memory", "unknown");
+        jvm.setDoubleAttributeValue("memory", Double.NaN);
+        jvm.setDoubleAttributeValue("memory", Double.NaN);
+        assertRecorded(recorder, changed("/jvm#memory", 2048L, "unknown"), changed(
+                "/jvm#memory", "unknown", Double.NaN));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setMissingPrimitiveValue() {
+        root.createChild("jvm").setLongAttributeValue("memory", 1024);
+    }
+
+    @Test
+    public void samplesNotifyOneBatch() {
+        Resource jvm = root.createChild("jvm");
+        jvm.createAttribute("memory", 1024L);
+        recorder.clear();
+        SampleBuffer samples = new SampleBuffer();
+        for (int i = 0; i < 20; i++) {
+            samples.put("attr" + i, i);
+        }
+        samples.put("memory", 2048L);
+        samples.put("name", "test");
+        jvm.setAttributesValues(samples);
+        assertEquals(1, recorder.getNotificationsCount());
+        assertEquals(2 * 21 + 1, recorder.size());
+        assertEquals(19L, jvm.getAttributeValue("attr19"));
+        assertEquals("test", jvm.getAttributeValue("name"));
+        samples.clear();
+        samples.put("memory", 2048L);
+        samples.put("attr0", 0L);
+        recorder.clear();
+        jvm.setAttributesValues(samples);
+        assertTrue(recorder.isEmpty());
+        samples.put("attr1", 2.0);
+        jvm.setAttributesValues(samples);
+        assertRecorded(recorder, changed("/jvm#attr1", 1L, 2.0));
+    }
+
+    @Test
+    public void manyChildren() {
+        int n = 3 * Resource.MAX_ARRAY_SIZE;
+        for (int i = n - 1; i >= 0; i--) {
+            root.createChild("kid" + i);
+        }
+        assertEquals(n, root.getChildren().size());
+        for (int i = 0; i < n; i++) {
+            Resource kid = root.getChild("kid" + i);
+            assertEquals(createPath("/kid" + i), kid.getPath());
+            assertTrue(root.getChildren().contains(kid));
+        }
+        for (int i = 0; i < n; i += 2) {
+            root.deleteChild("kid" + i);
+        }
+        assertEquals(n / 2, root.getChildren().size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 2 == 1, root.hasChild("kid" + i));
+        }
+    }
+
+    @Test
+    public void manyAttributes() {
+        Resource foo = root.createChild("foo");
+        int n = 3 * Resource.MAX_ARRAY_SIZE;
+        for (int i = 0; i < n; i++) {
+            foo.createAttribute("attr" + ((i * 7) % n), i);
+        }
+        assertEquals(n, foo.getAttributes().size());
+        assertEquals(n, foo.getAttributesMatching("*").size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, foo.getAttributeValue("attr" + ((i * 7) % n)));
+        }
+        for (int i = 0; i < n; i++) {
+            foo.setAttributeValue("attr" + i, -i);
+        }
+        for (int i = 0; i < n; i += 2) {
+            foo.deleteAttribute("attr" + i);
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 2 == 1, foo.hasAttribute("attr" + i));
+            assertEquals((i % 2 == 1) ? -i : null, foo.getAttributeValue("attr" + i));
+        }
+    }
+
+    @Test
+    public void readsDuringModifications() throws InterruptedException {
+        final int n = 2 * Resource.MAX_ARRAY_SIZE;
+        final Resource foo = root.createChild("foo");
+        foo.createAttribute("stable", 0L);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!stop.get()) {
+                            for (int i = 0; i < n; i++) {
+                                Resource kid = foo.getChild("kid" + i);
+                                assertTrue(kid == null || kid.getPath().equals(
+                                        createPath("/foo/kid" + i)));
+                                Object value = foo.getAttributeValue("attr" + i);
+                                assertTrue(value == null || value.equals((long) i));
+                            }
+                            assertEquals(0L, foo.getAttributeValue("stable"));
+                            for (Resource kid : foo.getChildren()) {
+                                assertNotNull(kid);
+                            }
+                            for (Path attr : foo.getAttributesMatching("*")) {
+                                assertNotNull(attr);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < n; i++) {
+                foo.createChild("kid" + i);
+                foo.createAttribute("attr" + i, null);
+                foo.setLongAttributeValue("attr" + i, i);
+            }
+            for (int i = 0; i < n; i++) {
+                foo.deleteChild("kid" + i);
+                foo.deleteAttribute("attr" + i);
+            }
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    public void pathsFollowTheParents() {
+        Resource bar = root.createChild("foo").createChild("bar");
+        Resource top = new Resource(createPath("/mount/point"), recorder, versions);
+        Resource baz = top.createChild("baz");
+        assertEquals(createPath("/foo/bar"), bar.getPath());
+        assertEquals(createPath("/mount/point/baz"), baz.getPath());
+        baz.createAttribute("qux", 1);
+        assertEquals(createPath("/mount/point/baz#qux"), baz.getAttributesMatching("qux")
+                .iterator().next());
+    }
+
+    @Test
+    public void versionsAreConsistent() throws InterruptedException {
+        // Enough attributes to be stored in a hash table.
+        final int n = Resource.MAX_ARRAY_SIZE + 8;
+        final Resource foo = root.createChild("foo");
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!stop.get()) {
+                            Versions.Reader reader = versions.open(this);
+                            try {
+                                long v = reader.getVersion();
+                                Collection<Path> attrs = foo.getAttributesMatching("*", v);
+                                Object first = foo.getAttributeValue("x0", v);
+                                for (int i = 0; i < n; i++) {
+                                    assertEquals(first, foo.getAttributeValue("x" + i, v));
+                                }
+                                assertEquals(first == null ? 0 : n, attrs.size());
+                            } finally {
+                                reader.close();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            readers[t].start();
+        }
+        SampleBuffer samples = new SampleBuffer();
+        Map<String, Object> values = new HashMap<String, Object>();
+        for (int round = 0; round < 2000; round++) {
+            for (int i = 0; i < n; i++) {
+                samples.put("x" + i, (long) round);
+                values.put("x" + i, (long) round);
+            }
+            if (round % 2 == 0) {
+                foo.setAttributesValues(samples);
+            } else {
+                foo.setAttributesValues(values);
+            }
+            samples.clear();
+            if (round % 100 == 99) {
+                foo.setAttributesValues(Collections.<String, Object> emptyMap(), false);
+            }
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    public void oldStatesAreReclaimed() {
+        Resource foo = root.createChild("foo");
+        foo.createAttribute("a", 1);
+        foo.setLongAttributeValue("a", 2);
+        // Nothing is kept without readers.
+        assertFalse(foo.pruneHistory());
+        Versions.Reader reader = versions.open(this);
+        foo.setLongAttributeValue("a", 3);
+        foo.setLongAttributeValue("a", 4);
+        foo.createChild("bar");
+        assertEquals(2L, foo.getAttributeValue("a", reader.getVersion()));
+        assertTrue(foo.getChildren(reader.getVersion()).isEmpty());
+        assertEquals(4L, foo.getAttributeValue("a", Versions.LATEST));
+        assertTrue(foo.pruneHistory());
+        reader.close();
+        assertFalse(foo.pruneHistory());
+        assertEquals(4L, foo.getAttributeValue("a", Versions.LATEST));
+    }
+
+    @Test
+    public void clocksAreIndependent() {
+        Resource foo = root.createChild("foo");
+        Resource other = new Resource(createPath("/other"), recorder, new Versions());
+        foo.createAttribute("a", 1);
+        other.createAttribute("a", 1);
+        Versions.Reader reader = versions.open(this);
+        foo.setLongAttributeValue("a", 2);
+        other.setLongAttributeValue("a", 2);
+        // Only the resources of the reader's context keep their old states.
+        assertTrue(foo.pruneHistory());
+        assertFalse(other.pruneHistory());
+        reader.close();
+    }
+
+    @Test
+    public void readersWaitForTheModificationsInProgress() throws InterruptedException {
+        final Resource foo = root.createChild("foo");
+        foo.createAttribute("a", 1);
+        final AtomicReference<Versions.Reader> opened;
+        opened = new AtomicReference<Versions.Reader>();
+        Versions.Write write = versions.beginWrite();
+        Thread opener = new Thread() {
+            @Override
+            public void run() {
+                opened.set(versions.open(this));
+            }
+        };
+        try {
+            opener.start();
+            opener.join(200);
+            assertTrue(opener.isAlive());
+            // The readers of another context do not wait.
+            new Versions().open(this).close();
+            foo.setLongAttributeValue("a", 2);
+        } finally {
+            write.end();
+        }
+        opener.join();
+        assertEquals(2L, foo.getAttributeValue("a", opened.get().getVersion()));
+        opened.get().close();
+    }
+
     private void assertNoAttributes(Resource r) {
         Collection<String> attrs = r.getAttributes();
         assertNotNull(attrs);